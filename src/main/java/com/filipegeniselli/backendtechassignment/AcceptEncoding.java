@@ -0,0 +1,59 @@
+package com.filipegeniselli.backendtechassignment;
+
+import java.util.Locale;
+
+/**
+ * Reads the codings of an Accept-Encoding header, e.g. "gzip;q=0.5, br, *;q=0".
+ * A coding is accepted when it's listed with a q above 0, or not listed and the "*" is accepted
+ */
+public final class AcceptEncoding {
+
+    private AcceptEncoding() {
+    }
+
+    /**
+     * @param header the Accept-Encoding value, can be null
+     * @param coding
+     * @return true when the client accepts the coding
+     */
+    public static boolean accepts(String header, String coding) {
+        if (header == null) {
+            return false;
+        }
+
+        Double codingQuality = null;
+        Double anyQuality = null;
+        for (String token : header.split(",")) {
+            String[] parts = token.split(";");
+            String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            if (name.equals(coding)) {
+                codingQuality = quality(parts);
+            } else if (name.equals("*")) {
+                anyQuality = quality(parts);
+            }
+        }
+
+        if (codingQuality != null) {
+            return codingQuality > 0;
+        }
+        return anyQuality != null && anyQuality > 0;
+    }
+
+    /**
+     * @param parts the coding and its parameters
+     * @return the q parameter, 1 when it's missing, 0 when it's invalid
+     */
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.length() > 2 && parameter.substring(0, 2).equalsIgnoreCase("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
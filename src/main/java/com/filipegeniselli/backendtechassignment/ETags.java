@@ -0,0 +1,30 @@
+package com.filipegeniselli.backendtechassignment;
+
+/**
+ * Strong ETags built from the versions of the entities, the value only needs to be unique for the same url.
+ * The quotes are added by the WebRequest.checkNotModified that sends the header
+ */
+public final class ETags {
+
+    private ETags() {
+    }
+
+    public static String dealer(long version) {
+        return "v" + version;
+    }
+
+    /**
+     * The dealer is part of the listing json, a compressed response is a different representation
+     * @param version
+     * @param dealerVersion
+     * @param gzip
+     * @return
+     */
+    public static String listing(long version, long dealerVersion, boolean gzip) {
+        return "v" + version + "." + dealerVersion + (gzip ? "-gzip" : "");
+    }
+
+    public static String listings(long dealerVersion, long stamp) {
+        return "v" + dealerVersion + "." + stamp;
+    }
+}
@@ -1,4 +1,19 @@
 package com.filipegeniselli.backendtechassignment;
 
-public record PageInfo(int pageSize, int page, long total) {
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Offset pages fill page and total, cursor pages only fill nextCursor.
+ * The null fields are not serialized so the offset response stays the same for old clients
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record PageInfo(int pageSize, Integer page, Long total, String nextCursor) {
+
+    public PageInfo(int pageSize, int page, long total) {
+        this(pageSize, page, total, null);
+    }
+
+    public static PageInfo ofCursor(int pageSize, String nextCursor) {
+        return new PageInfo(pageSize, null, null, nextCursor);
+    }
 }
@@ -5,6 +5,9 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.boot.context.properties.bind.ConstructorBinding;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 @ConfigurationPropertiesScan
 @ConfigurationProperties(prefix = "tier-limits")
 public class TierLimitConfiguration {
@@ -32,4 +35,13 @@ public class TierLimitConfiguration {
 
         return limit;
     }
+
+    public Map<DealerTierLimit, Integer> getTierLimits() {
+        Map<DealerTierLimit, Integer> limits = new EnumMap<>(DealerTierLimit.class);
+        for (DealerTierLimit tierLimit : DealerTierLimit.values()) {
+            limits.put(tierLimit, getTierLimit(tierLimit));
+        }
+
+        return limits;
+    }
 }
@@ -0,0 +1,70 @@
+package com.filipegeniselli.backendtechassignment.catalog;
+
+import com.filipegeniselli.backendtechassignment.PagedResult;
+import com.filipegeniselli.backendtechassignment.listings.ListingDto;
+import com.filipegeniselli.backendtechassignment.listings.VehicleCondition;
+import com.filipegeniselli.backendtechassignment.listings.VehicleFuelType;
+import com.filipegeniselli.backendtechassignment.listings.VehicleTransmission;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+
+@RestController
+@RequestMapping("/catalog")
+public class CatalogController {
+
+    private final CatalogQueryService catalogQueryService;
+
+    @Autowired
+    public CatalogController(CatalogQueryService catalogQueryService) {
+        this.catalogQueryService = catalogQueryService;
+    }
+
+    @GetMapping("/listings")
+    public PagedResult<ListingDto> searchListings(@RequestParam(value = "condition", required = false) Set<VehicleCondition> conditions,
+                                                  @RequestParam(value = "fuelType", required = false) Set<VehicleFuelType> fuelTypes,
+                                                  @RequestParam(value = "transmission", required = false) Set<VehicleTransmission> transmissions,
+                                                  @RequestParam(value = "color", required = false) Set<String> colors,
+                                                  @RequestParam(value = "minPrice", required = false) BigDecimal minPrice,
+                                                  @RequestParam(value = "maxPrice", required = false) BigDecimal maxPrice,
+                                                  @RequestParam(value = "minMileage", required = false) Integer minMileage,
+                                                  @RequestParam(value = "maxMileage", required = false) Integer maxMileage,
+                                                  @RequestParam(value = "text", required = false) String text,
+                                                  @RequestParam(value = "sort", defaultValue = "RECENCY") CatalogSort sort,
+                                                  @RequestParam(value = "page", defaultValue = "0") int page,
+                                                  @RequestParam(value = "pageSize", defaultValue = "20") int pageSize) {
+        CatalogFilter filter = new CatalogFilter(conditions, fuelTypes, transmissions, colors,
+                minPrice, maxPrice, minMileage, maxMileage, text);
+
+        return catalogQueryService.handle(new SearchCatalog(filter, sort, PageRequest.of(page, pageSize)));
+    }
+
+    @GetMapping("/facets")
+    public CatalogFacets countFacets(@RequestParam(value = "condition", required = false) Set<VehicleCondition> conditions,
+                                     @RequestParam(value = "fuelType", required = false) Set<VehicleFuelType> fuelTypes,
+                                     @RequestParam(value = "transmission", required = false) Set<VehicleTransmission> transmissions,
+                                     @RequestParam(value = "color", required = false) Set<String> colors,
+                                     @RequestParam(value = "minPrice", required = false) BigDecimal minPrice,
+                                     @RequestParam(value = "maxPrice", required = false) BigDecimal maxPrice,
+                                     @RequestParam(value = "minMileage", required = false) Integer minMileage,
+                                     @RequestParam(value = "maxMileage", required = false) Integer maxMileage,
+                                     @RequestParam(value = "text", required = false) String text) {
+        CatalogFilter filter = new CatalogFilter(conditions, fuelTypes, transmissions, colors,
+                minPrice, maxPrice, minMileage, maxMileage, text);
+
+        return catalogQueryService.handle(new CountCatalogFacets(filter));
+    }
+
+    @GetMapping("/suggestions")
+    public List<VehicleSuggestion> suggestVehicles(@RequestParam(value = "text", defaultValue = "") String text,
+                                                   @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        return catalogQueryService.handle(new SuggestVehicles(text, limit));
+    }
+}
@@ -0,0 +1,25 @@
+package com.filipegeniselli.backendtechassignment.catalog;
+
+import com.filipegeniselli.backendtechassignment.listings.VehicleCondition;
+import com.filipegeniselli.backendtechassignment.listings.VehicleFuelType;
+import com.filipegeniselli.backendtechassignment.listings.VehicleTransmission;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The amount of published listings with each value of an attribute, counted with all the filters except
+ * the one of the attribute itself.
+ * A price bucket starts at its minPrice (inclusive) and ends before its maxPrice, the first bucket has no minPrice
+ * and the last has no maxPrice
+ */
+public record CatalogFacets(long total,
+                            Map<VehicleCondition, Long> condition,
+                            Map<VehicleFuelType, Long> fuelType,
+                            Map<VehicleTransmission, Long> transmission,
+                            List<PriceBucket> price) {
+
+    public record PriceBucket(BigDecimal minPrice, BigDecimal maxPrice, long count) {
+    }
+}
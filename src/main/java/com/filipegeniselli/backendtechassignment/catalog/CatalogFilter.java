@@ -0,0 +1,77 @@
+package com.filipegeniselli.backendtechassignment.catalog;
+
+import com.filipegeniselli.backendtechassignment.exception.BadRequestException;
+import com.filipegeniselli.backendtechassignment.listings.VehicleCondition;
+import com.filipegeniselli.backendtechassignment.listings.VehicleFuelType;
+import com.filipegeniselli.backendtechassignment.listings.VehicleTransmission;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A listing matches when it has one of the values of every attribute with values and is inside every range,
+ * an empty set or a null bound doesn't filter. Colors are compared in lower case.
+ * The text matches the vehicles with all of its words, a word ending with * matches the words starting with it
+ */
+public record CatalogFilter(Set<VehicleCondition> conditions,
+                            Set<VehicleFuelType> fuelTypes,
+                            Set<VehicleTransmission> transmissions,
+                            Set<String> colors,
+                            BigDecimal minPrice,
+                            BigDecimal maxPrice,
+                            Integer minMileage,
+                            Integer maxMileage,
+                            String text) {
+
+    private static final int MAX_TERMS = 10;
+
+    public CatalogFilter {
+        conditions = conditions == null ? Set.of() : Set.copyOf(conditions);
+        fuelTypes = fuelTypes == null ? Set.of() : Set.copyOf(fuelTypes);
+        transmissions = transmissions == null ? Set.of() : Set.copyOf(transmissions);
+        colors = normalizeColors(colors);
+
+        if (minPrice != null && maxPrice != null && minPrice.compareTo(maxPrice) > 0) {
+            throw new BadRequestException("The minPrice can't be greater than the maxPrice");
+        }
+        if (minMileage != null && maxMileage != null && minMileage > maxMileage) {
+            throw new BadRequestException("The minMileage can't be greater than the maxMileage");
+        }
+        text = text == null || text.isBlank() ? null : text.trim();
+        if (text != null && VehicleText.terms(text).isEmpty()) {
+            throw new BadRequestException("The text must have at least one letter or digit");
+        }
+        if (VehicleText.terms(text).size() > MAX_TERMS) {
+            throw new BadRequestException("The text can't have more than " + MAX_TERMS + " words");
+        }
+    }
+
+    /**
+     * @return the words of the text, every one of them must be in the vehicle
+     */
+    List<VehicleText.Term> terms() {
+        return VehicleText.terms(text);
+    }
+
+    public static String normalizeColor(String color) {
+        if (color == null || color.isBlank()) {
+            return null;
+        }
+        return color.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> normalizeColors(Collection<String> colors) {
+        if (colors == null) {
+            return Set.of();
+        }
+        return colors.stream()
+                .map(CatalogFilter::normalizeColor)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+}
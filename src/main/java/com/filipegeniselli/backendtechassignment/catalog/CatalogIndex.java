@@ -0,0 +1,595 @@
+package com.filipegeniselli.backendtechassignment.catalog;
+
+import com.filipegeniselli.backendtechassignment.listings.ListingStatus;
+import com.filipegeniselli.backendtechassignment.listings.VehicleCondition;
+import com.filipegeniselli.backendtechassignment.listings.VehicleFuelType;
+import com.filipegeniselli.backendtechassignment.listings.VehicleTransmission;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * In-memory index of the published listings of all the dealers, used by the catalog search.
+ *
+ * Every indexed listing gets a sequential document number, each value of the enum attributes and each color
+ * has a compressed bitmap of the documents with it, and the price (in cents) and the mileage are kept in arrays
+ * sorted by value, a range is found by binary search and turned into a bitmap.
+ * A search is the intersection of the bitmaps of the filter, values of the same attribute are united first,
+ * and the page is read from the end of the result so the listings indexed last come first.
+ * The facet counts use the same bitmaps, see facets.
+ * The words of the vehicle are in a TextIndex, a text search is one more bitmap of the intersection, and the
+ * RELEVANCE sort scores the matching documents with the postings of the words.
+ * The distinct vehicles and their counts are in a VehicleTrie, used for the suggestions.
+ *
+ * Document numbers are not reused, a listing published again is indexed as a new document. When more than half
+ * of the documents were removed the index is compacted and the remaining listings are numbered again in the same order.
+ *
+ * The CatalogIndexer keeps it up to date and rebuilds it, searches before the first rebuild find nothing
+ * and the index answers empty. Changes run with the write lock and searches with the read lock.
+ */
+@Component
+public class CatalogIndex {
+
+    private static final int MINIMUM_COMPACTION = 1024;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final int suggestions;
+
+    private Documents documents;
+    private Documents rebuilding;
+    private VehicleTrie restored;
+    private boolean ready;
+
+    /**
+     * @param suggestions the amount of best vehicles kept by each node of the vehicle trie
+     */
+    @Autowired
+    public CatalogIndex(@Value("${vehicle-suggestions.top-k:10}") int suggestions) {
+        this.suggestions = suggestions;
+        this.documents = new Documents(suggestions);
+    }
+
+    /**
+     * @param filter
+     * @param sort RELEVANCE only changes the order when the filter has a text
+     * @param pageable
+     * @return the ids of the page of listings, empty until the index is built
+     */
+    public Optional<Page<UUID>> search(CatalogFilter filter, CatalogSort sort, Pageable pageable) {
+        lock.readLock().lock();
+        try {
+            if (!ready) {
+                return Optional.empty();
+            }
+
+            RoaringBitmap result = documents.matching(filter);
+            long total = result.getLongCardinality();
+            int from = (int) Math.min(total, pageable.getOffset());
+            int to = (int) Math.min(total, pageable.getOffset() + pageable.getPageSize());
+            List<UUID> ids = new ArrayList<>(to - from);
+            if (sort == CatalogSort.RELEVANCE && !filter.terms().isEmpty()) {
+                for (int document : documents.mostRelevant(result, filter.terms(), to)) {
+                    ids.add(documents.listingIds[document]);
+                }
+                ids = ids.subList(from, ids.size());
+            } else {
+                for (int position = from; position < to; position++) {
+                    ids.add(documents.listingIds[result.select((int) (total - 1 - position))]);
+                }
+            }
+            return Optional.of(new PageImpl<>(ids, pageable, total));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param filter
+     * @param priceBoundaries sorted prices in cents, see the CatalogFacets
+     * @return the counts of each facet for the filter, empty until the index is built
+     */
+    public Optional<CatalogFacets> facets(CatalogFilter filter, long[] priceBoundaries) {
+        lock.readLock().lock();
+        try {
+            return ready ? Optional.of(documents.facets(filter, priceBoundaries)) : Optional.empty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the listings to their current state, the published ones are indexed and the others are removed
+     * @param listingIds the listings that changed
+     * @param current the current state of the ones that still exist
+     */
+    public void refresh(Collection<UUID> listingIds, Collection<CatalogListing> current) {
+        withWriteLock(() -> {
+            apply(documents, listingIds, current);
+            if (rebuilding != null) {
+                apply(rebuilding, listingIds, current);
+            }
+            if (documents.size - documents.live.getCardinality() > Math.max(MINIMUM_COMPACTION, documents.live.getCardinality())) {
+                documents = documents.compacted();
+            }
+        });
+    }
+
+    public void beginRebuild() {
+        withWriteLock(() -> {
+            rebuilding = new Documents(suggestions);
+            rebuilding.vehicles.startLoading();
+        });
+    }
+
+    /**
+     * @param listings the next chunk of published listings, in the order they were published
+     */
+    public void rebuilt(Collection<CatalogListing> listings) {
+        withWriteLock(() -> listings.forEach(rebuilding::put));
+    }
+
+    public void finishRebuild() {
+        withWriteLock(() -> {
+            if (rebuilding != null) {
+                rebuilding.vehicles.finishLoading();
+                documents = rebuilding;
+                rebuilding = null;
+                restored = null;
+                ready = true;
+            }
+        });
+    }
+
+    public void abortRebuild() {
+        withWriteLock(() -> rebuilding = null);
+    }
+
+    /**
+     * Before the first rebuild the suggestions come from the restored snapshot, if there is one
+     * @param text
+     * @param limit
+     * @return the most common vehicles completing the text, empty until the index is built or restored
+     */
+    public Optional<List<VehicleSuggestion>> suggest(String text, int limit) {
+        lock.readLock().lock();
+        try {
+            if (ready) {
+                return Optional.of(documents.vehicles.suggest(text, limit));
+            }
+            return Optional.ofNullable(restored).map(trie -> trie.suggest(text, limit));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the vehicles of the published listings with their counts, empty until the index is built
+     */
+    public Optional<List<VehicleSuggestion>> vehicles() {
+        lock.readLock().lock();
+        try {
+            return ready ? Optional.of(documents.vehicles.vehicles()) : Optional.empty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Answers the suggestions with the vehicles of a snapshot until the first rebuild finishes
+     * @param vehicles
+     */
+    public void restore(List<VehicleSuggestion> vehicles) {
+        VehicleTrie trie = VehicleTrie.of(vehicles, suggestions);
+        withWriteLock(() -> {
+            if (!ready) {
+                restored = trie;
+            }
+        });
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.live.getCardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static void apply(Documents documents, Collection<UUID> listingIds, Collection<CatalogListing> current) {
+        Map<UUID, CatalogListing> published = new HashMap<>();
+        current.stream()
+                .filter(listing -> listing.status() == ListingStatus.PUBLISHED)
+                .forEach(listing -> published.put(listing.id(), listing));
+
+        for (UUID listingId : listingIds) {
+            CatalogListing listing = published.get(listingId);
+            if (listing == null) {
+                documents.remove(listingId);
+            } else {
+                documents.put(listing);
+            }
+        }
+    }
+
+    private void withWriteLock(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            change.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    static long cents(BigDecimal price) {
+        return price.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+    }
+
+    private enum Attribute {
+        LIVE, CONDITION, FUEL_TYPE, TRANSMISSION, COLOR, PRICE, MILEAGE, TEXT
+    }
+
+    /**
+     * The columns of every document, the attributes that the listing doesn't have are kept as -1
+     */
+    private static final class Documents {
+
+        private final Map<UUID, Integer> numbers = new HashMap<>();
+        private final RoaringBitmap live = new RoaringBitmap();
+        private final RoaringBitmap[] byCondition = bitmaps(VehicleCondition.values().length);
+        private final RoaringBitmap[] byFuelType = bitmaps(VehicleFuelType.values().length);
+        private final RoaringBitmap[] byTransmission = bitmaps(VehicleTransmission.values().length);
+        private final Map<String, Integer> colorNumbers = new HashMap<>();
+        private final List<String> colorNames = new ArrayList<>();
+        private final List<RoaringBitmap> byColor = new ArrayList<>();
+        private final SortedColumn prices = new SortedColumn();
+        private final SortedColumn mileages = new SortedColumn();
+        private TextIndex text = new TextIndex();
+        private long liveTokens;
+        private VehicleTrie vehicles;
+
+        Documents(int suggestions) {
+            this.vehicles = new VehicleTrie(suggestions);
+        }
+
+        private UUID[] listingIds = new UUID[1024];
+        private LocalDateTime[] publishedAt = new LocalDateTime[1024];
+        private byte[] conditions = new byte[1024];
+        private byte[] fuelTypes = new byte[1024];
+        private byte[] transmissions = new byte[1024];
+        private int[] colors = new int[1024];
+        private long[] priceCents = new long[1024];
+        private int[] mileageValues = new int[1024];
+        private byte[] tokenCounts = new byte[1024];
+        private int[] vehicleIds = new int[1024];
+        private int size;
+
+        void put(CatalogListing listing) {
+            Integer existing = numbers.get(listing.id());
+            if (existing != null) {
+                if (Objects.equals(publishedAt[existing], listing.publishedAt())) {
+                    return;
+                }
+                remove(listing.id());
+            }
+
+            int document = next();
+            numbers.put(listing.id(), document);
+            listingIds[document] = listing.id();
+            publishedAt[document] = listing.publishedAt();
+            conditions[document] = add(byCondition, listing.condition(), document);
+            fuelTypes[document] = add(byFuelType, listing.fuelType(), document);
+            transmissions[document] = add(byTransmission, listing.transmission(), document);
+            colors[document] = addColor(CatalogFilter.normalizeColor(listing.color()), document);
+            priceCents[document] = cents(listing.price());
+            prices.add(priceCents[document], document);
+            mileageValues[document] = listing.mileage() == null ? -1 : listing.mileage();
+            if (listing.mileage() != null) {
+                mileages.add(listing.mileage(), document);
+            }
+            List<String> words = VehicleText.words(listing.vehicle());
+            List<String> tokens = VehicleText.distinct(words);
+            text.add(document, tokens);
+            tokenCounts[document] = (byte) Math.min(tokens.size(), Byte.MAX_VALUE);
+            liveTokens += tokenCounts[document];
+            vehicleIds[document] = vehicles.add(listing.vehicle(), words, 1);
+            live.add(document);
+        }
+
+        void remove(UUID listingId) {
+            Integer number = numbers.remove(listingId);
+            if (number == null) {
+                return;
+            }
+
+            int document = number;
+            live.remove(document);
+            remove(byCondition, conditions[document], document);
+            remove(byFuelType, fuelTypes[document], document);
+            remove(byTransmission, transmissions[document], document);
+            if (colors[document] >= 0) {
+                byColor.get(colors[document]).remove(document);
+            }
+            prices.remove(document);
+            mileages.remove(document);
+            liveTokens -= tokenCounts[document];
+            if (vehicleIds[document] >= 0) {
+                vehicles.remove(vehicleIds[document]);
+            }
+            listingIds[document] = null;
+            publishedAt[document] = null;
+        }
+
+        RoaringBitmap matching(CatalogFilter filter) {
+            return and(filters(filter).values());
+        }
+
+        /**
+         * Counts the values of each facet among the documents matching all the filters except the one of the facet,
+         * so the other values of a filtered attribute keep their counts. The enum facets are the cardinality of
+         * the intersection with the bitmap of the value, the price buckets are counted in one pass over the price column
+         * @param filter
+         * @param priceBoundaries sorted prices in cents where a bucket ends and the next one starts
+         * @return
+         */
+        CatalogFacets facets(CatalogFilter filter, long[] priceBoundaries) {
+            Map<Attribute, RoaringBitmap> filters = filters(filter);
+            RoaringBitmap matching = and(filters.values());
+
+            long[] priceCounts = new long[priceBoundaries.length + 1];
+            excluding(filters, Attribute.PRICE, matching)
+                    .forEach((int document) -> priceCounts[bucket(priceBoundaries, priceCents[document])]++);
+
+            List<CatalogFacets.PriceBucket> priceBuckets = new ArrayList<>(priceCounts.length);
+            for (int bucket = 0; bucket < priceCounts.length; bucket++) {
+                priceBuckets.add(new CatalogFacets.PriceBucket(
+                        bucket == 0 ? null : BigDecimal.valueOf(priceBoundaries[bucket - 1], 2),
+                        bucket == priceBoundaries.length ? null : BigDecimal.valueOf(priceBoundaries[bucket], 2),
+                        priceCounts[bucket]));
+            }
+
+            return new CatalogFacets(matching.getLongCardinality(),
+                    counts(VehicleCondition.class, byCondition, excluding(filters, Attribute.CONDITION, matching)),
+                    counts(VehicleFuelType.class, byFuelType, excluding(filters, Attribute.FUEL_TYPE, matching)),
+                    counts(VehicleTransmission.class, byTransmission, excluding(filters, Attribute.TRANSMISSION, matching)),
+                    priceBuckets);
+        }
+
+        /**
+         * @param filter
+         * @return the bitmap of each filtered attribute, with all the live documents under LIVE
+         */
+        private Map<Attribute, RoaringBitmap> filters(CatalogFilter filter) {
+            Map<Attribute, RoaringBitmap> bitmaps = new EnumMap<>(Attribute.class);
+            bitmaps.put(Attribute.LIVE, live);
+            if (!filter.conditions().isEmpty()) {
+                bitmaps.put(Attribute.CONDITION, union(filter.conditions().stream().map(value -> byCondition[value.ordinal()])));
+            }
+            if (!filter.fuelTypes().isEmpty()) {
+                bitmaps.put(Attribute.FUEL_TYPE, union(filter.fuelTypes().stream().map(value -> byFuelType[value.ordinal()])));
+            }
+            if (!filter.transmissions().isEmpty()) {
+                bitmaps.put(Attribute.TRANSMISSION, union(filter.transmissions().stream().map(value -> byTransmission[value.ordinal()])));
+            }
+            if (!filter.colors().isEmpty()) {
+                bitmaps.put(Attribute.COLOR, union(filter.colors().stream()
+                        .map(colorNumbers::get)
+                        .filter(Objects::nonNull)
+                        .map(byColor::get)));
+            }
+            if (filter.minPrice() != null || filter.maxPrice() != null) {
+                bitmaps.put(Attribute.PRICE, prices.range(
+                        filter.minPrice() == null ? Long.MIN_VALUE : filter.minPrice().setScale(2, RoundingMode.CEILING).unscaledValue().longValue(),
+                        filter.maxPrice() == null ? Long.MAX_VALUE : filter.maxPrice().setScale(2, RoundingMode.FLOOR).unscaledValue().longValue()));
+            }
+            if (!filter.terms().isEmpty()) {
+                bitmaps.put(Attribute.TEXT, and(filter.terms().stream().map(text::documents).toList()));
+            }
+            if (filter.minMileage() != null || filter.maxMileage() != null) {
+                bitmaps.put(Attribute.MILEAGE, mileages.range(
+                        filter.minMileage() == null ? Long.MIN_VALUE : filter.minMileage(),
+                        filter.maxMileage() == null ? Long.MAX_VALUE : filter.maxMileage()));
+            }
+            return bitmaps;
+        }
+
+        private static RoaringBitmap excluding(Map<Attribute, RoaringBitmap> filters, Attribute attribute, RoaringBitmap matching) {
+            if (!filters.containsKey(attribute)) {
+                return matching;
+            }
+            Map<Attribute, RoaringBitmap> others = new EnumMap<>(filters);
+            others.remove(attribute);
+            return and(others.values());
+        }
+
+        private static RoaringBitmap and(Collection<RoaringBitmap> filters) {
+            if (filters.size() == 1) {
+                return filters.iterator().next();
+            }
+            List<RoaringBitmap> bitmaps = new ArrayList<>(filters);
+            bitmaps.sort(Comparator.comparingLong(RoaringBitmap::getLongCardinality));
+            return FastAggregation.and(bitmaps.iterator());
+        }
+
+        private static <E extends Enum<E>> Map<E, Long> counts(Class<E> type, RoaringBitmap[] bitmaps, RoaringBitmap matching) {
+            Map<E, Long> counts = new EnumMap<>(type);
+            for (E value : type.getEnumConstants()) {
+                counts.put(value, (long) RoaringBitmap.andCardinality(matching, bitmaps[value.ordinal()]));
+            }
+            return counts;
+        }
+
+        private static int bucket(long[] boundaries, long price) {
+            int position = Arrays.binarySearch(boundaries, price);
+            return position >= 0 ? position + 1 : -(position + 1);
+        }
+
+        /**
+         * Adds the live documents again in the same order, the new numbers start from zero.
+         * The vehicle text is not kept, the postings of the words are moved to the new numbers
+         * and the vehicle trie is moved as it is
+         * @return
+         */
+        Documents compacted() {
+            Documents compacted = new Documents(0);
+            int[] numbers = new int[size];
+            Arrays.fill(numbers, -1);
+            live.forEach((int document) -> {
+                compacted.put(new CatalogListing(listingIds[document],
+                        null,
+                        value(VehicleCondition.values(), conditions[document]),
+                        BigDecimal.valueOf(priceCents[document], 2),
+                        colors[document] < 0 ? null : colorNames.get(colors[document]),
+                        value(VehicleTransmission.values(), transmissions[document]),
+                        mileageValues[document] < 0 ? null : mileageValues[document],
+                        value(VehicleFuelType.values(), fuelTypes[document]),
+                        ListingStatus.PUBLISHED,
+                        publishedAt[document]));
+                numbers[document] = compacted.size - 1;
+                compacted.tokenCounts[compacted.size - 1] = tokenCounts[document];
+                compacted.vehicleIds[compacted.size - 1] = vehicleIds[document];
+            });
+            compacted.liveTokens = liveTokens;
+            compacted.vehicles = vehicles;
+            compacted.text = text.remapped(numbers);
+            return compacted;
+        }
+
+        /**
+         * Scores every hit and keeps the best ones in a min heap, ties go to the newest document.
+         * The score and the document are packed in a long so the heap holds primitives
+         * @param hits
+         * @param terms
+         * @param limit
+         * @return the best documents, up to the limit
+         */
+        int[] mostRelevant(RoaringBitmap hits, List<VehicleText.Term> terms, int limit) {
+            int[] documents = hits.toArray();
+            float[] scores = new float[documents.length];
+            float averageTokens = Math.max(1, (float) liveTokens / Math.max(1, live.getCardinality()));
+            terms.forEach(term -> text.score(term, documents, scores, live.getCardinality(), tokenCounts, averageTokens));
+
+            long[] heap = new long[Math.min(limit, documents.length)];
+            int heapSize = 0;
+            for (int position = 0; position < documents.length && heap.length > 0; position++) {
+                long ranked = ((long) Float.floatToIntBits(scores[position]) << 32) | documents[position];
+                if (heapSize < heap.length) {
+                    heap[heapSize++] = ranked;
+                    siftUp(heap, heapSize - 1);
+                } else if (ranked > heap[0]) {
+                    heap[0] = ranked;
+                    siftDown(heap, heapSize);
+                }
+            }
+            Arrays.sort(heap);
+
+            int[] best = new int[heap.length];
+            for (int i = 0; i < best.length; i++) {
+                best[i] = (int) heap[heap.length - 1 - i];
+            }
+            return best;
+        }
+
+        private static void siftUp(long[] heap, int position) {
+            while (position > 0 && heap[(position - 1) / 2] > heap[position]) {
+                swap(heap, position, (position - 1) / 2);
+                position = (position - 1) / 2;
+            }
+        }
+
+        private static void siftDown(long[] heap, int size) {
+            int position = 0;
+            while (2 * position + 1 < size) {
+                int child = 2 * position + 1;
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (heap[position] <= heap[child]) {
+                    return;
+                }
+                swap(heap, position, child);
+                position = child;
+            }
+        }
+
+        private static void swap(long[] heap, int first, int second) {
+            long value = heap[first];
+            heap[first] = heap[second];
+            heap[second] = value;
+        }
+
+        private int next() {
+            if (size == listingIds.length) {
+                int capacity = size * 2;
+                listingIds = Arrays.copyOf(listingIds, capacity);
+                publishedAt = Arrays.copyOf(publishedAt, capacity);
+                conditions = Arrays.copyOf(conditions, capacity);
+                fuelTypes = Arrays.copyOf(fuelTypes, capacity);
+                transmissions = Arrays.copyOf(transmissions, capacity);
+                colors = Arrays.copyOf(colors, capacity);
+                priceCents = Arrays.copyOf(priceCents, capacity);
+                mileageValues = Arrays.copyOf(mileageValues, capacity);
+                tokenCounts = Arrays.copyOf(tokenCounts, capacity);
+                vehicleIds = Arrays.copyOf(vehicleIds, capacity);
+            }
+            return size++;
+        }
+
+        private int addColor(String color, int document) {
+            if (color == null) {
+                return -1;
+            }
+            int number = colorNumbers.computeIfAbsent(color, key -> {
+                colorNames.add(key);
+                byColor.add(new RoaringBitmap());
+                return colorNames.size() - 1;
+            });
+            byColor.get(number).add(document);
+            return number;
+        }
+
+        private static byte add(RoaringBitmap[] bitmaps, Enum<?> value, int document) {
+            if (value == null) {
+                return -1;
+            }
+            bitmaps[value.ordinal()].add(document);
+            return (byte) value.ordinal();
+        }
+
+        private static void remove(RoaringBitmap[] bitmaps, byte ordinal, int document) {
+            if (ordinal >= 0) {
+                bitmaps[ordinal].remove(document);
+            }
+        }
+
+        private static <T> T value(T[] values, byte ordinal) {
+            return ordinal < 0 ? null : values[ordinal];
+        }
+
+        private static RoaringBitmap union(Stream<RoaringBitmap> bitmaps) {
+            return FastAggregation.or(bitmaps.iterator());
+        }
+
+        private static RoaringBitmap[] bitmaps(int amount) {
+            RoaringBitmap[] bitmaps = new RoaringBitmap[amount];
+            for (int i = 0; i < amount; i++) {
+                bitmaps[i] = new RoaringBitmap();
+            }
+            return bitmaps;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.filipegeniselli.backendtechassignment.catalog;
+
+import com.filipegeniselli.backendtechassignment.listings.ListingRepository;
+import com.filipegeniselli.backendtechassignment.listings.ListingStatus;
+import com.filipegeniselli.backendtechassignment.listings.ListingStatusChanged;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Keeps the CatalogIndex up to date with the listings that enter or leave the PUBLISHED status.
+ *
+ * The listings changed by a transaction are queued after the commit, a single indexer thread takes them in chunks,
+ * reads their current state with one query and sets it on the index. A refresh always starts after the commit
+ * that queued it, so the last refresh of a listing leaves the committed state whatever the order the transactions
+ * finish, reading the state again instead of applying the events is what makes the order irrelevant.
+ * The requests don't wait for the index and don't need a second connection for it, the search sees a change
+ * as soon as the indexer thread gets to it.
+ *
+ * The index is rebuilt in chunks once the application starts and on every catalog-index.rebuild-interval,
+ * to pick the changes made by other instances.
+ */
+@Component
+public class CatalogIndexer {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogIndexer.class);
+
+    private final CatalogIndex catalogIndex;
+    private final ListingRepository listingRepository;
+    private final TransactionTemplate readTransaction;
+    private final boolean enabled;
+    private final int chunkSize;
+    private final Object updates = new Object();
+    private final BlockingQueue<UUID> changed = new LinkedBlockingQueue<>();
+    private final Thread indexer = new Thread(this::indexChanges, "catalog-indexer");
+
+    @Autowired
+    public CatalogIndexer(CatalogIndex catalogIndex,
+                          ListingRepository listingRepository,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${catalog-index.enabled:true}") boolean enabled,
+                          @Value("${catalog-index.chunk-size:1000}") int chunkSize) {
+        this.catalogIndex = catalogIndex;
+        this.listingRepository = listingRepository;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+    }
+
+    @EventListener
+    public void on(ListingStatusChanged event) {
+        if (!enabled || (event.status() != ListingStatus.PUBLISHED && event.previousStatus() != ListingStatus.PUBLISHED)) {
+            return;
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            changed.add(event.listingId());
+            return;
+        }
+        pendingListings().add(event.listingId());
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        indexer.setDaemon(true);
+        indexer.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        indexer.interrupt();
+    }
+
+    /**
+     * A failed refresh is logged and the listings are fixed by the next rebuild
+     */
+    private void indexChanges() {
+        while (!Thread.currentThread().isInterrupted()) {
+            List<UUID> listingIds = new ArrayList<>(chunkSize);
+            try {
+                listingIds.add(changed.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            changed.drainTo(listingIds, chunkSize - 1);
+
+            try {
+                refresh(listingIds);
+            } catch (RuntimeException e) {
+                logger.warn("Couldn't refresh {} listings of the catalog", listingIds.size(), e);
+            }
+        }
+    }
+
+    private void refresh(Collection<UUID> listingIds) {
+        synchronized (updates) {
+            List<CatalogListing> current = readTransaction.execute(status ->
+                    listingRepository.findCatalogListings(listingIds));
+            catalogIndex.refresh(listingIds, current);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${catalog-index.rebuild-interval:PT30M}",
+            initialDelayString = "${catalog-index.rebuild-interval:PT30M}")
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        catalogIndex.beginRebuild();
+        try {
+            CatalogListing last = null;
+            List<CatalogListing> chunk;
+            do {
+                synchronized (updates) {
+                    chunk = readChunk(last);
+                    catalogIndex.rebuilt(chunk);
+                }
+                if (!chunk.isEmpty()) {
+                    last = chunk.get(chunk.size() - 1);
+                }
+            } while (chunk.size() == chunkSize);
+            catalogIndex.finishRebuild();
+        } finally {
+            catalogIndex.abortRebuild();
+        }
+        logger.info("Indexed {} published listings in {} ms", catalogIndex.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private List<CatalogListing> readChunk(CatalogListing last) {
+        PageRequest limit = PageRequest.of(0, chunkSize);
+        return readTransaction.execute(status -> last == null
+                ? listingRepository.findFirstPublishedCatalogListings(limit)
+                : listingRepository.findPublishedCatalogListingsAfter(last.publishedAt(), last.id(), limit));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<UUID> pendingListings() {
+        Set<UUID> pending = (Set<UUID>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Set<UUID> listingIds = new LinkedHashSet<>();
+            TransactionSynchronizationManager.bindResource(this, listingIds);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    changed.addAll(listingIds);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(CatalogIndexer.this);
+                }
+            });
+            pending = listingIds;
+        }
+        return pending;
+    }
+}
@@ -0,0 +1,25 @@
+package com.filipegeniselli.backendtechassignment.catalog;
+
+import com.filipegeniselli.backendtechassignment.listings.ListingStatus;
+import com.filipegeniselli.backendtechassignment.listings.VehicleCondition;
+import com.filipegeniselli.backendtechassignment.listings.VehicleFuelType;
+import com.filipegeniselli.backendtechassignment.listings.VehicleTransmission;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * The columns of a listing used by the CatalogIndex, the status tells if the listing still belongs to the catalog
+ */
+public record CatalogListing(UUID id,
+                             String vehicle,
+                             VehicleCondition condition,
+                             BigDecimal price,
+                             String color,
+                             VehicleTransmission transmission,
+                             Integer mileage,
+                             VehicleFuelType fuelType,
+                             ListingStatus status,
+                             LocalDateTime publishedAt) {
+}
@@ -0,0 +1,79 @@
+package com.filipegeniselli.backendtechassignment.catalog;
+
+import com.filipegeniselli.backendtechassignment.PageInfo;
+import com.filipegeniselli.backendtechassignment.PagedResult;
+import com.filipegeniselli.backendtechassignment.datasource.ReadsFromReplica;
+import com.filipegeniselli.backendtechassignment.exception.BadRequestException;
+import com.filipegeniselli.backendtechassignment.exception.ServiceUnavailableException;
+import com.filipegeniselli.backendtechassignment.listings.ListingDto;
+import com.filipegeniselli.backendtechassignment.listings.query.FindPublishedByIds;
+import com.filipegeniselli.backendtechassignment.listings.query.ListingQueryService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+@Service
+@ReadsFromReplica
+public class CatalogQueryHandler implements CatalogQueryService {
+
+    private static final String CATALOG_LOADING = "The catalog is still loading, please try again later";
+
+    private final CatalogIndex catalogIndex;
+    private final ListingQueryService listingQueryService;
+    private final long[] priceBoundaries;
+
+    @Autowired
+    public CatalogQueryHandler(CatalogIndex catalogIndex,
+                               ListingQueryService listingQueryService,
+                               @Value("${catalog-index.price-buckets:5000,10000,20000,30000,50000}") List<BigDecimal> priceBuckets) {
+        this.catalogIndex = catalogIndex;
+        this.listingQueryService = listingQueryService;
+        this.priceBoundaries = priceBuckets.stream()
+                .mapToLong(CatalogIndex::cents)
+                .sorted()
+                .distinct()
+                .toArray();
+    }
+
+    /**
+     * The CatalogIndex finds the ids of the page, only the listings of the page are read from the database.
+     * A listing unpublished after the search is left out of the page, the total comes from the index
+     * @param query
+     * @return
+     */
+    @Override
+    public PagedResult<ListingDto> handle(SearchCatalog query) {
+        Page<UUID> result = catalogIndex.search(query.filter(), query.sort(), query.pageRequest())
+                .orElseThrow(() -> new ServiceUnavailableException(CATALOG_LOADING));
+
+        return new PagedResult<>(listingQueryService.handle(new FindPublishedByIds(result.getContent())),
+                new PageInfo(result.getSize(),
+                        result.getNumber(),
+                        result.getTotalElements()));
+    }
+
+    /**
+     * Answered from the CatalogIndex only, the counts follow the status changes with the delay of the indexer
+     * @param query
+     * @return
+     */
+    @Override
+    public CatalogFacets handle(CountCatalogFacets query) {
+        return catalogIndex.facets(query.filter(), priceBoundaries)
+                .orElseThrow(() -> new ServiceUnavailableException(CATALOG_LOADING));
+    }
+
+    @Override
+    public List<VehicleSuggestion> handle(SuggestVehicles query) {
+        if (query.limit() < 1) {
+            throw new BadRequestException("The limit must be at least 1");
+        }
+        return catalogIndex.suggest(query.text(), query.limit())
+                .orElseThrow(() -> new ServiceUnavailableException(CATALOG_LOADING));
+    }
+}
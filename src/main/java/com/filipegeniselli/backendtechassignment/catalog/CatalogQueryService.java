@@ -0,0 +1,16 @@
+package com.filipegeniselli.backendtechassignment.catalog;
+
+import com.filipegeniselli.backendtechassignment.PagedResult;
+import com.filipegeniselli.backendtechassignment.listings.ListingDto;
+
+import java.util.List;
+
+public interface CatalogQueryService {
+
+    PagedResult<ListingDto> handle(SearchCatalog query);
+
+    CatalogFacets handle(CountCatalogFacets query);
+
+    List<VehicleSuggestion> handle(SuggestVehicles query);
+
+}
@@ -0,0 +1,9 @@
+package com.filipegeniselli.backendtechassignment.catalog;
+
+/**
+ * RECENCY sorts by the newest publishedAt, RELEVANCE by the score of the text search and then by recency
+ */
+public enum CatalogSort {
+    RECENCY,
+    RELEVANCE
+}
@@ -0,0 +1,4 @@
+package com.filipegeniselli.backendtechassignment.catalog;
+
+public record CountCatalogFacets(CatalogFilter filter) {
+}
@@ -0,0 +1,6 @@
+package com.filipegeniselli.backendtechassignment.catalog;
+
+import org.springframework.data.domain.PageRequest;
+
+public record SearchCatalog(CatalogFilter filter, CatalogSort sort, PageRequest pageRequest) {
+}
@@ -0,0 +1,179 @@
+package com.filipegeniselli.backendtechassignment.catalog;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Arrays;
+
+/**
+ * The values of a numeric attribute with their documents, sorted by (value, document) in two primitive arrays.
+ * A range is found with two binary searches and the documents inside it are added to a bitmap,
+ * when the range has more than half of the documents the ones outside are removed from all the documents instead.
+ *
+ * New values are appended after the sorted entries and read one by one by the ranges, once there are too many of them
+ * they are sorted and merged with the others, so loading a whole index costs a few sorts instead of an insertion per value.
+ * A removed document only leaves the present bitmap, its entry is dropped on the next merge.
+ *
+ * Not thread safe, the CatalogIndex guards it with its lock, ranges don't change the column and can run together
+ */
+class SortedColumn {
+
+    private static final int MINIMUM_MERGE = 1024;
+
+    private long[] values = new long[1024];
+    private int[] documents = new int[1024];
+    private final RoaringBitmap present = new RoaringBitmap();
+    private int sorted;
+    private int size;
+
+    void add(long value, int document) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+            documents = Arrays.copyOf(documents, size * 2);
+        }
+        values[size] = value;
+        documents[size] = document;
+        present.add(document);
+        size++;
+        if (size - sorted > Math.max(MINIMUM_MERGE, sorted / 8)) {
+            merge();
+        }
+    }
+
+    void remove(int document) {
+        present.remove(document);
+        if (size - present.getCardinality() > Math.max(MINIMUM_MERGE, size / 2)) {
+            merge();
+        }
+    }
+
+    /**
+     * @param min inclusive
+     * @param max inclusive
+     * @return the documents with a value inside the range
+     */
+    RoaringBitmap range(long min, long max) {
+        int from = position(min, Integer.MIN_VALUE);
+        int to = max == Long.MAX_VALUE ? sorted : position(max + 1, Integer.MIN_VALUE);
+        to = Math.max(from, to);
+
+        if (to - from <= sorted / 2) {
+            RoaringBitmap inside = new RoaringBitmap();
+            inside.addN(documents, from, to - from);
+            for (int i = sorted; i < size; i++) {
+                if (values[i] >= min && values[i] <= max) {
+                    inside.add(documents[i]);
+                }
+            }
+            inside.and(present);
+            return inside;
+        }
+
+        RoaringBitmap outside = new RoaringBitmap();
+        outside.addN(documents, 0, from);
+        outside.addN(documents, to, sorted - to);
+        for (int i = sorted; i < size; i++) {
+            if (values[i] < min || values[i] > max) {
+                outside.add(documents[i]);
+            }
+        }
+        return RoaringBitmap.andNot(present, outside);
+    }
+
+    /**
+     * Drops the removed entries, sorts the appended ones and merges them with the sorted ones
+     */
+    private void merge() {
+        int sortedLive = 0;
+        for (int i = 0; i < sorted; i++) {
+            if (present.contains(documents[i])) {
+                values[sortedLive] = values[i];
+                documents[sortedLive] = documents[i];
+                sortedLive++;
+            }
+        }
+
+        long[] appendedValues = new long[size - sorted];
+        int[] appendedDocuments = new int[size - sorted];
+        int appended = 0;
+        for (int i = sorted; i < size; i++) {
+            if (present.contains(documents[i])) {
+                appendedValues[appended] = values[i];
+                appendedDocuments[appended] = documents[i];
+                appended++;
+            }
+        }
+        sort(appendedValues, appendedDocuments, appended);
+
+        long[] mergedValues = new long[values.length];
+        int[] mergedDocuments = new int[documents.length];
+        merge(values, documents, 0, sortedLive, appendedValues, appendedDocuments, 0, appended, mergedValues, mergedDocuments, 0);
+        values = mergedValues;
+        documents = mergedDocuments;
+        sorted = sortedLive + appended;
+        size = sorted;
+    }
+
+    /**
+     * Bottom up merge sort of the first entries of the two arrays by (value, document)
+     */
+    private static void sort(long[] values, int[] documents, int size) {
+        long[] sourceValues = values;
+        int[] sourceDocuments = documents;
+        long[] targetValues = new long[size];
+        int[] targetDocuments = new int[size];
+        for (int width = 1; width < size; width *= 2) {
+            for (int from = 0; from < size; from += 2 * width) {
+                int middle = Math.min(from + width, size);
+                int to = Math.min(from + 2 * width, size);
+                merge(sourceValues, sourceDocuments, from, middle, sourceValues, sourceDocuments, middle, to,
+                        targetValues, targetDocuments, from);
+            }
+            long[] swapValues = sourceValues;
+            sourceValues = targetValues;
+            targetValues = swapValues;
+            int[] swapDocuments = sourceDocuments;
+            sourceDocuments = targetDocuments;
+            targetDocuments = swapDocuments;
+        }
+        if (sourceValues != values) {
+            System.arraycopy(sourceValues, 0, values, 0, size);
+            System.arraycopy(sourceDocuments, 0, documents, 0, size);
+        }
+    }
+
+    private static void merge(long[] leftValues, int[] leftDocuments, int left, int leftEnd,
+                              long[] rightValues, int[] rightDocuments, int right, int rightEnd,
+                              long[] targetValues, int[] targetDocuments, int target) {
+        while (left < leftEnd || right < rightEnd) {
+            boolean takeLeft = right == rightEnd || (left < leftEnd
+                    && (leftValues[left] < rightValues[right]
+                    || (leftValues[left] == rightValues[right] && leftDocuments[left] <= rightDocuments[right])));
+            if (takeLeft) {
+                targetValues[target] = leftValues[left];
+                targetDocuments[target++] = leftDocuments[left++];
+            } else {
+                targetValues[target] = rightValues[right];
+                targetDocuments[target++] = rightDocuments[right++];
+            }
+        }
+    }
+
+    /**
+     * @param value
+     * @param document
+     * @return the position of the first sorted entry not lower than (value, document)
+     */
+    private int position(long value, int document) {
+        int low = 0;
+        int high = sorted;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < value || (values[middle] == value && documents[middle] < document)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
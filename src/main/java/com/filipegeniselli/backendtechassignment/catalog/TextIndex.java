@@ -0,0 +1,179 @@
+package com.filipegeniselli.backendtechassignment.catalog;
+
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Inverted index of the vehicle words, each word has the sorted int array of the documents with it.
+ * Document numbers only grow, so a new document is appended to the end of the arrays. Removed documents
+ * stay in the arrays until the documents are compacted, the searches intersect the result with the live documents.
+ *
+ * The words are kept sorted, the words of a prefix are the sub map from the prefix to the prefix followed by
+ * the last character.
+ *
+ * Not thread safe, the CatalogIndex guards it with its lock
+ */
+class TextIndex {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final int CACHED_POSTINGS = 4096;
+
+    private final TreeMap<String, Postings> words = new TreeMap<>();
+
+    void add(int document, Collection<String> tokens) {
+        tokens.forEach(token -> words.computeIfAbsent(token, key -> new Postings()).add(document));
+    }
+
+    /**
+     * @param term
+     * @return the documents with the word, or with any word starting with it for a prefix term, removed documents included
+     */
+    RoaringBitmap documents(VehicleText.Term term) {
+        Collection<Postings> matches = matches(term).values();
+        if (matches.size() == 1) {
+            return matches.iterator().next().bitmap();
+        }
+        return FastAggregation.or(matches.stream().map(Postings::bitmap).iterator());
+    }
+
+    /**
+     * Adds the BM25 score of the term to each hit, every word is counted once per vehicle.
+     * The rarity of a prefix term counts the documents of all its words, and each document gets the best of its words
+     * weighted by how much of the word the prefix covers.
+     * Removed documents that are still in the postings are counted, until the documents are compacted
+     * @param term
+     * @param hits the sorted documents matching the search
+     * @param scores the score of each hit, by its position in the hits
+     * @param documentCount the amount of live documents
+     * @param tokenCounts the amount of words of each document
+     * @param averageTokens
+     */
+    void score(VehicleText.Term term, int[] hits, float[] scores, int documentCount, byte[] tokenCounts, float averageTokens) {
+        Map<String, Postings> matches = matches(term);
+        long frequency = matches.values().stream().mapToLong(postings -> postings.size).sum();
+        float idf = (float) Math.log(1 + (documentCount - frequency + 0.5) / (frequency + 0.5));
+        float[] best = new float[scores.length];
+        for (Map.Entry<String, Postings> match : matches.entrySet()) {
+            Postings postings = match.getValue();
+            float weight = idf * ((float) term.text().length() / match.getKey().length());
+            int i = 0;
+            int position = 0;
+            while (i < postings.size && position < hits.length) {
+                int document = postings.documents[i];
+                if (document < hits[position]) {
+                    i = seek(postings.documents, i + 1, postings.size, hits[position]);
+                } else if (document > hits[position]) {
+                    position = seek(hits, position + 1, hits.length, document);
+                } else {
+                    float length = 1 - B + B * tokenCounts[document] / averageTokens;
+                    best[position] = Math.max(best[position], weight * (K1 + 1) / (1 + K1 * length));
+                    i++;
+                    position++;
+                }
+            }
+        }
+        for (int position = 0; position < scores.length; position++) {
+            scores[position] += best[position];
+        }
+    }
+
+    /**
+     * @param numbers the new number of each document, -1 for the removed ones
+     * @return the index with the new numbers, without the removed documents
+     */
+    TextIndex remapped(int[] numbers) {
+        TextIndex remapped = new TextIndex();
+        words.forEach((word, postings) -> {
+            Postings renumbered = new Postings();
+            for (int i = 0; i < postings.size; i++) {
+                int number = numbers[postings.documents[i]];
+                if (number >= 0) {
+                    renumbered.add(number);
+                }
+            }
+            if (renumbered.size > 0) {
+                remapped.words.put(word, renumbered);
+            }
+        });
+        return remapped;
+    }
+
+    /**
+     * Gallops from the start and then searches the last step
+     * @return the first position from the start with a document not lower than the target, or the end
+     */
+    private static int seek(int[] documents, int start, int end, int target) {
+        int step = 1;
+        int low = start;
+        int high = start;
+        while (high < end && documents[high] < target) {
+            low = high + 1;
+            high = start + step;
+            step *= 2;
+        }
+        high = Math.min(high, end);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (documents[middle] < target) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private Map<String, Postings> matches(VehicleText.Term term) {
+        if (!term.prefix()) {
+            Postings postings = words.get(term.text());
+            return postings == null ? Map.of() : Map.of(term.text(), postings);
+        }
+        return words.subMap(term.text(), true, term.text() + Character.MAX_VALUE, false);
+    }
+
+    /**
+     * The words of many documents also keep their bitmap once a search asks for it, it's updated by the new documents.
+     * Searches run together under the read lock, two of them may build the same bitmap and one is kept
+     */
+    private static final class Postings {
+
+        private int[] documents = new int[2];
+        private int size;
+        private volatile RoaringBitmap bitmap;
+
+        void add(int document) {
+            if (size > 0 && documents[size - 1] == document) {
+                return;
+            }
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+            }
+            documents[size++] = document;
+            if (bitmap != null) {
+                bitmap.add(document);
+            }
+        }
+
+        /**
+         * @return the documents, the caller must not change it
+         */
+        RoaringBitmap bitmap() {
+            RoaringBitmap cached = bitmap;
+            if (cached != null) {
+                return cached;
+            }
+            RoaringBitmap built = new RoaringBitmap();
+            built.addN(documents, 0, size);
+            if (size >= CACHED_POSTINGS) {
+                bitmap = built;
+            }
+            return built;
+        }
+    }
+}
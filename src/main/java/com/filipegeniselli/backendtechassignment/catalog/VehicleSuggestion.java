@@ -0,0 +1,7 @@
+package com.filipegeniselli.backendtechassignment.catalog;
+
+/**
+ * A vehicle of the published listings and the amount of published listings with it
+ */
+public record VehicleSuggestion(String vehicle, long count) {
+}
@@ -0,0 +1,100 @@
+package com.filipegeniselli.backendtechassignment.catalog;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Saves the vehicles of the catalog with their counts to vehicle-suggestions.snapshot-file and restores them
+ * when the application starts, so the suggestions are answered while the catalog is loaded from the database.
+ * The restored counts are the ones of the last save, the first rebuild replaces them.
+ *
+ * The snapshot is written to a temporary file and moved over the last one, a failed save keeps the last snapshot.
+ * An empty snapshot-file disables it
+ */
+@Component
+public class VehicleSuggestionSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(VehicleSuggestionSnapshot.class);
+    private static final int MAGIC = 0x56534E50;
+    private static final int VERSION = 1;
+
+    private final CatalogIndex catalogIndex;
+    private final String snapshotFile;
+
+    @Autowired
+    public VehicleSuggestionSnapshot(CatalogIndex catalogIndex,
+                                     @Value("${vehicle-suggestions.snapshot-file:}") String snapshotFile) {
+        this.catalogIndex = catalogIndex;
+        this.snapshotFile = snapshotFile;
+    }
+
+    @PostConstruct
+    public void restore() {
+        if (snapshotFile.isBlank() || !Files.exists(Path.of(snapshotFile))) {
+            return;
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(Path.of(snapshotFile))))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                logger.warn("Ignoring the vehicle suggestions snapshot {}, unknown format", snapshotFile);
+                return;
+            }
+            int amount = input.readInt();
+            List<VehicleSuggestion> vehicles = new ArrayList<>(amount);
+            for (int i = 0; i < amount; i++) {
+                vehicles.add(new VehicleSuggestion(input.readUTF(), input.readInt()));
+            }
+            catalogIndex.restore(vehicles);
+            logger.info("Restored {} vehicle suggestions from {}", amount, snapshotFile);
+        } catch (IOException e) {
+            logger.warn("Couldn't restore the vehicle suggestions snapshot {}", snapshotFile, e);
+        }
+    }
+
+    /**
+     * Nothing is saved until the catalog is loaded
+     */
+    @PreDestroy
+    @Scheduled(fixedDelayString = "${vehicle-suggestions.snapshot-interval:PT10M}",
+            initialDelayString = "${vehicle-suggestions.snapshot-interval:PT10M}")
+    public void save() {
+        if (snapshotFile.isBlank()) {
+            return;
+        }
+        catalogIndex.vehicles().ifPresent(vehicles -> {
+            Path target = Path.of(snapshotFile).toAbsolutePath();
+            try {
+                Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+                try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                    output.writeInt(MAGIC);
+                    output.writeInt(VERSION);
+                    output.writeInt(vehicles.size());
+                    for (VehicleSuggestion vehicle : vehicles) {
+                        output.writeUTF(vehicle.vehicle());
+                        output.writeInt((int) vehicle.count());
+                    }
+                }
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                logger.warn("Couldn't save the vehicle suggestions snapshot {}", snapshotFile, e);
+            }
+        });
+    }
+}
@@ -0,0 +1,75 @@
+package com.filipegeniselli.backendtechassignment.catalog;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Splits the vehicle text in words of letters and digits, lower case and without accents,
+ * so "Citroën C4-Picasso" has the words citroen, c4 and picasso
+ */
+final class VehicleText {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private VehicleText() {
+    }
+
+    /**
+     * A word of the search, a prefix term matches every word starting with it
+     */
+    record Term(String text, boolean prefix) {
+    }
+
+    /**
+     * @param text
+     * @return the distinct words of the text in the order they appear
+     */
+    static List<String> tokens(String text) {
+        return distinct(words(text));
+    }
+
+    static List<String> distinct(List<String> words) {
+        return List.copyOf(new LinkedHashSet<>(words));
+    }
+
+    /**
+     * @param text
+     * @return all the words of the text in the order they appear
+     */
+    static List<String> words(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        String normalized = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        return Arrays.stream(SEPARATORS.split(normalized))
+                .filter(token -> !token.isEmpty())
+                .toList();
+    }
+
+    /**
+     * A word ending with * is a prefix, "honda civ*" finds "Honda Civic EX"
+     * @param query
+     * @return the distinct terms of the query
+     */
+    static List<Term> terms(String query) {
+        if (query == null || query.isBlank()) {
+            return List.of();
+        }
+        Set<Term> terms = new LinkedHashSet<>();
+        for (String word : query.trim().split("\\s+")) {
+            List<String> tokens = tokens(word);
+            for (int i = 0; i < tokens.size(); i++) {
+                terms.add(new Term(tokens.get(i), word.endsWith("*") && i == tokens.size() - 1));
+            }
+        }
+        return new ArrayList<>(terms);
+    }
+}
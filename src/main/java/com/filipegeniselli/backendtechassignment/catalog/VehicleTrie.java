@@ -0,0 +1,314 @@
+package com.filipegeniselli.backendtechassignment.catalog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The distinct vehicles of the published listings with their counts, and a radix trie to complete them.
+ *
+ * Vehicles are compared by their words, "Honda  CIVIC" and "honda civic" are the same vehicle and it's shown as it was
+ * written by the first listing. Every vehicle is in the trie once for each of its words, with the words from there
+ * to the end, so "2019 Honda Civic" is completed by "2019 h", "hon" and "civ".
+ *
+ * Each node keeps the ids of the best vehicles under it, up to topK, sorted by count and then by id. They are
+ * computed from the vehicles ending at the node and the best vehicles of its children, so a change of count
+ * only recomputes the nodes on the paths of the vehicle, from the bottom up.
+ * While the trie is loading only the counts change, the best vehicles of all the nodes are computed once at the end.
+ *
+ * A vehicle stays in the trie when its count goes to zero, the index is rebuilt periodically.
+ * Not thread safe, the CatalogIndex guards it with its lock
+ */
+class VehicleTrie {
+
+    private static final int[] NO_IDS = new int[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final char[] NO_CHARACTERS = new char[0];
+
+    private final int topK;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final Node root = new Node("");
+    private String[] keys = new String[1024];
+    private String[] vehicles = new String[1024];
+    private int[] counts = new int[1024];
+    private int size;
+    private boolean loading;
+
+    VehicleTrie(int topK) {
+        this.topK = topK;
+    }
+
+    static VehicleTrie of(List<VehicleSuggestion> suggestions, int topK) {
+        VehicleTrie trie = new VehicleTrie(topK);
+        trie.startLoading();
+        suggestions.forEach(suggestion -> trie.add(suggestion.vehicle(), VehicleText.words(suggestion.vehicle()), (int) suggestion.count()));
+        trie.finishLoading();
+        return trie;
+    }
+
+    void startLoading() {
+        loading = true;
+    }
+
+    void finishLoading() {
+        loading = false;
+        computeBest(root);
+    }
+
+    /**
+     * @param vehicle
+     * @param words the words of the vehicle
+     * @param count
+     * @return the id of the vehicle, -1 when it has no words
+     */
+    int add(String vehicle, List<String> words, int count) {
+        if (words.isEmpty()) {
+            return -1;
+        }
+
+        String key = String.join(" ", words);
+        Integer existing = ids.get(key);
+        if (existing != null) {
+            change(existing, count);
+            return existing;
+        }
+
+        int id = next();
+        ids.put(key, id);
+        keys[id] = key;
+        vehicles[id] = String.join(" ", vehicle.trim().split("\\s+"));
+        counts[id] = count;
+        for (String suffix : suffixes(key)) {
+            List<Node> path = insert(suffix, id);
+            if (!loading) {
+                recompute(path);
+            }
+        }
+        return id;
+    }
+
+    void remove(int id) {
+        change(id, -1);
+    }
+
+    /**
+     * The text is compared by its words, a text ending with a space only completes the next word
+     * @param text
+     * @param limit
+     * @return the most common vehicles with a word starting with the text, up to the limit and topK
+     */
+    List<VehicleSuggestion> suggest(String text, int limit) {
+        List<String> words = VehicleText.words(text);
+        String prefix = String.join(" ", words);
+        if (!words.isEmpty() && !Character.isLetterOrDigit(text.charAt(text.length() - 1))) {
+            prefix += " ";
+        }
+
+        Node node = root;
+        int position = 0;
+        while (position < prefix.length()) {
+            Node child = node.child(prefix.charAt(position));
+            int length = child == null ? 0 : Math.min(child.label.length(), prefix.length() - position);
+            if (child == null || !child.label.regionMatches(0, prefix, position, length)) {
+                return List.of();
+            }
+            position += length;
+            node = child;
+        }
+
+        List<VehicleSuggestion> suggestions = new ArrayList<>();
+        for (int i = 0; i < node.best.length && suggestions.size() < limit; i++) {
+            suggestions.add(new VehicleSuggestion(vehicles[node.best[i]], counts[node.best[i]]));
+        }
+        return suggestions;
+    }
+
+    /**
+     * @return every vehicle with published listings
+     */
+    List<VehicleSuggestion> vehicles() {
+        List<VehicleSuggestion> suggestions = new ArrayList<>();
+        for (int id = 0; id < size; id++) {
+            if (counts[id] > 0) {
+                suggestions.add(new VehicleSuggestion(vehicles[id], counts[id]));
+            }
+        }
+        return suggestions;
+    }
+
+    private void change(int id, int difference) {
+        counts[id] += difference;
+        if (loading) {
+            return;
+        }
+        for (String suffix : suffixes(keys[id])) {
+            recompute(path(suffix));
+        }
+    }
+
+    private static List<String> suffixes(String key) {
+        List<String> suffixes = new ArrayList<>();
+        suffixes.add(key);
+        for (int i = key.indexOf(' '); i >= 0; i = key.indexOf(' ', i + 1)) {
+            suffixes.add(key.substring(i + 1));
+        }
+        return suffixes;
+    }
+
+    /**
+     * Adds the key to the trie, splitting the label of a node when the key leaves it in the middle
+     * @return the nodes from the root to the one where the key ends
+     */
+    private List<Node> insert(String key, int id) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        int position = 0;
+        path.add(node);
+        while (position < key.length()) {
+            Node child = node.child(key.charAt(position));
+            if (child == null) {
+                child = new Node(key.substring(position));
+                node.add(child);
+                position = key.length();
+            } else {
+                int common = 0;
+                while (common < child.label.length() && position + common < key.length()
+                        && child.label.charAt(common) == key.charAt(position + common)) {
+                    common++;
+                }
+                if (common < child.label.length()) {
+                    Node middle = new Node(child.label.substring(0, common));
+                    child.label = child.label.substring(common);
+                    middle.add(child);
+                    middle.best = child.best;
+                    node.replace(middle);
+                    child = middle;
+                }
+                position += common;
+            }
+            node = child;
+            path.add(node);
+        }
+        node.terminals = Arrays.copyOf(node.terminals, node.terminals.length + 1);
+        node.terminals[node.terminals.length - 1] = id;
+        return path;
+    }
+
+    /**
+     * @return the nodes from the root to the one where the key, that is in the trie, ends
+     */
+    private List<Node> path(String key) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        int position = 0;
+        path.add(node);
+        while (position < key.length()) {
+            node = node.child(key.charAt(position));
+            position += node.label.length();
+            path.add(node);
+        }
+        return path;
+    }
+
+    private void recompute(List<Node> path) {
+        for (int i = path.size() - 1; i >= 0; i--) {
+            path.get(i).best = best(path.get(i));
+        }
+    }
+
+    private void computeBest(Node node) {
+        for (Node child : node.children) {
+            computeBest(child);
+        }
+        node.best = best(node);
+    }
+
+    /**
+     * The count and the id are packed in a long sorted ascending, the highest count and then the lowest id first
+     */
+    private int[] best(Node node) {
+        int candidates = node.terminals.length;
+        for (Node child : node.children) {
+            candidates += child.best.length;
+        }
+        long[] ranked = new long[candidates];
+        int position = 0;
+        for (int id : node.terminals) {
+            ranked[position++] = rank(id);
+        }
+        for (Node child : node.children) {
+            for (int id : child.best) {
+                ranked[position++] = rank(id);
+            }
+        }
+        Arrays.sort(ranked);
+
+        int[] best = new int[Math.min(topK, candidates)];
+        int amount = 0;
+        for (int i = 0; i < ranked.length && amount < best.length; i++) {
+            int id = (int) ranked[i];
+            if (counts[id] > 0 && (i == 0 || ranked[i] != ranked[i - 1])) {
+                best[amount++] = id;
+            }
+        }
+        return amount == best.length ? best : Arrays.copyOf(best, amount);
+    }
+
+    private long rank(int id) {
+        return ((long) (Integer.MAX_VALUE - counts[id]) << 32) | id;
+    }
+
+    private int next() {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            vehicles = Arrays.copyOf(vehicles, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+        }
+        return size++;
+    }
+
+    /**
+     * The children are sorted by the first character of their labels
+     */
+    private static final class Node {
+
+        private String label;
+        private char[] characters = NO_CHARACTERS;
+        private Node[] children = NO_CHILDREN;
+        private int[] terminals = NO_IDS;
+        private int[] best = NO_IDS;
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        Node child(char character) {
+            int position = Arrays.binarySearch(characters, character);
+            return position < 0 ? null : children[position];
+        }
+
+        void add(Node child) {
+            int position = -(Arrays.binarySearch(characters, child.label.charAt(0)) + 1);
+            characters = insert(characters, position, child.label.charAt(0));
+            Node[] grown = new Node[children.length + 1];
+            System.arraycopy(children, 0, grown, 0, position);
+            grown[position] = child;
+            System.arraycopy(children, position, grown, position + 1, children.length - position);
+            children = grown;
+        }
+
+        void replace(Node child) {
+            children[Arrays.binarySearch(characters, child.label.charAt(0))] = child;
+        }
+
+        private static char[] insert(char[] characters, int position, char character) {
+            char[] grown = new char[characters.length + 1];
+            System.arraycopy(characters, 0, grown, 0, position);
+            grown[position] = character;
+            System.arraycopy(characters, position, grown, position + 1, characters.length - position);
+            return grown;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.filipegeniselli.backendtechassignment.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the data source of spring.datasource by a ReplicaRoutingDataSource when read-replicas.enabled is true,
+ * the primary pool keeps the spring.datasource and spring.datasource.hikari settings and each replica of
+ * read-replicas.instances gets its own read-only pool, with the credentials of the primary when the instance has none.
+ * Hibernate, the repositories and the JdbcTemplate use the routing data source, so the schema changes and the writes
+ * always go to the primary.
+ *
+ * The methods of the @ReadsFromReplica classes are intercepted before their transactions start,
+ * the dealer requests are intercepted by the ReadYourWritesInterceptor.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "read-replicas", name = "enabled", havingValue = "true")
+public class ReadReplicaConfiguration implements WebMvcConfigurer {
+
+    /**
+     * A replica that is down fails fast and the reads go to the primary instead of waiting for the default 30 seconds
+     */
+    private static final long REPLICA_CONNECTION_TIMEOUT_MILLIS = 2_000;
+
+    private final ReadReplicaProperties properties;
+
+    @Autowired
+    public ReadReplicaConfiguration(ReadReplicaProperties properties) {
+        if (properties.getInstances().isEmpty()) {
+            throw new IllegalArgumentException("The read-replicas.instances must have at least one replica when read-replicas.enabled is true");
+        }
+        this.properties = properties;
+    }
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        if (!StringUtils.hasText(primary.getPoolName())) {
+            primary.setPoolName("primary");
+        }
+        return primary;
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(HikariDataSource primaryDataSource,
+                                                             DataSourceProperties dataSourceProperties,
+                                                             MeterRegistry meterRegistry) {
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < properties.getInstances().size(); i++) {
+            ReadReplicaProperties.Instance instance = properties.getInstances().get(i);
+            HikariDataSource replica = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(instance.url())
+                    .username(instance.username() == null ? dataSourceProperties.determineUsername() : instance.username())
+                    .password(instance.password() == null ? dataSourceProperties.determinePassword() : instance.password())
+                    .build();
+            replica.setPoolName("replica-" + i);
+            replica.setReadOnly(true);
+            replica.setConnectionTimeout(REPLICA_CONNECTION_TIMEOUT_MILLIS);
+            replicas.add(replica);
+        }
+
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas, properties.getSelection(),
+                properties.getMaxLag(), meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor readsFromReplicaAdvisor() {
+        MethodInterceptor interceptor = invocation -> {
+            ReplicaRoute.enter();
+            try {
+                return invocation.proceed();
+            } finally {
+                ReplicaRoute.exit();
+            }
+        };
+        DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(new AnnotationMatchingPointcut(ReadsFromReplica.class, true), interceptor);
+        advisor.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return advisor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new ReadYourWritesInterceptor(properties.getReadYourWrites()));
+    }
+}
@@ -0,0 +1,59 @@
+package com.filipegeniselli.backendtechassignment.datasource;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+@ConfigurationProperties(prefix = "read-replicas")
+public class ReadReplicaProperties {
+
+    public enum Selection {
+        ROUND_ROBIN,
+        LEAST_LOADED
+    }
+
+    public record Instance(String url, String username, String password) {
+    }
+
+    private final boolean enabled;
+    private final Selection selection;
+    private final Duration readYourWrites;
+    private final Duration maxLag;
+    private final List<Instance> instances;
+
+    @ConstructorBinding
+    public ReadReplicaProperties(@DefaultValue("false") boolean enabled,
+                                 @DefaultValue("ROUND_ROBIN") Selection selection,
+                                 @DefaultValue("PT5S") Duration readYourWrites,
+                                 @DefaultValue("PT10S") Duration maxLag,
+                                 List<Instance> instances) {
+        this.enabled = enabled;
+        this.selection = selection;
+        this.readYourWrites = readYourWrites;
+        this.maxLag = maxLag;
+        this.instances = instances == null ? List.of() : List.copyOf(instances);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Selection getSelection() {
+        return selection;
+    }
+
+    public Duration getReadYourWrites() {
+        return readYourWrites;
+    }
+
+    public Duration getMaxLag() {
+        return maxLag;
+    }
+
+    public List<Instance> getInstances() {
+        return instances;
+    }
+}
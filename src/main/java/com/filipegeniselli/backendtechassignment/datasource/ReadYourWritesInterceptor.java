@@ -0,0 +1,93 @@
+package com.filipegeniselli.backendtechassignment.datasource;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps the dealers that sent a command in the last read-replicas.read-your-writes, the requests about those dealers
+ * read from the primary until the window ends, so a dealer always sees its own changes even with a replica behind.
+ *
+ * The dealer comes from the dealerId of the listing urls or the id of the dealer urls, a created dealer from the
+ * Location of the response. The window is kept by each instance, a load balancer with sticky sessions keeps it
+ * for the clients, otherwise the window must cover the replication lag (see read-replicas.max-lag).
+ */
+public class ReadYourWritesInterceptor implements HandlerInterceptor {
+
+    private final Cache<UUID, Boolean> recentWrites;
+
+    public ReadYourWritesInterceptor(Duration window) {
+        this.recentWrites = Caffeine.newBuilder()
+                .expireAfterWrite(window)
+                .build();
+    }
+
+    /**
+     * A command is recorded before it's handled, the client can send the next read as soon as it gets the response
+     */
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        UUID dealerId = dealerOf(request);
+        if (isRead(request)) {
+            ReplicaRoute.requirePrimary(dealerId != null && recentWrites.getIfPresent(dealerId) != null);
+        } else if (dealerId != null) {
+            recentWrites.put(dealerId, Boolean.TRUE);
+        }
+        return true;
+    }
+
+    /**
+     * The window of a command starts again when it ends, a created dealer is only known from the Location
+     */
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (isRead(request)) {
+            ReplicaRoute.requirePrimary(false);
+            return;
+        }
+
+        UUID dealerId = dealerOf(request);
+        if (dealerId == null) {
+            dealerId = lastUuidOf(response.getHeader(HttpHeaders.LOCATION));
+        }
+        if (dealerId != null) {
+            recentWrites.put(dealerId, Boolean.TRUE);
+        }
+    }
+
+    private static boolean isRead(HttpServletRequest request) {
+        return HttpMethod.GET.matches(request.getMethod()) || HttpMethod.HEAD.matches(request.getMethod());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static UUID dealerOf(HttpServletRequest request) {
+        Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (variables == null) {
+            return null;
+        }
+        String dealerId = variables.getOrDefault("dealerId", variables.get("id"));
+        return dealerId == null ? null : parse(dealerId);
+    }
+
+    private static UUID lastUuidOf(String location) {
+        return location == null ? null : parse(location.substring(location.lastIndexOf('/') + 1));
+    }
+
+    private static UUID parse(String value) {
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
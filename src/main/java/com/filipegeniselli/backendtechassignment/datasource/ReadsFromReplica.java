@@ -0,0 +1,16 @@
+package com.filipegeniselli.backendtechassignment.datasource;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The read-only transactions started inside the methods of the annotated class can read from a replica,
+ * everything else reads from the primary. Only the query handlers should have it, the code that reads right after
+ * a commit (e.g. the indexes refreshed after commit) would miss the change on a replica that is behind
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReadsFromReplica {
+}
@@ -0,0 +1,81 @@
+package com.filipegeniselli.backendtechassignment.datasource;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Supplier;
+
+/**
+ * The routing state of the current thread, read by the ReplicaRoutingDataSource when a connection is taken.
+ * A connection goes to a replica when the thread is inside a @ReadsFromReplica method, the transaction is read-only
+ * and the request didn't require the primary
+ */
+public final class ReplicaRoute {
+
+    private static final ThreadLocal<Integer> REPLICA_READS = ThreadLocal.withInitial(() -> 0);
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = ThreadLocal.withInitial(() -> false);
+
+    private ReplicaRoute() {
+    }
+
+    static boolean toReplica() {
+        return REPLICA_READS.get() > 0
+                && !PRIMARY_REQUIRED.get()
+                && TransactionSynchronizationManager.isActualTransactionActive()
+                && TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    /**
+     * Runs the reads as if they were inside a @ReadsFromReplica method
+     * @param reads
+     * @return the result of the reads
+     */
+    public static <T> T replicaReads(Supplier<T> reads) {
+        enter();
+        try {
+            return reads.get();
+        } finally {
+            exit();
+        }
+    }
+
+    /**
+     * Runs the reads on the primary even inside a @ReadsFromReplica method, used by the loads of the caches
+     * invalidated by the commands, a replica behind would put the old value back after the invalidation
+     * @param reads
+     * @return the result of the reads
+     */
+    public static <T> T primaryReads(Supplier<T> reads) {
+        boolean required = PRIMARY_REQUIRED.get();
+        PRIMARY_REQUIRED.set(true);
+        try {
+            return reads.get();
+        } finally {
+            requirePrimary(required);
+        }
+    }
+
+    static void enter() {
+        REPLICA_READS.set(REPLICA_READS.get() + 1);
+    }
+
+    static void exit() {
+        int depth = REPLICA_READS.get() - 1;
+        if (depth == 0) {
+            REPLICA_READS.remove();
+        } else {
+            REPLICA_READS.set(depth);
+        }
+    }
+
+    /**
+     * Sends all the reads of the thread to the primary until it's cleared, used by the read-your-writes window
+     * @param required
+     */
+    public static void requirePrimary(boolean required) {
+        if (required) {
+            PRIMARY_REQUIRED.set(true);
+        } else {
+            PRIMARY_REQUIRED.remove();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.filipegeniselli.backendtechassignment.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gives the connections of the replicas to the read-only transactions of the query handlers (see ReplicaRoute)
+ * and the connections of the primary to everything else.
+ *
+ * The replica is picked among the healthy ones, in turns with ROUND_ROBIN or the one with the fewest connections in use
+ * with LEAST_LOADED. The health check runs every read-replicas.health-check-interval: a replica is unhealthy when
+ * it doesn't give a valid connection, or when it's a postgres standby that has not replayed all the received changes
+ * and the last replayed one is older than read-replicas.max-lag.
+ * A replica that fails to give a connection is marked unhealthy right away and the reads go to the primary,
+ * so a replica going down only costs one failed connection attempt until the next health check.
+ *
+ * The decision is taken when the connection is taken, it must be wrapped by a LazyConnectionDataSourceProxy so the
+ * connection is only taken on the first statement, after the transaction is started and known to be read-only.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final HikariDataSource primary;
+    private final List<Replica> replicas;
+    private final ReadReplicaProperties.Selection selection;
+    private final Duration maxLag;
+    private final AtomicInteger turn = new AtomicInteger();
+    private final Counter primaryConnections;
+
+    public ReplicaRoutingDataSource(HikariDataSource primary,
+                                    List<HikariDataSource> replicas,
+                                    ReadReplicaProperties.Selection selection,
+                                    Duration maxLag,
+                                    MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.selection = selection;
+        this.maxLag = maxLag;
+        this.primaryConnections = connectionsCounter(meterRegistry, primary.getPoolName());
+        this.replicas = new ArrayList<>(replicas.size());
+        for (HikariDataSource replica : replicas) {
+            this.replicas.add(new Replica(replica, connectionsCounter(meterRegistry, replica.getPoolName())));
+        }
+        Gauge.builder("datasource.replicas.healthy", this.replicas, all -> all.stream().filter(replica -> replica.healthy).count())
+                .description("Replicas receiving the reads of the query handlers")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Replica replica = ReplicaRoute.toReplica() ? select() : null;
+        if (replica != null) {
+            try {
+                Connection connection = replica.dataSource.getConnection();
+                replica.connections.increment();
+                return connection;
+            } catch (SQLException e) {
+                unhealthy(replica, e.getMessage());
+            }
+        }
+        Connection connection = primary.getConnection();
+        primaryConnections.increment();
+        return connection;
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The connections use the credentials of each data source");
+    }
+
+    @Scheduled(fixedDelayString = "${read-replicas.health-check-interval:PT5S}",
+            initialDelayString = "${read-replicas.health-check-interval:PT5S}")
+    public void checkHealth() {
+        for (Replica replica : replicas) {
+            String problem = problemOf(replica);
+            if (problem == null) {
+                if (!replica.healthy) {
+                    replica.healthy = true;
+                    logger.info("The replica {} is healthy again", replica.dataSource.getPoolName());
+                }
+            } else {
+                unhealthy(replica, problem);
+            }
+        }
+    }
+
+    /**
+     * The replica pools are created by the ReadReplicaConfiguration for this data source only, the primary is a bean
+     */
+    @Override
+    public void destroy() {
+        replicas.forEach(replica -> replica.dataSource.close());
+    }
+
+    /**
+     * @return null when there's no healthy replica
+     */
+    private Replica select() {
+        List<Replica> healthy = new ArrayList<>(replicas.size());
+        for (Replica replica : replicas) {
+            if (replica.healthy) {
+                healthy.add(replica);
+            }
+        }
+        if (healthy.isEmpty()) {
+            return null;
+        }
+
+        if (selection == ReadReplicaProperties.Selection.LEAST_LOADED) {
+            Replica least = healthy.get(0);
+            for (Replica replica : healthy) {
+                if (replica.activeConnections() < least.activeConnections()) {
+                    least = replica;
+                }
+            }
+            return least;
+        }
+        return healthy.get(Math.floorMod(turn.getAndIncrement(), healthy.size()));
+    }
+
+    /**
+     * @return null when the replica is healthy
+     */
+    private String problemOf(Replica replica) {
+        try (Connection connection = replica.dataSource.getConnection()) {
+            if (!connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                return "invalid connection";
+            }
+            if (!"PostgreSQL".equals(connection.getMetaData().getDatabaseProductName())) {
+                return null;
+            }
+            try (Statement statement = connection.createStatement();
+                 ResultSet lag = statement.executeQuery("SELECT CASE " +
+                         "WHEN NOT pg_is_in_recovery() OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+                         "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) END")) {
+                lag.next();
+                double seconds = lag.getDouble(1);
+                return seconds * 1000 > maxLag.toMillis() ? "%.1f s behind the primary".formatted(seconds) : null;
+            }
+        } catch (SQLException e) {
+            return e.getMessage();
+        }
+    }
+
+    private void unhealthy(Replica replica, String problem) {
+        if (replica.healthy) {
+            replica.healthy = false;
+            logger.warn("The replica {} is unhealthy, the reads go to the other replicas or the primary: {}",
+                    replica.dataSource.getPoolName(), problem);
+        }
+    }
+
+    private static Counter connectionsCounter(MeterRegistry meterRegistry, String pool) {
+        return Counter.builder("datasource.routed.connections")
+                .description("Connections taken by the routing data source")
+                .tag("pool", pool)
+                .register(meterRegistry);
+    }
+
+    private static final class Replica {
+        private final HikariDataSource dataSource;
+        private final Counter connections;
+        private volatile boolean healthy = true;
+
+        private Replica(HikariDataSource dataSource, Counter connections) {
+            this.dataSource = dataSource;
+            this.connections = connections;
+        }
+
+        private int activeConnections() {
+            HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+            return pool == null ? 0 : pool.getActiveConnections();
+        }
+    }
+}
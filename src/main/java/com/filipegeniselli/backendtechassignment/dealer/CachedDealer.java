@@ -0,0 +1,14 @@
+package com.filipegeniselli.backendtechassignment.dealer;
+
+import java.util.UUID;
+
+/**
+ * Immutable copy of the dealer fields kept by the DealerCache, entities are never shared between requests
+ */
+public record CachedDealer(UUID id, String name, DealerTierLimit tier, Boolean allowRemovingOldListings, long version) {
+
+    static CachedDealer of(Dealer dealer) {
+        return new CachedDealer(dealer.getId(), dealer.getName(), dealer.getTier(), dealer.getAllowRemovingOldListings(),
+                dealer.getVersion());
+    }
+}
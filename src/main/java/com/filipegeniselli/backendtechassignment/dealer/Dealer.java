@@ -1,11 +1,10 @@
 package com.filipegeniselli.backendtechassignment.dealer;
 
 import com.filipegeniselli.backendtechassignment.exception.BadRequestException;
+import com.filipegeniselli.backendtechassignment.id.SnowflakeId;
 import com.filipegeniselli.backendtechassignment.listings.Listing;
-import jakarta.persistence.Entity;
-import jakarta.persistence.Id;
-import jakarta.persistence.OneToMany;
-import jakarta.persistence.Table;
+import jakarta.persistence.*;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -36,6 +35,8 @@ import java.util.stream.Collectors;
  * On my opinion this would be a better approach for the id where we could have each API implementing the code to generate the ID
  * Or a central API responsible to generate IDs
  *
+ * The SnowflakeIdGenerator implements it, the ids keep the UUID type with the same fields in a version 7 UUID
+ *
  * Suggestions to the Dealer feature:
  *
  * - Add more fields to create a new validation, blocking the registration of duplicated dealers
@@ -46,10 +47,13 @@ import java.util.stream.Collectors;
  *
  */
 @Entity
-@Table
+@Table(indexes = {
+        @Index(name = "idx_dealer_tier_published", columnList = "tier, publishedListings")
+})
 public class Dealer {
 
     @Id
+    @SnowflakeId
     private UUID id;
 
     private String name;
@@ -58,6 +62,38 @@ public class Dealer {
 
     private Boolean allowRemovingOldListings;
 
+    /**
+     * Amount of published listings, changed only by update statements while the dealer row is locked,
+     * the entity never writes it back so saving a dealer doesn't overwrite a concurrent change.
+     * It's null for dealers created before the column existed until the startup backfill counts them
+     */
+    @Column(updatable = false)
+    private Integer publishedListings = 0;
+
+    /**
+     * Incremented when the dealer is saved, the counters and stamps are changed by update statements and don't increment it
+     */
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private Long version;
+
+    /*
+     * Incremented by the ListingStamps on every transaction that changes the listings of the dealer with the status,
+     * the pages of the listings use them as the ETag. Like the counter, the entity never writes them back
+     */
+    @ColumnDefault("0")
+    @Column(updatable = false, nullable = false)
+    private Long draftListingsStamp = 0L;
+
+    @ColumnDefault("0")
+    @Column(updatable = false, nullable = false)
+    private Long publishedListingsStamp = 0L;
+
+    @ColumnDefault("0")
+    @Column(updatable = false, nullable = false)
+    private Long removedListingsStamp = 0L;
+
     @OneToMany(mappedBy = "dealer")
     private Set<Listing> listings;
 
@@ -113,6 +149,14 @@ public class Dealer {
         this.allowRemovingOldListings = allowRemovingOldListings;
     }
 
+    public Integer getPublishedListings() {
+        return publishedListings;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
     public Set<Listing> getListings() {
         return listings;
     }
@@ -0,0 +1,62 @@
+package com.filipegeniselli.backendtechassignment.dealer;
+
+import com.filipegeniselli.backendtechassignment.datasource.ReplicaRoute;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Read-through cache of the dealers, bounded by size and by the time since the dealer was loaded.
+ *
+ * The DealerCommandHandler invalidates a dealer after it's updated, a load of the same dealer that is still running
+ * finishes before the invalidation, so an old value is never put back after it.
+ * The loads always read from the primary, a replica behind would give the dealer from before the update.
+ * Other instances of the API only see the change after the expiration, the tier limit validation reads the dealer
+ * from the locked row and doesn't depend on the cache.
+ * Missing dealers are not cached.
+ *
+ * The hit, miss and eviction stats are published as the cache metrics with the name dealers.
+ */
+@Component
+public class DealerCache {
+
+    private final DealerRepository dealerRepository;
+    private final Cache<UUID, CachedDealer> cache;
+
+    @Autowired
+    public DealerCache(DealerRepository dealerRepository,
+                       MeterRegistry meterRegistry,
+                       @Value("${dealer-cache.maximum-size:10000}") long maximumSize,
+                       @Value("${dealer-cache.expire-after-write:PT5M}") Duration expireAfterWrite) {
+        this.dealerRepository = dealerRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "dealers");
+    }
+
+    public Optional<CachedDealer> find(UUID dealerId) {
+        return Optional.ofNullable(cache.get(dealerId, id -> ReplicaRoute.primaryReads(() -> dealerRepository.findById(id)
+                .map(CachedDealer::of)
+                .orElse(null))));
+    }
+
+    public void invalidate(UUID dealerId) {
+        cache.invalidate(dealerId);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+}
@@ -1,5 +1,6 @@
 package com.filipegeniselli.backendtechassignment.dealer;
 
+import com.filipegeniselli.backendtechassignment.ETags;
 import com.filipegeniselli.backendtechassignment.PagedResult;
 import com.filipegeniselli.backendtechassignment.dealer.command.CreateUpdateDealer;
 import com.filipegeniselli.backendtechassignment.dealer.command.DealerCommandService;
@@ -10,6 +11,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.util.UUID;
@@ -35,9 +37,17 @@ public class DealerController {
         return dealerQueryService.handle(new FindAllWithFilters(name, PageRequest.of(page, pageSize)));
     }
 
+    /**
+     * The dealer comes from the DealerCache, the ETag is its version
+     */
     @GetMapping("/{id}")
-    public DealerDto getDealer(@PathVariable("id") UUID dealerId) {
-        return dealerQueryService.handle(new FindById(dealerId));
+    public DealerDto getDealer(@PathVariable("id") UUID dealerId, WebRequest request) {
+        DealerDto dealer = dealerQueryService.handle(new FindById(dealerId));
+        if (request.checkNotModified(ETags.dealer(dealer.version()))) {
+            return null;
+        }
+
+        return dealer;
     }
 
     @PostMapping
@@ -1,4 +1,10 @@
 package com.filipegeniselli.backendtechassignment.dealer;
 
-public record DealerDto(String name, DealerTierLimit tier, Boolean allowRemovingOldListings, String url) {
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * @param version not part of the json, it's sent as the ETag
+ */
+public record DealerDto(String name, DealerTierLimit tier, Boolean allowRemovingOldListings, String url,
+                        @JsonIgnore long version) {
 }
@@ -0,0 +1,71 @@
+package com.filipegeniselli.backendtechassignment.dealer;
+
+import com.filipegeniselli.backendtechassignment.exception.ConflictException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Striped in-process locks used to serialize the changes that depend on the published listings of a dealer.
+ *
+ * The lock has to be taken before the transaction starts, a thread waiting for it shouldn't be holding a connection.
+ * Dealers are spread over a fixed amount of stripes, the amount should be much bigger than the concurrent requests
+ * so two different dealers rarely share a stripe. Inside the transaction the dealer row is also locked,
+ * that's what keeps the limit when more than one instance of the API is running.
+ */
+@Component
+public class DealerLocks {
+
+    private final ReentrantLock[] stripes;
+    private final Duration timeout;
+
+    @Autowired
+    public DealerLocks(@Value("${dealer-locks.stripes:1024}") int stripes,
+                       @Value("${dealer-locks.timeout:PT5S}") Duration timeout) {
+        this.stripes = new ReentrantLock[Integer.highestOneBit(Math.max(1, stripes - 1)) << 1];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.timeout = timeout;
+    }
+
+    public <T> T callLocked(UUID dealerId, Supplier<T> action) {
+        ReentrantLock lock = stripeOf(dealerId);
+        acquire(lock);
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void runLocked(UUID dealerId, Runnable action) {
+        callLocked(dealerId, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private void acquire(ReentrantLock lock) {
+        try {
+            if (!lock.tryLock(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new ConflictException("There are too many concurrent changes for this dealer, please try again.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConflictException("The operation was interrupted, please try again.");
+        }
+    }
+
+    private ReentrantLock stripeOf(UUID dealerId) {
+        int hash = dealerId.hashCode();
+        hash ^= (hash >>> 16);
+        return stripes[hash & (stripes.length - 1)];
+    }
+}
@@ -0,0 +1,9 @@
+package com.filipegeniselli.backendtechassignment.dealer;
+
+import java.util.UUID;
+
+/**
+ * The dealer fields read by the DealerNameIndex rebuild
+ */
+public record DealerName(UUID id, String name, long version) {
+}
@@ -0,0 +1,408 @@
+package com.filipegeniselli.backendtechassignment.dealer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory trigram index of the dealer names, used by the case-insensitive substring search of the dealers.
+ *
+ * Every dealer gets a sequential document number and each trigram of its lower case name keeps the sorted
+ * document numbers that have it. A search intersects the postings of the trigrams of the text, starting with
+ * the shortest one, and checks the name of each candidate, so the cost depends on the dealers that share the
+ * rarest trigram and not on the amount of dealers.
+ * Searches with one or two characters have no trigram, the dealers with the text are found by scanning the names
+ * on the first search and kept as if it was a trigram from then on.
+ * The results are in the order the dealers were indexed and the total is counted like the database query.
+ *
+ * The DealerCommandHandler puts the dealers after they are saved, the version of the dealer is kept so an older
+ * name never replaces a newer one. The index is rebuilt from the database in chunks once the application starts,
+ * searches use the database until it's ready, and again on every dealer-name-index.rebuild-interval
+ * to pick the changes made by other instances. The changes made while rebuilding go to both indexes.
+ */
+@Component
+public class DealerNameIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(DealerNameIndex.class);
+    private static final UUID FIRST_ID = new UUID(0, 0);
+
+    private final DealerRepository dealerRepository;
+    private final boolean enabled;
+    private final int chunkSize;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Index index = new Index();
+    private Index rebuilding;
+    private boolean ready;
+
+    @Autowired
+    public DealerNameIndex(DealerRepository dealerRepository,
+                           @Value("${dealer-name-index.enabled:true}") boolean enabled,
+                           @Value("${dealer-name-index.chunk-size:1000}") int chunkSize) {
+        this.dealerRepository = dealerRepository;
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param text the case-insensitive part of the name, null or empty matches every dealer
+     * @param pageRequest
+     * @return the page of dealer ids, empty when the index is disabled or not ready yet
+     */
+    public Optional<Page<UUID>> search(String text, PageRequest pageRequest) {
+        lock.readLock().lock();
+        try {
+            if (!enabled || !ready) {
+                return Optional.empty();
+            }
+
+            List<UUID> ids = new ArrayList<>(pageRequest.getPageSize());
+            long total = index.search(text == null ? "" : text.toLowerCase(Locale.ROOT),
+                    pageRequest.getOffset(), pageRequest.getPageSize(), ids);
+            return Optional.of(new PageImpl<>(ids, pageRequest, total));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(UUID dealerId, String name, long version) {
+        if (!enabled) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            index.put(dealerId, name, version);
+            if (rebuilding != null) {
+                rebuilding.put(dealerId, name, version);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the dealers in chunks ordered by id into a new index, the current one keeps answering until it's replaced
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${dealer-name-index.rebuild-interval:PT30M}",
+            initialDelayString = "${dealer-name-index.rebuild-interval:PT30M}")
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        Index building = new Index();
+        withWriteLock(() -> rebuilding = building);
+        try {
+            UUID after = FIRST_ID;
+            List<DealerName> dealers;
+            do {
+                dealers = dealerRepository.findNames(after, PageRequest.of(0, chunkSize));
+                List<DealerName> chunk = dealers;
+                withWriteLock(() -> chunk.forEach(dealer -> building.put(dealer.id(), dealer.name(), dealer.version())));
+                if (!dealers.isEmpty()) {
+                    after = dealers.get(dealers.size() - 1).id();
+                }
+            } while (dealers.size() == chunkSize);
+
+            withWriteLock(() -> {
+                index = building;
+                ready = true;
+            });
+            logger.info("Indexed the names of {} dealers in {} ms", building.size, (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            withWriteLock(() -> rebuilding = null);
+        }
+    }
+
+    private void withWriteLock(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            change.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Changed only while holding the write lock of the DealerNameIndex, searches run with the read lock.
+     * Texts with one or two characters have no trigram, their postings are built from the names the first time
+     * they're searched and then kept up to date by the puts like the trigrams.
+     *
+     * The lower case names are kept one after the other in a single array, the candidates are checked in the order
+     * of the documents so the names are read sequentially. A renamed dealer gets its name appended
+     * and the array is compacted when it's full and more than half of it is old names
+     */
+    private static final class Index {
+
+        private static final int MAXIMUM_SHORT_TEXTS = 4096;
+
+        private final Map<UUID, Integer> documents = new HashMap<>();
+        private final Map<Long, Postings> trigrams = new HashMap<>();
+        private final Map<String, Postings> shortTexts = new ConcurrentHashMap<>();
+        private UUID[] ids = new UUID[1024];
+        private long[] versions = new long[1024];
+        private int[] starts = new int[1024];
+        private int[] lengths = new int[1024];
+        private char[] characters = new char[16 * 1024];
+        private int usedCharacters;
+        private int liveCharacters;
+        private int size;
+
+        void put(UUID dealerId, String name, long version) {
+            String lowerCaseName = name == null ? "" : name.toLowerCase(Locale.ROOT);
+            Integer document = documents.get(dealerId);
+            if (document == null) {
+                document = add(dealerId);
+            } else if (versions[document] >= version) {
+                return;
+            } else {
+                int removed = document;
+                trigrams(name(removed)).forEach(trigram -> {
+                    Postings postings = trigrams.get(trigram);
+                    postings.remove(removed);
+                    if (postings.size == 0) {
+                        trigrams.remove(trigram);
+                    }
+                });
+                shortTexts.forEach((text, postings) -> postings.remove(removed));
+                liveCharacters -= lengths[removed];
+            }
+
+            int added = document;
+            versions[added] = version;
+            store(added, lowerCaseName);
+            trigrams(lowerCaseName).forEach(trigram -> trigrams.computeIfAbsent(trigram, key -> new Postings()).add(added));
+            shortTexts.forEach((text, postings) -> {
+                if (lowerCaseName.contains(text)) {
+                    postings.add(added);
+                }
+            });
+        }
+
+        private int add(UUID dealerId) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                versions = Arrays.copyOf(versions, size * 2);
+                starts = Arrays.copyOf(starts, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+            }
+            ids[size] = dealerId;
+            versions[size] = -1;
+            documents.put(dealerId, size);
+            return size++;
+        }
+
+        private void store(int document, String name) {
+            if (usedCharacters + name.length() > characters.length && usedCharacters - liveCharacters > liveCharacters) {
+                compact();
+            }
+            if (usedCharacters + name.length() > characters.length) {
+                characters = Arrays.copyOf(characters, Math.max(characters.length * 2, usedCharacters + name.length()));
+            }
+            name.getChars(0, name.length(), characters, usedCharacters);
+            starts[document] = usedCharacters;
+            lengths[document] = name.length();
+            usedCharacters += name.length();
+            liveCharacters += name.length();
+        }
+
+        private void compact() {
+            char[] compacted = new char[Math.max(16 * 1024, liveCharacters * 2)];
+            int used = 0;
+            for (int document = 0; document < size; document++) {
+                System.arraycopy(characters, starts[document], compacted, used, lengths[document]);
+                starts[document] = used;
+                used += lengths[document];
+            }
+            characters = compacted;
+            usedCharacters = used;
+        }
+
+        private String name(int document) {
+            return new String(characters, starts[document], lengths[document]);
+        }
+
+        private boolean contains(int document, char[] searched) {
+            char first = searched[0];
+            int last = starts[document] + lengths[document] - searched.length;
+            for (int position = starts[document]; position <= last; position++) {
+                if (characters[position] != first) {
+                    continue;
+                }
+                int matched = 1;
+                while (matched < searched.length && characters[position + matched] == searched[matched]) {
+                    matched++;
+                }
+                if (matched == searched.length) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long search(String text, long offset, int limit, List<UUID> page) {
+            if (text.isEmpty()) {
+                for (long document = offset; document < Math.min(size, offset + limit); document++) {
+                    page.add(ids[(int) document]);
+                }
+                return size;
+            }
+
+            if (text.length() < 3) {
+                Postings postings = shortTexts.get(text);
+                if (postings == null) {
+                    // Once the map is full the texts not kept are scanned on every search
+                    postings = shortTexts.size() < MAXIMUM_SHORT_TEXTS
+                            ? shortTexts.computeIfAbsent(text, this::scan)
+                            : scan(text);
+                }
+                return intersect(List.of(postings), text, offset, limit, page);
+            }
+
+            List<Postings> postings = new ArrayList<>();
+            for (long trigram : trigrams(text)) {
+                Postings found = trigrams.get(trigram);
+                if (found == null) {
+                    return 0;
+                }
+                postings.add(found);
+            }
+            postings.sort(Comparator.comparingInt(found -> found.size));
+            return intersect(postings, text, offset, limit, page);
+        }
+
+        private Postings scan(String text) {
+            char[] searched = text.toCharArray();
+            Postings postings = new Postings();
+            for (int document = 0; document < size; document++) {
+                if (contains(document, searched)) {
+                    postings.add(document);
+                }
+            }
+            return postings;
+        }
+
+        /**
+         * Leapfrog intersection, every list keeps a cursor that only moves forward and a document missing
+         * from one list moves the rarest list straight to the next document of that list.
+         * More than one trigram doesn't mean they're next to each other, the matches are checked with the name
+         */
+        private long intersect(List<Postings> postings, String text, long offset, int limit, List<UUID> page) {
+            Postings rarest = postings.get(0);
+            if (postings.size() == 1) {
+                for (long position = offset; position < Math.min(rarest.size, offset + limit); position++) {
+                    page.add(ids[rarest.documents[(int) position]]);
+                }
+                return rarest.size;
+            }
+
+            char[] searched = text.toCharArray();
+            int[] cursors = new int[postings.size()];
+            long total = 0;
+            while (cursors[0] < rarest.size) {
+                int document = rarest.documents[cursors[0]];
+                int next = document;
+                for (int i = 1; i < cursors.length && next == document; i++) {
+                    Postings other = postings.get(i);
+                    cursors[i] = other.seek(cursors[i], document);
+                    if (cursors[i] == other.size) {
+                        return total;
+                    }
+                    next = other.documents[cursors[i]];
+                }
+
+                if (next != document) {
+                    cursors[0] = rarest.seek(cursors[0], next);
+                    continue;
+                }
+                if (contains(document, searched)) {
+                    if (total >= offset && page.size() < limit) {
+                        page.add(ids[document]);
+                    }
+                    total++;
+                }
+                cursors[0]++;
+            }
+            return total;
+        }
+
+        /**
+         * Each trigram is packed in a long with 16 bits per character
+         * @param text
+         * @return the distinct trigrams of the text
+         */
+        private static Set<Long> trigrams(String text) {
+            Set<Long> trigrams = new HashSet<>();
+            for (int i = 0; i + 3 <= text.length(); i++) {
+                trigrams.add(((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2));
+            }
+            return trigrams;
+        }
+    }
+
+    /**
+     * Sorted document numbers of a trigram, new dealers get the highest number so adding them is an append
+     */
+    private static final class Postings {
+
+        private int[] documents = new int[4];
+        private int size;
+
+        void add(int document) {
+            int position = size == 0 || documents[size - 1] < document
+                    ? size
+                    : -Arrays.binarySearch(documents, 0, size, document) - 1;
+            if (position < 0) {
+                return;
+            }
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+            }
+            System.arraycopy(documents, position, documents, position + 1, size - position);
+            documents[position] = document;
+            size++;
+        }
+
+        void remove(int document) {
+            int position = Arrays.binarySearch(documents, 0, size, document);
+            if (position >= 0) {
+                System.arraycopy(documents, position + 1, documents, position, size - position - 1);
+                size--;
+            }
+        }
+
+        /**
+         * Galloping search from the cursor, the cost depends on how far the document is and not on the size of the list
+         * @param from
+         * @param document
+         * @return the position of the first document not lower than the searched one, size when there's none
+         */
+        int seek(int from, int document) {
+            if (from >= size || documents[from] >= document) {
+                return from;
+            }
+            int bound = 1;
+            while (from + bound < size && documents[from + bound] < document) {
+                bound <<= 1;
+            }
+            int position = Arrays.binarySearch(documents, from + (bound >> 1) + 1, Math.min(from + bound + 1, size), document);
+            return position >= 0 ? position : -position - 1;
+        }
+    }
+}
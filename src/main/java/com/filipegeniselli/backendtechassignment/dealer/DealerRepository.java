@@ -1,14 +1,80 @@
 package com.filipegeniselli.backendtechassignment.dealer;
 
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface DealerRepository extends JpaRepository<Dealer, UUID> {
     Page<Dealer> findByNameLikeIgnoreCase(String name, Pageable pageable);
 
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select d from Dealer d where d.id = :id")
+    Optional<Dealer> findForUpdateById(@Param("id") UUID id);
+
+    /**
+     * Must run with the dealer row locked, a null counter stays null until it's backfilled
+     * @param id
+     * @param delta
+     * @return
+     */
+    @Modifying
+    @Query("update Dealer d set d.publishedListings = d.publishedListings + :delta where d.id = :id")
+    int addPublishedListings(@Param("id") UUID id, @Param("delta") int delta);
+
+    @Modifying
+    @Query("update Dealer d set d.publishedListings = (select count(l) from Listing l where l.dealer = d " +
+            "and l.status = com.filipegeniselli.backendtechassignment.listings.ListingStatus.PUBLISHED) " +
+            "where d.id = :id")
+    int countPublishedListings(@Param("id") UUID id);
+
+    /**
+     * Each amount is added to the stamp of the status, it's 0 for the status that didn't change
+     * @param id
+     * @param draft
+     * @param published
+     * @param removed
+     * @return
+     */
+    @Modifying
+    @Query("update Dealer d set d.draftListingsStamp = d.draftListingsStamp + :draft, " +
+            "d.publishedListingsStamp = d.publishedListingsStamp + :published, " +
+            "d.removedListingsStamp = d.removedListingsStamp + :removed " +
+            "where d.id = :id")
+    int addListingsStamps(@Param("id") UUID id,
+                          @Param("draft") int draft,
+                          @Param("published") int published,
+                          @Param("removed") int removed);
+
+    @Query("select new com.filipegeniselli.backendtechassignment.dealer.DealerName(d.id, d.name, d.version) " +
+            "from Dealer d where d.id > :after order by d.id")
+    List<DealerName> findNames(@Param("after") UUID after, Pageable pageable);
+
+    @Query("select d.id from Dealer d where d.publishedListings is null order by d.id")
+    List<UUID> findWithoutPublishedListings(Pageable pageable);
+
+    /**
+     * Uses the (tier, publishedListings) index, only the dealers above the limit are read
+     * @param tier
+     * @param limit
+     * @param after
+     * @param pageable
+     * @return
+     */
+    @Query("select d.id from Dealer d where d.tier = :tier and d.publishedListings > :limit and d.id > :after order by d.id")
+    List<UUID> findOverLimitDealers(@Param("tier") DealerTierLimit tier,
+                                    @Param("limit") int limit,
+                                    @Param("after") UUID after,
+                                    Pageable pageable);
+
 }
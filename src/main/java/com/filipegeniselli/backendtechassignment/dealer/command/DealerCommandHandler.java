@@ -1,10 +1,17 @@
 package com.filipegeniselli.backendtechassignment.dealer.command;
 
 import com.filipegeniselli.backendtechassignment.dealer.Dealer;
+import com.filipegeniselli.backendtechassignment.dealer.DealerCache;
+import com.filipegeniselli.backendtechassignment.dealer.DealerNameIndex;
 import com.filipegeniselli.backendtechassignment.dealer.DealerRepository;
+import com.filipegeniselli.backendtechassignment.dealer.DealerTierLimit;
 import com.filipegeniselli.backendtechassignment.exception.NotFoundException;
+import com.filipegeniselli.backendtechassignment.id.SnowflakeIdGenerator;
+import com.filipegeniselli.backendtechassignment.listings.ListingProjector;
+import com.filipegeniselli.backendtechassignment.listings.command.TierLimitReconciler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.UUID;
 
@@ -12,46 +19,82 @@ import java.util.UUID;
 public class DealerCommandHandler implements DealerCommandService{
 
     private final DealerRepository dealerRepository;
+    private final TierLimitReconciler tierLimitReconciler;
+    private final DealerCache dealerCache;
+    private final DealerNameIndex dealerNameIndex;
+    private final ListingProjector listingProjector;
+    private final SnowflakeIdGenerator idGenerator;
+    private final TransactionTemplate transactionTemplate;
 
     @Autowired
-    public DealerCommandHandler(DealerRepository dealerRepository) {
+    public DealerCommandHandler(DealerRepository dealerRepository,
+                                TierLimitReconciler tierLimitReconciler,
+                                DealerCache dealerCache,
+                                DealerNameIndex dealerNameIndex,
+                                ListingProjector listingProjector,
+                                SnowflakeIdGenerator idGenerator,
+                                TransactionTemplate transactionTemplate) {
         this.dealerRepository = dealerRepository;
+        this.tierLimitReconciler = tierLimitReconciler;
+        this.dealerCache = dealerCache;
+        this.dealerNameIndex = dealerNameIndex;
+        this.listingProjector = listingProjector;
+        this.idGenerator = idGenerator;
+        this.transactionTemplate = transactionTemplate;
     }
 
     @Override
     public UUID handle(CreateUpdateDealer command) {
         Dealer dealer = Dealer.DealerBuilder.aDealer()
-                .id(UUID.randomUUID())
+                .id(idGenerator.nextUuid())
                 .name(command.name())
                 .tier(command.tier())
                 .allowRemovingOldListings(command.allowRemovingOldListings())
                 .build();
 
         dealer.checkIsValid();
-        dealerRepository.save(dealer);
+        Dealer saved = dealerRepository.save(dealer);
+        dealerNameIndex.put(saved.getId(), saved.getName(), saved.getVersion());
 
-        return dealer.getId();
+        return saved.getId();
     }
 
     /**
      * The update dealer feature should be associated with a payment service
      * The dealer should only be able to change the tier limit if a new payment is made
+     *
+     * A tier change is reconciled right after the update, the listings over the new limit are removed.
+     * The listings of the read model get the new name of the dealer in the transaction of the update,
+     * the cache and the name index are updated after it commits
      * @param dealerId
      * @param command
      */
     @Override
     public void handle(UUID dealerId, CreateUpdateDealer command) {
+        UpdatedDealer updated = transactionTemplate.execute(status -> {
+            Dealer dealer = dealerRepository
+                    .findById(dealerId)
+                    .orElseThrow(() -> new NotFoundException("Couldn't find the dealer"));
 
-        Dealer dealer = dealerRepository
-                .findById(dealerId)
-                .orElseThrow(() -> new NotFoundException("Couldn't find the dealer"));
+            DealerTierLimit previousTier = dealer.getTier();
+            dealer.setName(command.name());
+            dealer.setTier(command.tier());
+            dealer.setAllowRemovingOldListings(command.allowRemovingOldListings());
 
-        dealer.setName(command.name());
-        dealer.setTier(command.tier());
-        dealer.setAllowRemovingOldListings(command.allowRemovingOldListings());
+            dealer.checkIsValid();
+            // Flushed to get the new version
+            Dealer saved = dealerRepository.saveAndFlush(dealer);
+            listingProjector.dealerChanged(dealerId, saved.getName(), saved.getVersion());
+            return new UpdatedDealer(saved, previousTier);
+        });
+        dealerCache.invalidate(dealerId);
+        dealerNameIndex.put(dealerId, updated.dealer().getName(), updated.dealer().getVersion());
 
-        dealer.checkIsValid();
-        dealerRepository.save(dealer);
+        if (updated.previousTier() != updated.dealer().getTier()) {
+            tierLimitReconciler.reconcile(dealerId);
+        }
     }
 
+    private record UpdatedDealer(Dealer dealer, DealerTierLimit previousTier) {
+    }
 }
@@ -2,37 +2,66 @@ package com.filipegeniselli.backendtechassignment.dealer.query;
 
 import com.filipegeniselli.backendtechassignment.PageInfo;
 import com.filipegeniselli.backendtechassignment.PagedResult;
+import com.filipegeniselli.backendtechassignment.datasource.ReadsFromReplica;
+import com.filipegeniselli.backendtechassignment.datasource.ReplicaRoute;
+import com.filipegeniselli.backendtechassignment.dealer.CachedDealer;
 import com.filipegeniselli.backendtechassignment.dealer.Dealer;
+import com.filipegeniselli.backendtechassignment.dealer.DealerCache;
 import com.filipegeniselli.backendtechassignment.dealer.DealerDto;
+import com.filipegeniselli.backendtechassignment.dealer.DealerNameIndex;
 import com.filipegeniselli.backendtechassignment.dealer.DealerRepository;
+import com.filipegeniselli.backendtechassignment.dealer.DealerTierLimit;
 import com.filipegeniselli.backendtechassignment.exception.NotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
 @Service
+@ReadsFromReplica
+@Transactional(readOnly = true)
 public class DealerQueryHandler implements DealerQueryService {
 
     private final DealerRepository dealerRepository;
+    private final DealerCache dealerCache;
+    private final DealerNameIndex dealerNameIndex;
 
     @Autowired
-    public DealerQueryHandler(DealerRepository dealerRepository) {
+    public DealerQueryHandler(DealerRepository dealerRepository,
+                              DealerCache dealerCache,
+                              DealerNameIndex dealerNameIndex) {
         this.dealerRepository = dealerRepository;
+        this.dealerCache = dealerCache;
+        this.dealerNameIndex = dealerNameIndex;
     }
 
     @Override
     public DealerDto handle(FindById query) {
-        Dealer dealer = dealerRepository
-                .findById(query.dealerId())
+        CachedDealer dealer = dealerCache
+                .find(query.dealerId())
                 .orElseThrow(() -> new NotFoundException("Could not find Dealer with the requested Id"));
 
-        return convertEntityToDto(dealer);
+        return convertToDto(dealer.id(), dealer.name(), dealer.tier(), dealer.allowRemovingOldListings(), dealer.version());
     }
 
+    /**
+     * The DealerNameIndex finds the ids of the page, only the dealers of the page are read from the database.
+     * The index is updated after the commits on the primary, the dealers are read from it, a replica behind
+     * wouldn't have the new ones. The like query is used while the index is not ready
+     * @param query
+     * @return
+     */
     @Override
     public PagedResult<DealerDto> handle(FindAllWithFilters query) {
-        Page<Dealer> result = dealerRepository.findByNameLikeIgnoreCase(query.name(), query.pageRequest());
+        Page<Dealer> result = dealerNameIndex.search(query.name(), query.pageRequest())
+                .map(this::loadDealers)
+                .orElseGet(() -> dealerRepository.findByNameLikeIgnoreCase(query.namePattern(), query.pageRequest()));
 
         return new PagedResult<>(result
                 .get()
@@ -44,15 +73,29 @@ public class DealerQueryHandler implements DealerQueryService {
 
     }
 
+    private Page<Dealer> loadDealers(Page<UUID> ids) {
+        Map<UUID, Dealer> dealers = ReplicaRoute.primaryReads(() -> dealerRepository.findAllById(ids.getContent()))
+                .stream()
+                .collect(Collectors.toMap(Dealer::getId, Function.identity()));
+
+        return ids.map(dealers::get);
+    }
+
     private DealerDto convertEntityToDto(Dealer entity) {
+        return convertToDto(entity.getId(), entity.getName(), entity.getTier(), entity.getAllowRemovingOldListings(),
+                entity.getVersion());
+    }
+
+    private DealerDto convertToDto(UUID id, String name, DealerTierLimit tier, Boolean allowRemovingOldListings, long version) {
         return new DealerDto(
-                entity.getName(),
-                entity.getTier(),
-                entity.getAllowRemovingOldListings(),
+                name,
+                tier,
+                allowRemovingOldListings,
                 UriComponentsBuilder
                         .fromPath("/dealer/{id}")
-                        .buildAndExpand(entity.getId())
-                        .toString()
+                        .buildAndExpand(id)
+                        .toString(),
+                version
         );
     }
 }
@@ -4,8 +4,7 @@ import org.springframework.data.domain.PageRequest;
 
 public record FindAllWithFilters(String name, PageRequest pageRequest) {
 
-    @Override
-    public String name() {
+    public String namePattern() {
         if (name == null)
             return "%%";
 
@@ -1,5 +1,6 @@
 package com.filipegeniselli.backendtechassignment.exception;
 
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -29,6 +30,18 @@ public class GenericExceptionHandler extends ResponseEntityExceptionHandler {
                 .body(new ErrorMessage(HttpStatus.CONFLICT.value(), exception.getMessage()));
     }
 
+    /**
+     * Two requests changed the same entity at the same time, the version of the entity didn't match on the update
+     */
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public ResponseEntity<ErrorMessage> handleOptimisticLockingFailure(OptimisticLockingFailureException exception, WebRequest request) {
+        logger.error("Concurrent change", exception);
+        return ResponseEntity
+                .status(HttpStatus.CONFLICT)
+                .body(new ErrorMessage(HttpStatus.CONFLICT.value(), "The resource was changed by another request, please try again"));
+    }
+
     @ExceptionHandler(BadRequestException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public ResponseEntity<ErrorMessage> handleBadRequestException(BadRequestException exception, WebRequest request) {
@@ -39,6 +52,15 @@ public class GenericExceptionHandler extends ResponseEntityExceptionHandler {
                 .body(new ErrorMessage(HttpStatus.BAD_REQUEST.value(), exception.getMessage()));
     }
 
+    @ExceptionHandler(ServiceUnavailableException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ResponseEntity<ErrorMessage> handleServiceUnavailableException(ServiceUnavailableException exception, WebRequest request) {
+        logger.warn(exception.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(new ErrorMessage(HttpStatus.SERVICE_UNAVAILABLE.value(), exception.getMessage()));
+    }
+
     @ExceptionHandler(Throwable.class)
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public ResponseEntity<ErrorMessage> handleThrowable(Throwable exception, WebRequest request) {
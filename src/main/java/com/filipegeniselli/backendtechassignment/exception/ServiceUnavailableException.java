@@ -0,0 +1,12 @@
+package com.filipegeniselli.backendtechassignment.exception;
+
+import java.io.Serializable;
+
+public class ServiceUnavailableException extends RuntimeException implements Serializable {
+
+    public static final long serialVersionUID = 1L;
+
+    public ServiceUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,131 @@
+package com.filipegeniselli.backendtechassignment.id;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Gives the node id of this instance to the SnowflakeIdGenerator.
+ *
+ * A fixed id-generator.node-id is used as it is, the deployment must give a different one to each instance,
+ * e.g. the ordinal of the pod. With the default -1 the node id is leased from the node_id_lease table:
+ * the first node id without a lease, or with an expired one, is taken when the application starts,
+ * the lease is renewed every id-generator.lease-renewal and released when the application stops.
+ * Two instances taking the same node id conflict on the primary key or on the expiration, and the loser tries the next.
+ *
+ * An instance that couldn't renew its lease for a whole id-generator.lease-duration may have lost the node id
+ * to another instance, it takes a new one on the next renewal. The lease expiration uses the clock of each instance,
+ * the lease duration must be much longer than the difference between the clocks.
+ */
+@Component
+public class NodeIdAssignment {
+
+    private static final Logger logger = LoggerFactory.getLogger(NodeIdAssignment.class);
+
+    private final NodeIdLeaseRepository nodeIdLeaseRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int fixedNodeId;
+    private final Duration leaseDuration;
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+    private volatile int nodeId = -1;
+
+    @Autowired
+    public NodeIdAssignment(NodeIdLeaseRepository nodeIdLeaseRepository,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${id-generator.node-id:-1}") int fixedNodeId,
+                            @Value("${id-generator.lease-duration:PT10M}") Duration leaseDuration) {
+        if (fixedNodeId >= SnowflakeIdGenerator.MAX_NODES) {
+            throw new IllegalArgumentException("The id-generator.node-id must be lower than " + SnowflakeIdGenerator.MAX_NODES);
+        }
+        this.nodeIdLeaseRepository = nodeIdLeaseRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.fixedNodeId = fixedNodeId;
+        this.leaseDuration = leaseDuration;
+    }
+
+    @PostConstruct
+    public void assign() {
+        nodeId = fixedNodeId >= 0 ? fixedNodeId : lease();
+        logger.info("Generating ids as the node {}", nodeId);
+    }
+
+    public int nodeId() {
+        return nodeId;
+    }
+
+    @Scheduled(fixedDelayString = "${id-generator.lease-renewal:PT1M}",
+            initialDelayString = "${id-generator.lease-renewal:PT1M}")
+    public void renew() {
+        if (fixedNodeId >= 0) {
+            return;
+        }
+        Integer renewed = transactionTemplate.execute(status ->
+                nodeIdLeaseRepository.renew(nodeId, owner, LocalDateTime.now().plus(leaseDuration)));
+        if (renewed == null || renewed == 0) {
+            int lost = nodeId;
+            nodeId = lease();
+            logger.error("The lease of the node id {} expired, generating ids as the node {}", lost, nodeId);
+        }
+    }
+
+    @PreDestroy
+    public void release() {
+        if (fixedNodeId < 0) {
+            transactionTemplate.executeWithoutResult(status -> nodeIdLeaseRepository.release(nodeId, owner));
+        }
+    }
+
+    private int lease() {
+        for (int attempt = 0; attempt < SnowflakeIdGenerator.MAX_NODES; attempt++) {
+            LocalDateTime now = LocalDateTime.now();
+            Map<Integer, NodeIdLease> leases = nodeIdLeaseRepository.findAll().stream()
+                    .collect(Collectors.toMap(NodeIdLease::getNodeId, Function.identity()));
+
+            int candidate = -1;
+            for (int id = 0; id < SnowflakeIdGenerator.MAX_NODES && candidate < 0; id++) {
+                NodeIdLease lease = leases.get(id);
+                if (lease == null || lease.getExpiresAt().isBefore(now)) {
+                    candidate = id;
+                }
+            }
+            if (candidate < 0) {
+                throw new IllegalStateException("All the " + SnowflakeIdGenerator.MAX_NODES + " node ids are leased");
+            }
+
+            if (take(candidate, leases.containsKey(candidate), now)) {
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("Couldn't lease a node id");
+    }
+
+    private boolean take(int candidate, boolean expired, LocalDateTime now) {
+        LocalDateTime expiresAt = now.plus(leaseDuration);
+        try {
+            return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                if (expired) {
+                    return nodeIdLeaseRepository.takeExpired(candidate, owner, expiresAt, now) == 1;
+                }
+                nodeIdLeaseRepository.insert(candidate, owner, expiresAt);
+                return true;
+            }));
+        } catch (DataIntegrityViolationException e) {
+            return false;
+        }
+    }
+}
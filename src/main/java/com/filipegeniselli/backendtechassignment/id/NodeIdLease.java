@@ -0,0 +1,32 @@
+package com.filipegeniselli.backendtechassignment.id;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+import java.time.LocalDateTime;
+
+/**
+ * A node id taken by an instance of the application until the lease expires
+ */
+@Entity
+public class NodeIdLease {
+
+    @Id
+    private Integer nodeId;
+
+    private String owner;
+
+    private LocalDateTime expiresAt;
+
+    public Integer getNodeId() {
+        return nodeId;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+}
@@ -0,0 +1,46 @@
+package com.filipegeniselli.backendtechassignment.id;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+
+public interface NodeIdLeaseRepository extends JpaRepository<NodeIdLease, Integer> {
+
+    /*
+     * The primary key makes two instances inserting the same node id fail
+     */
+    @Modifying
+    @Query(value = "insert into node_id_lease (node_id, owner, expires_at) values (:nodeId, :owner, :expiresAt)",
+            nativeQuery = true)
+    void insert(@Param("nodeId") int nodeId,
+                @Param("owner") String owner,
+                @Param("expiresAt") LocalDateTime expiresAt);
+
+    /**
+     * Only one of the instances taking the same expired lease updates it
+     * @param nodeId
+     * @param owner
+     * @param expiresAt
+     * @param now
+     * @return 1 when the lease was taken
+     */
+    @Modifying
+    @Query("update NodeIdLease l set l.owner = :owner, l.expiresAt = :expiresAt where l.nodeId = :nodeId and l.expiresAt < :now")
+    int takeExpired(@Param("nodeId") int nodeId,
+                    @Param("owner") String owner,
+                    @Param("expiresAt") LocalDateTime expiresAt,
+                    @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("update NodeIdLease l set l.expiresAt = :expiresAt where l.nodeId = :nodeId and l.owner = :owner")
+    int renew(@Param("nodeId") int nodeId,
+              @Param("owner") String owner,
+              @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Modifying
+    @Query("delete from NodeIdLease l where l.nodeId = :nodeId and l.owner = :owner")
+    int release(@Param("nodeId") int nodeId, @Param("owner") String owner);
+}
@@ -0,0 +1,18 @@
+package com.filipegeniselli.backendtechassignment.id;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Opts the id of an entity into the SnowflakeIdGenerator, a UUID id gets nextUuid and a Long id gets nextId.
+ * An id set before the insert is kept, so the code that needs the id before the insert can still set it
+ */
+@IdGeneratorType(SnowflakeIdentifierGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface SnowflakeId {
+}
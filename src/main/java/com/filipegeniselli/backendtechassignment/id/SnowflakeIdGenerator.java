@@ -0,0 +1,133 @@
+package com.filipegeniselli.backendtechassignment.id;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Time ordered ids with the layout described on the Dealer, a 64-bit long with
+ * - 1 bit reserved, always 0
+ * - 41 bits for the milliseconds since 2023-01-01 UTC, enough until 2092
+ * - 10 bits for the node id, assigned by the NodeIdAssignment
+ * - 12 bits for the sequence inside the millisecond
+ *
+ * The entities keep their UUID columns, nextUuid has the same fields in the layout of a version 7 UUID:
+ * the unix milliseconds on the first 48 bits, the sequence after the version and the node id after the variant,
+ * the remaining 52 bits are random so the ids are not guessable. Postgres compares the uuid type byte by byte,
+ * so the new ids are inserted at the end of the primary key index instead of a random page. The rows created
+ * with random UUIDs keep their ids, nothing needs to be migrated, see the README.
+ *
+ * The last timestamp and sequence are one AtomicLong changed with compare and set, no thread waits for another.
+ * The generator never goes back in time: when the clock is behind the last timestamp, after an adjustment of the
+ * clock or after 4096 ids in the same millisecond, the sequence keeps counting and overflows to the next millisecond,
+ * borrowing the time until the clock catches up.
+ */
+@Component
+public class SnowflakeIdGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnowflakeIdGenerator.class);
+
+    static final long EPOCH = Instant.parse("2023-01-01T00:00:00Z").toEpochMilli();
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    public static final int MAX_NODES = 1 << NODE_BITS;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final long RANDOM_MASK = (1L << 52) - 1;
+
+    private final IntSupplier nodeId;
+    private final LongSupplier clock;
+    private final AtomicLong last = new AtomicLong();
+    private final AtomicBoolean behindClock = new AtomicBoolean();
+
+    @Autowired
+    public SnowflakeIdGenerator(NodeIdAssignment nodeIdAssignment) {
+        this(nodeIdAssignment::nodeId, System::currentTimeMillis);
+        SnowflakeIdentifierGenerator.use(this);
+    }
+
+    /**
+     * @param nodeId read on every id, it can change when the node id is assigned again
+     * @param clock the current unix milliseconds
+     */
+    public SnowflakeIdGenerator(IntSupplier nodeId, LongSupplier clock) {
+        this.nodeId = nodeId;
+        this.clock = clock;
+    }
+
+    /**
+     * @return a positive id, greater than all the ids generated before by this instance
+     */
+    public long nextId() {
+        long state = nextState();
+        return ((state >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS))
+                | ((long) nodeId.getAsInt() << SEQUENCE_BITS)
+                | (state & SEQUENCE_MASK);
+    }
+
+    /**
+     * @return a version 7 UUID, greater than all the UUIDs generated before by this instance
+     */
+    public UUID nextUuid() {
+        long state = nextState();
+        long unixMillis = EPOCH + (state >>> SEQUENCE_BITS);
+        long mostSignificant = (unixMillis << 16) | 0x7000L | (state & SEQUENCE_MASK);
+        long leastSignificant = 0x8000000000000000L
+                | ((long) nodeId.getAsInt() << 52)
+                | (ThreadLocalRandom.current().nextLong() & RANDOM_MASK);
+        return new UUID(mostSignificant, leastSignificant);
+    }
+
+    /**
+     * @param id
+     * @return the moment the id was generated
+     */
+    public static Instant timestampOf(long id) {
+        return Instant.ofEpochMilli(EPOCH + (id >>> (NODE_BITS + SEQUENCE_BITS)));
+    }
+
+    /**
+     * @param id
+     * @return the moment a version 7 UUID was generated, null for the random ones
+     */
+    public static Instant timestampOf(UUID id) {
+        return id.version() == 7 ? Instant.ofEpochMilli(id.getMostSignificantBits() >>> 16) : null;
+    }
+
+    /**
+     * @return the milliseconds since the EPOCH shifted over the sequence, plus the sequence
+     */
+    private long nextState() {
+        while (true) {
+            long current = last.get();
+            long now = clock.getAsLong() - EPOCH;
+            long next = now > current >>> SEQUENCE_BITS
+                    ? now << SEQUENCE_BITS
+                    : current + 1;
+            if (last.compareAndSet(current, next)) {
+                warnWhenBehind(now, next >>> SEQUENCE_BITS);
+                return next;
+            }
+        }
+    }
+
+    private void warnWhenBehind(long now, long timestamp) {
+        boolean behind = timestamp - now > 1;
+        if (behind != behindClock.get() && behindClock.compareAndSet(!behind, behind)) {
+            if (behind) {
+                logger.warn("The clock is {} ms behind the last id, the ids borrow the time until it catches up", timestamp - now);
+            } else {
+                logger.info("The clock caught up with the ids");
+            }
+        }
+    }
+}
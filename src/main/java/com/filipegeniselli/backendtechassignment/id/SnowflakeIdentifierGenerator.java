@@ -0,0 +1,48 @@
+package com.filipegeniselli.backendtechassignment.id;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.hibernate.generator.EventTypeSets;
+import org.hibernate.id.factory.spi.CustomIdGeneratorCreationContext;
+
+import java.lang.reflect.Member;
+import java.util.EnumSet;
+import java.util.UUID;
+
+/**
+ * Hibernate creates the generators itself, the SnowflakeIdGenerator of the application registers itself here
+ */
+public class SnowflakeIdentifierGenerator implements BeforeExecutionGenerator {
+
+    private static volatile SnowflakeIdGenerator generator;
+
+    private final boolean uuid;
+
+    public SnowflakeIdentifierGenerator(SnowflakeId annotation, Member member, CustomIdGeneratorCreationContext context) {
+        this.uuid = context.getProperty().getType().getReturnedClass() == UUID.class;
+    }
+
+    static void use(SnowflakeIdGenerator idGenerator) {
+        generator = idGenerator;
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object owner, Object currentValue, EventType eventType) {
+        Object assigned = session.getEntityPersister(null, owner).getIdentifier(owner, session);
+        if (assigned != null) {
+            return assigned;
+        }
+
+        SnowflakeIdGenerator idGenerator = generator;
+        if (idGenerator == null) {
+            throw new IllegalStateException("The SnowflakeIdGenerator was not created");
+        }
+        return uuid ? idGenerator.nextUuid() : idGenerator.nextId();
+    }
+
+    @Override
+    public EnumSet<EventType> getEventTypes() {
+        return EventTypeSets.INSERT_ONLY;
+    }
+}
@@ -0,0 +1,103 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import com.filipegeniselli.backendtechassignment.dealer.Dealer;
+import jakarta.persistence.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * A removed listing moved out of the listing table by the ListingArchiver, with the same columns and ids.
+ * The rows are only inserted by the archive statement and read by the history queries, they never change,
+ * so there are only getters and no version check.
+ *
+ * The listing table keeps only the draft, published and recently removed listings and its indexes stay small,
+ * the history of a dealer is read with the (dealer_id, removedAt, id) index of this table
+ */
+@Entity
+@Table(indexes = {
+        @Index(name = "idx_archived_listing_dealer_removed", columnList = "dealer_id, removedAt, id")
+})
+public class ArchivedListing {
+
+    @Id
+    private UUID id;
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "dealer_id")
+    private Dealer dealer;
+    private String vehicle;
+    private VehicleCondition condition;
+    private BigDecimal price;
+    private String color;
+    private VehicleTransmission transmission;
+    private Integer mileage;
+    private VehicleFuelType fuelType;
+    private ListingStatus status;
+    private LocalDateTime createdAt;
+    private LocalDateTime publishedAt;
+    private LocalDateTime removedAt;
+    @Column(nullable = false)
+    private Long version;
+    private LocalDateTime archivedAt;
+
+    public UUID getId() {
+        return id;
+    }
+
+    public Dealer getDealer() {
+        return dealer;
+    }
+
+    public String getVehicle() {
+        return vehicle;
+    }
+
+    public VehicleCondition getCondition() {
+        return condition;
+    }
+
+    public BigDecimal getPrice() {
+        return price;
+    }
+
+    public String getColor() {
+        return color;
+    }
+
+    public VehicleTransmission getTransmission() {
+        return transmission;
+    }
+
+    public Integer getMileage() {
+        return mileage;
+    }
+
+    public VehicleFuelType getFuelType() {
+        return fuelType;
+    }
+
+    public ListingStatus getStatus() {
+        return status;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getPublishedAt() {
+        return publishedAt;
+    }
+
+    public LocalDateTime getRemovedAt() {
+        return removedAt;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public LocalDateTime getArchivedAt() {
+        return archivedAt;
+    }
+}
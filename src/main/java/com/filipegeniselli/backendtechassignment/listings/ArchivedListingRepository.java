@@ -0,0 +1,64 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import com.filipegeniselli.backendtechassignment.listings.query.ListingView;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface ArchivedListingRepository extends JpaRepository<ArchivedListing, UUID> {
+
+    String ARCHIVED_LISTING_VIEW = "select new com.filipegeniselli.backendtechassignment.listings.query.ListingView(" +
+            "l.id, d.id, d.name, l.vehicle, l.condition, l.price, l.color, l.transmission, l.mileage, l.fuelType, " +
+            "l.status, l.createdAt, l.publishedAt, l.removedAt, l.version, d.version) " +
+            "from ArchivedListing l join l.dealer d ";
+
+    /**
+     * Copies the removed listings to the archive with one insert ... select, the rows don't go through the application.
+     * Must run in the same transaction that deletes them from the listing table
+     * @param ids
+     * @param removed the ordinal of the REMOVED status
+     * @param archivedAt
+     * @return the amount of archived listings
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO archived_listing (id, dealer_id, vehicle, condition, price, color, transmission, mileage, fuel_type,
+                                          status, created_at, published_at, removed_at, version, archived_at)
+            SELECT l.id, l.dealer_id, l.vehicle, l.condition, l.price, l.color, l.transmission, l.mileage, l.fuel_type,
+                   l.status, l.created_at, l.published_at, l.removed_at, l.version, :archivedAt
+            FROM listing l
+            WHERE l.id IN :ids AND l.status = :removed
+            """, nativeQuery = true)
+    int archive(@Param("ids") Collection<UUID> ids,
+                @Param("removed") int removed,
+                @Param("archivedAt") LocalDateTime archivedAt);
+
+    @Query(ARCHIVED_LISTING_VIEW + "where d.id = :dealerId and l.id = :listingId")
+    Optional<ListingView> findViewByDealerAndId(@Param("dealerId") UUID dealerId, @Param("listingId") UUID listingId);
+
+    /*
+     * Keyset pagination of the history of a dealer in the order the listings were removed,
+     * the pageable is only used to limit the amount of rows
+     */
+
+    @Query(ARCHIVED_LISTING_VIEW + "where d.id = :dealerId order by l.removedAt, l.id")
+    List<ListingView> findFirstPage(@Param("dealerId") UUID dealerId, Pageable pageable);
+
+    @Query(ARCHIVED_LISTING_VIEW + "where d.id = :dealerId " +
+            "and (l.removedAt > :removedAt or (l.removedAt = :removedAt and l.id > :id)) " +
+            "order by l.removedAt, l.id")
+    List<ListingView> findPageAfter(@Param("dealerId") UUID dealerId,
+                                    @Param("removedAt") LocalDateTime removedAt,
+                                    @Param("id") UUID id,
+                                    Pageable pageable);
+}
@@ -0,0 +1,6 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import java.util.List;
+
+public record BatchCreateResultDto(List<BatchCreatedListingDto> data, int created, int failed) {
+}
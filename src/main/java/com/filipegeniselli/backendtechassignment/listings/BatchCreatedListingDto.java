@@ -0,0 +1,7 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BatchCreatedListingDto(int index, String url, String error) {
+}
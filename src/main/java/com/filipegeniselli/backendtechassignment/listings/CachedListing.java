@@ -0,0 +1,56 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/**
+ * The serialized json of a published listing without the dealer, from the first field after it to the end of the object.
+ * The dealer is written before it on every response, so a change on the dealer name doesn't invalidate the listings.
+ *
+ * The complete document of the single listing endpoint is kept with the dealer it was built with,
+ * and is rebuilt when the dealer is different.
+ */
+final class CachedListing {
+
+    private final SerializedString body;
+    private final long version;
+    private volatile PublishedDocument document;
+
+    /**
+     * @param body
+     * @param version of the listing the body was serialized from
+     */
+    CachedListing(String body, long version) {
+        this.body = new SerializedString(body);
+        this.version = version;
+        // Encodes the bytes once, every write copies them to the output buffer
+        this.body.asUnquotedUTF8();
+    }
+
+    SerializedString body() {
+        return body;
+    }
+
+    long version() {
+        return version;
+    }
+
+    int length() {
+        return body.asUnquotedUTF8().length;
+    }
+
+    PublishedDocument document() {
+        return document;
+    }
+
+    void document(PublishedDocument document) {
+        this.document = document;
+    }
+
+    /**
+     * @param dealer the dealer written on the document
+     * @param json
+     * @param gzipped the json compressed with gzip, null when the compression is disabled
+     */
+    record PublishedDocument(ListingDealerDto dealer, byte[] json, byte[] gzipped) {
+    }
+}
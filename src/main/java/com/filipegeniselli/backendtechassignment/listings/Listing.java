@@ -1,8 +1,10 @@
 package com.filipegeniselli.backendtechassignment.listings;
 
 import com.filipegeniselli.backendtechassignment.dealer.Dealer;
+import com.filipegeniselli.backendtechassignment.id.SnowflakeId;
 import com.filipegeniselli.backendtechassignment.exception.BadRequestException;
 import jakarta.persistence.*;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -23,10 +25,16 @@ import java.util.stream.Collectors;
  *
  */
 @Entity
-@Table
+@Table(indexes = {
+        @Index(name = "idx_listing_dealer_status_created", columnList = "dealer_id, status, createdAt, id"),
+        @Index(name = "idx_listing_dealer_status_published", columnList = "dealer_id, status, publishedAt, id"),
+        @Index(name = "idx_listing_status_published", columnList = "status, publishedAt, id"),
+        @Index(name = "idx_listing_status_removed", columnList = "status, removedAt, id")
+})
 public class Listing {
 
     @Id
+    @SnowflakeId
     private UUID id;
     @ManyToOne
     @JoinColumn(name = "dealer_id")
@@ -42,6 +50,14 @@ public class Listing {
     private LocalDateTime createdAt;
     private LocalDateTime publishedAt;
     private LocalDateTime removedAt;
+    /**
+     * Incremented on every change, the update statements that change the status increment it as well.
+     * The default fills the rows created before the column existed
+     */
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private Long version;
 
     public void checkIsValid() {
         List<String> errorMessages = new ArrayList<>();
@@ -163,6 +179,10 @@ public class Listing {
         return removedAt;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
     public void setRemovedAt(LocalDateTime removedAt) {
         this.removedAt = removedAt;
     }
@@ -0,0 +1,13 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import java.util.Collection;
+
+/**
+ * Inserts new listings with JDBC batching, the listings are persisted without the select done by save
+ * for entities with an assigned id, the persistence context is flushed and cleared after every batch
+ */
+public interface ListingBatchRepository {
+
+    void insertAll(Collection<Listing> listings);
+
+}
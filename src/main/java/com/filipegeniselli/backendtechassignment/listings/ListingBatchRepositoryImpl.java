@@ -0,0 +1,37 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.Collection;
+
+/**
+ * The flush interval is the same of the hibernate batch size, every flush sends one batch of inserts
+ * and the cleared persistence context keeps the memory and the dirty checking independent of the amount of listings
+ */
+class ListingBatchRepositoryImpl implements ListingBatchRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int batchSize;
+
+    @Override
+    public void insertAll(Collection<Listing> listings) {
+        int pending = 0;
+        for (Listing listing : listings) {
+            entityManager.persist(listing);
+
+            if (++pending == batchSize) {
+                entityManager.flush();
+                entityManager.clear();
+                pending = 0;
+            }
+        }
+
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
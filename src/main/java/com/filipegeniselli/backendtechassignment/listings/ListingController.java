@@ -1,51 +1,240 @@
 package com.filipegeniselli.backendtechassignment.listings;
 
+import com.filipegeniselli.backendtechassignment.AcceptEncoding;
+import com.filipegeniselli.backendtechassignment.ETags;
 import com.filipegeniselli.backendtechassignment.PagedResult;
+import com.filipegeniselli.backendtechassignment.dealer.CachedDealer;
+import com.filipegeniselli.backendtechassignment.datasource.ReplicaRoute;
+import com.filipegeniselli.backendtechassignment.dealer.DealerCache;
+import com.filipegeniselli.backendtechassignment.listings.command.ChangeListingsStatus;
+import com.filipegeniselli.backendtechassignment.listings.command.ChangeListingsStatusResult;
+import com.filipegeniselli.backendtechassignment.listings.command.CreateListingResult;
+import com.filipegeniselli.backendtechassignment.listings.command.CreateListings;
 import com.filipegeniselli.backendtechassignment.listings.command.CreateUpdateListing;
 import com.filipegeniselli.backendtechassignment.listings.command.ListingCommandService;
+import com.filipegeniselli.backendtechassignment.listings.command.ListingWriteBehind;
 import com.filipegeniselli.backendtechassignment.listings.command.PublishListing;
+import com.filipegeniselli.backendtechassignment.listings.command.QueueListing;
+import com.filipegeniselli.backendtechassignment.listings.query.ExportListings;
+import com.filipegeniselli.backendtechassignment.listings.query.FindAllAfterCursor;
+import com.filipegeniselli.backendtechassignment.listings.query.FindArchived;
+import com.filipegeniselli.backendtechassignment.listings.query.FindArchivedById;
 import com.filipegeniselli.backendtechassignment.listings.query.FindAllWithFilters;
 import com.filipegeniselli.backendtechassignment.listings.query.FindById;
+import com.filipegeniselli.backendtechassignment.listings.query.FindListingsVersion;
+import com.filipegeniselli.backendtechassignment.listings.query.FindPublishedAt;
+import com.filipegeniselli.backendtechassignment.listings.query.FindTransitions;
+import com.filipegeniselli.backendtechassignment.listings.query.FindVersionById;
 import com.filipegeniselli.backendtechassignment.listings.query.ListingQueryService;
+import com.filipegeniselli.backendtechassignment.listings.query.ListingVersion;
+import com.filipegeniselli.backendtechassignment.listings.query.ListingsVersion;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @RestController
 @RequestMapping("/{dealerId}/listings")
 public class ListingController {
 
+    private static final String PREFER = "Prefer";
+    private static final String PREFERENCE_APPLIED = "Preference-Applied";
+    private static final String RESPOND_ASYNC = "respond-async";
+
     private final ListingQueryService listingQueryService;
     private final ListingCommandService listingCommandService;
+    private final ListingPageWriter listingPageWriter;
+    private final PublishedListingCache publishedListingCache;
+    private final DealerCache dealerCache;
+    private final ListingWriteBehind listingWriteBehind;
 
     @Autowired
-    public ListingController(ListingQueryService listingQueryService, ListingCommandService listingCommandService) {
+    public ListingController(ListingQueryService listingQueryService,
+                             ListingCommandService listingCommandService,
+                             ListingPageWriter listingPageWriter,
+                             PublishedListingCache publishedListingCache,
+                             DealerCache dealerCache,
+                             ListingWriteBehind listingWriteBehind) {
         this.listingQueryService = listingQueryService;
         this.listingCommandService = listingCommandService;
+        this.listingPageWriter = listingPageWriter;
+        this.publishedListingCache = publishedListingCache;
+        this.dealerCache = dealerCache;
+        this.listingWriteBehind = listingWriteBehind;
     }
 
+    /**
+     * The page is written by the ListingPageWriter straight to the response,
+     * the query runs before the body is returned so errors are still handled by the exception handler.
+     *
+     * The ETag comes from the dealer version and the listings stamp of the status, both read before the page,
+     * a page read after a change has at most an older ETag and is sent again on the next request
+     */
     @GetMapping
-    public PagedResult<ListingDto> getListings(@PathVariable("dealerId") UUID dealerId,
-                                               @RequestParam(required = true) ListingStatus status,
-                                               @RequestParam(value="page", defaultValue = "0") int page,
-                                               @RequestParam(value="pageSize", defaultValue = "20") int pageSize) {
-        return listingQueryService.handle(dealerId, new FindAllWithFilters(status, PageRequest.of(page, pageSize)));
+    public ResponseEntity<StreamingResponseBody> getListings(@PathVariable("dealerId") UUID dealerId,
+                                                             @RequestParam(required = true) ListingStatus status,
+                                                             @RequestParam(value="page", defaultValue = "0") int page,
+                                                             @RequestParam(value="pageSize", defaultValue = "20") int pageSize,
+                                                             @RequestParam(value="cursor", required = false) String cursor,
+                                                             WebRequest request) {
+        Optional<ListingsVersion> version = listingQueryService.handle(dealerId, new FindListingsVersion(status));
+        if (version.isPresent() &&
+                request.checkNotModified(ETags.listings(version.get().dealerVersion(), version.get().stamp()))) {
+            return null;
+        }
+
+        long stamp = publishedListingCache.stamp();
+        PagedResult<ListingDto> result = cursor != null
+                ? listingQueryService.handle(dealerId, new FindAllAfterCursor(status, cursor, pageSize))
+                : listingQueryService.handle(dealerId, new FindAllWithFilters(status, PageRequest.of(page, pageSize)));
+
+        return ResponseEntity
+                .ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(outputStream -> listingPageWriter.write(result, outputStream, stamp));
+    }
+
+    /**
+     * Streams all the listings of the dealer as newline-delimited json, the query runs while the body is written
+     * and the rows are not collected in memory, so it's not limited by the amount of listings of the dealer
+     */
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportListings(@PathVariable("dealerId") UUID dealerId,
+                                                                @RequestParam(value = "status", required = false) ListingStatus status) {
+        return ResponseEntity
+                .ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(outputStream -> {
+                    try (ListingPageWriter.LineWriter lines = listingPageWriter.lines(outputStream)) {
+                        listingQueryService.handle(dealerId, new ExportListings(status), lines::write);
+                    }
+                });
+    }
+
+    /**
+     * The listings removed longer than listing-archive.retention ago, moved out of the live listings by the ListingArchiver
+     */
+    @GetMapping("/history")
+    public PagedResult<ListingDto> getArchivedListings(@PathVariable("dealerId") UUID dealerId,
+                                                       @RequestParam(value = "pageSize", defaultValue = "20") int pageSize,
+                                                       @RequestParam(value = "cursor", required = false) String cursor) {
+        return listingQueryService.handle(dealerId, new FindArchived(cursor, pageSize));
+    }
+
+    @GetMapping("/history/{listingId}")
+    public ListingDto getArchivedListing(@PathVariable("dealerId") UUID dealerId,
+                                         @PathVariable("listingId") UUID listingId) {
+        return listingQueryService.handle(dealerId, new FindArchivedById(listingId));
+    }
+
+    /**
+     * The listings of the dealer that were published at the moment, answered from the ListingJournal,
+     * the moment is an ISO date time like 2023-06-01T10:00:00
+     */
+    @GetMapping("/published-at")
+    public ListingsPublishedAtDto getListingsPublishedAt(@PathVariable("dealerId") UUID dealerId,
+                                                         @RequestParam("at") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime at) {
+        return listingQueryService.handle(dealerId, new FindPublishedAt(at));
+    }
+
+    /**
+     * Every status the listing had and the time it spent published, also for the archived listings
+     */
+    @GetMapping("/{listingId}/transitions")
+    public ListingTransitionsDto getListingTransitions(@PathVariable("dealerId") UUID dealerId,
+                                                       @PathVariable("listingId") UUID listingId) {
+        return listingQueryService.handle(dealerId, new FindTransitions(listingId));
     }
 
+    /**
+     * A published listing on the PublishedListingCache is answered with the cached json and the dealer from the DealerCache,
+     * without going to the database. The compressed copy is sent when the client accepts gzip.
+     *
+     * The ETag has the versions of the listing and the dealer. When the listing is not cached, a request with If-None-Match
+     * reads only the versions first and the listing is not loaded when they didn't change
+     */
     @GetMapping("/{listingId}")
-    public ListingDto getListing(@PathVariable("dealerId") UUID dealerId,
-                                 @PathVariable("listingId") UUID listingId) {
+    public ResponseEntity<byte[]> getListing(@PathVariable("dealerId") UUID dealerId,
+                                             @PathVariable("listingId") UUID listingId,
+                                             @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                             WebRequest request) throws IOException {
+        boolean gzip = publishedListingCache.gzip() && AcceptEncoding.accepts(acceptEncoding, "gzip");
+        long stamp = publishedListingCache.stamp();
+        String url = ListingUrls.listing(dealerId, listingId);
 
-        return listingQueryService.handle(dealerId, new FindById(listingId));
+        Optional<CachedDealer> dealer = dealerCache.find(dealerId);
+        CachedListing cached = dealer.isPresent() ? publishedListingCache.find(url) : null;
+
+        ListingPageWriter.ListingDocument document;
+        if (cached != null) {
+            if (request.checkNotModified(ETags.listing(cached.version(), dealer.get().version(), gzip))) {
+                return null;
+            }
+            document = listingPageWriter.document(cached,
+                    new ListingDealerDto(dealer.get().name(), ListingUrls.dealer(dealerId), dealer.get().version()));
+        } else {
+            if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+                ListingVersion version = listingQueryService.handle(dealerId, new FindVersionById(listingId));
+                if (request.checkNotModified(ETags.listing(version.version(), version.dealerVersion(), gzip))) {
+                    return null;
+                }
+            }
+
+            ListingDto listing = listingQueryService.handle(dealerId, new FindById(listingId));
+            if (request.checkNotModified(ETags.listing(listing.version(), listing.dealer().version(), gzip))) {
+                return null;
+            }
+            document = listingPageWriter.document(listing, stamp);
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip && document.gzipped() != null) {
+            return response
+                    .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .body(document.gzipped());
+        }
+
+        return response.body(document.json());
     }
 
+    /**
+     * With Prefer: respond-async and listing-write-behind.enabled the listing is validated, put on the
+     * ListingWriteBehind queue and answered with 202 before it's inserted, the Location is the url the listing
+     * will have and /queue/{listingId} tells when it's there. Otherwise the listing is inserted before the 201
+     */
     @PostMapping
-    public ResponseEntity<Void> createListing(@PathVariable("dealerId") UUID dealerId,
-                                              @RequestBody CreateUpdateListing newListing) {
+    public ResponseEntity<?> createListing(@PathVariable("dealerId") UUID dealerId,
+                                           @RequestHeader(value = PREFER, required = false) String prefer,
+                                           @RequestBody CreateUpdateListing newListing) {
+        if (listingWriteBehind.enabled() && prefer != null && prefer.contains(RESPOND_ASYNC)) {
+            UUID queued = listingCommandService.handle(dealerId, new QueueListing(newListing));
+
+            return ResponseEntity
+                    .accepted()
+                    .location(ServletUriComponentsBuilder
+                            .fromCurrentRequest()
+                            .path("/{id}")
+                            .buildAndExpand(queued)
+                            .toUri())
+                    .header(PREFERENCE_APPLIED, RESPOND_ASYNC)
+                    .body(new QueuedListingDto(ListingUrls.listing(dealerId, queued), QueuedListingState.QUEUED, null));
+        }
+
         UUID result = listingCommandService.handle(dealerId, newListing);
 
         return ResponseEntity
@@ -57,6 +246,46 @@ public class ListingController {
                 .build();
     }
 
+    /**
+     * The state of a listing created with Prefer: respond-async, the written listings are not tracked by the queue
+     * and are looked up on the primary, a replica could still be missing them
+     */
+    @GetMapping("/queue/{listingId}")
+    public QueuedListingDto getQueuedListing(@PathVariable("dealerId") UUID dealerId,
+                                             @PathVariable("listingId") UUID listingId) {
+        String url = ListingUrls.listing(dealerId, listingId);
+        return listingWriteBehind.status(dealerId, listingId)
+                .map(status -> new QueuedListingDto(url, status.state(), status.error()))
+                .orElseGet(() -> {
+                    ReplicaRoute.primaryReads(() -> listingQueryService.handle(dealerId, new FindVersionById(listingId)));
+                    return new QueuedListingDto(url, QueuedListingState.WRITTEN, null);
+                });
+    }
+
+    /**
+     * Creates all the valid listings of the request, the response has one result per item in the request order
+     * with the url of the created listing or the validation error
+     */
+    @PostMapping("/batch")
+    public BatchCreateResultDto createListings(@PathVariable("dealerId") UUID dealerId,
+                                               @RequestBody List<CreateUpdateListing> newListings) {
+        List<CreateListingResult> results = listingCommandService.handle(dealerId, new CreateListings(newListings));
+
+        List<BatchCreatedListingDto> items = new ArrayList<>(results.size());
+        int created = 0;
+        for (int i = 0; i < results.size(); i++) {
+            CreateListingResult result = results.get(i);
+            if (result.created()) {
+                created++;
+                items.add(new BatchCreatedListingDto(i, ListingUrls.listing(dealerId, result.listingId()), null));
+            } else {
+                items.add(new BatchCreatedListingDto(i, null, result.error()));
+            }
+        }
+
+        return new BatchCreateResultDto(items, created, results.size() - created);
+    }
+
     @PutMapping("/{listingId}")
     public ResponseEntity<Void> updateListing(@PathVariable("dealerId") UUID dealerId,
                                               @PathVariable("listingId") UUID listingId,
@@ -73,4 +302,18 @@ public class ListingController {
         return ResponseEntity.accepted().build();
     }
 
+    /**
+     * Changes the status of all the listings in the body at once, the response has the urls of the changed listings
+     * and of the published listings removed to respect the tier limit
+     */
+    @PatchMapping
+    public ListingsStatusChangeDto changeListingsStatus(@PathVariable("dealerId") UUID dealerId,
+                                                       @RequestBody ChangeListingsStatus changeListingsStatus) {
+        ChangeListingsStatusResult result = listingCommandService.handle(dealerId, changeListingsStatus);
+
+        return new ListingsStatusChangeDto(
+                result.changedListingIds().stream().map(listingId -> ListingUrls.listing(dealerId, listingId)).toList(),
+                result.evictedListingIds().stream().map(listingId -> ListingUrls.listing(dealerId, listingId)).toList());
+    }
+
 }
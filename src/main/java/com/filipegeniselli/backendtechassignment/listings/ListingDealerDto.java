@@ -1,4 +1,9 @@
 package com.filipegeniselli.backendtechassignment.listings;
 
-public record ListingDealerDto(String name, String url) {
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * @param version of the dealer, not part of the json, it's part of the ETag of the listing
+ */
+public record ListingDealerDto(String name, String url, @JsonIgnore long version) {
 }
@@ -1,8 +1,13 @@
 package com.filipegeniselli.backendtechassignment.listings;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
+/**
+ * The version is not part of the json, it's sent as the ETag with the version of the dealer
+ */
 public record ListingDto(ListingDealerDto dealer,
                          String vehicle,
                          VehicleCondition condition,
@@ -15,5 +20,6 @@ public record ListingDto(ListingDealerDto dealer,
                          LocalDateTime createdAt,
                          LocalDateTime publishedAt,
                          LocalDateTime removedAt,
-                         String url) {
+                         String url,
+                         @JsonIgnore long version) {
 }
@@ -0,0 +1,141 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Append-only history of the status of the listings, the listing table only keeps the last publishedAt and removedAt.
+ * Every ListingStatusChanged with a different status is appended as a ListingTransition inside the transaction
+ * of the change, including the creation of the draft.
+ *
+ * The published listings of a dealer at a moment are the last ListingSnapshot of the dealer before it, with the
+ * transitions between them replayed on top, so a question reads at most one snapshot interval of the journal of one
+ * dealer and never the listing table. The snapshots are taken every snapshot-interval for the dealers with transitions
+ * since the last one, snapshot-settle in the past so the transactions still running when it's taken are not missed.
+ *
+ * The history starts with the journal, the listings published before it existed are only known after their next change.
+ */
+@Component
+public class ListingJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(ListingJournal.class);
+    private static final LocalDateTime BEGINNING = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final ListingTransitionRepository listingTransitionRepository;
+    private final ListingSnapshotRepository listingSnapshotRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Duration snapshotSettle;
+    private final int chunkSize;
+
+    @Autowired
+    public ListingJournal(ListingTransitionRepository listingTransitionRepository,
+                          ListingSnapshotRepository listingSnapshotRepository,
+                          TransactionTemplate transactionTemplate,
+                          @Value("${listing-journal.enabled:true}") boolean enabled,
+                          @Value("${listing-journal.snapshot-settle:PT1M}") Duration snapshotSettle,
+                          @Value("${listing-journal.chunk-size:500}") int chunkSize) {
+        this.listingTransitionRepository = listingTransitionRepository;
+        this.listingSnapshotRepository = listingSnapshotRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.snapshotSettle = snapshotSettle;
+        this.chunkSize = chunkSize;
+    }
+
+    @EventListener
+    public void on(ListingStatusChanged event) {
+        if (!enabled || event.previousStatus() == event.status()) {
+            return;
+        }
+
+        listingTransitionRepository.save(ListingTransition.ListingTransitionBuilder.aListingTransition()
+                .dealerId(event.dealerId())
+                .listingId(event.listingId())
+                .previousStatus(event.previousStatus())
+                .status(event.status())
+                .changedAt(event.changedAt())
+                .build());
+    }
+
+    /**
+     * Must run inside a transaction
+     * @param dealerId
+     * @param at
+     * @return the listings published at the moment by id, with the time they were published
+     */
+    public Map<UUID, LocalDateTime> publishedAt(UUID dealerId, LocalDateTime at) {
+        Optional<ListingSnapshot> snapshot = listingSnapshotRepository
+                .findFirstByDealerIdAndTakenAtLessThanEqualOrderByTakenAtDesc(dealerId, at);
+        Map<UUID, LocalDateTime> published = snapshot.map(ListingSnapshot::published).orElseGet(LinkedHashMap::new);
+        LocalDateTime after = snapshot.map(ListingSnapshot::getTakenAt).orElse(BEGINNING);
+
+        for (ListingTransition transition : listingTransitionRepository.findByDealerBetween(dealerId, after, at)) {
+            if (transition.getStatus() == ListingStatus.PUBLISHED) {
+                published.put(transition.getListingId(), transition.getChangedAt());
+            } else if (transition.getPreviousStatus() == ListingStatus.PUBLISHED) {
+                published.remove(transition.getListingId());
+            }
+        }
+        return published;
+    }
+
+    /**
+     * @param dealerId
+     * @param listingId
+     * @return the transitions of the listing in the order they happened
+     */
+    public List<ListingTransition> transitions(UUID dealerId, UUID listingId) {
+        return listingTransitionRepository.findByDealerAndListing(dealerId, listingId);
+    }
+
+    @Scheduled(fixedDelayString = "${listing-journal.snapshot-interval:PT1H}",
+            initialDelayString = "${listing-journal.snapshot-interval:PT1H}")
+    public void scheduledSnapshot() {
+        if (enabled) {
+            snapshot(LocalDateTime.now().minus(snapshotSettle));
+        }
+    }
+
+    /**
+     * Takes a snapshot of the dealers with transitions between the last snapshot and takenAt, in chunks of dealers.
+     * A chunk that fails only makes the questions about its dealers replay more transitions, they still have
+     * their previous snapshot
+     * @param takenAt
+     * @return the amount of dealers with a new snapshot
+     */
+    public int snapshot(LocalDateTime takenAt) {
+        LocalDateTime last = Optional.ofNullable(listingSnapshotRepository.findLastTakenAt()).orElse(BEGINNING);
+        if (!takenAt.isAfter(last)) {
+            return 0;
+        }
+
+        List<UUID> dealerIds = new ArrayList<>(listingTransitionRepository.findDealersChangedBetween(last, takenAt));
+        dealerIds.sort(null);
+        for (int from = 0; from < dealerIds.size(); from += chunkSize) {
+            List<UUID> chunk = dealerIds.subList(from, Math.min(from + chunkSize, dealerIds.size()));
+            transactionTemplate.executeWithoutResult(status -> chunk.forEach(dealerId ->
+                    listingSnapshotRepository.save(new ListingSnapshot(dealerId, takenAt, publishedAt(dealerId, takenAt)))));
+        }
+
+        if (!dealerIds.isEmpty()) {
+            logger.info("Took the snapshot of the published listings of {} dealers at {}", dealerIds.size(), takenAt);
+        }
+        return dealerIds.size();
+    }
+}
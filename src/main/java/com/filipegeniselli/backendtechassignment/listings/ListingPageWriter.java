@@ -0,0 +1,285 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.filipegeniselli.backendtechassignment.PagedResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes listing pages straight to the output with the JsonGenerator, the result is the same json
+ * produced by the ObjectMapper for a PagedResult of ListingDto, without the bean serializer on every listing.
+ *
+ * The listings of a page share the same ListingDealerDto instance, the dealer is serialized once
+ * and written as a raw value on every listing. Field names are pre-encoded.
+ *
+ * The same listing format is used by the newline-delimited export, one listing per line.
+ *
+ * The published listings of a page are taken from the PublishedListingCache, the cached json is copied to the output
+ * after the dealer instead of being serialized again. The single listing document is built from the same json.
+ */
+@Component
+public class ListingPageWriter {
+
+    private static final SerializableString DATA = new SerializedString("data");
+    private static final SerializableString PAGE_INFO = new SerializedString("pageInfo");
+    private static final SerializableString DEALER = new SerializedString("dealer");
+    private static final SerializableString VEHICLE = new SerializedString("vehicle");
+    private static final SerializableString CONDITION = new SerializedString("condition");
+    private static final SerializableString PRICE = new SerializedString("price");
+    private static final SerializableString COLOR = new SerializedString("color");
+    private static final SerializableString TRANSMISSION = new SerializedString("transmission");
+    private static final SerializableString MILEAGE = new SerializedString("mileage");
+    private static final SerializableString FUEL_TYPE = new SerializedString("fuelType");
+    private static final SerializableString STATUS = new SerializedString("status");
+    private static final SerializableString CREATED_AT = new SerializedString("createdAt");
+    private static final SerializableString PUBLISHED_AT = new SerializedString("publishedAt");
+    private static final SerializableString REMOVED_AT = new SerializedString("removedAt");
+    private static final SerializableString URL = new SerializedString("url");
+    // The dealer is written as a number while serializing the cached body, the body is what comes after it
+    private static final String LISTING_START = "{\"dealer\":";
+    private static final SerializableString RAW_LISTING_START = new SerializedString(LISTING_START);
+    private static final String DEALER_PLACEHOLDER = "0";
+
+    private final ObjectMapper objectMapper;
+    private final PublishedListingCache publishedListingCache;
+
+    @Autowired
+    public ListingPageWriter(ObjectMapper objectMapper, PublishedListingCache publishedListingCache) {
+        this.objectMapper = objectMapper;
+        this.publishedListingCache = publishedListingCache;
+    }
+
+    public void write(PagedResult<ListingDto> page, OutputStream outputStream) throws IOException {
+        write(page, outputStream, publishedListingCache.stamp());
+    }
+
+    /**
+     * @param page
+     * @param outputStream
+     * @param stamp of the PublishedListingCache, taken before the page was read
+     * @throws IOException
+     */
+    public void write(PagedResult<ListingDto> page, OutputStream outputStream, long stamp) throws IOException {
+        try (JsonGenerator generator = objectMapper.createGenerator(StreamUtils.nonClosing(outputStream))) {
+            generator.writeStartObject();
+            generator.writeFieldName(DATA);
+            generator.writeStartArray();
+
+            DealerFragment dealer = new DealerFragment();
+            DateWriter dates = new DateWriter();
+            for (ListingDto listing : page.data()) {
+                String dealerJson = dealer.of(listing.dealer());
+                if (listing.status() == ListingStatus.PUBLISHED && publishedListingCache.enabled()) {
+                    CachedListing cached = publishedListingCache.get(listing.url(), stamp, listing.version(),
+                            () -> body(listing, dates));
+                    generator.writeRawValue(RAW_LISTING_START);
+                    generator.writeRaw(dealerJson == null ? "null" : dealerJson);
+                    generator.writeRaw(cached.body());
+                } else {
+                    writeListing(generator, listing, dealerJson, dates);
+                }
+            }
+
+            generator.writeEndArray();
+            generator.writeFieldName(PAGE_INFO);
+            generator.writeObject(page.pageInfo());
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Starts a newline-delimited json output, the generator flushes its buffer to the output stream
+     * when it's full so the memory used doesn't depend on the amount of listings written
+     * @param outputStream
+     * @return
+     * @throws IOException
+     */
+    public LineWriter lines(OutputStream outputStream) throws IOException {
+        return new LineWriter(objectMapper.createGenerator(StreamUtils.nonClosing(outputStream)));
+    }
+
+    /**
+     * Gives the json of the single listing endpoint, published listings come from the PublishedListingCache
+     * @param listing
+     * @param stamp of the PublishedListingCache, taken before the listing was read
+     * @return
+     * @throws IOException
+     */
+    public ListingDocument document(ListingDto listing, long stamp) throws IOException {
+        if (listing.status() != ListingStatus.PUBLISHED || !publishedListingCache.enabled()) {
+            return new ListingDocument(objectMapper.writeValueAsBytes(listing), null);
+        }
+
+        CachedListing cached = publishedListingCache.get(listing.url(), stamp, listing.version(),
+                () -> body(listing, new DateWriter()));
+        return document(cached, listing.dealer());
+    }
+
+    /**
+     * Gives the json of a listing already on the PublishedListingCache
+     * @param cached
+     * @param dealer
+     * @return
+     * @throws IOException
+     */
+    ListingDocument document(CachedListing cached, ListingDealerDto dealer) throws IOException {
+        CachedListing.PublishedDocument document = cached.document();
+        if (document == null || !Objects.equals(document.dealer(), dealer)) {
+            ByteArrayOutputStream json = new ByteArrayOutputStream(cached.length() + 128);
+            json.write(LISTING_START.getBytes(StandardCharsets.UTF_8));
+            json.write(dealer == null ? "null".getBytes(StandardCharsets.UTF_8) : objectMapper.writeValueAsBytes(dealer));
+            json.write(cached.body().asUnquotedUTF8());
+
+            byte[] bytes = json.toByteArray();
+            document = new CachedListing.PublishedDocument(dealer, bytes, publishedListingCache.gzip() ? gzip(bytes) : null);
+            cached.document(document);
+        }
+
+        return new ListingDocument(document.json(), document.gzipped());
+    }
+
+    private byte[] gzip(byte[] json) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(json);
+        }
+        return compressed.toByteArray();
+    }
+
+    private String body(ListingDto listing, DateWriter dates) {
+        StringWriter json = new StringWriter(512);
+        try (JsonGenerator generator = objectMapper.createGenerator(json)) {
+            writeListing(generator, listing, DEALER_PLACEHOLDER, dates);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return json.toString().substring(LISTING_START.length() + DEALER_PLACEHOLDER.length());
+    }
+
+    void writeListing(JsonGenerator generator, ListingDto listing, String dealerJson, DateWriter dates) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(DEALER);
+        if (dealerJson == null) {
+            generator.writeNull();
+        } else {
+            generator.writeRawValue(dealerJson);
+        }
+        writeString(generator, VEHICLE, listing.vehicle());
+        writeEnum(generator, CONDITION, listing.condition());
+        generator.writeFieldName(PRICE);
+        generator.writeNumber(listing.price());
+        writeString(generator, COLOR, listing.color());
+        writeEnum(generator, TRANSMISSION, listing.transmission());
+        generator.writeFieldName(MILEAGE);
+        if (listing.mileage() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(listing.mileage());
+        }
+        writeEnum(generator, FUEL_TYPE, listing.fuelType());
+        writeEnum(generator, STATUS, listing.status());
+        dates.write(generator, CREATED_AT, listing.createdAt());
+        dates.write(generator, PUBLISHED_AT, listing.publishedAt());
+        dates.write(generator, REMOVED_AT, listing.removedAt());
+        writeString(generator, URL, listing.url());
+        generator.writeEndObject();
+    }
+
+    private void writeString(JsonGenerator generator, SerializableString name, String value) throws IOException {
+        generator.writeFieldName(name);
+        generator.writeString(value);
+    }
+
+    private void writeEnum(JsonGenerator generator, SerializableString name, Enum<?> value) throws IOException {
+        generator.writeFieldName(name);
+        generator.writeString(value == null ? null : value.name());
+    }
+
+    /**
+     * Dates use the serializer configured in the ObjectMapper to keep the same format,
+     * it's resolved once instead of going through ObjectMapper.writeValue for every date
+     */
+    final class DateWriter {
+        private final SerializerProvider provider = objectMapper.getSerializerProviderInstance();
+        private JsonSerializer<Object> serializer;
+
+        void write(JsonGenerator generator, SerializableString name, LocalDateTime value) throws IOException {
+            generator.writeFieldName(name);
+            if (value == null) {
+                generator.writeNull();
+                return;
+            }
+
+            if (serializer == null) {
+                serializer = provider.findValueSerializer(LocalDateTime.class);
+            }
+            serializer.serialize(value, generator, provider);
+        }
+    }
+
+    /**
+     * @param json
+     * @param gzipped the same json compressed with gzip, null when it's not available
+     */
+    public record ListingDocument(byte[] json, byte[] gzipped) {
+    }
+
+    public final class LineWriter implements Closeable {
+        private final JsonGenerator generator;
+        private final DealerFragment dealer = new DealerFragment();
+        private final DateWriter dates = new DateWriter();
+
+        private LineWriter(JsonGenerator generator) {
+            this.generator = generator;
+            this.generator.setRootValueSeparator(null);
+        }
+
+        public void write(ListingDto listing) throws IOException {
+            writeListing(generator, listing, dealer.of(listing.dealer()), dates);
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void close() throws IOException {
+            generator.close();
+        }
+    }
+
+    /**
+     * Keeps the serialized dealer while the listings share the same instance
+     */
+    final class DealerFragment {
+        private ListingDealerDto dealer;
+        private String json;
+
+        String of(ListingDealerDto listingDealer) throws IOException {
+            if (listingDealer == null) {
+                return null;
+            }
+
+            if (listingDealer != dealer) {
+                dealer = listingDealer;
+                json = objectMapper.writeValueAsString(listingDealer);
+            }
+
+            return json;
+        }
+    }
+}
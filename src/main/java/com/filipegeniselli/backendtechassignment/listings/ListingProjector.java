@@ -0,0 +1,164 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Keeps the ListingReadModel in sync with the listing and dealer tables, synchronously, inside the transactions
+ * of the commands. The ids of the listings changed by a transaction are collected (the status changes from
+ * the ListingStatusChanged events, the edits and the archived listings from the command side) and projected
+ * again right before it commits, with one delete and one insert ... select per chunk, so a listing changed many
+ * times by a batch is copied once and the rows always have what was committed.
+ *
+ * Every listing change increments the stamps of the dealer before it's projected, the dealer row stays locked
+ * until the commit and a rename of the dealer waits for it, the rename is applied to the rows after it's saved.
+ *
+ * The read model is rebuilt in chunks once the application starts, the query handler reads the normalized tables
+ * until it's ready, the rows of listings that don't exist anymore are deleted at the end. A listing locked by a
+ * command during the rebuild is skipped, that command projects it.
+ */
+@Component
+public class ListingProjector {
+
+    private static final Logger logger = LoggerFactory.getLogger(ListingProjector.class);
+    private static final UUID FIRST_ID = new UUID(0, 0);
+    private static final int STATEMENT_IDS = 1000;
+
+    private final ListingReadModelRepository listingReadModelRepository;
+    private final ListingRepository listingRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int chunkSize;
+    private volatile boolean ready;
+
+    @Autowired
+    public ListingProjector(ListingReadModelRepository listingReadModelRepository,
+                            ListingRepository listingRepository,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${listing-read-model.enabled:true}") boolean enabled,
+                            @Value("${listing-read-model.chunk-size:1000}") int chunkSize) {
+        this.listingReadModelRepository = listingReadModelRepository;
+        this.listingRepository = listingRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return true when the queries can be answered by the read model
+     */
+    public boolean ready() {
+        return enabled && ready;
+    }
+
+    @EventListener
+    public void on(ListingStatusChanged event) {
+        changed(List.of(event.listingId()));
+    }
+
+    /**
+     * Must be called inside the transaction that changes the listings, the rows are projected before it commits
+     * @param listingIds
+     */
+    public void changed(Collection<UUID> listingIds) {
+        if (enabled) {
+            pendingIds().addAll(listingIds);
+        }
+    }
+
+    /**
+     * Called after the dealer is saved, the name and the version go to all the listings of the dealer
+     * @param dealerId
+     * @param name
+     * @param version
+     */
+    @Transactional
+    public void dealerChanged(UUID dealerId, String name, long version) {
+        if (enabled) {
+            listingReadModelRepository.updateDealer(dealerId, name, version);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        int projected = 0;
+        UUID after = FIRST_ID;
+        List<UUID> ids;
+        do {
+            UUID from = after;
+            ids = transactionTemplate.execute(status -> {
+                List<UUID> chunk = listingRepository.findIdsForProjection(from, PageRequest.of(0, chunkSize));
+                project(chunk);
+                return chunk;
+            });
+            projected += ids.size();
+            if (!ids.isEmpty()) {
+                after = ids.get(ids.size() - 1);
+            }
+        } while (ids.size() == chunkSize);
+
+        int deleted = transactionTemplate.execute(status -> listingReadModelRepository.deleteWithoutListing());
+        ready = true;
+        logger.info("Projected {} listings and deleted {} old rows of the read model in {} ms",
+                projected, deleted, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void project(Collection<UUID> listingIds) {
+        if (listingIds.isEmpty()) {
+            return;
+        }
+
+        // The native insert reads the listing table, the pending changes of the persistence context go first
+        listingReadModelRepository.flush();
+        List<UUID> ids = new ArrayList<>(listingIds);
+        for (int from = 0; from < ids.size(); from += STATEMENT_IDS) {
+            List<UUID> statementIds = ids.subList(from, Math.min(from + STATEMENT_IDS, ids.size()));
+            listingReadModelRepository.deleteByIds(statementIds);
+            listingReadModelRepository.project(statementIds, ListingStatus.PUBLISHED.ordinal());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<UUID> pendingIds() {
+        Set<UUID> pending = (Set<UUID>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Set<UUID> ids = new LinkedHashSet<>();
+            TransactionSynchronizationManager.bindResource(this, ids);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    project(ids);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(ListingProjector.this);
+                }
+            });
+            pending = ids;
+        }
+        return pending;
+    }
+}
@@ -0,0 +1,30 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import com.filipegeniselli.backendtechassignment.dealer.DealerTierLimit;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Publishes a listing with a single statement, it locks the dealer, counts the published listings,
+ * removes the oldest one when the dealer allows it and publishes the listing in one round trip.
+ * The dealer row must be locked by a previous statement of the same transaction, see ListingPublishRepositoryImpl.
+ * Only available when the database supports data-modifying CTEs, check it with supportsSingleStatementPublish
+ */
+public interface ListingPublishRepository {
+
+    boolean supportsSingleStatementPublish();
+
+    SingleStatementPublish publishInSingleStatement(UUID dealerId,
+                                                    UUID listingId,
+                                                    Map<DealerTierLimit, Integer> tierLimits,
+                                                    LocalDateTime publishedAt);
+
+    /**
+     * listingStatus is the status before the statement, it's null when the listing doesn't exist for the dealer.
+     * publishedListingId is null when the listing couldn't be published
+     */
+    record SingleStatementPublish(ListingStatus listingStatus, UUID publishedListingId, UUID evictedListingId) {
+    }
+}
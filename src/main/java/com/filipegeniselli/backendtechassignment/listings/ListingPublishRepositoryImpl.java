@@ -0,0 +1,126 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import com.filipegeniselli.backendtechassignment.dealer.DealerTierLimit;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The remaining CTEs read the statement snapshot, which is taken before the FOR UPDATE of the first one gets the lock,
+ * the caller must lock the dealer row in a previous statement of the transaction so the snapshot has the publishes
+ * committed by other instances.
+ * The target listing is excluded from the count and from the eviction, publishing an already published listing
+ * only refreshes the publishedAt and the same row is never updated twice by the statement. A dealer over the limit
+ * without a published listing to remove (a limit of 0) can't publish.
+ *
+ * The published listings counter and the listings stamps of the dealer are updated by the same statement.
+ *
+ * Enums are stored by ordinal, the values are sent as parameters to keep the SQL independent of the enum order.
+ */
+class ListingPublishRepositoryImpl implements ListingPublishRepository {
+
+    private static final String PUBLISH_STATEMENT = """
+            WITH dealer_row AS (
+                SELECT d.id,
+                       d.allow_removing_old_listings AS allow_removing,
+                       CASE d.tier WHEN :freeTier THEN :freeLimit
+                                   WHEN :basicTier THEN :basicLimit
+                                   WHEN :premiumTier THEN :premiumLimit
+                                   ELSE :businessLimit END AS tier_limit
+                FROM dealer d
+                WHERE d.id = :dealerId
+                FOR UPDATE
+            ),
+            target AS (
+                SELECT l.id, l.status
+                FROM listing l
+                WHERE l.id = :listingId AND l.dealer_id = (SELECT id FROM dealer_row)
+            ),
+            published AS (
+                SELECT count(*) AS amount
+                FROM listing l
+                WHERE l.dealer_id = (SELECT id FROM dealer_row) AND l.status = :published AND l.id <> :listingId
+            ),
+            oldest AS (
+                SELECT l.id
+                FROM listing l
+                WHERE l.dealer_id = (SELECT id FROM dealer_row) AND l.status = :published AND l.id <> :listingId
+                ORDER BY l.published_at, l.id
+                LIMIT 1
+            ),
+            decision AS (
+                SELECT t.id AS listing_id,
+                       t.status AS status,
+                       t.status <> :removed AND (p.amount < d.tier_limit
+                           OR (d.allow_removing AND EXISTS (SELECT 1 FROM oldest))) AS can_publish,
+                       t.status <> :removed AND p.amount >= d.tier_limit AND d.allow_removing AS must_evict
+                FROM dealer_row d
+                CROSS JOIN published p
+                LEFT JOIN target t ON TRUE
+            ),
+            evicted AS (
+                UPDATE listing SET status = :removed, removed_at = :now, version = version + 1
+                WHERE id = (SELECT id FROM oldest) AND (SELECT must_evict FROM decision)
+                RETURNING id
+            ),
+            published_listing AS (
+                UPDATE listing SET status = :published, published_at = :now, version = version + 1
+                WHERE id = (SELECT listing_id FROM decision) AND (SELECT can_publish FROM decision)
+                RETURNING id
+            ),
+            published_counter AS (
+                UPDATE dealer SET published_listings = published_listings
+                    + (SELECT count(*) FROM published_listing WHERE (SELECT status FROM decision) <> :published)
+                    - (SELECT count(*) FROM evicted),
+                    draft_listings_stamp = draft_listings_stamp
+                    + (SELECT count(*) FROM published_listing WHERE (SELECT status FROM decision) = :draft),
+                    published_listings_stamp = published_listings_stamp + (SELECT count(*) FROM published_listing),
+                    removed_listings_stamp = removed_listings_stamp + (SELECT count(*) FROM evicted)
+                WHERE id = (SELECT id FROM dealer_row)
+            )
+            SELECT (SELECT status FROM decision) AS status,
+                   (SELECT id FROM published_listing) AS published_id,
+                   (SELECT id FROM evicted) AS evicted_id
+            """;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public boolean supportsSingleStatementPublish() {
+        return entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices()
+                .getDialect() instanceof PostgreSQLDialect;
+    }
+
+    @Override
+    public SingleStatementPublish publishInSingleStatement(UUID dealerId,
+                                                           UUID listingId,
+                                                           Map<DealerTierLimit, Integer> tierLimits,
+                                                           LocalDateTime publishedAt) {
+        Object[] row = (Object[]) entityManager.createNativeQuery(PUBLISH_STATEMENT)
+                .setParameter("dealerId", dealerId)
+                .setParameter("listingId", listingId)
+                .setParameter("freeTier", DealerTierLimit.FREE.ordinal())
+                .setParameter("basicTier", DealerTierLimit.BASIC.ordinal())
+                .setParameter("premiumTier", DealerTierLimit.PREMIUM.ordinal())
+                .setParameter("freeLimit", tierLimits.get(DealerTierLimit.FREE))
+                .setParameter("basicLimit", tierLimits.get(DealerTierLimit.BASIC))
+                .setParameter("premiumLimit", tierLimits.get(DealerTierLimit.PREMIUM))
+                .setParameter("businessLimit", tierLimits.get(DealerTierLimit.BUSINESS))
+                .setParameter("draft", ListingStatus.DRAFT.ordinal())
+                .setParameter("published", ListingStatus.PUBLISHED.ordinal())
+                .setParameter("removed", ListingStatus.REMOVED.ordinal())
+                .setParameter("now", publishedAt)
+                .getSingleResult();
+
+        ListingStatus status = row[0] == null ? null : ListingStatus.values()[((Number) row[0]).intValue()];
+        return new SingleStatementPublish(status, (UUID) row[1], (UUID) row[2]);
+    }
+}
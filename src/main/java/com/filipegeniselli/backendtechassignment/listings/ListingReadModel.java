@@ -0,0 +1,114 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import jakarta.persistence.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Denormalized copy of the live listings shaped like the ListingDto, with the name and version of the dealer
+ * on every row, the query handler reads a page without joining the dealer.
+ *
+ * The rows are written only by the ListingProjector, from the listing and dealer tables inside the transactions
+ * that change them, so there are only getters. sortedAt is the publishedAt of the published listings and the createdAt
+ * of the others, the order of the keyset pagination, a page of any status is one range of the
+ * (dealerId, status, sortedAt, id) index.
+ */
+@Entity
+@Table(indexes = {
+        @Index(name = "idx_listing_read_model_dealer_status_sorted", columnList = "dealerId, status, sortedAt, id"),
+        @Index(name = "idx_listing_read_model_dealer_created", columnList = "dealerId, createdAt, id")
+})
+public class ListingReadModel {
+
+    @Id
+    private UUID id;
+    @Column(nullable = false)
+    private UUID dealerId;
+    private String dealerName;
+    @Column(nullable = false)
+    private Long dealerVersion;
+    private String vehicle;
+    private VehicleCondition condition;
+    private BigDecimal price;
+    private String color;
+    private VehicleTransmission transmission;
+    private Integer mileage;
+    private VehicleFuelType fuelType;
+    private ListingStatus status;
+    private LocalDateTime createdAt;
+    private LocalDateTime publishedAt;
+    private LocalDateTime removedAt;
+    private LocalDateTime sortedAt;
+    @Column(nullable = false)
+    private Long version;
+
+    public UUID getId() {
+        return id;
+    }
+
+    public UUID getDealerId() {
+        return dealerId;
+    }
+
+    public String getDealerName() {
+        return dealerName;
+    }
+
+    public Long getDealerVersion() {
+        return dealerVersion;
+    }
+
+    public String getVehicle() {
+        return vehicle;
+    }
+
+    public VehicleCondition getCondition() {
+        return condition;
+    }
+
+    public BigDecimal getPrice() {
+        return price;
+    }
+
+    public String getColor() {
+        return color;
+    }
+
+    public VehicleTransmission getTransmission() {
+        return transmission;
+    }
+
+    public Integer getMileage() {
+        return mileage;
+    }
+
+    public VehicleFuelType getFuelType() {
+        return fuelType;
+    }
+
+    public ListingStatus getStatus() {
+        return status;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getPublishedAt() {
+        return publishedAt;
+    }
+
+    public LocalDateTime getRemovedAt() {
+        return removedAt;
+    }
+
+    public LocalDateTime getSortedAt() {
+        return sortedAt;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,116 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import com.filipegeniselli.backendtechassignment.listings.query.ListingVersion;
+import com.filipegeniselli.backendtechassignment.listings.query.ListingView;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+@Repository
+public interface ListingReadModelRepository extends JpaRepository<ListingReadModel, UUID> {
+
+    String READ_MODEL_VIEW = "select new com.filipegeniselli.backendtechassignment.listings.query.ListingView(" +
+            "r.id, r.dealerId, r.dealerName, r.vehicle, r.condition, r.price, r.color, r.transmission, r.mileage, r.fuelType, " +
+            "r.status, r.createdAt, r.publishedAt, r.removedAt, r.version, r.dealerVersion) " +
+            "from ListingReadModel r ";
+
+    /**
+     * Copies the listings and the name of their dealer with one insert ... select, the listings that don't exist
+     * anymore have no row to copy. Must run after the rows of the same ids are deleted
+     * @param ids
+     * @param published the ordinal of the PUBLISHED status
+     * @return the amount of projected listings
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO listing_read_model (id, dealer_id, dealer_name, dealer_version, vehicle, condition, price, color,
+                                            transmission, mileage, fuel_type, status, created_at, published_at, removed_at,
+                                            sorted_at, version)
+            SELECT l.id, d.id, d.name, d.version, l.vehicle, l.condition, l.price, l.color,
+                   l.transmission, l.mileage, l.fuel_type, l.status, l.created_at, l.published_at, l.removed_at,
+                   CASE WHEN l.status = :published THEN l.published_at ELSE l.created_at END, l.version
+            FROM listing l
+            JOIN dealer d ON d.id = l.dealer_id
+            WHERE l.id IN :ids
+            """, nativeQuery = true)
+    int project(@Param("ids") Collection<UUID> ids, @Param("published") int published);
+
+    @Modifying
+    @Query("delete from ListingReadModel r where r.id in :ids")
+    int deleteByIds(@Param("ids") Collection<UUID> ids);
+
+    /**
+     * The version only goes forward, a rename applied after a newer one doesn't replace it
+     * @param dealerId
+     * @param name
+     * @param version
+     * @return
+     */
+    @Modifying
+    @Query("update ListingReadModel r set r.dealerName = :name, r.dealerVersion = :version " +
+            "where r.dealerId = :dealerId and r.dealerVersion < :version")
+    int updateDealer(@Param("dealerId") UUID dealerId, @Param("name") String name, @Param("version") long version);
+
+    @Modifying
+    @Query("delete from ListingReadModel r where not exists (select l.id from Listing l where l.id = r.id)")
+    int deleteWithoutListing();
+
+    @Query(value = READ_MODEL_VIEW + "where r.dealerId = :dealerId and r.status = :status order by r.sortedAt, r.id",
+            countQuery = "select count(r) from ListingReadModel r where r.dealerId = :dealerId and r.status = :status")
+    Page<ListingView> findViewsByDealerAndStatus(@Param("dealerId") UUID dealerId,
+                                                 @Param("status") ListingStatus status,
+                                                 Pageable pageable);
+
+    @Query(READ_MODEL_VIEW + "where r.dealerId = :dealerId and r.id = :listingId")
+    Optional<ListingView> findViewByDealerAndId(@Param("dealerId") UUID dealerId, @Param("listingId") UUID listingId);
+
+    @Query("select new com.filipegeniselli.backendtechassignment.listings.query.ListingVersion(r.version, r.dealerVersion) " +
+            "from ListingReadModel r where r.dealerId = :dealerId and r.id = :listingId")
+    Optional<ListingVersion> findVersionByDealerAndId(@Param("dealerId") UUID dealerId, @Param("listingId") UUID listingId);
+
+    @Query(READ_MODEL_VIEW + "where r.id in :listingIds " +
+            "and r.status = com.filipegeniselli.backendtechassignment.listings.ListingStatus.PUBLISHED")
+    List<ListingView> findPublishedViewsByIds(@Param("listingIds") Collection<UUID> listingIds);
+
+    /*
+     * Keyset pagination queries, published listings are sorted by publishedAt and the remaining status by createdAt,
+     * both are the sortedAt of the row so every status reads the same index
+     */
+
+    @Query(READ_MODEL_VIEW + "where r.dealerId = :dealerId and r.status = :status order by r.sortedAt, r.id")
+    List<ListingView> findFirstPage(@Param("dealerId") UUID dealerId,
+                                    @Param("status") ListingStatus status,
+                                    Pageable pageable);
+
+    @Query(READ_MODEL_VIEW + "where r.dealerId = :dealerId and r.status = :status " +
+            "and (r.sortedAt > :sortedAt or (r.sortedAt = :sortedAt and r.id > :id)) " +
+            "order by r.sortedAt, r.id")
+    List<ListingView> findPageAfter(@Param("dealerId") UUID dealerId,
+                                    @Param("status") ListingStatus status,
+                                    @Param("sortedAt") LocalDateTime sortedAt,
+                                    @Param("id") UUID id,
+                                    Pageable pageable);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(READ_MODEL_VIEW + "where r.dealerId = :dealerId order by r.createdAt, r.id")
+    Stream<ListingView> streamViewsByDealer(@Param("dealerId") UUID dealerId);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(READ_MODEL_VIEW + "where r.dealerId = :dealerId and r.status = :status order by r.createdAt, r.id")
+    Stream<ListingView> streamViewsByDealerAndStatus(@Param("dealerId") UUID dealerId,
+                                                     @Param("status") ListingStatus status);
+}
@@ -1,24 +1,188 @@
 package com.filipegeniselli.backendtechassignment.listings;
 
+import com.filipegeniselli.backendtechassignment.catalog.CatalogListing;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import com.filipegeniselli.backendtechassignment.listings.command.ArchiveCandidate;
+import com.filipegeniselli.backendtechassignment.listings.command.PublishedListingEntry;
+import com.filipegeniselli.backendtechassignment.listings.query.ListingVersion;
+import com.filipegeniselli.backendtechassignment.listings.query.ListingView;
+import com.filipegeniselli.backendtechassignment.listings.query.ListingsStamps;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.LockOptions;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @java.lang.SuppressWarnings("java:S100")
 @Repository
-public interface ListingRepository extends JpaRepository<Listing, UUID> {
+public interface ListingRepository extends JpaRepository<Listing, UUID>, ListingPublishRepository, ListingBatchRepository {
 
-    Page<Listing> findByDealer_IdAndStatus(@NonNull UUID id, @NonNull ListingStatus status, Pageable pageable);
+    String LISTING_VIEW = "select new com.filipegeniselli.backendtechassignment.listings.query.ListingView(" +
+            "l.id, d.id, d.name, l.vehicle, l.condition, l.price, l.color, l.transmission, l.mileage, l.fuelType, " +
+            "l.status, l.createdAt, l.publishedAt, l.removedAt, l.version, d.version) " +
+            "from Listing l join l.dealer d ";
+
+    @Query(value = LISTING_VIEW + "where d.id = :dealerId and l.status = :status",
+            countQuery = "select count(l) from Listing l where l.dealer.id = :dealerId and l.status = :status")
+    Page<ListingView> findViewsByDealerAndStatus(@Param("dealerId") UUID dealerId,
+                                                 @Param("status") ListingStatus status,
+                                                 Pageable pageable);
+
+    @Query(LISTING_VIEW + "where d.id = :dealerId and l.id = :listingId")
+    Optional<ListingView> findViewByDealerAndId(@Param("dealerId") UUID dealerId, @Param("listingId") UUID listingId);
+
+    @Query("select new com.filipegeniselli.backendtechassignment.listings.query.ListingVersion(l.version, d.version) " +
+            "from Listing l join l.dealer d where d.id = :dealerId and l.id = :listingId")
+    Optional<ListingVersion> findVersionByDealerAndId(@Param("dealerId") UUID dealerId, @Param("listingId") UUID listingId);
+
+    @Query("select new com.filipegeniselli.backendtechassignment.listings.query.ListingsStamps(d.version, " +
+            "d.draftListingsStamp, d.publishedListingsStamp, d.removedListingsStamp) " +
+            "from Dealer d where d.id = :dealerId")
+    Optional<ListingsStamps> findListingsStamps(@Param("dealerId") UUID dealerId);
 
     Listing findFirstByDealer_IdAndStatusOrderByPublishedAtAsc(UUID id, ListingStatus status);
 
     Optional<Listing> findByDealer_IdAndId(@NonNull UUID dealerId, @NonNull UUID listingId);
 
+    List<Listing> findByDealer_IdAndIdIn(@NonNull UUID dealerId, @NonNull Collection<UUID> listingIds);
+
     long countByDealer_IdAndStatus(@NonNull UUID id, @NonNull ListingStatus status);
 
+    @Query(LISTING_VIEW + "where l.id in :listingIds " +
+            "and l.status = com.filipegeniselli.backendtechassignment.listings.ListingStatus.PUBLISHED")
+    List<ListingView> findPublishedViewsByIds(@Param("listingIds") Collection<UUID> listingIds);
+
+    String CATALOG_LISTING = "select new com.filipegeniselli.backendtechassignment.catalog.CatalogListing(" +
+            "l.id, l.vehicle, l.condition, l.price, l.color, l.transmission, l.mileage, l.fuelType, l.status, l.publishedAt) " +
+            "from Listing l ";
+
+    @Query(CATALOG_LISTING + "where l.id in :listingIds")
+    List<CatalogListing> findCatalogListings(@Param("listingIds") Collection<UUID> listingIds);
+
+    /*
+     * The published listings of all the dealers in the order they were published, read in chunks
+     * with the (status, publishedAt, id) index
+     */
+    @Query(CATALOG_LISTING + "where l.status = com.filipegeniselli.backendtechassignment.listings.ListingStatus.PUBLISHED " +
+            "order by l.publishedAt, l.id")
+    List<CatalogListing> findFirstPublishedCatalogListings(Pageable pageable);
+
+    @Query(CATALOG_LISTING + "where l.status = com.filipegeniselli.backendtechassignment.listings.ListingStatus.PUBLISHED " +
+            "and (l.publishedAt > :publishedAt or (l.publishedAt = :publishedAt and l.id > :id)) " +
+            "order by l.publishedAt, l.id")
+    List<CatalogListing> findPublishedCatalogListingsAfter(@Param("publishedAt") LocalDateTime publishedAt,
+                                                           @Param("id") UUID id,
+                                                           Pageable pageable);
+
+    @Query("select new com.filipegeniselli.backendtechassignment.listings.command.PublishedListingEntry(l.id, l.publishedAt) " +
+            "from Listing l where l.dealer.id = :dealerId and l.status = com.filipegeniselli.backendtechassignment.listings.ListingStatus.PUBLISHED")
+    List<PublishedListingEntry> findPublishedEntries(@Param("dealerId") UUID dealerId);
+
+    @Modifying
+    @Query("update Listing l set l.status = com.filipegeniselli.backendtechassignment.listings.ListingStatus.REMOVED, l.removedAt = :removedAt, " +
+            "l.version = l.version + 1 " +
+            "where l.id = :id and l.status = com.filipegeniselli.backendtechassignment.listings.ListingStatus.PUBLISHED")
+    int removePublishedListing(@Param("id") UUID id, @Param("removedAt") LocalDateTime removedAt);
+
+    @Modifying
+    @Query("update Listing l set l.status = com.filipegeniselli.backendtechassignment.listings.ListingStatus.REMOVED, l.removedAt = :removedAt, " +
+            "l.version = l.version + 1 " +
+            "where l.id in :ids and l.status = com.filipegeniselli.backendtechassignment.listings.ListingStatus.PUBLISHED")
+    int removePublishedListings(@Param("ids") Collection<UUID> ids, @Param("removedAt") LocalDateTime removedAt);
+
+    @Query("select l.id from Listing l where l.dealer.id = :dealerId " +
+            "and l.status = com.filipegeniselli.backendtechassignment.listings.ListingStatus.PUBLISHED " +
+            "order by l.publishedAt, l.id")
+    List<UUID> findOldestPublishedIds(@Param("dealerId") UUID dealerId, Pageable pageable);
+
+    /*
+     * The oldest removed listings with the (status, removedAt, id) index, locked until they are archived.
+     * Rows locked by another archiver are skipped on postgres, so two instances archive different chunks
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = AvailableSettings.JAKARTA_LOCK_TIMEOUT, value = "" + LockOptions.SKIP_LOCKED))
+    @Query("select new com.filipegeniselli.backendtechassignment.listings.command.ArchiveCandidate(l.id, l.dealer.id) " +
+            "from Listing l where l.status = com.filipegeniselli.backendtechassignment.listings.ListingStatus.REMOVED " +
+            "and l.removedAt < :removedBefore order by l.removedAt, l.id")
+    List<ArchiveCandidate> findRemovedForArchive(@Param("removedBefore") LocalDateTime removedBefore, Pageable pageable);
+
+    /*
+     * The listings of the read model rebuild, in chunks ordered by id. The rows are locked until they are projected,
+     * the rows locked by a command are skipped, the command projects them itself before it commits
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = AvailableSettings.JAKARTA_LOCK_TIMEOUT, value = "" + LockOptions.SKIP_LOCKED))
+    @Query("select l.id from Listing l where l.id > :after order by l.id")
+    List<UUID> findIdsForProjection(@Param("after") UUID after, Pageable pageable);
+
+    @Modifying
+    @Query("delete from Listing l where l.id in :ids " +
+            "and l.status = com.filipegeniselli.backendtechassignment.listings.ListingStatus.REMOVED")
+    int deleteRemovedListings(@Param("ids") Collection<UUID> ids);
+
+    /*
+     * Keyset pagination queries, the pageable is only used to limit the amount of rows, no count query is executed.
+     * Published listings are sorted by publishedAt and the remaining status by createdAt
+     */
+
+    @Query(LISTING_VIEW + "where d.id = :dealerId and l.status = :status " +
+            "order by l.createdAt, l.id")
+    List<ListingView> findFirstPageOrderByCreatedAt(@Param("dealerId") UUID dealerId,
+                                                    @Param("status") ListingStatus status,
+                                                    Pageable pageable);
+
+    @Query(LISTING_VIEW + "where d.id = :dealerId and l.status = :status " +
+            "and (l.createdAt > :createdAt or (l.createdAt = :createdAt and l.id > :id)) " +
+            "order by l.createdAt, l.id")
+    List<ListingView> findPageAfterOrderByCreatedAt(@Param("dealerId") UUID dealerId,
+                                                    @Param("status") ListingStatus status,
+                                                    @Param("createdAt") LocalDateTime createdAt,
+                                                    @Param("id") UUID id,
+                                                    Pageable pageable);
+
+    @Query(LISTING_VIEW + "where d.id = :dealerId and l.status = :status " +
+            "order by l.publishedAt, l.id")
+    List<ListingView> findFirstPageOrderByPublishedAt(@Param("dealerId") UUID dealerId,
+                                                      @Param("status") ListingStatus status,
+                                                      Pageable pageable);
+
+    @Query(LISTING_VIEW + "where d.id = :dealerId and l.status = :status " +
+            "and (l.publishedAt > :publishedAt or (l.publishedAt = :publishedAt and l.id > :id)) " +
+            "order by l.publishedAt, l.id")
+    List<ListingView> findPageAfterOrderByPublishedAt(@Param("dealerId") UUID dealerId,
+                                                      @Param("status") ListingStatus status,
+                                                      @Param("publishedAt") LocalDateTime publishedAt,
+                                                      @Param("id") UUID id,
+                                                      Pageable pageable);
+
+    /*
+     * Export queries, the rows are read with a scrollable cursor in batches of the fetch size.
+     * The projection is not managed by the persistence context so nothing accumulates while the stream is consumed
+     */
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(LISTING_VIEW + "where d.id = :dealerId order by l.createdAt, l.id")
+    Stream<ListingView> streamViewsByDealer(@Param("dealerId") UUID dealerId);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(LISTING_VIEW + "where d.id = :dealerId and l.status = :status order by l.createdAt, l.id")
+    Stream<ListingView> streamViewsByDealerAndStatus(@Param("dealerId") UUID dealerId,
+                                                     @Param("status") ListingStatus status);
+
 }
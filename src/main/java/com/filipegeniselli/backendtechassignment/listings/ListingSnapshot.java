@@ -0,0 +1,82 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import com.filipegeniselli.backendtechassignment.id.SnowflakeId;
+import jakarta.persistence.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The published listings of a dealer at takenAt, written by the ListingJournal so a question about a moment only
+ * replays the transitions after the last snapshot before it. A snapshot is only written for the dealers that had
+ * transitions since the previous one, the older snapshot still answers for the others.
+ *
+ * The listings are one binary column, 28 bytes per listing: the two halves of the id, then the seconds and the
+ * nanoseconds of the time it was published
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_listing_snapshot_dealer_taken", columnList = "dealerId, takenAt"))
+public class ListingSnapshot {
+
+    private static final int ENTRY_BYTES = 28;
+
+    @Id
+    @SnowflakeId
+    private Long id;
+    @Column(nullable = false)
+    private UUID dealerId;
+    @Column(nullable = false)
+    private LocalDateTime takenAt;
+    private int listings;
+    @JdbcTypeCode(SqlTypes.LONG32VARBINARY)
+    @Column(nullable = false)
+    private byte[] published;
+
+    protected ListingSnapshot() {
+    }
+
+    /**
+     * @param dealerId
+     * @param takenAt
+     * @param published the published listings by id, with the time they were published
+     */
+    public ListingSnapshot(UUID dealerId, LocalDateTime takenAt, Map<UUID, LocalDateTime> published) {
+        ByteBuffer buffer = ByteBuffer.allocate(published.size() * ENTRY_BYTES);
+        published.forEach((listingId, publishedAt) -> buffer
+                .putLong(listingId.getMostSignificantBits())
+                .putLong(listingId.getLeastSignificantBits())
+                .putLong(publishedAt.toEpochSecond(ZoneOffset.UTC))
+                .putInt(publishedAt.getNano()));
+        this.dealerId = dealerId;
+        this.takenAt = takenAt;
+        this.listings = published.size();
+        this.published = buffer.array();
+    }
+
+    public UUID getDealerId() {
+        return dealerId;
+    }
+
+    public LocalDateTime getTakenAt() {
+        return takenAt;
+    }
+
+    /**
+     * @return a new map that can be changed by the replay
+     */
+    public Map<UUID, LocalDateTime> published() {
+        Map<UUID, LocalDateTime> result = new LinkedHashMap<>(listings * 2);
+        ByteBuffer buffer = ByteBuffer.wrap(published);
+        for (int i = 0; i < listings; i++) {
+            UUID listingId = new UUID(buffer.getLong(), buffer.getLong());
+            result.put(listingId, LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC));
+        }
+        return result;
+    }
+}
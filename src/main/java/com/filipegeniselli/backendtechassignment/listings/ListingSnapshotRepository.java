@@ -0,0 +1,21 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface ListingSnapshotRepository extends JpaRepository<ListingSnapshot, Long> {
+
+    Optional<ListingSnapshot> findFirstByDealerIdAndTakenAtLessThanEqualOrderByTakenAtDesc(UUID dealerId, LocalDateTime at);
+
+    /**
+     * @return null when there's no snapshot
+     */
+    @Query("select max(s.takenAt) from ListingSnapshot s")
+    LocalDateTime findLastTakenAt();
+}
@@ -0,0 +1,90 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import com.filipegeniselli.backendtechassignment.dealer.DealerRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Keeps the listings stamps of the dealers, a stamp is incremented by the transactions that change
+ * any listing with its status, so a page of listings with a status can be validated with the stamp only.
+ *
+ * The stamp is incremented once per transaction, dealer and status, on the first change inside the transaction.
+ * The dealer row is updated before the listings are inserted, an insert only takes a shared lock of the dealer row
+ * for the foreign key and upgrading it after another transaction is waiting for the row could deadlock.
+ */
+@Component
+public class ListingStamps {
+
+    private final DealerRepository dealerRepository;
+
+    @Autowired
+    public ListingStamps(DealerRepository dealerRepository) {
+        this.dealerRepository = dealerRepository;
+    }
+
+    @EventListener
+    public void on(ListingStatusChanged event) {
+        Set<ListingStatus> statuses = event.previousStatus() == null
+                ? EnumSet.of(event.status())
+                : EnumSet.of(event.previousStatus(), event.status());
+        touch(event.dealerId(), statuses);
+    }
+
+    /**
+     * Must be called inside the transaction that changes the listings
+     * @param dealerId
+     * @param statuses
+     */
+    public void touch(UUID dealerId, Set<ListingStatus> statuses) {
+        Set<ListingStatus> pending = markTouched(dealerId, statuses);
+        if (!pending.isEmpty()) {
+            dealerRepository.addListingsStamps(dealerId,
+                    pending.contains(ListingStatus.DRAFT) ? 1 : 0,
+                    pending.contains(ListingStatus.PUBLISHED) ? 1 : 0,
+                    pending.contains(ListingStatus.REMOVED) ? 1 : 0);
+        }
+    }
+
+    /**
+     * For the statements that increment the stamps by themselves, the changes after them
+     * in the same transaction don't increment the stamps again
+     * @param dealerId
+     * @param statuses
+     * @return the statuses that were not touched yet in the transaction
+     */
+    public Set<ListingStatus> markTouched(UUID dealerId, Set<ListingStatus> statuses) {
+        Set<ListingStatus> touched = touchedStatuses().computeIfAbsent(dealerId, id -> EnumSet.noneOf(ListingStatus.class));
+        Set<ListingStatus> pending = EnumSet.noneOf(ListingStatus.class);
+        for (ListingStatus status : statuses) {
+            if (touched.add(status)) {
+                pending.add(status);
+            }
+        }
+        return pending;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<UUID, Set<ListingStatus>> touchedStatuses() {
+        Map<UUID, Set<ListingStatus>> touched = (Map<UUID, Set<ListingStatus>>) TransactionSynchronizationManager.getResource(this);
+        if (touched == null) {
+            touched = new HashMap<>();
+            TransactionSynchronizationManager.bindResource(this, touched);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(ListingStamps.this);
+                }
+            });
+        }
+        return touched;
+    }
+}
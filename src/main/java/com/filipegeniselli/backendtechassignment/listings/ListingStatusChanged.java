@@ -0,0 +1,22 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Published by the command handlers for every status a listing gets, including the DRAFT of a new listing
+ * (previousStatus null) and the listings removed to respect the tier limit.
+ * It's published inside the transaction, the listeners that only care about committed data
+ * should use @TransactionalEventListener
+ * @param dealerId
+ * @param listingId
+ * @param previousStatus null when the listing was created
+ * @param status
+ * @param changedAt
+ */
+public record ListingStatusChanged(UUID dealerId,
+                                   UUID listingId,
+                                   ListingStatus previousStatus,
+                                   ListingStatus status,
+                                   LocalDateTime changedAt) {
+}
@@ -0,0 +1,108 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import com.filipegeniselli.backendtechassignment.id.SnowflakeId;
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * One status change of a listing, appended by the ListingJournal in the transaction of the change and never updated.
+ * The ids are time ordered and the rows stay after the listing is archived, the history of a listing is read with the
+ * (listingId, changedAt, id) index and the changes of a dealer in a period with the (dealerId, changedAt, id) index
+ */
+@Entity
+@Table(indexes = {
+        @Index(name = "idx_listing_transition_dealer_changed", columnList = "dealerId, changedAt, id"),
+        @Index(name = "idx_listing_transition_listing_changed", columnList = "listingId, changedAt, id"),
+        @Index(name = "idx_listing_transition_changed", columnList = "changedAt")
+})
+public class ListingTransition {
+
+    @Id
+    @SnowflakeId
+    private Long id;
+    @Column(nullable = false)
+    private UUID dealerId;
+    @Column(nullable = false)
+    private UUID listingId;
+    private ListingStatus previousStatus;
+    @Column(nullable = false)
+    private ListingStatus status;
+    @Column(nullable = false)
+    private LocalDateTime changedAt;
+
+    public Long getId() {
+        return id;
+    }
+
+    public UUID getDealerId() {
+        return dealerId;
+    }
+
+    public UUID getListingId() {
+        return listingId;
+    }
+
+    public ListingStatus getPreviousStatus() {
+        return previousStatus;
+    }
+
+    public ListingStatus getStatus() {
+        return status;
+    }
+
+    public LocalDateTime getChangedAt() {
+        return changedAt;
+    }
+
+    public static final class ListingTransitionBuilder {
+        private UUID dealerId;
+        private UUID listingId;
+        private ListingStatus previousStatus;
+        private ListingStatus status;
+        private LocalDateTime changedAt;
+
+        private ListingTransitionBuilder() {
+        }
+
+        public static ListingTransitionBuilder aListingTransition() {
+            return new ListingTransitionBuilder();
+        }
+
+        public ListingTransitionBuilder dealerId(UUID dealerId) {
+            this.dealerId = dealerId;
+            return this;
+        }
+
+        public ListingTransitionBuilder listingId(UUID listingId) {
+            this.listingId = listingId;
+            return this;
+        }
+
+        public ListingTransitionBuilder previousStatus(ListingStatus previousStatus) {
+            this.previousStatus = previousStatus;
+            return this;
+        }
+
+        public ListingTransitionBuilder status(ListingStatus status) {
+            this.status = status;
+            return this;
+        }
+
+        public ListingTransitionBuilder changedAt(LocalDateTime changedAt) {
+            this.changedAt = changedAt;
+            return this;
+        }
+
+        public ListingTransition build() {
+            ListingTransition transition = new ListingTransition();
+            transition.dealerId = dealerId;
+            transition.listingId = listingId;
+            transition.previousStatus = previousStatus;
+            transition.status = status;
+            transition.changedAt = changedAt;
+            return transition;
+        }
+    }
+}
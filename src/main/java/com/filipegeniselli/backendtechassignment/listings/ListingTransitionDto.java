@@ -0,0 +1,11 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import java.time.LocalDateTime;
+
+/**
+ * @param previousStatus null on the creation of the listing
+ * @param status
+ * @param changedAt
+ */
+public record ListingTransitionDto(ListingStatus previousStatus, ListingStatus status, LocalDateTime changedAt) {
+}
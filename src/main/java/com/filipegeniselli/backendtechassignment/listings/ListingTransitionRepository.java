@@ -0,0 +1,30 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface ListingTransitionRepository extends JpaRepository<ListingTransition, Long> {
+
+    /*
+     * The transitions of a dealer in (after, until] in the order they happened, one range of the (dealerId, changedAt, id) index
+     */
+    @Query("select t from ListingTransition t where t.dealerId = :dealerId and t.changedAt > :after and t.changedAt <= :until " +
+            "order by t.changedAt, t.id")
+    List<ListingTransition> findByDealerBetween(@Param("dealerId") UUID dealerId,
+                                                @Param("after") LocalDateTime after,
+                                                @Param("until") LocalDateTime until);
+
+    @Query("select t from ListingTransition t where t.listingId = :listingId and t.dealerId = :dealerId " +
+            "order by t.changedAt, t.id")
+    List<ListingTransition> findByDealerAndListing(@Param("dealerId") UUID dealerId, @Param("listingId") UUID listingId);
+
+    @Query("select distinct t.dealerId from ListingTransition t where t.changedAt > :after and t.changedAt <= :until")
+    List<UUID> findDealersChangedBetween(@Param("after") LocalDateTime after, @Param("until") LocalDateTime until);
+}
@@ -0,0 +1,15 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import java.util.List;
+
+/**
+ * @param url
+ * @param published true when the last transition published the listing
+ * @param timeOnMarket seconds the listing was published, summed over every publication, until now when it's published
+ * @param transitions in the order they happened
+ */
+public record ListingTransitionsDto(String url,
+                                    boolean published,
+                                    long timeOnMarket,
+                                    List<ListingTransitionDto> transitions) {
+}
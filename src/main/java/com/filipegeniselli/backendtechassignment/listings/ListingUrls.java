@@ -0,0 +1,38 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import java.util.UUID;
+
+/**
+ * The listing urls only have UUIDs as variables, there's nothing to encode,
+ * so they are concatenated instead of expanded by the UriComponentsBuilder on every listing
+ */
+public final class ListingUrls {
+
+    private ListingUrls() {
+    }
+
+    public static String dealer(UUID dealerId) {
+        return "/dealers/" + dealerId;
+    }
+
+    /**
+     * The prefix is the same for all the listings of a dealer, a page builds it once and appends each listing id
+     * @param dealerId
+     * @return
+     */
+    public static String listingsOf(UUID dealerId) {
+        return "/" + dealerId + "/listings/";
+    }
+
+    public static String listing(UUID dealerId, UUID listingId) {
+        return listingsOf(dealerId) + listingId;
+    }
+
+    public static String archivedListingsOf(UUID dealerId) {
+        return listingsOf(dealerId) + "history/";
+    }
+
+    public static String archivedListing(UUID dealerId, UUID listingId) {
+        return archivedListingsOf(dealerId) + listingId;
+    }
+}
@@ -0,0 +1,11 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * @param at
+ * @param data the listings published at the moment, in the order they were published
+ */
+public record ListingsPublishedAtDto(LocalDateTime at, List<PublishedListingAtDto> data) {
+}
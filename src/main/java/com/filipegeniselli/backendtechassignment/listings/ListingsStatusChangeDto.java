@@ -0,0 +1,6 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import java.util.List;
+
+public record ListingsStatusChangeDto(List<String> changed, List<String> removed) {
+}
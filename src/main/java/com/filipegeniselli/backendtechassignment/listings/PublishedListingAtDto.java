@@ -0,0 +1,11 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import java.time.LocalDateTime;
+
+/**
+ * @param url
+ * @param publishedAt when the listing was published the last time before the moment
+ * @param timeOnMarket seconds between publishedAt and the moment
+ */
+public record PublishedListingAtDto(String url, LocalDateTime publishedAt, long timeOnMarket) {
+}
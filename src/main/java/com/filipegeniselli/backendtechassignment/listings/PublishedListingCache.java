@@ -0,0 +1,125 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Serialized json of the published listings, keyed by the url of the listing.
+ * A published listing can't be edited, the only change it can have is a new status (or a new publishedAt),
+ * so the entry is removed when a status change of a published listing is committed.
+ *
+ * The values are read from the database before they are put on the cache, a status change committed in between
+ * would have its invalidation lost. Every invalidation increments a stamp, the readers take the stamp before the query
+ * and the value is removed right after the put when the stamp changed, so an old value never stays on the cache.
+ * With read-replicas.enabled the listings can be read from a replica that didn't apply the change yet, the value read
+ * after the invalidation can still be the old one. The invalidated urls are not put back on the cache for the
+ * read-replicas.max-lag, a replica further behind stops receiving the reads.
+ *
+ * The cache is bounded by the size of the json, and the entries expire after a while because the changes made
+ * by other instances of the API are not seen. The stats are published as the cache metrics with the name published-listings.
+ * A maximum weight of 0 disables the cache, the listings are serialized on every request.
+ */
+@Component
+public class PublishedListingCache {
+
+    private final Cache<String, CachedListing> cache;
+    private final AtomicLong invalidations = new AtomicLong();
+    private final Cache<String, Boolean> recentInvalidations;
+    private final boolean enabled;
+    private final boolean gzip;
+
+    @Autowired
+    public PublishedListingCache(MeterRegistry meterRegistry,
+                                 @Value("${published-listing-cache.maximum-weight:67108864}") long maximumWeight,
+                                 @Value("${published-listing-cache.expire-after-write:PT5M}") Duration expireAfterWrite,
+                                 @Value("${published-listing-cache.gzip:true}") boolean gzip,
+                                 @Value("${read-replicas.enabled:false}") boolean readReplicas,
+                                 @Value("${read-replicas.max-lag:PT10S}") Duration replicaMaxLag) {
+        this.cache = Caffeine.newBuilder()
+                // The body is kept as a string and as bytes, the document and its compressed copy are built from it
+                .<String, CachedListing>weigher((url, listing) -> url.length() + listing.length() * 4)
+                .maximumWeight(maximumWeight)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        this.recentInvalidations = readReplicas
+                ? Caffeine.newBuilder().expireAfterWrite(replicaMaxLag).<String, Boolean>build()
+                : null;
+        this.enabled = maximumWeight > 0;
+        this.gzip = gzip;
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "published-listings");
+    }
+
+    /**
+     * @return the value to give back on put, taken before reading the listings from the database
+     */
+    public long stamp() {
+        return invalidations.get();
+    }
+
+    CachedListing find(String url) {
+        return cache.getIfPresent(url);
+    }
+
+    /**
+     * Only used when the cache is enabled, the writer serializes the listings by itself otherwise
+     * @param url
+     * @param stamp taken before the listing was read
+     * @param version of the listing
+     * @param body the serialized listing, only called when the listing is not on the cache or has an older version
+     * @return
+     */
+    CachedListing get(String url, long stamp, long version, Supplier<String> body) {
+        CachedListing cached = cache.getIfPresent(url);
+        if (cached != null && cached.version() >= version) {
+            return cached;
+        }
+
+        CachedListing listing = new CachedListing(body.get(), version);
+        if (recentInvalidations != null && recentInvalidations.getIfPresent(url) != null) {
+            return listing;
+        }
+        // An older version was put by a reader behind, e.g. on a replica lagging more than max-lag
+        cache.asMap().compute(url, (key, current) -> current != null && current.version() >= version ? current : listing);
+        if (invalidations.get() != stamp) {
+            cache.invalidate(url);
+        }
+        return listing;
+    }
+
+    boolean enabled() {
+        return enabled;
+    }
+
+    boolean gzip() {
+        return gzip;
+    }
+
+    /**
+     * Only published listings are on the cache, the other changes have nothing to remove
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void on(ListingStatusChanged event) {
+        if (event.previousStatus() != ListingStatus.PUBLISHED) {
+            return;
+        }
+
+        String url = ListingUrls.listing(event.dealerId(), event.listingId());
+        if (recentInvalidations != null) {
+            recentInvalidations.put(url, Boolean.TRUE);
+        }
+        invalidations.incrementAndGet();
+        cache.invalidate(url);
+    }
+}
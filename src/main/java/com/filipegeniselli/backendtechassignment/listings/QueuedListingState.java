@@ -0,0 +1,13 @@
+package com.filipegeniselli.backendtechassignment.listings;
+
+public enum QueuedListingState {
+    /**
+     * Accepted and waiting on the queue or being inserted, only kept in memory
+     */
+    QUEUED,
+    WRITTEN,
+    /**
+     * The insert failed, the listing doesn't exist and has to be sent again
+     */
+    FAILED
+}
@@ -0,0 +1,6 @@
+package com.filipegeniselli.backendtechassignment.listings.command;
+
+import java.util.UUID;
+
+public record ArchiveCandidate(UUID listingId, UUID dealerId) {
+}
@@ -0,0 +1,9 @@
+package com.filipegeniselli.backendtechassignment.listings.command;
+
+import com.filipegeniselli.backendtechassignment.listings.ListingStatus;
+
+import java.util.List;
+import java.util.UUID;
+
+public record ChangeListingsStatus(List<UUID> listingIds, ListingStatus status) {
+}
@@ -0,0 +1,10 @@
+package com.filipegeniselli.backendtechassignment.listings.command;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The listings that had the status changed and the oldest published listings removed to respect the tier limit
+ */
+public record ChangeListingsStatusResult(List<UUID> changedListingIds, List<UUID> evictedListingIds) {
+}
@@ -0,0 +1,13 @@
+package com.filipegeniselli.backendtechassignment.listings.command;
+
+import java.util.UUID;
+
+/**
+ * Result of one item of a batch creation, listingId is null when the item is invalid and error has the reason
+ */
+public record CreateListingResult(UUID listingId, String error) {
+
+    public boolean created() {
+        return listingId != null;
+    }
+}
@@ -0,0 +1,6 @@
+package com.filipegeniselli.backendtechassignment.listings.command;
+
+import java.util.List;
+
+public record CreateListings(List<CreateUpdateListing> listings) {
+}
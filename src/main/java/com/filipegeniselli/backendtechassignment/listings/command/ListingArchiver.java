@@ -0,0 +1,113 @@
+package com.filipegeniselli.backendtechassignment.listings.command;
+
+import com.filipegeniselli.backendtechassignment.listings.ArchivedListingRepository;
+import com.filipegeniselli.backendtechassignment.listings.ListingProjector;
+import com.filipegeniselli.backendtechassignment.listings.ListingRepository;
+import com.filipegeniselli.backendtechassignment.listings.ListingStamps;
+import com.filipegeniselli.backendtechassignment.listings.ListingStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Moves the listings removed longer than listing-archive.retention ago from the listing table to the archived_listing table.
+ * A removed listing can't change anymore, the archive keeps it as it was and the history endpoints read it from there.
+ *
+ * Each chunk of the oldest removed listings is copied with one insert ... select and deleted in the same transaction,
+ * so a listing is always in exactly one of the tables. The chunks are small to keep the locks and the transaction short,
+ * the sweep runs until there's nothing older than the retention. The removed listings stamp of each dealer of the chunk
+ * is incremented, the pages of removed listings cached by the clients change with it.
+ */
+@Component
+public class ListingArchiver {
+
+    private static final Logger logger = LoggerFactory.getLogger(ListingArchiver.class);
+
+    private final ListingRepository listingRepository;
+    private final ArchivedListingRepository archivedListingRepository;
+    private final ListingStamps listingStamps;
+    private final ListingProjector listingProjector;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Duration retention;
+    private final int chunkSize;
+
+    @Autowired
+    public ListingArchiver(ListingRepository listingRepository,
+                           ArchivedListingRepository archivedListingRepository,
+                           ListingStamps listingStamps,
+                           ListingProjector listingProjector,
+                           TransactionTemplate transactionTemplate,
+                           @Value("${listing-archive.enabled:true}") boolean enabled,
+                           @Value("${listing-archive.retention:P30D}") Duration retention,
+                           @Value("${listing-archive.chunk-size:500}") int chunkSize) {
+        this.listingRepository = listingRepository;
+        this.archivedListingRepository = archivedListingRepository;
+        this.listingStamps = listingStamps;
+        this.listingProjector = listingProjector;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.retention = retention;
+        this.chunkSize = chunkSize;
+    }
+
+    @Scheduled(fixedDelayString = "${listing-archive.interval:PT1H}",
+            initialDelayString = "${listing-archive.interval:PT1H}")
+    public void sweep() {
+        if (enabled) {
+            archive(LocalDateTime.now().minus(retention));
+        }
+    }
+
+    /**
+     * @param removedBefore
+     * @return the amount of archived listings
+     */
+    public int archive(LocalDateTime removedBefore) {
+        int total = 0;
+        int archived;
+        do {
+            archived = transactionTemplate.execute(status -> archiveChunk(removedBefore));
+            total += archived;
+        } while (archived == chunkSize);
+
+        if (total > 0) {
+            logger.info("Archived {} listings removed before {}", total, removedBefore);
+        }
+        return total;
+    }
+
+    private int archiveChunk(LocalDateTime removedBefore) {
+        List<ArchiveCandidate> candidates = listingRepository.findRemovedForArchive(removedBefore, PageRequest.of(0, chunkSize));
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+
+        List<UUID> ids = candidates.stream().map(ArchiveCandidate::listingId).toList();
+        int archived = archivedListingRepository.archive(ids, ListingStatus.REMOVED.ordinal(), LocalDateTime.now());
+        int deleted = listingRepository.deleteRemovedListings(ids);
+        if (archived != candidates.size() || deleted != candidates.size()) {
+            throw new IllegalStateException("Archived %d and deleted %d of %d removed listings"
+                    .formatted(archived, deleted, candidates.size()));
+        }
+
+        listingProjector.changed(ids);
+        candidates.stream()
+                .map(ArchiveCandidate::dealerId)
+                .distinct()
+                .sorted()
+                .forEach(dealerId -> listingStamps.touch(dealerId, EnumSet.of(ListingStatus.REMOVED)));
+        return candidates.size();
+    }
+}
@@ -2,41 +2,172 @@ package com.filipegeniselli.backendtechassignment.listings.command;
 
 import com.filipegeniselli.backendtechassignment.TierLimitConfiguration;
 import com.filipegeniselli.backendtechassignment.dealer.Dealer;
+import com.filipegeniselli.backendtechassignment.dealer.DealerCache;
+import com.filipegeniselli.backendtechassignment.dealer.DealerLocks;
 import com.filipegeniselli.backendtechassignment.dealer.DealerRepository;
 import com.filipegeniselli.backendtechassignment.exception.BadRequestException;
 import com.filipegeniselli.backendtechassignment.exception.ConflictException;
 import com.filipegeniselli.backendtechassignment.exception.NotFoundException;
+import com.filipegeniselli.backendtechassignment.id.SnowflakeIdGenerator;
 import com.filipegeniselli.backendtechassignment.listings.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
-import java.util.UUID;
+import java.util.*;
 
 @Component
 public class ListingCommandHandler implements ListingCommandService {
 
     private final ListingRepository listingRepository;
     private final DealerRepository dealerRepository;
+    private final DealerCache dealerCache;
 
     private final TierLimitConfiguration tierLimitConfiguration;
+    private final PublicationLedger publicationLedger;
+    private final DealerLocks dealerLocks;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ListingStamps listingStamps;
+    private final ListingProjector listingProjector;
+    private final SnowflakeIdGenerator idGenerator;
+    private final ListingWriteBehind listingWriteBehind;
+    private final boolean singleStatementPublish;
+    private final int maxBatchSize;
 
     @Autowired
-    public ListingCommandHandler(ListingRepository listingRepository, DealerRepository dealerRepository, TierLimitConfiguration tierLimitConfiguration) {
+    public ListingCommandHandler(ListingRepository listingRepository,
+                                 DealerRepository dealerRepository,
+                                 DealerCache dealerCache,
+                                 TierLimitConfiguration tierLimitConfiguration,
+                                 PublicationLedger publicationLedger,
+                                 DealerLocks dealerLocks,
+                                 TransactionTemplate transactionTemplate,
+                                 ApplicationEventPublisher eventPublisher,
+                                 ListingStamps listingStamps,
+                                 ListingProjector listingProjector,
+                                 SnowflakeIdGenerator idGenerator,
+                                 ListingWriteBehind listingWriteBehind,
+                                 @Value("${single-statement-publish.enabled:true}") boolean singleStatementPublish,
+                                 @Value("${listing-batch.max-size:1000}") int maxBatchSize) {
         this.listingRepository = listingRepository;
         this.dealerRepository = dealerRepository;
+        this.dealerCache = dealerCache;
         this.tierLimitConfiguration = tierLimitConfiguration;
+        this.publicationLedger = publicationLedger;
+        this.dealerLocks = dealerLocks;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.listingStamps = listingStamps;
+        this.listingProjector = listingProjector;
+        this.idGenerator = idGenerator;
+        this.listingWriteBehind = listingWriteBehind;
+        this.singleStatementPublish = singleStatementPublish && listingRepository.supportsSingleStatementPublish();
+        this.maxBatchSize = maxBatchSize;
     }
 
     @Override
     @Transactional
     public UUID handle(UUID dealerId, CreateUpdateListing command) {
-        Dealer dealer = dealerRepository.findById(dealerId)
+        Dealer dealer = dealerReference(dealerId);
+
+        Listing listing = newDraftListing(dealer, command, LocalDateTime.now());
+
+        listing.checkIsValid();
+        // Published before the insert, the listeners inside the transaction lock the dealer row first
+        statusChanged(dealerId, listing.getId(), null, ListingStatus.DRAFT, listing.getCreatedAt());
+        // save would merge the listing, selecting it by id and loading the dealer reference
+        listingRepository.insertAll(List.of(listing));
+
+        return listing.getId();
+    }
+
+    /**
+     * The dealer is loaded once for all the items, every item is validated on its own and the invalid ones
+     * are reported on the result without stopping the creation of the others.
+     * The valid listings are inserted with JDBC batching in the same transaction
+     * @param dealerId
+     * @param command
+     * @return one result per item, in the same order of the request
+     */
+    @Override
+    @Transactional
+    public List<CreateListingResult> handle(UUID dealerId, CreateListings command) {
+        if (command.listings() == null || command.listings().isEmpty()) {
+            throw new BadRequestException("The list of listings is required");
+        }
+
+        if (command.listings().size() > maxBatchSize) {
+            throw new BadRequestException("The maximum amount of listings per request is %d".formatted(maxBatchSize));
+        }
+
+        Dealer dealer = dealerReference(dealerId);
+
+        LocalDateTime createdAt = LocalDateTime.now();
+        List<CreateListingResult> results = new ArrayList<>(command.listings().size());
+        List<Listing> validListings = new ArrayList<>(command.listings().size());
+        for (CreateUpdateListing item : command.listings()) {
+            if (item == null) {
+                results.add(new CreateListingResult(null, "The listing is required"));
+                continue;
+            }
+
+            Listing listing = newDraftListing(dealer, item, createdAt);
+            try {
+                listing.checkIsValid();
+            } catch (BadRequestException e) {
+                results.add(new CreateListingResult(null, e.getMessage()));
+                continue;
+            }
+
+            validListings.add(listing);
+            results.add(new CreateListingResult(listing.getId(), null));
+        }
+
+        validListings.forEach(listing ->
+                statusChanged(dealerId, listing.getId(), null, ListingStatus.DRAFT, createdAt));
+        listingRepository.insertAll(validListings);
+
+        return results;
+    }
+
+    /**
+     * Validated and identified like the synchronous creation, the listing is inserted later by the ListingWriteBehind
+     * @param dealerId
+     * @param command
+     * @return the id of the queued listing
+     */
+    @Override
+    public UUID handle(UUID dealerId, QueueListing command) {
+        dealerCache.find(dealerId)
                 .orElseThrow(() -> new NotFoundException("Couldn't find the Dealer"));
 
-        Listing listing = Listing.ListingBuilder.aListing()
-                .id(UUID.randomUUID())
+        Listing listing = newDraftListing(null, command.listing(), LocalDateTime.now());
+        listing.checkIsValid();
+        listingWriteBehind.enqueue(dealerId, listing);
+
+        return listing.getId();
+    }
+
+    /**
+     * The existence of the dealer comes from the cache, the listing only needs the reference for the foreign key
+     * @param dealerId
+     * @return an uninitialized reference of the dealer
+     */
+    private Dealer dealerReference(UUID dealerId) {
+        dealerCache.find(dealerId)
+                .orElseThrow(() -> new NotFoundException("Couldn't find the Dealer"));
+
+        return dealerRepository.getReferenceById(dealerId);
+    }
+
+    private Listing newDraftListing(Dealer dealer, CreateUpdateListing command, LocalDateTime createdAt) {
+        return Listing.ListingBuilder.aListing()
+                .id(idGenerator.nextUuid())
                 .dealer(dealer)
                 .vehicle(command.vehicle())
                 .condition(command.condition())
@@ -46,13 +177,8 @@ public class ListingCommandHandler implements ListingCommandService {
                 .mileage(command.mileage())
                 .fuelType(command.fuelType())
                 .status(ListingStatus.DRAFT)
-                .createdAt(LocalDateTime.now())
+                .createdAt(createdAt)
                 .build();
-
-        listing.checkIsValid();
-        listingRepository.save(listing);
-
-        return listing.getId();
     }
 
     @Override
@@ -75,6 +201,8 @@ public class ListingCommandHandler implements ListingCommandService {
 
         listing.checkIsValid();
         listingRepository.save(listing);
+        listingStamps.touch(dealerId, EnumSet.of(ListingStatus.DRAFT));
+        listingProjector.changed(List.of(listingId));
     }
 
     /**
@@ -85,13 +213,26 @@ public class ListingCommandHandler implements ListingCommandService {
      * Perform all the changes and publish it again
      *
      * If there's a new feature to check all the data before publishing the listing this will assure that the Listing is following the correct workflow
+     *
+     * Status changes of the same dealer are serialized, otherwise two concurrent publishes could both pass the tier limit.
+     * The in-process lock is taken before the transaction starts and the dealer row is locked as the first statement,
+     * changes of different dealers don't wait for each other and there's no need for serializable isolation.
      * @param dealerId
      * @param listingId
      * @param command
      */
     @Override
-    @Transactional
-    public void handle(UUID dealerId, UUID listingId, PublishListing command) {
+    public PublishResult handle(UUID dealerId, UUID listingId, PublishListing command) {
+        return dealerLocks.callLocked(dealerId, () -> transactionTemplate.execute(status ->
+                command.status() == ListingStatus.PUBLISHED && singleStatementPublish
+                        ? publishInSingleStatement(dealerId, listingId)
+                        : changeStatus(dealerId, listingId, command)));
+    }
+
+    private PublishResult changeStatus(UUID dealerId, UUID listingId, PublishListing command) {
+        // A missing dealer has no row to lock, it ends up as a missing listing on the next query
+        dealerRepository.findForUpdateById(dealerId);
+
         Listing listing = listingRepository.findByDealer_IdAndId(dealerId, listingId)
                 .orElseThrow(() -> new NotFoundException("Couldn't find the Listing."));
 
@@ -99,41 +240,258 @@ public class ListingCommandHandler implements ListingCommandService {
             throw new BadRequestException("Operation not allowed - Removed listings cannot have status changes.");
         }
 
+        ListingStatus previousStatus = listing.getStatus();
+        LocalDateTime now = LocalDateTime.now();
+        UUID evictedListingId = null;
+        int publishedDelta = 0;
         if (command.status() == ListingStatus.PUBLISHED){
-            validateTierLimit(dealerId);
-            listing.setPublishedAt(LocalDateTime.now());
+            // An already published listing doesn't take a new spot, it only has the publishedAt refreshed
+            if (listing.getStatus() != ListingStatus.PUBLISHED) {
+                evictedListingId = validateTierLimit(listing.getDealer()).orElse(null);
+                publishedDelta = evictedListingId == null ? 1 : 0;
+            }
+            listing.setPublishedAt(now);
+            publicationLedger.published(dealerId, listingId, listing.getPublishedAt());
+        } else if (listing.getStatus() == ListingStatus.PUBLISHED) {
+            publicationLedger.unpublished(dealerId, listingId);
+            publishedDelta = -1;
         }
 
         if (command.status() == ListingStatus.REMOVED){
-            listing.setRemovedAt(LocalDateTime.now());
+            listing.setRemovedAt(now);
         }
         listing.setStatus(command.status());
 
         listingRepository.save(listing);
+        statusChanged(dealerId, listingId, previousStatus, command.status(), now);
+        if (publishedDelta != 0) {
+            dealerRepository.addPublishedListings(dealerId, publishedDelta);
+        }
+
+        return new PublishResult(listingId, evictedListingId);
+    }
+
+    /**
+     * Changes the status of many listings of the same dealer with the same rules of the single status change,
+     * the batch is applied atomically, any missing or removed listing fails the whole batch.
+     *
+     * When publishing, the tier limit is evaluated once for the whole batch, the listings already published
+     * only have the publishedAt refreshed and the K oldest published listings outside the batch are removed
+     * by one update statement when the dealer allows it
+     * @param dealerId
+     * @param command
+     * @return
+     */
+    @Override
+    public ChangeListingsStatusResult handle(UUID dealerId, ChangeListingsStatus command) {
+        if (command.status() == null) {
+            throw new BadRequestException("The field status is required");
+        }
+
+        if (command.listingIds() == null || command.listingIds().isEmpty()) {
+            throw new BadRequestException("The list of listings is required");
+        }
+
+        Set<UUID> listingIds = new LinkedHashSet<>(command.listingIds());
+        if (listingIds.size() > maxBatchSize) {
+            throw new BadRequestException("The maximum amount of listings per request is %d".formatted(maxBatchSize));
+        }
+
+        return dealerLocks.callLocked(dealerId, () -> transactionTemplate.execute(status ->
+                changeStatus(dealerId, listingIds, command.status())));
     }
 
-    private void validateTierLimit(UUID dealerId) {
-        Dealer dealer = dealerRepository.findById(dealerId)
-                .orElseThrow(() -> new NotFoundException("Couldn't find Dealer with the selected Id."));
+    private ChangeListingsStatusResult changeStatus(UUID dealerId, Set<UUID> listingIds, ListingStatus newStatus) {
+        Dealer dealer = dealerRepository.findForUpdateById(dealerId)
+                .orElseThrow(() -> new NotFoundException("Couldn't find the Dealer"));
+
+        List<Listing> listings = listingRepository.findByDealer_IdAndIdIn(dealerId, listingIds);
+        if (listings.size() != listingIds.size()) {
+            throw new NotFoundException("Couldn't find the Listing.");
+        }
+
+        if (listings.stream().anyMatch(listing -> listing.getStatus() == ListingStatus.REMOVED)) {
+            throw new BadRequestException("Operation not allowed - Removed listings cannot have status changes.");
+        }
+
+        List<UUID> evictedListingIds = newStatus == ListingStatus.PUBLISHED
+                ? validateTierLimit(dealer, listings)
+                : List.of();
+
+        LocalDateTime now = LocalDateTime.now();
+        int publishedDelta = -evictedListingIds.size();
+        for (Listing listing : listings) {
+            statusChanged(dealerId, listing.getId(), listing.getStatus(), newStatus, now);
+            if (newStatus == ListingStatus.PUBLISHED) {
+                if (listing.getStatus() != ListingStatus.PUBLISHED) {
+                    publishedDelta++;
+                }
+                listing.setPublishedAt(now);
+                publicationLedger.published(dealerId, listing.getId(), now);
+            } else if (listing.getStatus() == ListingStatus.PUBLISHED) {
+                publicationLedger.unpublished(dealerId, listing.getId());
+                publishedDelta--;
+            }
+
+            if (newStatus == ListingStatus.REMOVED) {
+                listing.setRemovedAt(now);
+            }
+            listing.setStatus(newStatus);
+        }
+        listingRepository.saveAll(listings);
+        if (publishedDelta != 0) {
+            dealerRepository.addPublishedListings(dealerId, publishedDelta);
+        }
+
+        return new ChangeListingsStatusResult(List.copyOf(listingIds), evictedListingIds);
+    }
 
+    /**
+     * The batch fits when the published listings plus the new ones are within the limit,
+     * otherwise the overflow is removed from the oldest published listings that are not part of the batch.
+     * A batch larger than the limit can never fit, even removing all the other listings
+     * @param dealer
+     * @param listings
+     * @return the ids of the removed listings
+     */
+    private List<UUID> validateTierLimit(Dealer dealer, List<Listing> listings) {
         int limitAmount = tierLimitConfiguration.getTierLimit(dealer.getTier());
-        long publishedListings = listingRepository.countByDealer_IdAndStatus(dealerId, ListingStatus.PUBLISHED);
+        long newlyPublished = listings.stream()
+                .filter(listing -> listing.getStatus() != ListingStatus.PUBLISHED)
+                .count();
+        long overflow = publishedCount(dealer) + newlyPublished - limitAmount;
+
+        if (overflow <= 0) {
+            return List.of();
+        }
+
+        if (listings.size() > limitAmount || Boolean.FALSE.equals(dealer.getAllowRemovingOldListings())) {
+            throw new ConflictException("You've reached the limit of published listings");
+        }
+
+        Set<UUID> batch = new HashSet<>();
+        listings.forEach(listing -> batch.add(listing.getId()));
+        List<UUID> oldest = publicationLedger.oldestPublished(dealer.getId(), (int) overflow, batch);
+
+        // The dealer row is locked, a different amount means the ledger is out of date and the batch is rolled back
+        LocalDateTime removedAt = LocalDateTime.now();
+        if (oldest.size() != overflow ||
+                listingRepository.removePublishedListings(oldest, removedAt) != oldest.size()) {
+            publicationLedger.evict(dealer.getId());
+            throw new ConflictException("The published listings changed while applying the batch, please try again");
+        }
+
+        oldest.forEach(listingId -> {
+            publicationLedger.unpublished(dealer.getId(), listingId);
+            statusChanged(dealer.getId(), listingId, ListingStatus.PUBLISHED, ListingStatus.REMOVED, removedAt);
+        });
+        return oldest;
+    }
+
+    /**
+     * Same rules of changeStatus, but the tier validation, the removal of the oldest listing and the status change
+     * are done by one statement, the errors are translated from the status the listing had before the statement
+     *
+     * The dealer row is locked by its own statement first: on read committed the snapshot of a statement is taken
+     * before its locks, the statement has to start after the lock to see the publishes of other instances
+     * @param dealerId
+     * @param listingId
+     * @return
+     */
+    private PublishResult publishInSingleStatement(UUID dealerId, UUID listingId) {
+        dealerRepository.findForUpdateById(dealerId);
+        LocalDateTime publishedAt = LocalDateTime.now();
+        ListingPublishRepository.SingleStatementPublish result = listingRepository.publishInSingleStatement(dealerId,
+                listingId,
+                tierLimitConfiguration.getTierLimits(),
+                publishedAt);
+
+        if (result.listingStatus() == null) {
+            throw new NotFoundException("Couldn't find the Listing.");
+        }
+
+        if (result.listingStatus() == ListingStatus.REMOVED) {
+            throw new BadRequestException("Operation not allowed - Removed listings cannot have status changes.");
+        }
+
+        if (result.publishedListingId() == null) {
+            throw new ConflictException("You've reached the limit of published listings");
+        }
+
+        // The statement incremented the stamps of the dealer
+        listingStamps.markTouched(dealerId, EnumSet.of(result.listingStatus(), ListingStatus.PUBLISHED, ListingStatus.REMOVED));
+        if (result.evictedListingId() != null) {
+            publicationLedger.unpublished(dealerId, result.evictedListingId());
+            statusChanged(dealerId, result.evictedListingId(), ListingStatus.PUBLISHED, ListingStatus.REMOVED, publishedAt);
+        }
+        publicationLedger.published(dealerId, listingId, publishedAt);
+        statusChanged(dealerId, listingId, result.listingStatus(), ListingStatus.PUBLISHED, publishedAt);
+
+        return new PublishResult(listingId, result.evictedListingId());
+    }
+
+    private Optional<UUID> validateTierLimit(Dealer dealer) {
+        int limitAmount = tierLimitConfiguration.getTierLimit(dealer.getTier());
+        long publishedListings = publishedCount(dealer);
 
         if (publishedListings + 1 > limitAmount) {
-            handleExceedLimitDealer(dealer);
+            return Optional.of(handleExceedLimitDealer(dealer));
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * The dealer row is locked, its counter has the publishes of every instance and the ledger only the ones
+     * of this instance, a ledger that doesn't match is reloaded before it's trusted
+     * @param dealer
+     * @return
+     */
+    private long publishedCount(Dealer dealer) {
+        long publishedListings = publicationLedger.publishedCount(dealer.getId());
+        if (dealer.getPublishedListings() != null && publishedListings != dealer.getPublishedListings()) {
+            publicationLedger.evict(dealer.getId());
+            publishedListings = publicationLedger.publishedCount(dealer.getId());
         }
+        return publishedListings;
     }
 
-    private void handleExceedLimitDealer(Dealer dealer) {
+    /**
+     * The oldest listing comes from the ledger, if the update doesn't find it as published
+     * the ledger is out of date, it's reloaded and the removal is tried once more.
+     * Without a published listing to remove (a limit of 0) the listing can't be published
+     * @param dealer
+     * @return the id of the removed listing
+     */
+    private UUID handleExceedLimitDealer(Dealer dealer) {
         if (Boolean.FALSE.equals(dealer.getAllowRemovingOldListings())) {
             throw new ConflictException("You've reached the limit of published listings");
         }
 
-        Listing oldestPublishedListing = listingRepository.findFirstByDealer_IdAndStatusOrderByPublishedAtAsc(dealer.getId(), ListingStatus.PUBLISHED);
-        oldestPublishedListing.setStatus(ListingStatus.REMOVED);
-        oldestPublishedListing.setRemovedAt(LocalDateTime.now());
+        return removeOldestPublishedListing(dealer.getId())
+                .or(() -> {
+                    publicationLedger.evict(dealer.getId());
+                    return removeOldestPublishedListing(dealer.getId());
+                })
+                .orElseThrow(() -> new ConflictException("You've reached the limit of published listings"));
+    }
+
+    private Optional<UUID> removeOldestPublishedListing(UUID dealerId) {
+        Optional<UUID> oldestPublishedListing = publicationLedger.oldestPublished(dealerId);
+        LocalDateTime removedAt = LocalDateTime.now();
+        if (oldestPublishedListing.isEmpty() ||
+                listingRepository.removePublishedListing(oldestPublishedListing.get(), removedAt) == 0) {
+            return Optional.empty();
+        }
+
+        publicationLedger.unpublished(dealerId, oldestPublishedListing.get());
+        statusChanged(dealerId, oldestPublishedListing.get(), ListingStatus.PUBLISHED, ListingStatus.REMOVED, removedAt);
+        return oldestPublishedListing;
+    }
 
-        listingRepository.save(oldestPublishedListing);
+    private void statusChanged(UUID dealerId, UUID listingId, ListingStatus previousStatus, ListingStatus status,
+                               LocalDateTime changedAt) {
+        eventPublisher.publishEvent(new ListingStatusChanged(dealerId, listingId, previousStatus, status, changedAt));
     }
 
 }
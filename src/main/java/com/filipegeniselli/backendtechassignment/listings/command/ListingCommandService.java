@@ -1,13 +1,20 @@
 package com.filipegeniselli.backendtechassignment.listings.command;
 
+import java.util.List;
 import java.util.UUID;
 
 public interface ListingCommandService {
 
     UUID handle(UUID dealerId, CreateUpdateListing command);
 
+    List<CreateListingResult> handle(UUID dealerId, CreateListings command);
+
+    UUID handle(UUID dealerId, QueueListing command);
+
     void handle(UUID dealerId, UUID listingId, CreateUpdateListing command);
 
-    void handle(UUID dealerId, UUID listingId, PublishListing command);
+    PublishResult handle(UUID dealerId, UUID listingId, PublishListing command);
+
+    ChangeListingsStatusResult handle(UUID dealerId, ChangeListingsStatus command);
 
 }
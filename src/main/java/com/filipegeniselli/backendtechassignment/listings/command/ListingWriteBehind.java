@@ -0,0 +1,287 @@
+package com.filipegeniselli.backendtechassignment.listings.command;
+
+import com.filipegeniselli.backendtechassignment.dealer.DealerRepository;
+import com.filipegeniselli.backendtechassignment.exception.ServiceUnavailableException;
+import com.filipegeniselli.backendtechassignment.listings.Listing;
+import com.filipegeniselli.backendtechassignment.listings.ListingRepository;
+import com.filipegeniselli.backendtechassignment.listings.ListingStatus;
+import com.filipegeniselli.backendtechassignment.listings.ListingStatusChanged;
+import com.filipegeniselli.backendtechassignment.listings.QueuedListingState;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserts the listings created with Prefer: respond-async after the response is sent. The listings are validated
+ * and get their ids on the request, wait on a bounded queue and are inserted by the writer threads in batches,
+ * each batch in one transaction with the JDBC batching of insertAll (multi-row inserts on postgres with
+ * reWriteBatchedInserts), so a bulk upload pays one commit per batch instead of one per listing.
+ *
+ * A queued listing is only in memory: it's lost if the instance crashes before the batch commits, the 202 means
+ * accepted and not stored. A full queue answers 503 and nothing is accepted. When a batch fails each listing is tried
+ * on its own, the ones that still fail are kept as FAILED for failure-retention and have to be sent again.
+ * The queue is drained when the application shuts down, for at most drain-timeout, the new requests get 503.
+ */
+@Component
+public class ListingWriteBehind {
+
+    private static final Logger logger = LoggerFactory.getLogger(ListingWriteBehind.class);
+    private static final long POLL_MILLIS = 100;
+
+    private final ListingRepository listingRepository;
+    private final DealerRepository dealerRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration drainTimeout;
+    private final BlockingQueue<QueuedListing> queue;
+    // Accepted and not written yet, by listing id, the value is the dealer
+    private final Map<UUID, UUID> pending = new ConcurrentHashMap<>();
+    private final Cache<UUID, FailedListing> failures;
+    private final List<Thread> writers = new ArrayList<>();
+    private final Counter written;
+    private final Counter failed;
+    private final Counter rejected;
+    private final Timer flushLatency;
+    private final Timer writeDelay;
+    private final DistributionSummary batches;
+    private volatile boolean accepting = true;
+    private volatile boolean running = true;
+
+    @Autowired
+    public ListingWriteBehind(ListingRepository listingRepository,
+                              DealerRepository dealerRepository,
+                              TransactionTemplate transactionTemplate,
+                              ApplicationEventPublisher eventPublisher,
+                              MeterRegistry meterRegistry,
+                              @Value("${listing-write-behind.enabled:false}") boolean enabled,
+                              @Value("${listing-write-behind.capacity:10000}") int capacity,
+                              @Value("${listing-write-behind.batch-size:500}") int batchSize,
+                              @Value("${listing-write-behind.writers:2}") int writers,
+                              @Value("${listing-write-behind.drain-timeout:PT30S}") Duration drainTimeout,
+                              @Value("${listing-write-behind.failure-retention:PT1H}") Duration failureRetention) {
+        this.listingRepository = listingRepository;
+        this.dealerRepository = dealerRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.drainTimeout = drainTimeout;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.failures = Caffeine.newBuilder()
+                .expireAfterWrite(failureRetention)
+                .maximumSize(capacity)
+                .build();
+        for (int i = 0; i < writers; i++) {
+            Thread writer = new Thread(this::write, "listing-writer-" + i);
+            writer.setDaemon(true);
+            this.writers.add(writer);
+        }
+
+        Gauge.builder("listings.write-behind.depth", queue, BlockingQueue::size)
+                .description("Listings accepted and waiting to be inserted")
+                .register(meterRegistry);
+        this.written = Counter.builder("listings.write-behind.written").register(meterRegistry);
+        this.failed = Counter.builder("listings.write-behind.failed").register(meterRegistry);
+        this.rejected = Counter.builder("listings.write-behind.rejected")
+                .description("Listings refused because the queue was full or closed")
+                .register(meterRegistry);
+        this.flushLatency = Timer.builder("listings.write-behind.flush")
+                .description("Time to insert a batch, including the retries of a failed batch")
+                .register(meterRegistry);
+        this.writeDelay = Timer.builder("listings.write-behind.delay")
+                .description("Time between the acceptance of a listing and its insert")
+                .register(meterRegistry);
+        this.batches = DistributionSummary.builder("listings.write-behind.batch")
+                .description("Listings per batch")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            writers.forEach(Thread::start);
+        }
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * @param dealerId
+     * @param listing validated, with the id and createdAt, the dealer is set by the writer
+     */
+    public void enqueue(UUID dealerId, Listing listing) {
+        if (!enabled || !accepting) {
+            rejected.increment();
+            throw new ServiceUnavailableException("The listings queue is not accepting listings, create them synchronously");
+        }
+
+        pending.put(listing.getId(), dealerId);
+        if (!queue.offer(new QueuedListing(dealerId, listing, System.nanoTime()))) {
+            pending.remove(listing.getId());
+            rejected.increment();
+            throw new ServiceUnavailableException("The listings queue is full, try again later");
+        }
+    }
+
+    /**
+     * @param dealerId
+     * @param listingId
+     * @return empty when the listing is not queued and didn't fail recently, it was written or never existed
+     */
+    public Optional<QueuedListingStatus> status(UUID dealerId, UUID listingId) {
+        if (dealerId.equals(pending.get(listingId))) {
+            return Optional.of(new QueuedListingStatus(QueuedListingState.QUEUED, null));
+        }
+
+        FailedListing failure = failures.getIfPresent(listingId);
+        if (failure != null && failure.dealerId().equals(dealerId)) {
+            return Optional.of(new QueuedListingStatus(QueuedListingState.FAILED, failure.error()));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Stops accepting listings and waits for the writers to insert the queued ones. Runs before the data source
+     * is closed, this bean depends on it
+     */
+    @PreDestroy
+    public void drain() {
+        accepting = false;
+        running = false;
+        long deadline = System.nanoTime() + drainTimeout.toNanos();
+        for (Thread writer : writers) {
+            long remaining = deadline - System.nanoTime();
+            try {
+                if (writer.isAlive() && remaining > 0) {
+                    writer.join(TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        if (!queue.isEmpty()) {
+            logger.error("{} queued listings were not inserted in {}", queue.size(), drainTimeout);
+        }
+    }
+
+    private void write() {
+        List<QueuedListing> batch = new ArrayList<>(batchSize);
+        while (true) {
+            QueuedListing first;
+            try {
+                first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (first == null) {
+                if (!running) {
+                    return;
+                }
+                continue;
+            }
+
+            batch.add(first);
+            queue.drainTo(batch, batchSize - 1);
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    private void flush(List<QueuedListing> batch) {
+        long start = System.nanoTime();
+        try {
+            insert(batch);
+            written.increment(batch.size());
+        } catch (RuntimeException e) {
+            logger.warn("Couldn't insert a batch of {} queued listings, inserting them one by one", batch.size(), e);
+            for (QueuedListing item : batch) {
+                try {
+                    insert(List.of(item));
+                    written.increment();
+                } catch (RuntimeException itemError) {
+                    logger.error("Couldn't insert the queued listing {} of the dealer {}",
+                            item.listing().getId(), item.dealerId(), itemError);
+                    failures.put(item.listing().getId(), new FailedListing(item.dealerId(), "The listing couldn't be saved"));
+                    failed.increment();
+                }
+            }
+        }
+
+        long end = System.nanoTime();
+        flushLatency.record(end - start, TimeUnit.NANOSECONDS);
+        batches.record(batch.size());
+        for (QueuedListing item : batch) {
+            pending.remove(item.listing().getId());
+            writeDelay.record(end - item.acceptedAt(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * A new entity for every attempt, a failed persist leaves the version set on the instance.
+     * The dealers are locked by the listeners in the order of their ids, like the archiver does
+     */
+    private void insert(List<QueuedListing> batch) {
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Listing> listings = new ArrayList<>(batch.size());
+            batch.stream()
+                    .sorted(Comparator.comparing(QueuedListing::dealerId))
+                    .forEach(item -> {
+                        Listing queued = item.listing();
+                        eventPublisher.publishEvent(new ListingStatusChanged(item.dealerId(), queued.getId(),
+                                null, ListingStatus.DRAFT, queued.getCreatedAt()));
+                        listings.add(Listing.ListingBuilder.aListing()
+                                .id(queued.getId())
+                                .dealer(dealerRepository.getReferenceById(item.dealerId()))
+                                .vehicle(queued.getVehicle())
+                                .condition(queued.getCondition())
+                                .price(queued.getPrice())
+                                .color(queued.getColor())
+                                .transmission(queued.getTransmission())
+                                .mileage(queued.getMileage())
+                                .fuelType(queued.getFuelType())
+                                .status(ListingStatus.DRAFT)
+                                .createdAt(queued.getCreatedAt())
+                                .build());
+                    });
+            listingRepository.insertAll(listings);
+        });
+    }
+
+    private record QueuedListing(UUID dealerId, Listing listing, long acceptedAt) {
+    }
+
+    private record FailedListing(UUID dealerId, String error) {
+    }
+}
@@ -0,0 +1,224 @@
+package com.filipegeniselli.backendtechassignment.listings.command;
+
+import com.filipegeniselli.backendtechassignment.listings.ListingRepository;
+import com.filipegeniselli.backendtechassignment.listings.ListingStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * In-memory view of the published listings of each dealer, used by the tier limit validation.
+ *
+ * Each dealer is loaded from the database on the first access and then kept up to date by the command handler,
+ * the changes are only applied after the transaction commits, so a rollback never reaches the ledger.
+ * The published listings are kept ordered by (publishedAt, id), the count is O(1) and the oldest listing is O(log n).
+ *
+ * The ledger only sees the changes made by this instance, it's disabled by default and should only be enabled
+ * with publication-ledger.enabled=true when a single instance runs, otherwise the validation uses the count queries.
+ * The command handler still compares the count with the counter of the locked dealer row and reloads a dealer
+ * that diverged.
+ * The scheduled consistency check compares the loaded dealers with the database and drops the ones that diverged.
+ */
+@Component
+public class PublicationLedger {
+
+    private static final Logger logger = LoggerFactory.getLogger(PublicationLedger.class);
+
+    private final ListingRepository listingRepository;
+    private final boolean enabled;
+    private final Map<UUID, DealerPublications> dealers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public PublicationLedger(ListingRepository listingRepository,
+                             @Value("${publication-ledger.enabled:false}") boolean enabled) {
+        this.listingRepository = listingRepository;
+        this.enabled = enabled;
+    }
+
+    public long publishedCount(UUID dealerId) {
+        if (!enabled) {
+            return listingRepository.countByDealer_IdAndStatus(dealerId, ListingStatus.PUBLISHED);
+        }
+
+        return loaded(dealerId).count();
+    }
+
+    public Optional<UUID> oldestPublished(UUID dealerId) {
+        if (!enabled) {
+            return oldestPublishedInDatabase(dealerId);
+        }
+
+        return loaded(dealerId).oldest().map(PublishedListingEntry::listingId);
+    }
+
+    /**
+     * The oldest published listings of the dealer, skipping the excluded ones
+     * @param dealerId
+     * @param amount
+     * @param excluding
+     * @return up to amount listing ids, oldest first
+     */
+    public List<UUID> oldestPublished(UUID dealerId, int amount, Collection<UUID> excluding) {
+        if (!enabled) {
+            return listingRepository.findOldestPublishedIds(dealerId, PageRequest.of(0, amount + excluding.size()))
+                    .stream()
+                    .filter(listingId -> !excluding.contains(listingId))
+                    .limit(amount)
+                    .toList();
+        }
+
+        return loaded(dealerId).oldest(amount, excluding);
+    }
+
+    public void published(UUID dealerId, UUID listingId, LocalDateTime publishedAt) {
+        afterCommit(() -> {
+            DealerPublications publications = dealers.get(dealerId);
+            if (publications != null) {
+                publications.add(new PublishedListingEntry(listingId, publishedAt));
+            }
+        });
+    }
+
+    public void unpublished(UUID dealerId, UUID listingId) {
+        afterCommit(() -> {
+            DealerPublications publications = dealers.get(dealerId);
+            if (publications != null) {
+                publications.remove(listingId);
+            }
+        });
+    }
+
+    public void evict(UUID dealerId) {
+        dealers.remove(dealerId);
+    }
+
+    /**
+     * Compares the ledger of the dealer with the count and oldest listing queries,
+     * a dealer that was not loaded yet is always consistent
+     * @param dealerId
+     * @return
+     */
+    public boolean isConsistent(UUID dealerId) {
+        DealerPublications publications = dealers.get(dealerId);
+        if (publications == null) {
+            return true;
+        }
+
+        synchronized (publications) {
+            long count = listingRepository.countByDealer_IdAndStatus(dealerId, ListingStatus.PUBLISHED);
+            Optional<UUID> oldest = oldestPublishedInDatabase(dealerId);
+
+            return publications.count() == count &&
+                    publications.oldest().map(PublishedListingEntry::listingId).equals(oldest);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${publication-ledger.consistency-check-interval:PT5M}",
+            initialDelayString = "${publication-ledger.consistency-check-interval:PT5M}")
+    public void checkConsistency() {
+        for (UUID dealerId : List.copyOf(dealers.keySet())) {
+            if (!isConsistent(dealerId)) {
+                logger.warn("Publication ledger diverged from the database for dealer {}, it will be reloaded", dealerId);
+                evict(dealerId);
+            }
+        }
+    }
+
+    private Optional<UUID> oldestPublishedInDatabase(UUID dealerId) {
+        return listingRepository.findOldestPublishedIds(dealerId, PageRequest.of(0, 1)).stream().findFirst();
+    }
+
+    private DealerPublications loaded(UUID dealerId) {
+        DealerPublications publications = dealers.computeIfAbsent(dealerId, id -> new DealerPublications());
+        publications.loadIfNeeded(() -> listingRepository.findPublishedEntries(dealerId));
+        return publications;
+    }
+
+    private void afterCommit(Runnable change) {
+        if (!enabled) {
+            return;
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                change.run();
+            }
+        });
+    }
+
+    /**
+     * Changes that arrive before the first load are ignored, the load reads them from the database.
+     * A load that started before a commit holds the monitor, so the change is applied right after it.
+     * Adding and removing are idempotent, applying a change that the load already read has no effect.
+     */
+    private static final class DealerPublications {
+        private final NavigableSet<PublishedListingEntry> byPublishedAt = new TreeSet<>();
+        private final Map<UUID, PublishedListingEntry> byListingId = new HashMap<>();
+        private boolean loaded;
+
+        synchronized void loadIfNeeded(Supplier<List<PublishedListingEntry>> loader) {
+            if (loaded) {
+                return;
+            }
+
+            loader.get().forEach(this::addEntry);
+            loaded = true;
+        }
+
+        synchronized void add(PublishedListingEntry entry) {
+            if (loaded) {
+                remove(entry.listingId());
+                addEntry(entry);
+            }
+        }
+
+        synchronized void remove(UUID listingId) {
+            PublishedListingEntry entry = byListingId.remove(listingId);
+            if (entry != null) {
+                byPublishedAt.remove(entry);
+            }
+        }
+
+        synchronized int count() {
+            return byListingId.size();
+        }
+
+        synchronized Optional<PublishedListingEntry> oldest() {
+            return byPublishedAt.isEmpty() ? Optional.empty() : Optional.of(byPublishedAt.first());
+        }
+
+        synchronized List<UUID> oldest(int amount, Collection<UUID> excluding) {
+            List<UUID> oldest = new ArrayList<>(amount);
+            Iterator<PublishedListingEntry> entries = byPublishedAt.iterator();
+            while (oldest.size() < amount && entries.hasNext()) {
+                UUID listingId = entries.next().listingId();
+                if (!excluding.contains(listingId)) {
+                    oldest.add(listingId);
+                }
+            }
+            return oldest;
+        }
+
+        private void addEntry(PublishedListingEntry entry) {
+            byListingId.put(entry.listingId(), entry);
+            byPublishedAt.add(entry);
+        }
+    }
+}
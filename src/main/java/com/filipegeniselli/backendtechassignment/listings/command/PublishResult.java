@@ -0,0 +1,10 @@
+package com.filipegeniselli.backendtechassignment.listings.command;
+
+import java.util.UUID;
+
+public record PublishResult(UUID listingId, UUID evictedListingId) {
+
+    public boolean evicted() {
+        return evictedListingId != null;
+    }
+}
@@ -0,0 +1,30 @@
+package com.filipegeniselli.backendtechassignment.listings.command;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.UUID;
+
+/**
+ * Sorted the same way the database sorts (publishedAt, id): the date with the microseconds stored by the column
+ * and the id by its unsigned bytes, UUID.compareTo compares signed values and disagrees with the database on ties
+ */
+public record PublishedListingEntry(UUID listingId, LocalDateTime publishedAt) implements Comparable<PublishedListingEntry> {
+
+    private static final Comparator<UUID> UNSIGNED_UUID = Comparator
+            .comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+            .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned);
+
+    private static final Comparator<PublishedListingEntry> OLDEST_FIRST = Comparator
+            .comparing(PublishedListingEntry::publishedAt, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(PublishedListingEntry::listingId, UNSIGNED_UUID);
+
+    public PublishedListingEntry {
+        publishedAt = publishedAt == null ? null : publishedAt.truncatedTo(ChronoUnit.MICROS);
+    }
+
+    @Override
+    public int compareTo(PublishedListingEntry other) {
+        return OLDEST_FIRST.compare(this, other);
+    }
+}
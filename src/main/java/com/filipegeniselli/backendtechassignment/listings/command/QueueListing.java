@@ -0,0 +1,8 @@
+package com.filipegeniselli.backendtechassignment.listings.command;
+
+/**
+ * Creates the listing on the ListingWriteBehind queue, the id is returned before the listing is inserted
+ * @param listing
+ */
+public record QueueListing(CreateUpdateListing listing) {
+}
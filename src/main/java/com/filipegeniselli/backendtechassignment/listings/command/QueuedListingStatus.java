@@ -0,0 +1,10 @@
+package com.filipegeniselli.backendtechassignment.listings.command;
+
+import com.filipegeniselli.backendtechassignment.listings.QueuedListingState;
+
+/**
+ * @param state QUEUED or FAILED, the written listings are not tracked by the ListingWriteBehind
+ * @param error the reason of the failure
+ */
+public record QueuedListingStatus(QueuedListingState state, String error) {
+}
@@ -0,0 +1,155 @@
+package com.filipegeniselli.backendtechassignment.listings.command;
+
+import com.filipegeniselli.backendtechassignment.TierLimitConfiguration;
+import com.filipegeniselli.backendtechassignment.dealer.Dealer;
+import com.filipegeniselli.backendtechassignment.dealer.DealerLocks;
+import com.filipegeniselli.backendtechassignment.dealer.DealerRepository;
+import com.filipegeniselli.backendtechassignment.dealer.DealerTierLimit;
+import com.filipegeniselli.backendtechassignment.listings.ListingRepository;
+import com.filipegeniselli.backendtechassignment.listings.ListingStatus;
+import com.filipegeniselli.backendtechassignment.listings.ListingStatusChanged;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Brings the published listings of a dealer back under the tier limit after a downgrade,
+ * the oldest published listings over the limit are removed by one update statement.
+ *
+ * The limit is enforced even for dealers that don't allow removing old listings, that option only decides
+ * what happens to a new publish, a dealer on a lower tier can't keep more listings than the tier allows.
+ *
+ * The periodic sweep finds the dealers over the limit with the published listings counter of the dealer,
+ * the query reads the (tier, publishedListings) index so the cost depends on the amount of dealers over the limit.
+ * Each dealer is reconciled on its own transaction, with the same lock used by the status changes.
+ */
+@Component
+public class TierLimitReconciler {
+
+    private static final Logger logger = LoggerFactory.getLogger(TierLimitReconciler.class);
+    private static final UUID FIRST_ID = new UUID(0, 0);
+
+    private final DealerRepository dealerRepository;
+    private final ListingRepository listingRepository;
+    private final TierLimitConfiguration tierLimitConfiguration;
+    private final PublicationLedger publicationLedger;
+    private final DealerLocks dealerLocks;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int chunkSize;
+
+    @Autowired
+    public TierLimitReconciler(DealerRepository dealerRepository,
+                               ListingRepository listingRepository,
+                               TierLimitConfiguration tierLimitConfiguration,
+                               PublicationLedger publicationLedger,
+                               DealerLocks dealerLocks,
+                               TransactionTemplate transactionTemplate,
+                               ApplicationEventPublisher eventPublisher,
+                               @Value("${tier-reconciliation.chunk-size:100}") int chunkSize) {
+        this.dealerRepository = dealerRepository;
+        this.listingRepository = listingRepository;
+        this.tierLimitConfiguration = tierLimitConfiguration;
+        this.publicationLedger = publicationLedger;
+        this.dealerLocks = dealerLocks;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param dealerId
+     * @return the ids of the removed listings, empty when the dealer is within the limit
+     */
+    public List<UUID> reconcile(UUID dealerId) {
+        return dealerLocks.callLocked(dealerId, () -> transactionTemplate.execute(status -> removeOverflow(dealerId)));
+    }
+
+    private List<UUID> removeOverflow(UUID dealerId) {
+        Dealer dealer = dealerRepository.findForUpdateById(dealerId).orElse(null);
+        if (dealer == null) {
+            return List.of();
+        }
+
+        long published = dealer.getPublishedListings() == null
+                ? publicationLedger.publishedCount(dealerId)
+                : dealer.getPublishedListings();
+        long overflow = published - tierLimitConfiguration.getTierLimit(dealer.getTier());
+        if (overflow <= 0) {
+            return List.of();
+        }
+
+        List<UUID> oldest = listingRepository.findOldestPublishedIds(dealerId, PageRequest.of(0, (int) overflow));
+        LocalDateTime removedAt = LocalDateTime.now();
+        int removed = listingRepository.removePublishedListings(oldest, removedAt);
+        if (dealer.getPublishedListings() != null) {
+            dealerRepository.addPublishedListings(dealerId, -removed);
+        }
+
+        oldest.forEach(listingId -> {
+            publicationLedger.unpublished(dealerId, listingId);
+            eventPublisher.publishEvent(new ListingStatusChanged(dealerId, listingId,
+                    ListingStatus.PUBLISHED, ListingStatus.REMOVED, removedAt));
+        });
+        logger.info("Removed {} published listings of dealer {} over the {} tier limit", removed, dealerId, dealer.getTier());
+        return oldest;
+    }
+
+    /**
+     * Reads the dealers over the limit of each tier in chunks ordered by id, a failure on one dealer
+     * is logged and the sweep moves to the next one
+     */
+    @Scheduled(fixedDelayString = "${tier-reconciliation.interval:PT10M}",
+            initialDelayString = "${tier-reconciliation.interval:PT10M}")
+    public void sweep() {
+        for (DealerTierLimit tier : DealerTierLimit.values()) {
+            int limit = tierLimitConfiguration.getTierLimit(tier);
+            UUID after = FIRST_ID;
+            List<UUID> dealers;
+            do {
+                dealers = dealerRepository.findOverLimitDealers(tier, limit, after, PageRequest.of(0, chunkSize));
+                for (UUID dealerId : dealers) {
+                    try {
+                        reconcile(dealerId);
+                    } catch (RuntimeException e) {
+                        logger.warn("Couldn't reconcile the tier limit of dealer {}", dealerId, e);
+                    }
+                }
+                if (!dealers.isEmpty()) {
+                    after = dealers.get(dealers.size() - 1);
+                }
+            } while (dealers.size() == chunkSize);
+        }
+    }
+
+    /**
+     * Dealers created before the published listings counter existed have it null,
+     * they are counted in chunks once the application starts and reconciled right after
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillPublishedListings() {
+        List<UUID> dealers;
+        do {
+            dealers = dealerRepository.findWithoutPublishedListings(PageRequest.of(0, chunkSize));
+            for (UUID dealerId : dealers) {
+                dealerLocks.runLocked(dealerId, () -> transactionTemplate.executeWithoutResult(status -> {
+                    dealerRepository.findForUpdateById(dealerId);
+                    dealerRepository.countPublishedListings(dealerId);
+                }));
+                reconcile(dealerId);
+            }
+        } while (!dealers.isEmpty());
+    }
+}
@@ -0,0 +1,6 @@
+package com.filipegeniselli.backendtechassignment.listings.query;
+
+import com.filipegeniselli.backendtechassignment.listings.ListingStatus;
+
+public record FindAllAfterCursor(ListingStatus status, String cursor, int pageSize) {
+}
@@ -0,0 +1,4 @@
+package com.filipegeniselli.backendtechassignment.listings.query;
+
+public record FindArchived(String cursor, int pageSize) {
+}
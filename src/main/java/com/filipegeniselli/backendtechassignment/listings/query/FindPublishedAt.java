@@ -0,0 +1,6 @@
+package com.filipegeniselli.backendtechassignment.listings.query;
+
+import java.time.LocalDateTime;
+
+public record FindPublishedAt(LocalDateTime at) {
+}
@@ -0,0 +1,7 @@
+package com.filipegeniselli.backendtechassignment.listings.query;
+
+import java.util.List;
+import java.util.UUID;
+
+public record FindPublishedByIds(List<UUID> listingIds) {
+}
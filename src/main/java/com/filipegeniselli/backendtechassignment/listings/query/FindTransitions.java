@@ -0,0 +1,6 @@
+package com.filipegeniselli.backendtechassignment.listings.query;
+
+import java.util.UUID;
+
+public record FindTransitions(UUID listingId) {
+}
@@ -0,0 +1,58 @@
+package com.filipegeniselli.backendtechassignment.listings.query;
+
+import com.filipegeniselli.backendtechassignment.exception.BadRequestException;
+import com.filipegeniselli.backendtechassignment.listings.ListingStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Opaque token used by the keyset pagination, it holds the sort value and the id of the last returned listing.
+ *
+ * Published listings are sorted by publishedAt, all the other status by createdAt, the id is the tiebreaker.
+ * The status is part of the token so a cursor can't be reused with a different filter.
+ * The archived listings are sorted by removedAt, their cursors have the REMOVED status.
+ */
+record ListingCursor(ListingStatus status, LocalDateTime sortValue, UUID id) {
+
+    private static final String SEPARATOR = "|";
+
+    static ListingCursor after(ListingView listing) {
+        return new ListingCursor(listing.status(), sortValueOf(listing), listing.id());
+    }
+
+    static ListingCursor afterArchived(ListingView listing) {
+        return new ListingCursor(ListingStatus.REMOVED, listing.removedAt(), listing.id());
+    }
+
+    static LocalDateTime sortValueOf(ListingView listing) {
+        return listing.status() == ListingStatus.PUBLISHED ? listing.publishedAt() : listing.createdAt();
+    }
+
+    static ListingCursor decode(String token, ListingStatus expectedStatus) {
+        try {
+            String[] values = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8)
+                    .split("\\" + SEPARATOR);
+
+            ListingCursor cursor = new ListingCursor(ListingStatus.valueOf(values[0]),
+                    LocalDateTime.parse(values[1]),
+                    UUID.fromString(values[2]));
+
+            if (cursor.status() != expectedStatus) {
+                throw new BadRequestException("The cursor was created for a different status filter");
+            }
+
+            return cursor;
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException | DateTimeParseException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+
+    String encode() {
+        String value = status + SEPARATOR + sortValue + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
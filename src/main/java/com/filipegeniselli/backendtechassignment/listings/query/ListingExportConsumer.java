@@ -0,0 +1,15 @@
+package com.filipegeniselli.backendtechassignment.listings.query;
+
+import com.filipegeniselli.backendtechassignment.listings.ListingDto;
+
+import java.io.IOException;
+
+/**
+ * Receives the exported listings one by one while the query is still reading the rows
+ */
+@FunctionalInterface
+public interface ListingExportConsumer {
+
+    void accept(ListingDto listing) throws IOException;
+
+}
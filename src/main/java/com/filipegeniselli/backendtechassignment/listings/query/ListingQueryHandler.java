@@ -2,74 +2,361 @@ package com.filipegeniselli.backendtechassignment.listings.query;
 
 import com.filipegeniselli.backendtechassignment.PageInfo;
 import com.filipegeniselli.backendtechassignment.PagedResult;
+import com.filipegeniselli.backendtechassignment.datasource.ReadsFromReplica;
+import com.filipegeniselli.backendtechassignment.exception.BadRequestException;
 import com.filipegeniselli.backendtechassignment.exception.NotFoundException;
-import com.filipegeniselli.backendtechassignment.listings.Listing;
+import com.filipegeniselli.backendtechassignment.listings.ArchivedListingRepository;
 import com.filipegeniselli.backendtechassignment.listings.ListingDealerDto;
 import com.filipegeniselli.backendtechassignment.listings.ListingDto;
+import com.filipegeniselli.backendtechassignment.listings.ListingJournal;
+import com.filipegeniselli.backendtechassignment.listings.ListingProjector;
+import com.filipegeniselli.backendtechassignment.listings.ListingReadModelRepository;
 import com.filipegeniselli.backendtechassignment.listings.ListingRepository;
+import com.filipegeniselli.backendtechassignment.listings.ListingStatus;
+import com.filipegeniselli.backendtechassignment.listings.ListingTransition;
+import com.filipegeniselli.backendtechassignment.listings.ListingTransitionDto;
+import com.filipegeniselli.backendtechassignment.listings.ListingTransitionsDto;
+import com.filipegeniselli.backendtechassignment.listings.ListingUrls;
+import com.filipegeniselli.backendtechassignment.listings.ListingsPublishedAtDto;
+import com.filipegeniselli.backendtechassignment.listings.PublishedListingAtDto;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
-import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
+/**
+ * The queries select only the columns of the ListingDto and the dealer name, the rows are mapped straight to records,
+ * no entity is loaded and there's no dirty checking on read-only transactions.
+ *
+ * The listings are read from the ListingReadModel, which has the dealer name on every row, a page is one range of
+ * its index without a join. The listing and dealer tables are read while the read model is rebuilt or disabled.
+ */
 @Service
+@ReadsFromReplica
+@Transactional(readOnly = true)
 public class ListingQueryHandler implements ListingQueryService {
 
     private final ListingRepository listingRepository;
+    private final ListingReadModelRepository listingReadModelRepository;
+    private final ListingProjector listingProjector;
+    private final ArchivedListingRepository archivedListingRepository;
+    private final ListingJournal listingJournal;
 
     @Autowired
-    public ListingQueryHandler(ListingRepository listingRepository) {
+    public ListingQueryHandler(ListingRepository listingRepository,
+                               ListingReadModelRepository listingReadModelRepository,
+                               ListingProjector listingProjector,
+                               ArchivedListingRepository archivedListingRepository,
+                               ListingJournal listingJournal) {
         this.listingRepository = listingRepository;
+        this.listingReadModelRepository = listingReadModelRepository;
+        this.listingProjector = listingProjector;
+        this.archivedListingRepository = archivedListingRepository;
+        this.listingJournal = listingJournal;
     }
 
     @Override
     public ListingDto handle(UUID dealerId, FindById query) {
-        Listing listing = listingRepository.findByDealer_IdAndId(dealerId, query.listingId())
+        Optional<ListingView> view = listingProjector.ready()
+                ? listingReadModelRepository.findViewByDealerAndId(dealerId, query.listingId())
+                : listingRepository.findViewByDealerAndId(dealerId, query.listingId());
+        ListingView listing = view
                 .orElseThrow(() -> new NotFoundException("Could not find Listing with the requested Id"));
 
-        return convertEntityToDto(listing);
+        return convertViewToDto(listing,
+                new ListingDealerDto(listing.dealerName(), ListingUrls.dealer(listing.dealerId()), listing.dealerVersion()),
+                ListingUrls.listing(listing.dealerId(), listing.id()));
+    }
+
+    @Override
+    public ListingVersion handle(UUID dealerId, FindVersionById query) {
+        Optional<ListingVersion> version = listingProjector.ready()
+                ? listingReadModelRepository.findVersionByDealerAndId(dealerId, query.listingId())
+                : listingRepository.findVersionByDealerAndId(dealerId, query.listingId());
+        return version
+                .orElseThrow(() -> new NotFoundException("Could not find Listing with the requested Id"));
+    }
+
+    @Override
+    public Optional<ListingsVersion> handle(UUID dealerId, FindListingsVersion query) {
+        return listingRepository.findListingsStamps(dealerId)
+                .map(stamps -> stamps.version(query.status()));
     }
 
     @Override
     public PagedResult<ListingDto> handle(UUID dealerId, FindAllWithFilters query) {
-        Page<Listing> result = listingRepository.findByDealer_IdAndStatus(dealerId,
-                query.status(),
-                query.pageRequest());
-
-        return new PagedResult<>(result
-                .get()
-                .map(this::convertEntityToDto)
-                .toList(),
+        Page<ListingView> result = listingProjector.ready()
+                ? listingReadModelRepository.findViewsByDealerAndStatus(dealerId, query.status(), query.pageRequest())
+                : listingRepository.findViewsByDealerAndStatus(dealerId, query.status(), query.pageRequest());
+
+        return new PagedResult<>(convertViewsToDtos(dealerId, result.getContent()),
                 new PageInfo(result.getSize(),
                         result.getNumber(),
                         result.getTotalElements()));
 
     }
 
-    private ListingDto convertEntityToDto(Listing entity) {
+    /**
+     * Keyset pagination, it reads one extra row to know if there's a next page instead of running a count query
+     * @param dealerId
+     * @param query
+     * @return
+     */
+    @Override
+    public PagedResult<ListingDto> handle(UUID dealerId, FindAllAfterCursor query) {
+        if (query.pageSize() < 1) {
+            throw new BadRequestException("The pageSize needs to be greater than 0");
+        }
+
+        PageRequest limit = PageRequest.of(0, query.pageSize() + 1);
+        List<ListingView> result = findPage(dealerId, query, limit);
+
+        String nextCursor = null;
+        if (result.size() > query.pageSize()) {
+            result = result.subList(0, query.pageSize());
+            nextCursor = ListingCursor.after(result.get(result.size() - 1)).encode();
+        }
+
+        return new PagedResult<>(convertViewsToDtos(dealerId, result),
+                PageInfo.ofCursor(query.pageSize(), nextCursor));
+    }
+
+    /**
+     * Every listing is handed to the consumer as soon as its row is read, only the current row is kept in memory.
+     * The consumer runs inside the read-only transaction, the stream is closed when the export ends or fails
+     * @param dealerId
+     * @param query
+     * @param consumer
+     * @throws IOException
+     */
+    @Override
+    public void handle(UUID dealerId, ExportListings query, ListingExportConsumer consumer) throws IOException {
+        try (Stream<ListingView> views = streamViews(dealerId, query)) {
+            ListingDealerDto dealer = null;
+            String listingsUrl = ListingUrls.listingsOf(dealerId);
+
+            Iterator<ListingView> iterator = views.iterator();
+            while (iterator.hasNext()) {
+                ListingView view = iterator.next();
+                if (dealer == null) {
+                    dealer = new ListingDealerDto(view.dealerName(), ListingUrls.dealer(dealerId), view.dealerVersion());
+                }
+                consumer.accept(convertViewToDto(view, dealer, listingsUrl + view.id()));
+            }
+        }
+    }
+
+    /**
+     * Keyset pagination over the archive sorted by (removedAt, id), the same way as the live listings
+     * @param dealerId
+     * @param query
+     * @return
+     */
+    @Override
+    public PagedResult<ListingDto> handle(UUID dealerId, FindArchived query) {
+        if (query.pageSize() < 1) {
+            throw new BadRequestException("The pageSize needs to be greater than 0");
+        }
+
+        PageRequest limit = PageRequest.of(0, query.pageSize() + 1);
+        List<ListingView> result;
+        if (query.cursor() == null || query.cursor().isBlank()) {
+            result = archivedListingRepository.findFirstPage(dealerId, limit);
+        } else {
+            ListingCursor cursor = ListingCursor.decode(query.cursor(), ListingStatus.REMOVED);
+            result = archivedListingRepository.findPageAfter(dealerId, cursor.sortValue(), cursor.id(), limit);
+        }
+
+        String nextCursor = null;
+        if (result.size() > query.pageSize()) {
+            result = result.subList(0, query.pageSize());
+            nextCursor = ListingCursor.afterArchived(result.get(result.size() - 1)).encode();
+        }
+
+        return new PagedResult<>(convertViewsToDtos(dealerId, result, ListingUrls.archivedListingsOf(dealerId)),
+                PageInfo.ofCursor(query.pageSize(), nextCursor));
+    }
+
+    @Override
+    public ListingDto handle(UUID dealerId, FindArchivedById query) {
+        ListingView listing = archivedListingRepository.findViewByDealerAndId(dealerId, query.listingId())
+                .orElseThrow(() -> new NotFoundException("Could not find an archived Listing with the requested Id"));
+
+        return convertViewToDto(listing,
+                new ListingDealerDto(listing.dealerName(), ListingUrls.dealer(listing.dealerId()), listing.dealerVersion()),
+                ListingUrls.archivedListing(listing.dealerId(), listing.id()));
+    }
+
+    /**
+     * The listings come from many dealers, the dealer dto is built once per dealer
+     * @param query
+     * @return
+     */
+    @Override
+    public List<ListingDto> handle(FindPublishedByIds query) {
+        if (query.listingIds().isEmpty()) {
+            return List.of();
+        }
+
+        Map<UUID, ListingView> views = new HashMap<>();
+        List<ListingView> published = listingProjector.ready()
+                ? listingReadModelRepository.findPublishedViewsByIds(query.listingIds())
+                : listingRepository.findPublishedViewsByIds(query.listingIds());
+        published.forEach(view -> views.put(view.id(), view));
+
+        Map<UUID, ListingDealerDto> dealers = new HashMap<>();
+        List<ListingDto> listings = new ArrayList<>(views.size());
+        for (UUID listingId : query.listingIds()) {
+            ListingView view = views.get(listingId);
+            if (view != null) {
+                ListingDealerDto dealer = dealers.computeIfAbsent(view.dealerId(), dealerId ->
+                        new ListingDealerDto(view.dealerName(), ListingUrls.dealer(dealerId), view.dealerVersion()));
+                listings.add(convertViewToDto(view, dealer, ListingUrls.listing(view.dealerId(), view.id())));
+            }
+        }
+
+        return listings;
+    }
+
+    @Override
+    public ListingsPublishedAtDto handle(UUID dealerId, FindPublishedAt query) {
+        if (query.at() == null) {
+            throw new BadRequestException("The moment is required");
+        }
+
+        List<PublishedListingAtDto> listings = listingJournal.publishedAt(dealerId, query.at()).entrySet().stream()
+                .sorted(Map.Entry.<UUID, LocalDateTime>comparingByValue().thenComparing(Map.Entry.comparingByKey()))
+                .map(listing -> new PublishedListingAtDto(ListingUrls.listing(dealerId, listing.getKey()),
+                        listing.getValue(),
+                        Duration.between(listing.getValue(), query.at()).toSeconds()))
+                .toList();
+
+        return new ListingsPublishedAtDto(query.at(), listings);
+    }
+
+    /**
+     * The time on market sums the periods between each publication and the next transition out of PUBLISHED
+     */
+    @Override
+    public ListingTransitionsDto handle(UUID dealerId, FindTransitions query) {
+        List<ListingTransition> transitions = listingJournal.transitions(dealerId, query.listingId());
+        if (transitions.isEmpty()) {
+            throw new NotFoundException("Could not find the transitions of the Listing");
+        }
+
+        Duration timeOnMarket = Duration.ZERO;
+        LocalDateTime publishedAt = null;
+        List<ListingTransitionDto> history = new ArrayList<>(transitions.size());
+        for (ListingTransition transition : transitions) {
+            if (transition.getStatus() == ListingStatus.PUBLISHED) {
+                publishedAt = transition.getChangedAt();
+            } else if (publishedAt != null) {
+                timeOnMarket = timeOnMarket.plus(Duration.between(publishedAt, transition.getChangedAt()));
+                publishedAt = null;
+            }
+            history.add(new ListingTransitionDto(transition.getPreviousStatus(), transition.getStatus(), transition.getChangedAt()));
+        }
+        if (publishedAt != null) {
+            timeOnMarket = timeOnMarket.plus(Duration.between(publishedAt, LocalDateTime.now()));
+        }
+
+        return new ListingTransitionsDto(ListingUrls.listing(dealerId, query.listingId()),
+                publishedAt != null,
+                timeOnMarket.toSeconds(),
+                history);
+    }
+
+    private List<ListingView> findPage(UUID dealerId, FindAllAfterCursor query, PageRequest limit) {
+        if (listingProjector.ready()) {
+            if (query.cursor() == null || query.cursor().isBlank()) {
+                return listingReadModelRepository.findFirstPage(dealerId, query.status(), limit);
+            }
+
+            ListingCursor cursor = ListingCursor.decode(query.cursor(), query.status());
+            return listingReadModelRepository.findPageAfter(dealerId, query.status(), cursor.sortValue(), cursor.id(), limit);
+        }
+
+        boolean sortByPublishedAt = query.status() == ListingStatus.PUBLISHED;
+
+        if (query.cursor() == null || query.cursor().isBlank()) {
+            return sortByPublishedAt
+                    ? listingRepository.findFirstPageOrderByPublishedAt(dealerId, query.status(), limit)
+                    : listingRepository.findFirstPageOrderByCreatedAt(dealerId, query.status(), limit);
+        }
+
+        ListingCursor cursor = ListingCursor.decode(query.cursor(), query.status());
+        return sortByPublishedAt
+                ? listingRepository.findPageAfterOrderByPublishedAt(dealerId, query.status(), cursor.sortValue(), cursor.id(), limit)
+                : listingRepository.findPageAfterOrderByCreatedAt(dealerId, query.status(), cursor.sortValue(), cursor.id(), limit);
+    }
+
+    private Stream<ListingView> streamViews(UUID dealerId, ExportListings query) {
+        if (listingProjector.ready()) {
+            return query.status() == null
+                    ? listingReadModelRepository.streamViewsByDealer(dealerId)
+                    : listingReadModelRepository.streamViewsByDealerAndStatus(dealerId, query.status());
+        }
+
+        return query.status() == null
+                ? listingRepository.streamViewsByDealer(dealerId)
+                : listingRepository.streamViewsByDealerAndStatus(dealerId, query.status());
+    }
+
+    /**
+     * All the listings of a page belong to the same dealer, the dealer dto and the url prefix are built once per page
+     * @param dealerId
+     * @param views
+     * @return
+     */
+    private List<ListingDto> convertViewsToDtos(UUID dealerId, List<ListingView> views) {
+        return convertViewsToDtos(dealerId, views, ListingUrls.listingsOf(dealerId));
+    }
+
+    private List<ListingDto> convertViewsToDtos(UUID dealerId, List<ListingView> views, String listingsUrl) {
+        if (views.isEmpty()) {
+            return List.of();
+        }
+
+        ListingDealerDto dealer = new ListingDealerDto(views.get(0).dealerName(), ListingUrls.dealer(dealerId),
+                views.get(0).dealerVersion());
+
+        List<ListingDto> listings = new ArrayList<>(views.size());
+        for (ListingView view : views) {
+            listings.add(convertViewToDto(view, dealer, listingsUrl + view.id()));
+        }
+
+        return listings;
+    }
+
+    private ListingDto convertViewToDto(ListingView view, ListingDealerDto dealer, String url) {
         return new ListingDto(
-                new ListingDealerDto(entity.getDealer().getName(),
-                        UriComponentsBuilder
-                                .fromPath("/dealers/{id}")
-                                .buildAndExpand(entity.getDealer().getId())
-                                .toString()),
-                entity.getVehicle(),
-                entity.getCondition(),
-                entity.getPrice(),
-                entity.getColor(),
-                entity.getTransmission(),
-                entity.getMileage(),
-                entity.getFuelType(),
-                entity.getStatus(),
-                entity.getCreatedAt(),
-                entity.getPublishedAt(),
-                entity.getRemovedAt(),
-                UriComponentsBuilder
-                        .fromPath("/{dealerId}/listings/{id}")
-                        .buildAndExpand(entity.getDealer().getId(), entity.getId())
-                        .toString()
+                dealer,
+                view.vehicle(),
+                view.condition(),
+                view.price(),
+                view.color(),
+                view.transmission(),
+                view.mileage(),
+                view.fuelType(),
+                view.status(),
+                view.createdAt(),
+                view.publishedAt(),
+                view.removedAt(),
+                url,
+                view.version()
         );
     }
 }
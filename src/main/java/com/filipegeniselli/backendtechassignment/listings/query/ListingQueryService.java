@@ -2,13 +2,55 @@ package com.filipegeniselli.backendtechassignment.listings.query;
 
 import com.filipegeniselli.backendtechassignment.PagedResult;
 import com.filipegeniselli.backendtechassignment.listings.ListingDto;
+import com.filipegeniselli.backendtechassignment.listings.ListingTransitionsDto;
+import com.filipegeniselli.backendtechassignment.listings.ListingsPublishedAtDto;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 public interface ListingQueryService {
 
     PagedResult<ListingDto> handle(UUID dealerId, FindAllWithFilters query);
 
+    PagedResult<ListingDto> handle(UUID dealerId, FindAllAfterCursor query);
+
     ListingDto handle(UUID dealerId, FindById query);
 
+    ListingVersion handle(UUID dealerId, FindVersionById query);
+
+    /**
+     * @param dealerId
+     * @param query
+     * @return empty when the dealer doesn't exist
+     */
+    Optional<ListingsVersion> handle(UUID dealerId, FindListingsVersion query);
+
+    void handle(UUID dealerId, ExportListings query, ListingExportConsumer consumer) throws IOException;
+
+    /**
+     * @param dealerId
+     * @param query
+     * @return the archived listings of the dealer in the order they were removed
+     */
+    PagedResult<ListingDto> handle(UUID dealerId, FindArchived query);
+
+    ListingDto handle(UUID dealerId, FindArchivedById query);
+
+    /**
+     * @param query
+     * @return the listings that are still published, in the order of the ids
+     */
+    List<ListingDto> handle(FindPublishedByIds query);
+
+    /**
+     * @param dealerId
+     * @param query
+     * @return the listings of the dealer that were published at the moment, from the ListingJournal
+     */
+    ListingsPublishedAtDto handle(UUID dealerId, FindPublishedAt query);
+
+    ListingTransitionsDto handle(UUID dealerId, FindTransitions query);
+
 }
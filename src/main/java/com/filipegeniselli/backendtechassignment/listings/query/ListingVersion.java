@@ -0,0 +1,9 @@
+package com.filipegeniselli.backendtechassignment.listings.query;
+
+/**
+ * The versions that identify the json of a single listing, the dealer is part of it
+ * @param version
+ * @param dealerVersion
+ */
+public record ListingVersion(long version, long dealerVersion) {
+}
@@ -0,0 +1,32 @@
+package com.filipegeniselli.backendtechassignment.listings.query;
+
+import com.filipegeniselli.backendtechassignment.listings.ListingStatus;
+import com.filipegeniselli.backendtechassignment.listings.VehicleCondition;
+import com.filipegeniselli.backendtechassignment.listings.VehicleFuelType;
+import com.filipegeniselli.backendtechassignment.listings.VehicleTransmission;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Read-only projection with the columns of the ListingDto, the dealer name and the versions of both,
+ * it's created straight from the query result and never enters the persistence context
+ */
+public record ListingView(UUID id,
+                          UUID dealerId,
+                          String dealerName,
+                          String vehicle,
+                          VehicleCondition condition,
+                          BigDecimal price,
+                          String color,
+                          VehicleTransmission transmission,
+                          Integer mileage,
+                          VehicleFuelType fuelType,
+                          ListingStatus status,
+                          LocalDateTime createdAt,
+                          LocalDateTime publishedAt,
+                          LocalDateTime removedAt,
+                          long version,
+                          long dealerVersion) {
+}
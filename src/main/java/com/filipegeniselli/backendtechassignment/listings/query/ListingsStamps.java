@@ -0,0 +1,23 @@
+package com.filipegeniselli.backendtechassignment.listings.query;
+
+import com.filipegeniselli.backendtechassignment.listings.ListingStatus;
+
+/**
+ * The version of the dealer with the stamps of each status, the stamp of the requested status
+ * is picked here since the query can't use the status parameter to choose the column
+ * @param dealerVersion
+ * @param draftStamp
+ * @param publishedStamp
+ * @param removedStamp
+ */
+public record ListingsStamps(long dealerVersion, long draftStamp, long publishedStamp, long removedStamp) {
+
+    public ListingsVersion version(ListingStatus status) {
+        long stamp = switch (status) {
+            case DRAFT -> draftStamp;
+            case PUBLISHED -> publishedStamp;
+            case REMOVED -> removedStamp;
+        };
+        return new ListingsVersion(dealerVersion, stamp);
+    }
+}
@@ -0,0 +1,10 @@
+package com.filipegeniselli.backendtechassignment.listings.query;
+
+/**
+ * The versions that identify a page of listings with a status, the page changes only when
+ * the dealer or the stamp of the status change
+ * @param dealerVersion
+ * @param stamp of the listings with the status
+ */
+public record ListingsVersion(long dealerVersion, long stamp) {
+}
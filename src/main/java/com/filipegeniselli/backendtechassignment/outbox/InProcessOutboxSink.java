@@ -0,0 +1,93 @@
+package com.filipegeniselli.backendtechassignment.outbox;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Publishes the outbox messages as application events, for the consumers running in the same instance
+ * and for the local tests. The relay only fills a bounded queue, one thread publishes the messages in order,
+ * so a slow @EventListener holds the relay back instead of the commands. A listener that fails doesn't get
+ * the message again, the message already left the outbox.
+ *
+ * Only the tests enable it, a message nobody listens to is lost once it's delivered.
+ */
+@Component
+@ConditionalOnProperty(prefix = "outbox.sinks.in-process", name = "enabled", havingValue = "true")
+public class InProcessOutboxSink implements OutboxSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(InProcessOutboxSink.class);
+
+    private final ApplicationEventPublisher eventPublisher;
+    private final BlockingQueue<OutboxMessage> queue;
+    private final Thread publisher;
+
+    @Autowired
+    public InProcessOutboxSink(ApplicationEventPublisher eventPublisher,
+                               @Value("${outbox.sinks.in-process.capacity:10000}") int capacity) {
+        this.eventPublisher = eventPublisher;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.publisher = new Thread(this::publish, "outbox-in-process");
+        this.publisher.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        publisher.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        publisher.interrupt();
+    }
+
+    @Override
+    public String name() {
+        return "in-process";
+    }
+
+    @Override
+    public int capacity() {
+        return queue.remainingCapacity();
+    }
+
+    /**
+     * Only the publisher thread takes from the queue, the capacity checked here can only grow before the messages are added
+     */
+    @Override
+    public synchronized void deliver(List<OutboxMessage> messages) {
+        if (queue.remainingCapacity() < messages.size()) {
+            throw new IllegalStateException("The in-process queue has room for %d of %d messages"
+                    .formatted(queue.remainingCapacity(), messages.size()));
+        }
+        queue.addAll(messages);
+    }
+
+    private void publish() {
+        while (!Thread.currentThread().isInterrupted()) {
+            OutboxMessage message;
+            try {
+                message = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            try {
+                eventPublisher.publishEvent(message);
+            } catch (RuntimeException e) {
+                logger.warn("Outbox message {} of listing {} failed on an in-process listener", message.id(), message.listingId(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.filipegeniselli.backendtechassignment.outbox;
+
+import com.filipegeniselli.backendtechassignment.listings.ListingStatusChanged;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes the publications, unpublications and removals of published listings to the outbox.
+ * The ListingStatusChanged events are published inside the transactions of the commands, the row is committed
+ * or rolled back with the status, nothing is sent for a change that didn't happen and nothing is lost on a crash
+ */
+@Component
+public class ListingOutbox {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final boolean enabled;
+
+    @Autowired
+    public ListingOutbox(OutboxEventRepository outboxEventRepository,
+                         @Value("${outbox.enabled:true}") boolean enabled) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.enabled = enabled;
+    }
+
+    @EventListener
+    public void on(ListingStatusChanged event) {
+        OutboxEventType type = OutboxEventType.of(event.previousStatus(), event.status());
+        if (!enabled || type == null) {
+            return;
+        }
+
+        outboxEventRepository.save(OutboxEvent.OutboxEventBuilder.anOutboxEvent()
+                .type(type)
+                .dealerId(event.dealerId())
+                .listingId(event.listingId())
+                .previousStatus(event.previousStatus())
+                .status(event.status())
+                .occurredAt(event.changedAt())
+                .build());
+    }
+}
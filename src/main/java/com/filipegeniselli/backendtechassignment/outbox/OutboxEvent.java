@@ -0,0 +1,165 @@
+package com.filipegeniselli.backendtechassignment.outbox;
+
+import com.filipegeniselli.backendtechassignment.id.SnowflakeId;
+import com.filipegeniselli.backendtechassignment.listings.ListingStatus;
+import jakarta.persistence.*;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * A change of a published listing waiting to be delivered to the sinks, inserted in the transaction of the change
+ * and deleted by the OutboxRelay once every sink has it.
+ *
+ * The relay reads the rows due with the (nextAttemptAt, id) index, a failed delivery moves nextAttemptAt forward.
+ * After the last attempt nextAttemptAt is set to null, the row stays with the last error until it's retried by hand.
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_outbox_event_next_attempt", columnList = "nextAttemptAt, id"))
+public class OutboxEvent {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    @Id
+    @SnowflakeId
+    private Long id;
+    @Column(nullable = false)
+    private OutboxEventType type;
+    @Column(nullable = false)
+    private UUID dealerId;
+    @Column(nullable = false)
+    private UUID listingId;
+    private ListingStatus previousStatus;
+    @Column(nullable = false)
+    private ListingStatus status;
+    @Column(nullable = false)
+    private LocalDateTime occurredAt;
+    private int attempts;
+    private LocalDateTime nextAttemptAt;
+    @Column(length = MAX_ERROR_LENGTH)
+    private String lastError;
+
+    public Long getId() {
+        return id;
+    }
+
+    public OutboxEventType getType() {
+        return type;
+    }
+
+    public UUID getDealerId() {
+        return dealerId;
+    }
+
+    public UUID getListingId() {
+        return listingId;
+    }
+
+    public ListingStatus getPreviousStatus() {
+        return previousStatus;
+    }
+
+    public ListingStatus getStatus() {
+        return status;
+    }
+
+    public LocalDateTime getOccurredAt() {
+        return occurredAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public LocalDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public OutboxMessage toMessage() {
+        return new OutboxMessage(id, type, dealerId, listingId, previousStatus, status, occurredAt, attempts + 1);
+    }
+
+    /**
+     * @param error
+     * @param retryAt null when it was the last attempt
+     */
+    public void failed(Exception error, LocalDateTime retryAt) {
+        String message = error.getClass().getSimpleName() + ": " + error.getMessage();
+        this.attempts++;
+        this.nextAttemptAt = retryAt;
+        this.lastError = message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message;
+    }
+
+    /**
+     * @param backoff after the first failure
+     * @param maxBackoff
+     * @return the backoff doubled on every failed attempt
+     */
+    public Duration backoff(Duration backoff, Duration maxBackoff) {
+        Duration next = backoff.multipliedBy(1L << Math.min(attempts, 30));
+        return next.compareTo(maxBackoff) > 0 ? maxBackoff : next;
+    }
+
+    public static final class OutboxEventBuilder {
+        private OutboxEventType type;
+        private UUID dealerId;
+        private UUID listingId;
+        private ListingStatus previousStatus;
+        private ListingStatus status;
+        private LocalDateTime occurredAt;
+
+        private OutboxEventBuilder() {
+        }
+
+        public static OutboxEventBuilder anOutboxEvent() {
+            return new OutboxEventBuilder();
+        }
+
+        public OutboxEventBuilder type(OutboxEventType type) {
+            this.type = type;
+            return this;
+        }
+
+        public OutboxEventBuilder dealerId(UUID dealerId) {
+            this.dealerId = dealerId;
+            return this;
+        }
+
+        public OutboxEventBuilder listingId(UUID listingId) {
+            this.listingId = listingId;
+            return this;
+        }
+
+        public OutboxEventBuilder previousStatus(ListingStatus previousStatus) {
+            this.previousStatus = previousStatus;
+            return this;
+        }
+
+        public OutboxEventBuilder status(ListingStatus status) {
+            this.status = status;
+            return this;
+        }
+
+        public OutboxEventBuilder occurredAt(LocalDateTime occurredAt) {
+            this.occurredAt = occurredAt;
+            return this;
+        }
+
+        public OutboxEvent build() {
+            OutboxEvent event = new OutboxEvent();
+            event.type = type;
+            event.dealerId = dealerId;
+            event.listingId = listingId;
+            event.previousStatus = previousStatus;
+            event.status = status;
+            event.occurredAt = occurredAt;
+            event.nextAttemptAt = occurredAt;
+            return event;
+        }
+    }
+}
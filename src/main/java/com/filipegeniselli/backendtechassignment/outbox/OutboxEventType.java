@@ -0,0 +1,30 @@
+package com.filipegeniselli.backendtechassignment.outbox;
+
+import com.filipegeniselli.backendtechassignment.listings.ListingStatus;
+
+/**
+ * What happened to the published listings of a dealer, the changes between DRAFT and REMOVED are not sent
+ */
+public enum OutboxEventType {
+    PUBLISHED,
+    UNPUBLISHED,
+    /**
+     * A published listing removed by the dealer or evicted to respect the tier limit
+     */
+    REMOVED;
+
+    /**
+     * @param previousStatus
+     * @param status
+     * @return null when the change doesn't add or remove a published listing
+     */
+    public static OutboxEventType of(ListingStatus previousStatus, ListingStatus status) {
+        if (status == ListingStatus.PUBLISHED && previousStatus != ListingStatus.PUBLISHED) {
+            return PUBLISHED;
+        }
+        if (previousStatus != ListingStatus.PUBLISHED || status == ListingStatus.PUBLISHED) {
+            return null;
+        }
+        return status == ListingStatus.REMOVED ? REMOVED : UNPUBLISHED;
+    }
+}
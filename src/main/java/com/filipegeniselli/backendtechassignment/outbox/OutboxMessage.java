@@ -0,0 +1,28 @@
+package com.filipegeniselli.backendtechassignment.outbox;
+
+import com.filipegeniselli.backendtechassignment.listings.ListingStatus;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * What the sinks receive, the id is time ordered and the same on every attempt, the consumers use it
+ * to ignore a message delivered twice
+ * @param id
+ * @param type
+ * @param dealerId
+ * @param listingId
+ * @param previousStatus
+ * @param status
+ * @param occurredAt
+ * @param attempt starts at 1
+ */
+public record OutboxMessage(long id,
+                            OutboxEventType type,
+                            UUID dealerId,
+                            UUID listingId,
+                            ListingStatus previousStatus,
+                            ListingStatus status,
+                            LocalDateTime occurredAt,
+                            int attempt) {
+}
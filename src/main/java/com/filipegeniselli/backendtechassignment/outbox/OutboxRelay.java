@@ -0,0 +1,176 @@
+package com.filipegeniselli.backendtechassignment.outbox;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Delivers the outbox to the sinks. Every poll drains the events due in batches of outbox.relay.batch-size,
+ * each batch in its own transaction: the rows are locked with skip locked, sent to every sink in the order of
+ * their ids and deleted, so two instances never send the same batch at the same time.
+ *
+ * The delivery is at least once: a batch that fails on any sink is sent again to all the sinks after a backoff
+ * that doubles on every attempt, up to outbox.relay.max-retry-backoff, and is kept aside after max-attempts.
+ * The events of the failed batch can be sent after newer ones, the consumers order them by id.
+ *
+ * A batch is never bigger than the capacity of the fullest sink, the poll stops when a sink is full and the events
+ * wait in the table, a slow consumer doesn't make the relay hold more messages in memory.
+ */
+@Component
+public class OutboxRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final List<OutboxSink> sinks;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    private final Duration maxRetryBackoff;
+    private final MeterRegistry meterRegistry;
+    private final Counter relayed;
+    private final Counter backpressure;
+    private final Counter dead;
+    private final Timer lag;
+    private final AtomicReference<LocalDateTime> oldestPending = new AtomicReference<>();
+
+    @Autowired
+    public OutboxRelay(OutboxEventRepository outboxEventRepository,
+                       List<OutboxSink> sinks,
+                       TransactionTemplate transactionTemplate,
+                       MeterRegistry meterRegistry,
+                       @Value("${outbox.relay.enabled:false}") boolean enabled,
+                       @Value("${outbox.relay.batch-size:100}") int batchSize,
+                       @Value("${outbox.relay.max-attempts:10}") int maxAttempts,
+                       @Value("${outbox.relay.retry-backoff:PT1S}") Duration retryBackoff,
+                       @Value("${outbox.relay.max-retry-backoff:PT5M}") Duration maxRetryBackoff) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.sinks = List.copyOf(sinks);
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = retryBackoff;
+        this.maxRetryBackoff = maxRetryBackoff;
+        this.meterRegistry = meterRegistry;
+        this.relayed = Counter.builder("outbox.relayed")
+                .description("Outbox events delivered to every sink")
+                .register(meterRegistry);
+        this.backpressure = Counter.builder("outbox.backpressure")
+                .description("Batches not taken from the outbox because a sink was full")
+                .register(meterRegistry);
+        this.dead = Counter.builder("outbox.dead")
+                .description("Outbox events kept aside after the last attempt")
+                .register(meterRegistry);
+        this.lag = Timer.builder("outbox.lag")
+                .description("Time between the status change and the delivery of its event")
+                .register(meterRegistry);
+        Gauge.builder("outbox.oldest.pending", oldestPending, oldest -> oldest.get() == null
+                        ? 0 : Math.max(0, Duration.between(oldest.get(), LocalDateTime.now()).toMillis() / 1000.0))
+                .description("Age of the oldest event of the last batch taken from the outbox")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * The relay deletes what it delivers, without a sink there's nowhere to deliver and the application doesn't start
+     */
+    @PostConstruct
+    public void checkSinks() {
+        if (enabled && sinks.isEmpty()) {
+            throw new IllegalStateException("The outbox relay is enabled without a sink, "
+                    + "enable one of outbox.sinks or disable outbox.relay.enabled to keep the events in the outbox");
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${outbox.relay.poll-interval:PT1S}",
+            initialDelayString = "${outbox.relay.poll-interval:PT1S}")
+    public void poll() {
+        if (enabled) {
+            relay();
+        }
+    }
+
+    /**
+     * @return the amount of events delivered
+     */
+    public int relay() {
+        if (sinks.isEmpty()) {
+            return 0;
+        }
+
+        int total = 0;
+        int delivered;
+        do {
+            delivered = transactionTemplate.execute(status -> relayBatch(LocalDateTime.now()));
+            total += delivered;
+        } while (delivered > 0);
+        return total;
+    }
+
+    private int relayBatch(LocalDateTime now) {
+        int size = Math.min(batchSize, sinks.stream().mapToInt(OutboxSink::capacity).min().orElse(0));
+        if (size <= 0) {
+            backpressure.increment();
+            return 0;
+        }
+
+        List<OutboxEvent> events = outboxEventRepository.findDue(now, PageRequest.of(0, size));
+        if (events.isEmpty()) {
+            oldestPending.set(null);
+            return 0;
+        }
+        oldestPending.set(events.stream().map(OutboxEvent::getOccurredAt).min(Comparator.naturalOrder()).orElseThrow());
+
+        List<OutboxMessage> messages = events.stream()
+                .map(OutboxEvent::toMessage)
+                .sorted(Comparator.comparingLong(OutboxMessage::id))
+                .toList();
+        for (OutboxSink sink : sinks) {
+            try {
+                sink.deliver(messages);
+            } catch (Exception e) {
+                failed(sink, events, e, now);
+                return 0;
+            }
+        }
+
+        outboxEventRepository.deleteByIds(events.stream().map(OutboxEvent::getId).toList());
+        relayed.increment(events.size());
+        LocalDateTime deliveredAt = LocalDateTime.now();
+        events.forEach(event -> lag.record(Duration.between(event.getOccurredAt(), deliveredAt)));
+        return events.size();
+    }
+
+    private void failed(OutboxSink sink, List<OutboxEvent> events, Exception error, LocalDateTime now) {
+        logger.warn("Couldn't deliver {} outbox events to the {} sink", events.size(), sink.name(), error);
+        meterRegistry.counter("outbox.failures", "sink", sink.name()).increment();
+        for (OutboxEvent event : events) {
+            boolean lastAttempt = event.getAttempts() + 1 >= maxAttempts;
+            event.failed(error, lastAttempt ? null : now.plus(event.backoff(retryBackoff, maxRetryBackoff)));
+            if (lastAttempt) {
+                dead.increment();
+                logger.error("Outbox event {} of listing {} failed {} times, it won't be retried",
+                        event.getId(), event.getListingId(), event.getAttempts());
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.filipegeniselli.backendtechassignment.outbox;
+
+import java.util.List;
+
+/**
+ * Destination of the outbox messages, every sink bean receives every batch of the OutboxRelay
+ */
+public interface OutboxSink {
+
+    String name();
+
+    /**
+     * @return how many messages the sink can take now, the relay doesn't take more than that from the outbox
+     */
+    default int capacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Must only return once the messages are safe, they are deleted from the outbox right after.
+     * Any exception makes the relay try the whole batch again later
+     * @param messages ordered by id
+     */
+    void deliver(List<OutboxMessage> messages) throws Exception;
+}
@@ -0,0 +1,253 @@
+package com.filipegeniselli.backendtechassignment;
+
+import io.restassured.http.ContentType;
+import io.restassured.response.ValidatableResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * The catalog index is updated by the indexer thread after the commit, the searches wait for the expected total
+ */
+class CatalogControllerTests extends ListingsBaseControllerTest {
+
+    @Test
+    void searchListings_ShouldIntersectTheFilters() {
+        String dealerId = idOf(createDealer(getDealerResourceAsStream("businessDealerRemoveOldListings.json")));
+        String tesla = publish(dealerId, listing("2021 Tesla Model Y", "USED", "ELECTRIC", "AUTOMATIC", "white", 47399.99, 10500));
+        String golf = publish(dealerId, listing("2023 Volkswagen Golf", "NEW", "GASOLINE", "MANUAL", "Red", 20000, 0));
+        String civic = publish(dealerId, listing("2015 Honda Civic", "USED", "GASOLINE", "AUTOMATIC", "red ", 15000, 80000));
+        createListing(dealerId, listing("2024 Fiat 500", "NEW", "ELECTRIC", "AUTOMATIC", "red", 16000, 0));
+
+        awaitCatalog("", 3)
+                .body("data.url", contains(endsWith(civic), endsWith(golf), endsWith(tesla)))
+                .body("data[0].dealer.name", equalTo("Test Business dealer"))
+                .body("data[0].status", equalTo("PUBLISHED"));
+
+        search("condition=USED").body("pageInfo.total", equalTo(2));
+        search("fuelType=GASOLINE&transmission=AUTOMATIC")
+                .body("pageInfo.total", equalTo(1))
+                .body("data[0].url", endsWith(civic));
+        search("color=RED").body("pageInfo.total", equalTo(2));
+        search("color=white&color=red").body("pageInfo.total", equalTo(3));
+        search("color=blue").body("pageInfo.total", equalTo(0));
+        search("minPrice=15000&maxPrice=20000").body("pageInfo.total", equalTo(2));
+        search("maxMileage=10500").body("pageInfo.total", equalTo(2));
+        search("condition=NEW&condition=USED&minMileage=1")
+                .body("data.url", contains(endsWith(civic), endsWith(tesla)));
+        search("pageSize=2&page=1")
+                .body("pageInfo.total", equalTo(3))
+                .body("data.url", contains(endsWith(tesla)));
+    }
+
+    @Test
+    void searchListings_ShouldFollowTheStatusChanges() {
+        String dealerId = idOf(createDealer(getDealerResourceAsStream("freeDealerRemoveOldListings.json")));
+        String first = publish(dealerId, listing("2021 Tesla Model Y", "USED", "ELECTRIC", "AUTOMATIC", "white", 47399.99, 10500));
+        String second = publish(dealerId, listing("2023 Volkswagen Golf", "NEW", "GASOLINE", "MANUAL", "red", 20000, 0));
+        awaitCatalog("", 2);
+
+        // The free tier is full, the oldest listing is removed to publish the new one
+        String third = publish(dealerId, listing("2015 Honda Civic", "USED", "GASOLINE", "AUTOMATIC", "red", 15000, 80000));
+        awaitCatalog("", 2).body("data.url", contains(endsWith(third), endsWith(second)));
+
+        changeStatus(second, "DRAFT");
+        awaitCatalog("", 1).body("data.url", contains(endsWith(third)));
+
+        changeStatus(third, "REMOVED");
+        awaitCatalog("", 0);
+
+        changeStatus(second, "PUBLISHED");
+        awaitCatalog("condition=NEW", 1).body("data.url", contains(endsWith(second)));
+        search("").body("data.url", not(hasItem(endsWith(first))));
+    }
+
+    @Test
+    void searchListingsByText_ShouldMatchAllTheWords() {
+        String dealerId = idOf(createDealer(getDealerResourceAsStream("businessDealerRemoveOldListings.json")));
+        String civic = publish(dealerId, listing("2019 Honda Civic EX", "USED", "GASOLINE", "MANUAL", "red", 18000, 40000));
+        String accord = publish(dealerId, listing("2021 Honda Accord", "USED", "HYBRID", "AUTOMATIC", "white", 25000, 20000));
+        String civicTypeR = publish(dealerId, listing("2022 Honda Civic Type R", "NEW", "GASOLINE", "MANUAL", "white", 45000, 0));
+        awaitCatalog("", 3);
+
+        search("text=honda civ*")
+                .body("pageInfo.total", equalTo(2))
+                .body("data.url", contains(endsWith(civicTypeR), endsWith(civic)));
+        search("text=civic ex&sort=RELEVANCE").body("data.url", contains(endsWith(civic)));
+        search("text=honda&color=white").body("data.url", contains(endsWith(civicTypeR), endsWith(accord)));
+        given()
+                .get("/catalog/facets?text=civic")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("total", equalTo(2))
+                .body("condition.NEW", equalTo(1));
+
+        changeStatus(civicTypeR, "REMOVED");
+        awaitCatalog("text=civic", 1).body("data.url", contains(endsWith(civic)));
+
+        given()
+                .get("/catalog/listings?text=*")
+                .then()
+                .assertThat()
+                .statusCode(400)
+                .body("message", equalTo("The text must have at least one letter or digit"));
+    }
+
+    @Test
+    void suggestVehicles_ShouldCountThePublishedListings() {
+        String dealerId = idOf(createDealer(getDealerResourceAsStream("businessDealerRemoveOldListings.json")));
+        String first = publish(dealerId, listing("2019 Honda Civic EX", "USED", "GASOLINE", "MANUAL", "red", 18000, 40000));
+        publish(dealerId, listing("2019 Honda Civic EX", "USED", "GASOLINE", "MANUAL", "white", 18500, 30000));
+        publish(dealerId, listing("2021 Honda Accord", "USED", "HYBRID", "AUTOMATIC", "white", 25000, 20000));
+        createListing(dealerId, listing("2021 Honda Jazz", "USED", "HYBRID", "AUTOMATIC", "white", 25000, 20000));
+        awaitCatalog("", 3);
+
+        given()
+                .get("/catalog/suggestions?text=hon")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("vehicle", contains("2019 Honda Civic EX", "2021 Honda Accord"))
+                .body("count", contains(2, 1));
+
+        changeStatus(first, "REMOVED");
+        awaitCatalog("", 2);
+        given()
+                .get("/catalog/suggestions?text=civ&limit=1")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("vehicle", contains("2019 Honda Civic EX"))
+                .body("count", contains(1));
+
+        given()
+                .get("/catalog/suggestions?text=civ&limit=0")
+                .then()
+                .assertThat()
+                .statusCode(400)
+                .body("message", equalTo("The limit must be at least 1"));
+    }
+
+    @Test
+    void countFacets_ShouldFollowTheFilterAndTheStatusChanges() {
+        String dealerId = idOf(createDealer(getDealerResourceAsStream("businessDealerRemoveOldListings.json")));
+        publish(dealerId, listing("2021 Tesla Model Y", "USED", "ELECTRIC", "AUTOMATIC", "white", 47399.99, 10500));
+        String golf = publish(dealerId, listing("2023 Volkswagen Golf", "NEW", "GASOLINE", "MANUAL", "red", 20000, 0));
+        publish(dealerId, listing("2015 Honda Civic", "USED", "GASOLINE", "AUTOMATIC", "red", 9000, 80000));
+        awaitCatalog("", 3);
+
+        given()
+                .get("/catalog/facets?condition=USED")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("total", equalTo(2))
+                .body("condition.NEW", equalTo(1))
+                .body("condition.USED", equalTo(2))
+                .body("fuelType.GASOLINE", equalTo(1))
+                .body("fuelType.ELECTRIC", equalTo(1))
+                .body("fuelType.HYBRID", equalTo(0))
+                .body("transmission.AUTOMATIC", equalTo(2))
+                .body("price.count", contains(0, 1, 0, 0, 1, 0))
+                .body("price[1].minPrice", equalTo(5000.0f))
+                .body("price[1].maxPrice", equalTo(10000.0f));
+
+        changeStatus(golf, "DRAFT");
+        awaitCatalog("", 2);
+        given()
+                .get("/catalog/facets?color=red")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("total", equalTo(1))
+                .body("condition.NEW", equalTo(0));
+    }
+
+    @Test
+    void searchListingsWithInvalidRange_ShouldReturnBadRequest() {
+        given()
+                .get("/catalog/listings?minPrice=200&maxPrice=100")
+                .then()
+                .assertThat()
+                .statusCode(400)
+                .body("message", equalTo("The minPrice can't be greater than the maxPrice"));
+    }
+
+    private ValidatableResponse search(String query) {
+        return given()
+                .get(url(query))
+                .then()
+                .assertThat()
+                .statusCode(200);
+    }
+
+    private ValidatableResponse awaitCatalog(String query, int expectedTotal) {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (System.currentTimeMillis() < deadline) {
+            int total = given().get(url(query)).then().extract().path("pageInfo.total");
+            if (total == expectedTotal) {
+                break;
+            }
+            Thread.onSpinWait();
+        }
+        return search(query).body("pageInfo.total", equalTo(expectedTotal));
+    }
+
+    private String publish(String dealerId, Map<String, Object> listing) {
+        String location = createListing(dealerId, listing);
+        changeStatus(location, "PUBLISHED");
+        return location;
+    }
+
+    private void changeStatus(String location, String status) {
+        given()
+                .body(Map.of("status", status))
+                .contentType(ContentType.JSON)
+                .patch(location)
+                .then()
+                .assertThat()
+                .statusCode(202);
+    }
+
+    private String createListing(String dealerId, Map<String, Object> listing) {
+        String location = given()
+                .body(listing)
+                .contentType(ContentType.JSON)
+                .post("/%s/listings".formatted(dealerId))
+                .then()
+                .assertThat()
+                .statusCode(201)
+                .extract()
+                .header("Location");
+
+        List<String> parts = List.of(location.split("/"));
+        return String.join("/", parts.subList(parts.size() - 3, parts.size()));
+    }
+
+    private static String url(String query) {
+        return query.isEmpty() ? "/catalog/listings" : "/catalog/listings?" + query;
+    }
+
+    private static String idOf(String location) {
+        return location.substring(location.lastIndexOf('/') + 1);
+    }
+
+    private static Map<String, Object> listing(String vehicle, String condition, String fuelType, String transmission,
+                                               String color, double price, int mileage) {
+        Map<String, Object> listing = new HashMap<>();
+        listing.put("vehicle", vehicle);
+        listing.put("condition", condition);
+        listing.put("fuelType", fuelType);
+        listing.put("transmission", transmission);
+        listing.put("color", color);
+        listing.put("price", price);
+        listing.put("mileage", mileage);
+        return listing;
+    }
+}
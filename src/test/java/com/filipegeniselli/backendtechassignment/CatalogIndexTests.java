@@ -0,0 +1,358 @@
+package com.filipegeniselli.backendtechassignment;
+
+import com.filipegeniselli.backendtechassignment.catalog.CatalogFacets;
+import com.filipegeniselli.backendtechassignment.catalog.CatalogFilter;
+import com.filipegeniselli.backendtechassignment.catalog.CatalogIndex;
+import com.filipegeniselli.backendtechassignment.catalog.CatalogListing;
+import com.filipegeniselli.backendtechassignment.catalog.CatalogSort;
+import com.filipegeniselli.backendtechassignment.catalog.VehicleSuggestion;
+import com.filipegeniselli.backendtechassignment.catalog.VehicleSuggestionSnapshot;
+import com.filipegeniselli.backendtechassignment.exception.BadRequestException;
+import com.filipegeniselli.backendtechassignment.listings.ListingStatus;
+import com.filipegeniselli.backendtechassignment.listings.VehicleCondition;
+import com.filipegeniselli.backendtechassignment.listings.VehicleFuelType;
+import com.filipegeniselli.backendtechassignment.listings.VehicleTransmission;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+class CatalogIndexTests {
+
+    private static final CatalogFilter NO_FILTER = new CatalogFilter(null, null, null, null, null, null, null, null, null);
+    private static final LocalDateTime PUBLISHED_AT = LocalDateTime.of(2023, 6, 1, 10, 0);
+
+    private final CatalogIndex catalogIndex = new CatalogIndex(10);
+
+    @BeforeEach
+    void buildEmptyIndex() {
+        catalogIndex.beginRebuild();
+        catalogIndex.finishRebuild();
+    }
+
+    @Test
+    void search_ShouldAnswerEmptyUntilTheIndexIsBuilt() {
+        assertThat(new CatalogIndex(10).search(NO_FILTER, CatalogSort.RECENCY, PageRequest.of(0, 20))).isEmpty();
+    }
+
+    @Test
+    void search_ShouldFindThePriceRangeFromBothSidesOfTheColumn() {
+        List<CatalogListing> listings = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            listings.add(listing(i, PUBLISHED_AT.plusMinutes(i)));
+        }
+        refresh(listings);
+
+        // 11 listings are read from the inside of the range, 90 are the ones outside removed from all the documents
+        assertThat(search(priceBetween("10", "20")).getTotalElements()).isEqualTo(11);
+        assertThat(search(priceBetween("10", null)).getTotalElements()).isEqualTo(90);
+        assertThat(search(priceBetween("10.001", "10.999")).getTotalElements()).isZero();
+        assertThat(search(priceBetween(null, "0")).getContent()).containsExactly(listings.get(0).id());
+    }
+
+    @Test
+    void search_ShouldCountTheSameAsAScanAfterRandomChanges() {
+        Random random = new Random(7);
+        Map<UUID, CatalogListing> published = new HashMap<>();
+        List<CatalogListing> all = new ArrayList<>();
+        for (int round = 0; round < 20; round++) {
+            List<CatalogListing> added = new ArrayList<>();
+            for (int i = 0; i < 1_000; i++) {
+                added.add(listing(random.nextInt(100_000), PUBLISHED_AT.plusSeconds(all.size() + i)));
+            }
+            refresh(added);
+            all.addAll(added);
+            added.forEach(listing -> published.put(listing.id(), listing));
+
+            List<UUID> removed = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                removed.add(all.get(random.nextInt(all.size())).id());
+            }
+            catalogIndex.refresh(removed, List.of());
+            removed.forEach(published::remove);
+
+            int min = random.nextInt(100_000);
+            int max = min + random.nextInt(100_000 - min);
+            for (CatalogFilter filter : List.of(priceBetween(String.valueOf(min), String.valueOf(max)),
+                    priceBetween(String.valueOf(min), null), priceBetween(null, String.valueOf(max)))) {
+                long expected = published.values().stream()
+                        .filter(listing -> filter.minPrice() == null || listing.price().compareTo(filter.minPrice()) >= 0)
+                        .filter(listing -> filter.maxPrice() == null || listing.price().compareTo(filter.maxPrice()) <= 0)
+                        .count();
+                assertThat(search(filter).getTotalElements()).isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    void refresh_ShouldKeepTheOrderAfterTheIndexIsCompacted() {
+        List<CatalogListing> listings = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            listings.add(listing(i, PUBLISHED_AT.plusSeconds(i)));
+        }
+        refresh(listings);
+
+        // Only the multiples of 10 stay, removing the others compacts the index
+        List<UUID> removed = listings.stream()
+                .filter(listing -> listing.price().intValue() % 10 != 0)
+                .map(CatalogListing::id)
+                .toList();
+        catalogIndex.refresh(removed, List.of());
+
+        Page<UUID> page = search(priceBetween("1000", "1100"));
+        assertThat(page.getTotalElements()).isEqualTo(11);
+        assertThat(page.getContent()).containsExactly(listings.get(1100).id(), listings.get(1090).id(),
+                listings.get(1080).id(), listings.get(1070).id(), listings.get(1060).id(), listings.get(1050).id(),
+                listings.get(1040).id(), listings.get(1030).id(), listings.get(1020).id(), listings.get(1010).id(),
+                listings.get(1000).id());
+        assertThat(search(NO_FILTER).getTotalElements()).isEqualTo(500);
+    }
+
+    @Test
+    void refresh_ShouldMoveARepublishedListingToTheTop() {
+        CatalogListing first = listing(1, PUBLISHED_AT);
+        CatalogListing second = listing(2, PUBLISHED_AT.plusMinutes(1));
+        refresh(List.of(first, second));
+
+        CatalogListing republished = new CatalogListing(first.id(), first.vehicle(), first.condition(), first.price(), first.color(),
+                first.transmission(), first.mileage(), first.fuelType(), ListingStatus.PUBLISHED, PUBLISHED_AT.plusMinutes(2));
+        refresh(List.of(republished));
+
+        assertThat(search(NO_FILTER).getContent()).containsExactly(first.id(), second.id());
+    }
+
+    @Test
+    void facets_ShouldCountEachAttributeWithoutItsOwnFilter() {
+        refresh(List.of(
+                listing(1, VehicleCondition.NEW, VehicleFuelType.ELECTRIC, "4999.99"),
+                listing(2, VehicleCondition.NEW, VehicleFuelType.GASOLINE, "5000"),
+                listing(3, VehicleCondition.USED, VehicleFuelType.GASOLINE, "12000"),
+                listing(4, VehicleCondition.USED, VehicleFuelType.HYBRID, "60000")));
+
+        CatalogFilter filter = new CatalogFilter(Set.of(VehicleCondition.USED), Set.of(VehicleFuelType.GASOLINE),
+                null, null, null, null, null, null, null);
+        CatalogFacets facets = catalogIndex.facets(filter, new long[]{500000, 1000000}).orElseThrow();
+
+        assertThat(facets.total()).isEqualTo(1);
+        assertThat(facets.condition()).containsExactly(entry(VehicleCondition.NEW, 1L), entry(VehicleCondition.USED, 1L));
+        assertThat(facets.fuelType()).containsExactly(entry(VehicleFuelType.GASOLINE, 1L),
+                entry(VehicleFuelType.HYBRID, 1L), entry(VehicleFuelType.ELECTRIC, 0L));
+        assertThat(facets.transmission()).containsExactly(entry(VehicleTransmission.MANUAL, 0L),
+                entry(VehicleTransmission.AUTOMATIC, 1L));
+        assertThat(facets.price()).containsExactly(
+                new CatalogFacets.PriceBucket(null, new BigDecimal("5000.00"), 0),
+                new CatalogFacets.PriceBucket(new BigDecimal("5000.00"), new BigDecimal("10000.00"), 0),
+                new CatalogFacets.PriceBucket(new BigDecimal("10000.00"), null, 1));
+
+        CatalogFacets all = catalogIndex.facets(NO_FILTER, new long[]{500000, 1000000}).orElseThrow();
+        assertThat(all.total()).isEqualTo(4);
+        assertThat(all.price()).extracting(CatalogFacets.PriceBucket::count).containsExactly(1L, 1L, 2L);
+    }
+
+    @Test
+    void search_ShouldFindTheVehiclesWithAllTheWords() {
+        CatalogListing civic = listing("2019 Honda Civic EX", 1);
+        CatalogListing accord = listing("2021 Honda Accord", 2);
+        CatalogListing citroen = listing("2018 Citroën C4-Picasso", 3);
+        CatalogListing civicType = listing("2022 Honda Civic Type R", 4);
+        refresh(List.of(civic, accord, citroen, civicType));
+
+        assertThat(search(text("honda")).getContent()).containsExactly(civicType.id(), accord.id(), civic.id());
+        assertThat(search(text("HONDA civic")).getContent()).containsExactly(civicType.id(), civic.id());
+        assertThat(search(text("honda civ")).getContent()).isEmpty();
+        assertThat(search(text("honda civ*")).getContent()).containsExactly(civicType.id(), civic.id());
+        assertThat(search(text("ci*")).getContent()).containsExactly(civicType.id(), citroen.id(), civic.id());
+        assertThat(search(text("citroen picasso")).getContent()).containsExactly(citroen.id());
+        assertThat(search(text("c4")).getContent()).containsExactly(citroen.id());
+        assertThat(search(text("ford")).getContent()).isEmpty();
+
+        catalogIndex.refresh(List.of(civicType.id()), List.of());
+        assertThat(search(text("civic")).getContent()).containsExactly(civic.id());
+    }
+
+    @Test
+    void search_ShouldRankByRelevance() {
+        CatalogListing longer = listing("2022 Honda Civic Type R Limited Edition", 1);
+        CatalogListing exact = listing("2019 Honda Civic", 2);
+        CatalogListing city = listing("2020 Honda Civics Sport Hatchback Touring Edition", 3);
+        CatalogListing newest = listing("2023 Honda Civic", 4);
+        refresh(List.of(longer, exact, city, newest));
+
+        assertThat(catalogIndex.search(text("honda civic*"), CatalogSort.RELEVANCE, PageRequest.of(0, 20)).orElseThrow().getContent())
+                .containsExactly(newest.id(), exact.id(), longer.id(), city.id());
+        assertThat(catalogIndex.search(text("honda civic*"), CatalogSort.RELEVANCE, PageRequest.of(1, 3)).orElseThrow().getContent())
+                .containsExactly(city.id());
+        assertThat(catalogIndex.search(text("honda civic*"), CatalogSort.RECENCY, PageRequest.of(0, 20)).orElseThrow().getContent())
+                .containsExactly(newest.id(), city.id(), exact.id(), longer.id());
+    }
+
+    @Test
+    void search_ShouldFindTheWordsAfterTheIndexIsCompacted() {
+        List<CatalogListing> listings = new ArrayList<>();
+        for (int i = 0; i < 3_000; i++) {
+            listings.add(listing((i % 2 == 0 ? "Honda Civic " : "Ford Focus ") + i, i));
+        }
+        refresh(listings);
+
+        catalogIndex.refresh(listings.subList(0, 2_500).stream().map(CatalogListing::id).toList(), List.of());
+
+        assertThat(search(text("honda")).getTotalElements()).isEqualTo(250);
+        assertThat(search(text("focus 2999")).getContent()).containsExactly(listings.get(2999).id());
+        assertThat(search(text("civic 1000")).getContent()).isEmpty();
+        assertThat(catalogIndex.search(text("honda civic"), CatalogSort.RELEVANCE, PageRequest.of(0, 2)).orElseThrow().getContent())
+                .containsExactly(listings.get(2998).id(), listings.get(2996).id());
+    }
+
+    @Test
+    void filterWithoutWords_ShouldBeABadRequest() {
+        assertThatThrownBy(() -> text("*"))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessage("The text must have at least one letter or digit");
+        assertThatThrownBy(() -> text("a b c d e f g h i j k"))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessage("The text can't have more than 10 words");
+    }
+
+    @Test
+    void suggest_ShouldCompleteAnyWordOfTheVehicles() {
+        List<CatalogListing> listings = new ArrayList<>(List.of(
+                listing("2019 Honda Civic EX", 1), listing("2019 honda  CIVIC ex", 2), listing("2019 Honda Civic EX", 3),
+                listing("2021 Honda Accord", 4), listing("2021 Honda Accord", 5),
+                listing("2022 Honda Civic Type R", 6), listing("2018 Citroën C4-Picasso", 7)));
+        refresh(listings);
+
+        assertThat(suggest("hon", 10)).containsExactly(new VehicleSuggestion("2019 Honda Civic EX", 3),
+                new VehicleSuggestion("2021 Honda Accord", 2), new VehicleSuggestion("2022 Honda Civic Type R", 1));
+        assertThat(suggest("civic", 10)).containsExactly(new VehicleSuggestion("2019 Honda Civic EX", 3),
+                new VehicleSuggestion("2022 Honda Civic Type R", 1));
+        assertThat(suggest("HONDA   CIVIC t", 10)).containsExactly(new VehicleSuggestion("2022 Honda Civic Type R", 1));
+        assertThat(suggest("c", 2)).containsExactly(new VehicleSuggestion("2019 Honda Civic EX", 3),
+                new VehicleSuggestion("2022 Honda Civic Type R", 1));
+        assertThat(suggest("citroen c4 p", 10)).containsExactly(new VehicleSuggestion("2018 Citroën C4-Picasso", 1));
+        assertThat(suggest("honda ", 10)).hasSize(3);
+        assertThat(suggest("ex", 10)).containsExactly(new VehicleSuggestion("2019 Honda Civic EX", 3));
+        assertThat(suggest("e", 10)).containsExactly(new VehicleSuggestion("2019 Honda Civic EX", 3));
+        assertThat(suggest("honda civic ex ", 10)).isEmpty();
+        assertThat(suggest("ford", 10)).isEmpty();
+        assertThat(suggest("", 1)).containsExactly(new VehicleSuggestion("2019 Honda Civic EX", 3));
+
+        catalogIndex.refresh(List.of(listings.get(0).id(), listings.get(1).id()), List.of());
+        assertThat(suggest("hon", 10)).containsExactly(new VehicleSuggestion("2021 Honda Accord", 2),
+                new VehicleSuggestion("2019 Honda Civic EX", 1), new VehicleSuggestion("2022 Honda Civic Type R", 1));
+        catalogIndex.refresh(List.of(listings.get(2).id()), List.of());
+        assertThat(suggest("ex", 10)).isEmpty();
+    }
+
+    @Test
+    void suggest_ShouldKeepTheBestVehiclesOfEveryPrefixAfterRandomChanges() {
+        Random random = new Random(11);
+        String[] makes = {"Honda Civic", "Honda City", "Hyundai i30", "Ford Focus", "Ford Fiesta", "Fiat 500", "Fiat Panda"};
+        Map<UUID, String> published = new HashMap<>();
+        List<CatalogListing> all = new ArrayList<>();
+        for (int round = 0; round < 10; round++) {
+            List<CatalogListing> added = new ArrayList<>();
+            for (int i = 0; i < 300; i++) {
+                added.add(listing((2010 + random.nextInt(5)) + " " + makes[random.nextInt(makes.length)], all.size() + i));
+            }
+            refresh(added);
+            all.addAll(added);
+            added.forEach(listing -> published.put(listing.id(), listing.vehicle()));
+
+            List<UUID> removed = new ArrayList<>();
+            for (int i = 0; i < 150; i++) {
+                removed.add(all.get(random.nextInt(all.size())).id());
+            }
+            catalogIndex.refresh(removed, List.of());
+            removed.forEach(published::remove);
+
+            for (String prefix : List.of("", "f", "fi", "fiat p", "h", "honda c", "201", "2012 f", "civic", "i")) {
+                Map<String, Long> counts = new HashMap<>();
+                published.values().stream()
+                        .filter(vehicle -> (" " + vehicle.toLowerCase()).contains(" " + prefix))
+                        .forEach(vehicle -> counts.merge(vehicle, 1L, Long::sum));
+                List<VehicleSuggestion> expected = counts.entrySet().stream()
+                        .map(entry -> new VehicleSuggestion(entry.getKey(), entry.getValue()))
+                        .sorted(Comparator.comparingLong(VehicleSuggestion::count).reversed())
+                        .limit(10)
+                        .toList();
+                assertThat(suggest(prefix, 10)).extracting(VehicleSuggestion::count)
+                        .containsExactlyElementsOf(expected.stream().map(VehicleSuggestion::count).toList());
+                assertThat(suggest(prefix, 10)).allMatch(suggestion -> counts.get(suggestion.vehicle()) == suggestion.count());
+            }
+        }
+    }
+
+    @Test
+    void snapshot_ShouldAnswerTheSuggestionsUntilTheIndexIsBuilt(@TempDir Path directory) {
+        refresh(List.of(listing("2019 Honda Civic EX", 1), listing("2019 Honda Civic EX", 2), listing("2021 Honda Accord", 3)));
+        String file = directory.resolve("vehicles.snapshot").toString();
+        new VehicleSuggestionSnapshot(catalogIndex, file).save();
+
+        CatalogIndex restarted = new CatalogIndex(10);
+        assertThat(restarted.suggest("hon", 10)).isEmpty();
+        new VehicleSuggestionSnapshot(restarted, file).restore();
+        assertThat(restarted.suggest("hon", 10)).contains(List.of(new VehicleSuggestion("2019 Honda Civic EX", 2),
+                new VehicleSuggestion("2021 Honda Accord", 1)));
+        assertThat(restarted.search(NO_FILTER, CatalogSort.RECENCY, PageRequest.of(0, 20))).isEmpty();
+
+        restarted.beginRebuild();
+        restarted.rebuilt(List.of(listing("2021 Honda Accord", 4)));
+        restarted.finishRebuild();
+        assertThat(restarted.suggest("hon", 10)).contains(List.of(new VehicleSuggestion("2021 Honda Accord", 1)));
+    }
+
+    private List<VehicleSuggestion> suggest(String text, int limit) {
+        return catalogIndex.suggest(text, limit).orElseThrow();
+    }
+
+    private void refresh(List<CatalogListing> listings) {
+        catalogIndex.refresh(listings.stream().map(CatalogListing::id).toList(), listings);
+    }
+
+    private Page<UUID> search(CatalogFilter filter) {
+        return catalogIndex.search(filter, CatalogSort.RECENCY, PageRequest.of(0, 20)).orElseThrow();
+    }
+
+    private static CatalogFilter priceBetween(String minPrice, String maxPrice) {
+        return new CatalogFilter(null, null, null, null,
+                minPrice == null ? null : new BigDecimal(minPrice),
+                maxPrice == null ? null : new BigDecimal(maxPrice),
+                null, null, null);
+    }
+
+    private static CatalogFilter text(String text) {
+        return new CatalogFilter(null, null, null, null, null, null, null, null, text);
+    }
+
+    private static CatalogListing listing(String vehicle, int minute) {
+        return new CatalogListing(UUID.randomUUID(), vehicle, VehicleCondition.USED, BigDecimal.TEN, "white",
+                VehicleTransmission.AUTOMATIC, 10500, VehicleFuelType.ELECTRIC, ListingStatus.PUBLISHED, PUBLISHED_AT.plusMinutes(minute));
+    }
+
+    private static CatalogListing listing(int minute, VehicleCondition condition, VehicleFuelType fuelType, String price) {
+        return new CatalogListing(UUID.randomUUID(), "2019 Honda Civic EX", condition, new BigDecimal(price), "white",
+                VehicleTransmission.AUTOMATIC, 10500, fuelType, ListingStatus.PUBLISHED, PUBLISHED_AT.plusMinutes(minute));
+    }
+
+    private static CatalogListing listing(int price, LocalDateTime publishedAt) {
+        return new CatalogListing(UUID.randomUUID(), "2019 Honda Civic EX", VehicleCondition.USED, BigDecimal.valueOf(price), "white",
+                VehicleTransmission.AUTOMATIC, 10500, VehicleFuelType.ELECTRIC, ListingStatus.PUBLISHED, publishedAt);
+    }
+}
@@ -0,0 +1,98 @@
+package com.filipegeniselli.backendtechassignment;
+
+import com.filipegeniselli.backendtechassignment.catalog.CatalogFilter;
+import com.filipegeniselli.backendtechassignment.catalog.CatalogIndex;
+import com.filipegeniselli.backendtechassignment.catalog.CatalogListing;
+import com.filipegeniselli.backendtechassignment.catalog.CatalogSort;
+import com.filipegeniselli.backendtechassignment.listings.ListingStatus;
+import com.filipegeniselli.backendtechassignment.listings.VehicleCondition;
+import com.filipegeniselli.backendtechassignment.listings.VehicleFuelType;
+import com.filipegeniselli.backendtechassignment.listings.VehicleTransmission;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Text search and suggestion latency of the catalog index over two million published listings,
+ * indexed directly without the database
+ */
+@Tag("benchmark")
+class CatalogTextSearchBenchmarkTests {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogTextSearchBenchmarkTests.class);
+    private static final int LISTINGS = 2_000_000;
+    private static final int CHUNK = 10_000;
+    private static final int SEARCHES = 200;
+
+    private static final String[][] MODELS = {
+            {"Honda", "Civic", "Accord", "CR-V", "Jazz"},
+            {"Volkswagen", "Golf", "Passat", "Polo", "Tiguan"},
+            {"Toyota", "Corolla", "Camry", "Yaris", "RAV4"},
+            {"Ford", "Focus", "Fiesta", "Mustang", "Kuga"},
+            {"BMW", "320i", "X3", "X5", "M3"},
+            {"Citroën", "C3", "C4 Picasso", "Berlingo", "C5"}};
+    private static final String[] TRIMS = {"EX", "LX", "Sport", "Comfort", "Highline", "Type R", "GTI", "Titanium", ""};
+
+    @Test
+    void searchTwoMillionListings() {
+        Random random = new Random(42);
+        CatalogIndex catalogIndex = new CatalogIndex(10);
+        LocalDateTime publishedAt = LocalDateTime.of(2020, 1, 1, 0, 0);
+
+        long start = System.nanoTime();
+        catalogIndex.beginRebuild();
+        List<CatalogListing> chunk = new ArrayList<>(CHUNK);
+        for (int i = 0; i < LISTINGS; i++) {
+            String[] make = MODELS[random.nextInt(MODELS.length)];
+            String vehicle = (2005 + random.nextInt(19)) + " " + make[0] + " " + make[1 + random.nextInt(make.length - 1)]
+                    + " " + TRIMS[random.nextInt(TRIMS.length)];
+            chunk.add(new CatalogListing(UUID.randomUUID(), vehicle,
+                    VehicleCondition.values()[random.nextInt(2)], BigDecimal.valueOf(1000 + random.nextInt(80000)), "white",
+                    VehicleTransmission.values()[random.nextInt(2)], random.nextInt(300000),
+                    VehicleFuelType.values()[random.nextInt(3)], ListingStatus.PUBLISHED, publishedAt.plusSeconds(i)));
+            if (chunk.size() == CHUNK) {
+                catalogIndex.rebuilt(chunk);
+                chunk.clear();
+            }
+        }
+        catalogIndex.finishRebuild();
+        logger.info("Indexed {} listings: {} ms", LISTINGS, (System.nanoTime() - start) / 1_000_000);
+
+        PageRequest pageRequest = PageRequest.of(0, 20);
+        for (String text : List.of("civic", "honda civic ex", "2019 golf gti", "c*", "citroen c4 picasso", "to*", "ford", "tesla")) {
+            CatalogFilter filter = new CatalogFilter(null, null, null, null, null, null, null, null, text);
+            for (CatalogSort sort : CatalogSort.values()) {
+                long total = catalogIndex.search(filter, sort, pageRequest).orElseThrow().getTotalElements();
+
+                start = System.nanoTime();
+                for (int i = 0; i < SEARCHES; i++) {
+                    catalogIndex.search(filter, sort, pageRequest);
+                }
+                long nanos = (System.nanoTime() - start) / SEARCHES;
+
+                assertThat(total).isLessThanOrEqualTo(LISTINGS);
+                logger.info("'{}' by {}: {} matches, {} us per search", text, sort, total, nanos / 1_000);
+            }
+        }
+
+        for (String text : List.of("", "h", "hon", "honda civic ", "2019 golf", "c4 p", "zz")) {
+            int suggestions = catalogIndex.suggest(text, 10).orElseThrow().size();
+            start = System.nanoTime();
+            for (int i = 0; i < SEARCHES * 10; i++) {
+                catalogIndex.suggest(text, 10);
+            }
+            logger.info("'{}': {} suggestions, {} ns per suggestion", text, suggestions, (System.nanoTime() - start) / (SEARCHES * 10));
+        }
+    }
+}
@@ -1,20 +1,28 @@
 package com.filipegeniselli.backendtechassignment;
 
+import com.filipegeniselli.backendtechassignment.dealer.DealerCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import io.restassured.http.ContentType;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 import java.util.stream.Stream;
 
 import static io.restassured.RestAssured.given;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.*;
 
 class DealerControllerTests extends ListingsBaseControllerTest {
 
+    @Autowired
+    private DealerCache dealerCache;
+
     public static Stream<Arguments> pagingParameters() {
         return Stream.of(
                 Arguments.of(0, 10, 10),
@@ -153,6 +161,135 @@ class DealerControllerTests extends ListingsBaseControllerTest {
                 .body("url", endsWithIgnoringCase(location));
     }
 
+    @Test
+    void getDealersByName_ShouldFindTheNewNameAfterUpdate() {
+        String location = createDealer("Old Motors");
+        createDealer("Motors of the Old Town");
+
+        Map<String, Object> body = new HashMap<>(){{
+            put("name", "Brand New Cars");
+            put("tier", "BASIC");
+            put("allowRemovingOldListings", true);
+        }};
+        given()
+                .body(body)
+                .contentType(ContentType.JSON)
+                .put(location)
+                .then()
+                .assertThat()
+                .statusCode(202);
+
+        given()
+                .get("/dealer?name=OLD")
+                .then()
+                .statusCode(200)
+                .body("pageInfo.total", equalTo(1))
+                .body("data[0].name", equalTo("Motors of the Old Town"));
+
+        given()
+                .get("/dealer?name=w c")
+                .then()
+                .statusCode(200)
+                .body("pageInfo.total", equalTo(1))
+                .body("data[0].name", equalTo("Brand New Cars"))
+                .body("data[0].url", endsWithIgnoringCase(location));
+
+        given()
+                .get("/dealer?name=ne")
+                .then()
+                .statusCode(200)
+                .body("pageInfo.total", equalTo(1));
+    }
+
+    @Test
+    void getDealer_ShouldBeServedFromTheCacheUntilUpdated() {
+        String location = createDealer(getDealerResourceAsStream("businessDealerNotRemoveOldListings.json"));
+        CacheStats before = dealerCache.stats();
+
+        for (int i = 0; i < 3; i++) {
+            given()
+                    .get(location)
+                    .then()
+                    .assertThat()
+                    .statusCode(200)
+                    .body("allowRemovingOldListings", equalTo(false));
+        }
+
+        CacheStats reads = dealerCache.stats().minus(before);
+        assertThat(reads.missCount()).isEqualTo(1);
+        assertThat(reads.hitCount()).isEqualTo(2);
+
+        given()
+                .body(getDealerResourceAsStream("businessDealerRemoveOldListings.json"))
+                .contentType(ContentType.JSON)
+                .put(location)
+                .then()
+                .assertThat()
+                .statusCode(202);
+
+        given()
+                .get(location)
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("allowRemovingOldListings", equalTo(true));
+
+        given()
+                .get("/actuator/metrics/cache.gets?tag=cache:dealers&tag=result:hit")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("measurements[0].value", greaterThanOrEqualTo(2F));
+    }
+
+    @Test
+    void getDealerWithCurrentETag_ShouldReturnNotModifiedUntilUpdated() {
+        String location = createDealer(getDealerResourceAsStream("businessDealerNotRemoveOldListings.json"));
+        String etag = given()
+                .get(location)
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .header("ETag", notNullValue())
+                .extract()
+                .header("ETag");
+
+        given()
+                .header("If-None-Match", etag)
+                .get(location)
+                .then()
+                .assertThat()
+                .statusCode(304)
+                .header("ETag", equalTo(etag));
+
+        given()
+                .body(getDealerResourceAsStream("businessDealerRemoveOldListings.json"))
+                .contentType(ContentType.JSON)
+                .put(location)
+                .then()
+                .assertThat()
+                .statusCode(202);
+
+        given()
+                .header("If-None-Match", etag)
+                .get(location)
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .header("ETag", not(equalTo(etag)))
+                .body("allowRemovingOldListings", equalTo(true));
+    }
+
+    @Test
+    void createDealers_ShouldGenerateTimeOrderedIds() {
+        UUID first = UUID.fromString(createDealer("First dealer").split("/")[1]);
+        UUID second = UUID.fromString(createDealer("Second dealer").split("/")[1]);
+
+        assertThat(first.version()).isEqualTo(7);
+        assertThat(second.version()).isEqualTo(7);
+        assertThat(second.toString()).isGreaterThan(first.toString());
+    }
+
     @Test
     void createDealerWithInvalidData_ShouldReturnBadRequest() {
         Map<String, Object> body = new HashMap<>(){{
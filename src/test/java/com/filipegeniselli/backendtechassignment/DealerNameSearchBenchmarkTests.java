@@ -0,0 +1,99 @@
+package com.filipegeniselli.backendtechassignment;
+
+import com.filipegeniselli.backendtechassignment.dealer.DealerNameIndex;
+import com.filipegeniselli.backendtechassignment.dealer.DealerRepository;
+import com.filipegeniselli.backendtechassignment.dealer.DealerTierLimit;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Search latency of the trigram index compared with the like query over one million dealers,
+ * the dealers are inserted with plain JDBC batches and indexed by the startup rebuild
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = "dealer-name-index.chunk-size=10000")
+class DealerNameSearchBenchmarkTests {
+
+    private static final Logger logger = LoggerFactory.getLogger(DealerNameSearchBenchmarkTests.class);
+    private static final int DEALERS = 1_000_000;
+    private static final int INSERT_BATCH = 10_000;
+    private static final int SEARCHES = 1_000;
+    private static final int LIKE_SEARCHES = 5;
+
+    private static final String[] CITIES = {"Berlin", "Hamburg", "Munich", "Cologne", "Frankfurt", "Stuttgart",
+            "Leipzig", "Dresden", "Bremen", "Hanover", "Nuremberg", "Essen"};
+    private static final String[] BRANDS = {"Auto", "Motors", "Cars", "Garage", "Autohaus", "Vehicles",
+            "Drive", "Wheels", "Mobility", "Trucks"};
+    private static final String[] OWNERS = {"Schmidt", "Müller", "Schneider", "Fischer", "Weber", "Meyer",
+            "Wagner", "Becker", "Schulz", "Hoffmann", "Koch", "Richter", "Klein", "Wolf", "Neumann", "Zimmermann"};
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DealerNameIndex dealerNameIndex;
+
+    @Autowired
+    private DealerRepository dealerRepository;
+
+    @Test
+    void searchOneMillionDealers() {
+        insertDealers();
+
+        long start = System.nanoTime();
+        dealerNameIndex.rebuild();
+        logger.info("Rebuild of {} dealers: {} ms", DEALERS, (System.nanoTime() - start) / 1_000_000);
+
+        PageRequest pageRequest = PageRequest.of(0, 20);
+        for (String text : List.of("ber", "schmidt", "hoffmann garage", "munich auto", "42 ", "4242", "zz", "nomatch")) {
+            long total = dealerNameIndex.search(text, pageRequest).orElseThrow().getTotalElements();
+
+            start = System.nanoTime();
+            for (int i = 0; i < SEARCHES; i++) {
+                dealerNameIndex.search(text, pageRequest);
+            }
+            long indexNanos = (System.nanoTime() - start) / SEARCHES;
+
+            start = System.nanoTime();
+            long likeTotal = 0;
+            for (int i = 0; i < LIKE_SEARCHES; i++) {
+                likeTotal = dealerRepository.findByNameLikeIgnoreCase("%" + text + "%", pageRequest).getTotalElements();
+            }
+            long likeNanos = (System.nanoTime() - start) / LIKE_SEARCHES;
+
+            assertThat(total).isEqualTo(likeTotal);
+            logger.info("'{}': {} matches, index {} us per search, like query {} us per search",
+                    text, total, indexNanos / 1_000, likeNanos / 1_000);
+        }
+    }
+
+    private void insertDealers() {
+        Random random = new Random(42);
+        for (int inserted = 0; inserted < DEALERS; inserted += INSERT_BATCH) {
+            List<Object[]> rows = new ArrayList<>(INSERT_BATCH);
+            for (int i = inserted; i < inserted + INSERT_BATCH; i++) {
+                String name = "%s %s %s %d".formatted(OWNERS[random.nextInt(OWNERS.length)],
+                        CITIES[random.nextInt(CITIES.length)],
+                        BRANDS[random.nextInt(BRANDS.length)],
+                        i);
+                rows.add(new Object[]{UUID.randomUUID(), name, DealerTierLimit.BASIC.ordinal()});
+            }
+            jdbcTemplate.batchUpdate("insert into dealer (id, name, tier, allow_removing_old_listings, " +
+                    "published_listings, version, draft_listings_stamp, published_listings_stamp, removed_listings_stamp) " +
+                    "values (?, ?, ?, true, 0, 0, 0, 0, 0)", rows);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.filipegeniselli.backendtechassignment;
+
+import com.filipegeniselli.backendtechassignment.id.SnowflakeIdGenerator;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Rows per second and primary key size of random UUIDs compared with the time ordered ones of the SnowflakeIdGenerator,
+ * run it with the test-it profile to measure against postgres, the size is only measured there
+ */
+@Tag("benchmark")
+@SpringBootTest
+class IdInsertBenchmarkTests {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdInsertBenchmarkTests.class);
+    private static final int ROWS = 500_000;
+    private static final int BATCH_SIZE = 1_000;
+    private static final int GENERATED_IDS = 10_000_000;
+
+    @Autowired
+    private SnowflakeIdGenerator idGenerator;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    void insertRandomIds() throws Exception {
+        measure("benchmark_random_id", UUID::randomUUID);
+    }
+
+    @Test
+    void insertSnowflakeIds() throws Exception {
+        measure("benchmark_snowflake_id", idGenerator::nextUuid);
+    }
+
+    @Test
+    void generateIds() {
+        for (int i = 0; i < GENERATED_IDS; i++) {
+            idGenerator.nextUuid();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < GENERATED_IDS; i++) {
+            idGenerator.nextUuid();
+        }
+        long snowflake = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < GENERATED_IDS; i++) {
+            UUID.randomUUID();
+        }
+        long random = System.nanoTime() - start;
+
+        logger.info("Snowflake: {} ids/s, random: {} ids/s",
+                Math.round(GENERATED_IDS / (snowflake / 1_000_000_000.0)),
+                Math.round(GENERATED_IDS / (random / 1_000_000_000.0)));
+    }
+
+    private void measure(String table, Supplier<UUID> ids) throws Exception {
+        jdbcTemplate.execute("drop table if exists " + table);
+        jdbcTemplate.execute("create table " + table + " (id uuid primary key, payload varchar(64) not null)");
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ROWS; i += BATCH_SIZE) {
+            List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+            for (int j = 0; j < BATCH_SIZE; j++) {
+                batch.add(new Object[]{ids.get(), "2021 Tesla Model Y"});
+            }
+            jdbcTemplate.batchUpdate("insert into " + table + " (id, payload) values (?, ?)", batch);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        logger.info("{}: {} rows/s, primary key of {} bytes", table, Math.round(ROWS / (elapsed / 1_000_000_000.0)), size(table));
+        jdbcTemplate.execute("drop table " + table);
+    }
+
+    private Long size(String table) throws Exception {
+        String database = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+        if ("PostgreSQL".equals(database)) {
+            jdbcTemplate.execute("vacuum analyze " + table);
+            return jdbcTemplate.queryForObject("select pg_relation_size('" + table + "_pkey')", Long.class);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,94 @@
+package com.filipegeniselli.backendtechassignment;
+
+import com.filipegeniselli.backendtechassignment.dealer.DealerTierLimit;
+import com.filipegeniselli.backendtechassignment.dealer.command.CreateUpdateDealer;
+import com.filipegeniselli.backendtechassignment.dealer.command.DealerCommandService;
+import com.filipegeniselli.backendtechassignment.listings.VehicleCondition;
+import com.filipegeniselli.backendtechassignment.listings.VehicleFuelType;
+import com.filipegeniselli.backendtechassignment.listings.VehicleTransmission;
+import com.filipegeniselli.backendtechassignment.listings.command.CreateListings;
+import com.filipegeniselli.backendtechassignment.listings.command.CreateUpdateListing;
+import com.filipegeniselli.backendtechassignment.listings.command.ListingCommandService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.UUID;
+
+/**
+ * Rows per second of the single item creation compared with the batch creation,
+ * run it with the test-it profile to measure against postgres
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class ListingBatchCreateBenchmarkTests {
+
+    private static final Logger logger = LoggerFactory.getLogger(ListingBatchCreateBenchmarkTests.class);
+    private static final int ROWS = 5_000;
+    private static final int BATCH_SIZE = 1_000;
+
+    private static final CreateUpdateListing LISTING = new CreateUpdateListing("2021 Tesla Model Y",
+            VehicleCondition.USED,
+            new BigDecimal("47399.99"),
+            "white",
+            VehicleTransmission.AUTOMATIC,
+            10500,
+            VehicleFuelType.ELECTRIC);
+
+    @Autowired
+    private DealerCommandService dealerCommandService;
+
+    @Autowired
+    private ListingCommandService listingCommandService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void singleItemCreation() {
+        measure("Single item", dealerId -> {
+            for (int i = 0; i < ROWS; i++) {
+                listingCommandService.handle(dealerId, LISTING);
+            }
+        });
+    }
+
+    @Test
+    void batchCreation() {
+        measure("Batch of %d".formatted(BATCH_SIZE), dealerId -> {
+            for (int i = 0; i < ROWS; i += BATCH_SIZE) {
+                listingCommandService.handle(dealerId, new CreateListings(Collections.nCopies(BATCH_SIZE, LISTING)));
+            }
+        });
+    }
+
+    private void measure(String name, CreateOperation operation) {
+        UUID warmUpDealer = dealerCommandService.handle(new CreateUpdateDealer("Warm up dealer", DealerTierLimit.FREE, true));
+        operation.create(warmUpDealer);
+
+        UUID dealerId = dealerCommandService.handle(new CreateUpdateDealer("Benchmark dealer", DealerTierLimit.FREE, true));
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        long start = System.nanoTime();
+        operation.create(dealerId);
+        long elapsed = System.nanoTime() - start;
+
+        logger.info("{}: {} rows/s, {} statements per row",
+                name,
+                Math.round(ROWS / (elapsed / 1_000_000_000.0)),
+                (double) statistics.getPrepareStatementCount() / ROWS);
+    }
+
+    private interface CreateOperation {
+        void create(UUID dealerId);
+    }
+}
@@ -0,0 +1,48 @@
+package com.filipegeniselli.backendtechassignment;
+
+import com.filipegeniselli.backendtechassignment.dealer.DealerTierLimit;
+import com.filipegeniselli.backendtechassignment.dealer.command.CreateUpdateDealer;
+import com.filipegeniselli.backendtechassignment.dealer.command.DealerCommandService;
+import com.filipegeniselli.backendtechassignment.listings.VehicleCondition;
+import com.filipegeniselli.backendtechassignment.listings.command.CreateUpdateListing;
+import com.filipegeniselli.backendtechassignment.listings.command.ListingCommandService;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Creates the dealers and draft listings of the tests that call the command services directly
+ */
+final class ListingFixtures {
+
+    static final CreateUpdateListing LISTING = new CreateUpdateListing("2021 Tesla Model Y",
+            VehicleCondition.USED,
+            new BigDecimal("47399.99"),
+            "white",
+            null,
+            10500,
+            null);
+
+    private ListingFixtures() {
+    }
+
+    static UUID createDealer(DealerCommandService dealerCommandService,
+                             DealerTierLimit tier,
+                             boolean allowRemovingOldListings) {
+        return dealerCommandService.handle(new CreateUpdateDealer("Test dealer", tier, allowRemovingOldListings));
+    }
+
+    static UUID createListing(ListingCommandService listingCommandService, UUID dealerId) {
+        return listingCommandService.handle(dealerId, LISTING);
+    }
+
+    static List<UUID> createListings(ListingCommandService listingCommandService, UUID dealerId, int amount) {
+        List<UUID> listings = new ArrayList<>();
+        for (int i = 0; i < amount; i++) {
+            listings.add(createListing(listingCommandService, dealerId));
+        }
+        return listings;
+    }
+}
@@ -0,0 +1,154 @@
+package com.filipegeniselli.backendtechassignment;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.filipegeniselli.backendtechassignment.listings.*;
+import com.filipegeniselli.backendtechassignment.listings.query.FindAllWithFilters;
+import com.filipegeniselli.backendtechassignment.listings.query.ListingQueryHandler;
+import com.filipegeniselli.backendtechassignment.listings.query.ListingView;
+import org.junit.jupiter.api.Tag;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Bytes allocated and time spent per listing to assemble and serialize a page of listings,
+ * the previous path is kept here as reference: UriComponentsBuilder and a new dealer dto for every listing
+ * serialized by the ObjectMapper.
+ * The current path is measured with the published listing cache disabled and enabled
+ */
+@Tag("benchmark")
+class ListingPageAllocationBenchmarkTests {
+
+    private static final Logger logger = LoggerFactory.getLogger(ListingPageAllocationBenchmarkTests.class);
+    private static final int PAGE_SIZE = 20;
+    private static final int WARM_UP = 20_000;
+    private static final int ITERATIONS = 100_000;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+            .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+
+    private final UUID dealerId = UUID.randomUUID();
+    private final PageRequest pageRequest = PageRequest.of(0, PAGE_SIZE);
+    private final ListingRepository listingRepository = mock(ListingRepository.class, withSettings().stubOnly());
+
+    @Test
+    void allocatedBytesPerListing() throws IOException {
+        List<ListingView> views = new ArrayList<>();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            views.add(new ListingView(UUID.randomUUID(), dealerId, "Benchmark dealer", "2021 Tesla Model Y",
+                    VehicleCondition.USED, new BigDecimal("47399.99"), "white", VehicleTransmission.AUTOMATIC, 10500,
+                    VehicleFuelType.ELECTRIC, ListingStatus.PUBLISHED, LocalDateTime.now(), LocalDateTime.now(), null, 1, 1));
+        }
+        Page<ListingView> page = new PageImpl<>(views, pageRequest, 1_000);
+        when(listingRepository.findViewsByDealerAndStatus(eq(dealerId), eq(ListingStatus.PUBLISHED), any())).thenReturn(page);
+
+        ListingQueryHandler listingQueryHandler = new ListingQueryHandler(listingRepository,
+                mock(ListingReadModelRepository.class, withSettings().stubOnly()),
+                mock(ListingProjector.class, withSettings().stubOnly()),
+                mock(ArchivedListingRepository.class, withSettings().stubOnly()),
+                mock(ListingJournal.class, withSettings().stubOnly()));
+        ListingPageWriter uncachedWriter = new ListingPageWriter(objectMapper, publishedListingCache(0));
+        ListingPageWriter cachedWriter = new ListingPageWriter(objectMapper, publishedListingCache(1 << 20));
+        FindAllWithFilters query = new FindAllWithFilters(ListingStatus.PUBLISHED, pageRequest);
+
+        PageOperation previousPath = () -> objectMapper.writeValue(OutputStream.nullOutputStream(), previousPath());
+        PageOperation currentPath = () -> uncachedWriter.write(listingQueryHandler.handle(dealerId, query),
+                OutputStream.nullOutputStream());
+        PageOperation cachedPath = () -> cachedWriter.write(listingQueryHandler.handle(dealerId, query),
+                OutputStream.nullOutputStream());
+
+        logger.info("Previous path: {} bytes allocated per listing, {} ns per listing",
+                measure(previousPath), nanosPerListing(previousPath));
+        logger.info("Current path: {} bytes allocated per listing, {} ns per listing",
+                measure(currentPath), nanosPerListing(currentPath));
+        logger.info("Current path with cached published listings: {} bytes allocated per listing, {} ns per listing",
+                measure(cachedPath), nanosPerListing(cachedPath));
+    }
+
+    private PublishedListingCache publishedListingCache(long maximumWeight) {
+        return new PublishedListingCache(new SimpleMeterRegistry(), maximumWeight, Duration.ofMinutes(5), false, false, Duration.ZERO);
+    }
+
+    private long nanosPerListing(PageOperation operation) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            operation.run();
+        }
+        return (System.nanoTime() - start) / ((long) ITERATIONS * PAGE_SIZE);
+    }
+
+    private long measure(PageOperation operation) throws IOException {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        for (int i = 0; i < WARM_UP; i++) {
+            operation.run();
+        }
+
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            operation.run();
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        return allocated / ((long) ITERATIONS * PAGE_SIZE);
+    }
+
+    private PagedResult<ListingDto> previousPath() {
+        Page<ListingView> result = listingRepository.findViewsByDealerAndStatus(dealerId, ListingStatus.PUBLISHED, pageRequest);
+
+        return new PagedResult<>(result
+                .get()
+                .map(view -> new ListingDto(
+                        new ListingDealerDto(view.dealerName(),
+                                UriComponentsBuilder
+                                        .fromPath("/dealers/{id}")
+                                        .buildAndExpand(view.dealerId())
+                                        .toString(),
+                                view.dealerVersion()),
+                        view.vehicle(),
+                        view.condition(),
+                        view.price(),
+                        view.color(),
+                        view.transmission(),
+                        view.mileage(),
+                        view.fuelType(),
+                        view.status(),
+                        view.createdAt(),
+                        view.publishedAt(),
+                        view.removedAt(),
+                        UriComponentsBuilder
+                                .fromPath("/{dealerId}/listings/{id}")
+                                .buildAndExpand(view.dealerId(), view.id())
+                                .toString(),
+                        view.version()))
+                .toList(),
+                new PageInfo(result.getSize(), result.getNumber(), result.getTotalElements()));
+    }
+
+    private interface PageOperation {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,170 @@
+package com.filipegeniselli.backendtechassignment;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.filipegeniselli.backendtechassignment.listings.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ListingPageWriterTests {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+            .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+
+    private final PublishedListingCache publishedListingCache = new PublishedListingCache(new SimpleMeterRegistry(),
+            1 << 20, Duration.ofMinutes(5), true, false, Duration.ZERO);
+
+    private final ListingPageWriter listingPageWriter = new ListingPageWriter(objectMapper, publishedListingCache);
+
+    @Test
+    void writePage_ShouldProduceTheSameJsonAsTheObjectMapper() throws Exception {
+        UUID dealerId = UUID.randomUUID();
+        ListingDealerDto dealer = new ListingDealerDto("Test \"quoted\" dealer", ListingUrls.dealer(dealerId), 1);
+        PagedResult<ListingDto> page = new PagedResult<>(List.of(
+                new ListingDto(dealer, "2021 Tesla Model Y", VehicleCondition.USED, new BigDecimal("47399.99"),
+                        "white", VehicleTransmission.AUTOMATIC, 10500, VehicleFuelType.ELECTRIC, ListingStatus.PUBLISHED,
+                        LocalDateTime.of(2023, 6, 1, 10, 0), LocalDateTime.of(2023, 6, 2, 10, 30, 15, 123_000),
+                        null, ListingUrls.listing(dealerId, UUID.randomUUID()), 1),
+                new ListingDto(dealer, "2019 Honda Civic EX", VehicleCondition.NEW, new BigDecimal("1E+4"),
+                        null, null, null, null, ListingStatus.DRAFT,
+                        LocalDateTime.of(2023, 6, 3, 8, 0), null, null, ListingUrls.listing(dealerId, UUID.randomUUID()), 1)),
+                new PageInfo(20, 0, 2));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        listingPageWriter.write(page, output);
+
+        assertThat(output.toString(StandardCharsets.UTF_8)).isEqualTo(objectMapper.writeValueAsString(page));
+    }
+
+    @Test
+    void writePageTwice_ShouldWriteTheCachedPublishedListingsWithTheCurrentDealer() throws Exception {
+        UUID dealerId = UUID.randomUUID();
+        String url = ListingUrls.listing(dealerId, UUID.randomUUID());
+        PagedResult<ListingDto> page = new PagedResult<>(List.of(
+                publishedListing(new ListingDealerDto("Test dealer", ListingUrls.dealer(dealerId), 1), url)),
+                new PageInfo(20, 0, 1));
+        PagedResult<ListingDto> renamedDealerPage = new PagedResult<>(List.of(
+                publishedListing(new ListingDealerDto("Renamed dealer", ListingUrls.dealer(dealerId), 1), url)),
+                new PageInfo(20, 0, 1));
+
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        listingPageWriter.write(page, first);
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        listingPageWriter.write(renamedDealerPage, second);
+
+        assertThat(first.toString(StandardCharsets.UTF_8)).isEqualTo(objectMapper.writeValueAsString(page));
+        assertThat(second.toString(StandardCharsets.UTF_8)).isEqualTo(objectMapper.writeValueAsString(renamedDealerPage));
+    }
+
+    @Test
+    void writeDocument_ShouldProduceTheSameJsonAsTheObjectMapperAndItsGzip() throws Exception {
+        UUID dealerId = UUID.randomUUID();
+        ListingDealerDto dealer = new ListingDealerDto("Test dealer", ListingUrls.dealer(dealerId), 1);
+        ListingDto listing = publishedListing(dealer, ListingUrls.listing(dealerId, UUID.randomUUID()));
+
+        ListingPageWriter.ListingDocument document = listingPageWriter.document(listing, publishedListingCache.stamp());
+        ListingPageWriter.ListingDocument cached = listingPageWriter.document(listing, publishedListingCache.stamp());
+
+        assertThat(new String(document.json(), StandardCharsets.UTF_8)).isEqualTo(objectMapper.writeValueAsString(listing));
+        assertThat(cached.json()).isSameAs(document.json());
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(document.gzipped()))) {
+            assertThat(gzip.readAllBytes()).isEqualTo(document.json());
+        }
+    }
+
+    @Test
+    void invalidatedListing_ShouldNotBeCached() throws Exception {
+        UUID dealerId = UUID.randomUUID();
+        UUID listingId = UUID.randomUUID();
+        ListingDealerDto dealer = new ListingDealerDto("Test dealer", ListingUrls.dealer(dealerId), 1);
+        ListingDto listing = publishedListing(dealer, ListingUrls.listing(dealerId, listingId));
+
+        ListingPageWriter.ListingDocument first = listingPageWriter.document(listing, publishedListingCache.stamp());
+        publishedListingCache.on(new ListingStatusChanged(dealerId, listingId,
+                ListingStatus.PUBLISHED, ListingStatus.DRAFT, LocalDateTime.now()));
+        ListingPageWriter.ListingDocument second = listingPageWriter.document(listing, publishedListingCache.stamp());
+        assertThat(second.json()).isNotSameAs(first.json());
+
+        // Read before the invalidation, the listing might not be published anymore
+        long stamp = publishedListingCache.stamp();
+        publishedListingCache.on(new ListingStatusChanged(dealerId, listingId,
+                ListingStatus.PUBLISHED, ListingStatus.REMOVED, LocalDateTime.now()));
+        ListingPageWriter.ListingDocument stale = listingPageWriter.document(listing, stamp);
+        ListingPageWriter.ListingDocument third = listingPageWriter.document(listing, publishedListingCache.stamp());
+        assertThat(third.json()).isNotSameAs(stale.json());
+    }
+
+    @Test
+    void newerListing_ShouldReplaceTheCachedOlderVersion() throws Exception {
+        UUID dealerId = UUID.randomUUID();
+        ListingDealerDto dealer = new ListingDealerDto("Test dealer", ListingUrls.dealer(dealerId), 1);
+        String url = ListingUrls.listing(dealerId, UUID.randomUUID());
+        ListingDto stale = publishedListing(dealer, url);
+        ListingDto current = new ListingDto(dealer, stale.vehicle(), stale.condition(), stale.price(), stale.color(),
+                stale.transmission(), stale.mileage(), stale.fuelType(), stale.status(), stale.createdAt(),
+                LocalDateTime.of(2023, 6, 5, 9, 0), null, url, 2);
+
+        listingPageWriter.document(stale, publishedListingCache.stamp());
+        ListingPageWriter.ListingDocument refreshed = listingPageWriter.document(current, publishedListingCache.stamp());
+        ListingPageWriter.ListingDocument cached = listingPageWriter.document(current, publishedListingCache.stamp());
+
+        assertThat(new String(refreshed.json(), StandardCharsets.UTF_8)).isEqualTo(objectMapper.writeValueAsString(current));
+        assertThat(cached.json()).isSameAs(refreshed.json());
+    }
+
+    private ListingDto publishedListing(ListingDealerDto dealer, String url) {
+        return new ListingDto(dealer, "2021 Tesla \u00e9 Model Y", VehicleCondition.USED, new BigDecimal("47399.99"),
+                "white", VehicleTransmission.AUTOMATIC, 10500, VehicleFuelType.ELECTRIC, ListingStatus.PUBLISHED,
+                LocalDateTime.of(2023, 6, 1, 10, 0), LocalDateTime.of(2023, 6, 2, 10, 30, 15, 123_000),
+                null, url, 1);
+    }
+
+    @Test
+    void writeCursorPage_ShouldProduceTheSameJsonAsTheObjectMapper() throws Exception {
+        PagedResult<ListingDto> page = new PagedResult<>(List.of(), PageInfo.ofCursor(20, "cursor"));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        listingPageWriter.write(page, output);
+
+        assertThat(output.toString(StandardCharsets.UTF_8)).isEqualTo(objectMapper.writeValueAsString(page));
+    }
+
+    @Test
+    void writeLines_ShouldWriteOneObjectMapperJsonPerLine() throws Exception {
+        UUID dealerId = UUID.randomUUID();
+        ListingDealerDto dealer = new ListingDealerDto("Test dealer", ListingUrls.dealer(dealerId), 1);
+        List<ListingDto> listings = List.of(
+                new ListingDto(dealer, "2021 Tesla Model Y", VehicleCondition.USED, new BigDecimal("47399.99"),
+                        "white", VehicleTransmission.AUTOMATIC, 10500, VehicleFuelType.ELECTRIC, ListingStatus.REMOVED,
+                        LocalDateTime.of(2023, 6, 1, 10, 0), LocalDateTime.of(2023, 6, 2, 10, 30),
+                        LocalDateTime.of(2023, 6, 5, 11, 0), ListingUrls.listing(dealerId, UUID.randomUUID()), 1),
+                new ListingDto(dealer, "2019 Honda Civic EX", VehicleCondition.NEW, new BigDecimal("18500"),
+                        null, null, null, null, ListingStatus.DRAFT,
+                        LocalDateTime.of(2023, 6, 3, 8, 0), null, null, ListingUrls.listing(dealerId, UUID.randomUUID()), 1));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ListingPageWriter.LineWriter lines = listingPageWriter.lines(output)) {
+            for (ListingDto listing : listings) {
+                lines.write(listing);
+            }
+        }
+
+        assertThat(output.toString(StandardCharsets.UTF_8)).isEqualTo(
+                objectMapper.writeValueAsString(listings.get(0)) + "\n" +
+                objectMapper.writeValueAsString(listings.get(1)) + "\n");
+    }
+}
@@ -0,0 +1,191 @@
+package com.filipegeniselli.backendtechassignment;
+
+import com.filipegeniselli.backendtechassignment.dealer.Dealer;
+import com.filipegeniselli.backendtechassignment.dealer.DealerRepository;
+import com.filipegeniselli.backendtechassignment.dealer.DealerTierLimit;
+import com.filipegeniselli.backendtechassignment.dealer.command.DealerCommandService;
+import com.filipegeniselli.backendtechassignment.exception.ConflictException;
+import com.filipegeniselli.backendtechassignment.listings.ListingRepository;
+import com.filipegeniselli.backendtechassignment.listings.ListingStatus;
+import com.filipegeniselli.backendtechassignment.listings.command.ListingCommandService;
+import com.filipegeniselli.backendtechassignment.listings.command.PublishListing;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.filipegeniselli.backendtechassignment.ListingFixtures.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.doReturn;
+
+@SpringBootTest
+class ListingPublishConcurrencyTests {
+
+    private static final Logger logger = LoggerFactory.getLogger(ListingPublishConcurrencyTests.class);
+    private static final int THREADS = 8;
+
+    @Autowired
+    private DealerCommandService dealerCommandService;
+
+    @Autowired
+    private ListingCommandService listingCommandService;
+
+    @Autowired
+    private ListingRepository listingRepository;
+
+    @SpyBean
+    private TierLimitConfiguration tierLimitConfiguration;
+
+    @Autowired
+    private DealerRepository dealerRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void concurrentPublishes_ShouldNotExceedTierLimit() throws Exception {
+        UUID dealerId = createDealer(dealerCommandService, DealerTierLimit.FREE, false);
+        List<UUID> listings = createListings(listingCommandService, dealerId, 20);
+        AtomicInteger published = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+
+        publishConcurrently(dealerId, listings, published, conflicts);
+
+        int limit = tierLimitConfiguration.getTierLimit(DealerTierLimit.FREE);
+        assertThat(published.get()).isEqualTo(limit);
+        assertThat(conflicts.get()).isEqualTo(listings.size() - limit);
+        assertThat(listingRepository.countByDealer_IdAndStatus(dealerId, ListingStatus.PUBLISHED)).isEqualTo(limit);
+        assertThat(dealerRepository.findById(dealerId).map(Dealer::getPublishedListings)).contains(limit);
+    }
+
+    @Test
+    void concurrentPublishesRemovingOldListings_ShouldKeepTierLimit() throws Exception {
+        UUID dealerId = createDealer(dealerCommandService, DealerTierLimit.BASIC, true);
+        List<UUID> listings = createListings(listingCommandService, dealerId, 30);
+        AtomicInteger published = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+
+        publishConcurrently(dealerId, listings, published, conflicts);
+
+        int limit = tierLimitConfiguration.getTierLimit(DealerTierLimit.BASIC);
+        assertThat(published.get()).isEqualTo(listings.size());
+        assertThat(conflicts.get()).isZero();
+        assertThat(listingRepository.countByDealer_IdAndStatus(dealerId, ListingStatus.PUBLISHED)).isEqualTo(limit);
+        assertThat(dealerRepository.findById(dealerId).map(Dealer::getPublishedListings)).contains(limit);
+        assertThat(listingRepository.countByDealer_IdAndStatus(dealerId, ListingStatus.REMOVED)).isEqualTo(listings.size() - limit);
+    }
+
+    /**
+     * Another instance publishes without going through the ledger of this one, only the listing and the dealer
+     * counter are changed in the database
+     */
+    @Test
+    void publishAfterAnotherInstancePublished_ShouldUseTheDealerCounter() {
+        UUID dealerId = createDealer(dealerCommandService, DealerTierLimit.FREE, false);
+        int limit = tierLimitConfiguration.getTierLimit(DealerTierLimit.FREE);
+        List<UUID> listings = createListings(listingCommandService, dealerId, limit + 1);
+        listings.subList(0, limit - 1).forEach(listingId ->
+                listingCommandService.handle(dealerId, listingId, new PublishListing(ListingStatus.PUBLISHED)));
+
+        jdbcTemplate.update("update listing set status = ?, published_at = ? where id = ?",
+                ListingStatus.PUBLISHED.ordinal(), LocalDateTime.now(), listings.get(limit - 1));
+        jdbcTemplate.update("update dealer set published_listings = published_listings + 1 where id = ?", dealerId);
+
+        assertThatThrownBy(() -> listingCommandService.handle(dealerId, listings.get(limit),
+                new PublishListing(ListingStatus.PUBLISHED)))
+                .isInstanceOf(ConflictException.class);
+        assertThat(listingRepository.countByDealer_IdAndStatus(dealerId, ListingStatus.PUBLISHED)).isEqualTo(limit);
+        assertThat(dealerRepository.findById(dealerId).map(Dealer::getPublishedListings)).contains(limit);
+    }
+
+    @Test
+    void publishWithoutAListingToRemove_ShouldBeRejected() {
+        doReturn(0).when(tierLimitConfiguration).getTierLimit(DealerTierLimit.BASIC);
+        UUID dealerId = createDealer(dealerCommandService, DealerTierLimit.BASIC, true);
+        UUID listingId = createListing(listingCommandService, dealerId);
+
+        assertThatThrownBy(() -> listingCommandService.handle(dealerId, listingId, new PublishListing(ListingStatus.PUBLISHED)))
+                .isInstanceOf(ConflictException.class)
+                .hasMessage("You've reached the limit of published listings");
+        assertThat(listingRepository.countByDealer_IdAndStatus(dealerId, ListingStatus.PUBLISHED)).isZero();
+        assertThat(dealerRepository.findById(dealerId).map(Dealer::getPublishedListings)).contains(0);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void publishThroughput_ShouldScaleWithTheNumberOfDealers() throws Exception {
+        int publishes = 400;
+
+        for (int dealers : new int[]{1, 2, 4, 8}) {
+            List<UUID> dealerIds = new ArrayList<>();
+            List<List<UUID>> listingsPerDealer = new ArrayList<>();
+            for (int i = 0; i < dealers; i++) {
+                UUID dealerId = createDealer(dealerCommandService, DealerTierLimit.BUSINESS, true);
+                dealerIds.add(dealerId);
+                listingsPerDealer.add(createListings(listingCommandService, dealerId, publishes / dealers));
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < dealers; i++) {
+                UUID dealerId = dealerIds.get(i);
+                for (UUID listingId : listingsPerDealer.get(i)) {
+                    tasks.add(() -> {
+                        listingCommandService.handle(dealerId, listingId, new PublishListing(ListingStatus.PUBLISHED));
+                        return null;
+                    });
+                }
+            }
+
+            long start = System.nanoTime();
+            for (Future<Void> result : executor.invokeAll(tasks)) {
+                result.get();
+            }
+            long elapsed = System.nanoTime() - start;
+            executor.shutdown();
+
+            logger.info("{} dealers, {} threads: {} publishes/s",
+                    dealers, THREADS, Math.round(tasks.size() / (elapsed / 1_000_000_000.0)));
+        }
+    }
+
+    private void publishConcurrently(UUID dealerId,
+                                     List<UUID> listings,
+                                     AtomicInteger published,
+                                     AtomicInteger conflicts) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+
+        for (UUID listingId : listings) {
+            results.add(executor.submit(() -> {
+                start.await();
+                try {
+                    listingCommandService.handle(dealerId, listingId, new PublishListing(ListingStatus.PUBLISHED));
+                    published.incrementAndGet();
+                } catch (ConflictException e) {
+                    conflicts.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+    }
+}
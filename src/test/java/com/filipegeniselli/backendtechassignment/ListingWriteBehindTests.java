@@ -0,0 +1,137 @@
+package com.filipegeniselli.backendtechassignment;
+
+import com.filipegeniselli.backendtechassignment.dealer.DealerRepository;
+import com.filipegeniselli.backendtechassignment.dealer.DealerTierLimit;
+import com.filipegeniselli.backendtechassignment.dealer.command.CreateUpdateDealer;
+import com.filipegeniselli.backendtechassignment.dealer.command.DealerCommandService;
+import com.filipegeniselli.backendtechassignment.exception.ServiceUnavailableException;
+import com.filipegeniselli.backendtechassignment.id.SnowflakeIdGenerator;
+import com.filipegeniselli.backendtechassignment.listings.Listing;
+import com.filipegeniselli.backendtechassignment.listings.ListingRepository;
+import com.filipegeniselli.backendtechassignment.listings.ListingStatus;
+import com.filipegeniselli.backendtechassignment.listings.QueuedListingState;
+import com.filipegeniselli.backendtechassignment.listings.VehicleCondition;
+import com.filipegeniselli.backendtechassignment.listings.command.ListingWriteBehind;
+import com.filipegeniselli.backendtechassignment.listings.command.QueuedListingStatus;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class ListingWriteBehindTests {
+
+    @Autowired
+    private ListingRepository listingRepository;
+
+    @Autowired
+    private DealerRepository dealerRepository;
+
+    @Autowired
+    private DealerCommandService dealerCommandService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private SnowflakeIdGenerator idGenerator;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void fullQueue_ShouldRejectNewListingsAndBeDrainedOnShutdown() {
+        UUID dealerId = createDealer();
+        ListingWriteBehind writeBehind = writeBehind(3);
+        Listing first = newListing();
+        Listing second = newListing();
+        Listing third = newListing();
+
+        writeBehind.enqueue(dealerId, first);
+        writeBehind.enqueue(dealerId, second);
+        writeBehind.enqueue(dealerId, third);
+        assertThatThrownBy(() -> writeBehind.enqueue(dealerId, newListing()))
+                .isInstanceOf(ServiceUnavailableException.class)
+                .hasMessage("The listings queue is full, try again later");
+        assertThat(meterRegistry.get("listings.write-behind.depth").gauge().value()).isEqualTo(3);
+        assertThat(writeBehind.status(dealerId, first.getId()))
+                .map(QueuedListingStatus::state)
+                .contains(QueuedListingState.QUEUED);
+        assertThat(writeBehind.status(UUID.randomUUID(), first.getId())).isEmpty();
+        assertThat(listingRepository.existsById(first.getId())).isFalse();
+
+        writeBehind.start();
+        writeBehind.drain();
+
+        assertThat(listingRepository.findByDealer_IdAndIdIn(dealerId, List.of(first.getId(), second.getId(), third.getId())))
+                .hasSize(3)
+                .allSatisfy(listing -> assertThat(listing.getStatus()).isEqualTo(ListingStatus.DRAFT));
+        assertThat(writeBehind.status(dealerId, first.getId())).isEmpty();
+        assertThat(meterRegistry.get("listings.write-behind.depth").gauge().value()).isZero();
+        assertThat(meterRegistry.get("listings.write-behind.written").counter().count()).isEqualTo(3);
+        assertThat(meterRegistry.get("listings.write-behind.rejected").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("listings.write-behind.batch").summary().totalAmount()).isEqualTo(3);
+        assertThat(meterRegistry.get("listings.write-behind.flush").timer().count()).isPositive();
+        assertThat(meterRegistry.get("listings.write-behind.delay").timer().count()).isEqualTo(3);
+
+        assertThatThrownBy(() -> writeBehind.enqueue(dealerId, newListing()))
+                .isInstanceOf(ServiceUnavailableException.class);
+    }
+
+    @Test
+    void failedBatch_ShouldInsertTheValidListingsAndReportTheFailedOnes() {
+        UUID dealerId = createDealer();
+        UUID missingDealerId = UUID.randomUUID();
+        ListingWriteBehind writeBehind = writeBehind(10);
+        Listing valid = newListing();
+        Listing orphan = newListing();
+
+        writeBehind.enqueue(dealerId, valid);
+        writeBehind.enqueue(missingDealerId, orphan);
+        writeBehind.start();
+        writeBehind.drain();
+
+        assertThat(listingRepository.existsById(valid.getId())).isTrue();
+        assertThat(listingRepository.existsById(orphan.getId())).isFalse();
+        assertThat(writeBehind.status(dealerId, valid.getId())).isEmpty();
+        assertThat(writeBehind.status(missingDealerId, orphan.getId()))
+                .map(QueuedListingStatus::state)
+                .contains(QueuedListingState.FAILED);
+        assertThat(meterRegistry.get("listings.write-behind.written").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("listings.write-behind.failed").counter().count()).isEqualTo(1);
+    }
+
+    private ListingWriteBehind writeBehind(int capacity) {
+        return new ListingWriteBehind(listingRepository, dealerRepository, transactionTemplate, eventPublisher,
+                meterRegistry, true, capacity, 2, 1, Duration.ofSeconds(10), Duration.ofHours(1));
+    }
+
+    private UUID createDealer() {
+        return dealerCommandService.handle(new CreateUpdateDealer("Write-behind dealer", DealerTierLimit.BASIC, false));
+    }
+
+    private Listing newListing() {
+        return Listing.ListingBuilder.aListing()
+                .id(idGenerator.nextUuid())
+                .vehicle("2021 Tesla Model Y")
+                .condition(VehicleCondition.USED)
+                .price(new BigDecimal("47399.99"))
+                .status(ListingStatus.DRAFT)
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+}
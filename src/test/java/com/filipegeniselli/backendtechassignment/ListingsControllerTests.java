@@ -1,18 +1,31 @@
 package com.filipegeniselli.backendtechassignment;
 
+import com.filipegeniselli.backendtechassignment.dealer.Dealer;
+import com.filipegeniselli.backendtechassignment.dealer.DealerRepository;
 import com.filipegeniselli.backendtechassignment.dealer.DealerTierLimit;
+import com.filipegeniselli.backendtechassignment.listings.ListingJournal;
+import com.filipegeniselli.backendtechassignment.listings.ListingProjector;
 import com.filipegeniselli.backendtechassignment.listings.VehicleCondition;
+import com.filipegeniselli.backendtechassignment.listings.command.ListingArchiver;
+import com.filipegeniselli.backendtechassignment.listings.command.PublicationLedger;
+import com.filipegeniselli.backendtechassignment.listings.command.TierLimitReconciler;
 import com.filipegeniselli.backendtechassignment.listings.VehicleFuelType;
 import com.filipegeniselli.backendtechassignment.listings.VehicleTransmission;
+import io.restassured.RestAssured;
+import io.restassured.config.DecoderConfig;
 import io.restassured.http.ContentType;
+import io.restassured.response.ExtractableResponse;
+import io.restassured.response.Response;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 
 import static io.restassured.RestAssured.given;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.*;
 
 import java.math.BigDecimal;
@@ -26,6 +39,27 @@ class ListingsControllerTests extends ListingsBaseControllerTest{
     @Autowired
     private TierLimitConfiguration tierLimitConfiguration;
 
+    @Autowired
+    private PublicationLedger publicationLedger;
+
+    @Autowired
+    private DealerRepository dealerRepository;
+
+    @Autowired
+    private TierLimitReconciler tierLimitReconciler;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ListingArchiver listingArchiver;
+
+    @Autowired
+    private ListingProjector listingProjector;
+
+    @Autowired
+    private ListingJournal listingJournal;
+
     public static Stream<Arguments> exceedingLimitListConflict() {
         return Stream.of(
                 Arguments.of("freeDealerNotRemoveOldListings.json", DealerTierLimit.FREE),
@@ -55,6 +89,25 @@ class ListingsControllerTests extends ListingsBaseControllerTest{
         );
     }
 
+    public static Stream<Arguments> cursorPagingParameters() {
+        return Stream.of(
+                Arguments.of("DRAFT", 4, 9),
+                Arguments.of("DRAFT", 9, 9),
+                Arguments.of("PUBLISHED", 4, 6),
+                Arguments.of("PUBLISHED", 20, 6),
+                Arguments.of("REMOVED", 5, 0)
+        );
+    }
+
+    public static Stream<Arguments> exportParameters() {
+        return Stream.of(
+                Arguments.of(null, 7),
+                Arguments.of("DRAFT", 4),
+                Arguments.of("PUBLISHED", 3),
+                Arguments.of("REMOVED", 0)
+        );
+    }
+
     @Test
     void getListings_ShouldReturnEmptyList() {
         String dealerId = extractDealerIdFromLocation(createDealer(getDealerResourceAsStream("basicDealerRemoveOldListings.json")));
@@ -116,6 +169,95 @@ class ListingsControllerTests extends ListingsBaseControllerTest{
                 .body("data.size()", is(expectedPageLength));
     }
 
+    @ParameterizedTest
+    @MethodSource("cursorPagingParameters")
+    void getListingsWithCursor_shouldWalkAllPagesWithoutRepeating(String filter, int pageSize, int expectedTotal) {
+        String dealerId = extractDealerIdFromLocation(createDealer(getDealerResourceAsStream("premiumDealerRemoveOldListings.json")));
+        List<String> listingsList = new ArrayList<>();
+        for(int i = 0; i < 15; i++) {
+            listingsList.add(createListing(dealerId, getListingsResourceAsStream("newListing.json")));
+        }
+        for (int i = 0; i < 6; i++) {
+            given()
+                    .body(new HashMap<String, Object>(){{
+                        put("status", "PUBLISHED");
+                    }})
+                    .contentType(ContentType.JSON)
+                    .patch(listingsList.get(i))
+                    .then()
+                    .assertThat()
+                    .statusCode(202);
+        }
+
+        Set<String> visitedListings = new HashSet<>();
+        String cursor = "";
+        do {
+            ExtractableResponse<Response> response = given()
+                    .get("/%s/listings?status=%s&pageSize=%s&cursor=%s".formatted(dealerId, filter, pageSize, cursor))
+                    .then()
+                    .statusCode(200)
+                    .body("pageInfo.pageSize", equalTo(pageSize))
+                    .body("pageInfo.total", nullValue())
+                    .body("data.size()", lessThanOrEqualTo(pageSize))
+                    .extract();
+
+            visitedListings.addAll(response.jsonPath().getList("data.url"));
+            cursor = response.jsonPath().getString("pageInfo.nextCursor");
+        } while (cursor != null);
+
+        assertThat(visitedListings).hasSize(expectedTotal);
+    }
+
+    @Test
+    void getListingsWithInvalidCursor_ShouldReturnBadRequest() {
+        String dealerId = extractDealerIdFromLocation(createDealer(getDealerResourceAsStream("basicDealerRemoveOldListings.json")));
+
+        given()
+                .get("/%s/listings?status=%s&cursor=%s".formatted(dealerId, "DRAFT", "not-a-cursor"))
+                .then()
+                .assertThat()
+                .statusCode(400)
+                .body("message", equalTo("Invalid cursor"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("exportParameters")
+    void exportListings_ShouldStreamOneListingPerLine(String filter, int expectedLines) {
+        String dealerId = extractDealerIdFromLocation(createDealer(getDealerResourceAsStream("premiumDealerRemoveOldListings.json")));
+        List<String> listingsList = new ArrayList<>();
+        for(int i = 0; i < 7; i++) {
+            listingsList.add(createListing(dealerId, getListingsResourceAsStream("newListing.json")));
+        }
+        for (int i = 0; i < 3; i++) {
+            given()
+                    .body(new HashMap<String, Object>(){{
+                        put("status", "PUBLISHED");
+                    }})
+                    .contentType(ContentType.JSON)
+                    .patch(listingsList.get(i))
+                    .then()
+                    .assertThat()
+                    .statusCode(202);
+        }
+
+        String body = given()
+                .get("/%s/listings/export%s".formatted(dealerId, filter == null ? "" : "?status=" + filter))
+                .then()
+                .statusCode(200)
+                .contentType("application/x-ndjson")
+                .extract()
+                .asString();
+
+        List<String> lines = body.lines().toList();
+        assertThat(lines).hasSize(expectedLines);
+        assertThat(lines).allSatisfy(line -> {
+            assertThat(line).startsWith("{\"dealer\":{").endsWith("}");
+            if (filter != null) {
+                assertThat(line).contains("\"status\":\"%s\"".formatted(filter));
+            }
+        });
+    }
+
     @Test
     void createNewListing_ShouldReturnCreatedWithDraftListing() {
         String dealerId = extractDealerIdFromLocation(
@@ -142,6 +284,79 @@ class ListingsControllerTests extends ListingsBaseControllerTest{
                 .body("url", endsWith(listingLocation));
     }
 
+    @Test
+    void createListingsBatch_ShouldCreateValidItemsAndReportInvalidOnes() {
+        String dealerId = extractDealerIdFromLocation(
+                createDealer(
+                        getDealerResourceAsStream("freeDealerNotRemoveOldListings.json")));
+
+        Map<String, Object> validListing = new HashMap<>(){{
+            put("vehicle", "2021 Tesla Model Y");
+            put("condition", "USED");
+            put("price", "47399.99");
+        }};
+        Map<String, Object> invalidListing = new HashMap<>(){{
+            put("condition", "NEW");
+            put("price", "10");
+        }};
+
+        ExtractableResponse<Response> response = given()
+                .body(List.of(validListing, invalidListing, validListing))
+                .contentType(ContentType.JSON)
+                .post("/%s/listings/batch".formatted(dealerId))
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("created", equalTo(2))
+                .body("failed", equalTo(1))
+                .body("data.index", contains(0, 1, 2))
+                .body("data[0].url", notNullValue())
+                .body("data[1].url", nullValue())
+                .body("data[1].error", equalTo("The field vehicle is required"))
+                .body("data[2].url", notNullValue())
+                .extract();
+
+        verifyListingStatus(response.jsonPath().getString("data[0].url"), "DRAFT");
+        verifyListingStatus(response.jsonPath().getString("data[2].url"), "DRAFT");
+
+        given()
+                .get("/%s/listings?status=DRAFT".formatted(dealerId))
+                .then()
+                .statusCode(200)
+                .body("pageInfo.total", equalTo(2));
+    }
+
+    @Test
+    void createListingsBatchForInvalidDealer_ShouldReturnNotFound() {
+        given()
+                .body(List.of(new HashMap<String, Object>(){{
+                    put("vehicle", "2021 Tesla Model Y");
+                    put("condition", "USED");
+                    put("price", "47399.99");
+                }}))
+                .contentType(ContentType.JSON)
+                .post("/%s/listings/batch".formatted(UUID.randomUUID()))
+                .then()
+                .assertThat()
+                .statusCode(404);
+    }
+
+    @Test
+    void createEmptyListingsBatch_ShouldReturnBadRequest() {
+        String dealerId = extractDealerIdFromLocation(
+                createDealer(
+                        getDealerResourceAsStream("freeDealerNotRemoveOldListings.json")));
+
+        given()
+                .body(List.of())
+                .contentType(ContentType.JSON)
+                .post("/%s/listings/batch".formatted(dealerId))
+                .then()
+                .assertThat()
+                .statusCode(400)
+                .body("message", equalTo("The list of listings is required"));
+    }
+
     @Test
     void createNewListingWithNoVehicle_ShouldReturnBadRequest() {
         String dealerId = extractDealerIdFromLocation(
@@ -189,6 +404,99 @@ class ListingsControllerTests extends ListingsBaseControllerTest{
 
     }
 
+    @Test
+    void createQueuedListing_ShouldReturnAcceptedAndBeWrittenByTheWriters() throws InterruptedException {
+        String dealerId = extractDealerIdFromLocation(
+                createDealer(
+                        getDealerResourceAsStream("freeDealerNotRemoveOldListings.json")));
+
+        ExtractableResponse<Response> response = given()
+                .body(getListingsResourceAsStream("newListing.json"))
+                .contentType(ContentType.JSON)
+                .header("Prefer", "respond-async")
+                .post("/%s/listings".formatted(dealerId))
+                .then()
+                .assertThat()
+                .statusCode(202)
+                .header("Location", containsString("/%s/listings/".formatted(dealerId)))
+                .header("Preference-Applied", equalTo("respond-async"))
+                .body("state", equalTo("QUEUED"))
+                .extract();
+
+        String listingLocation = response.jsonPath().getString("url");
+        assertThat(response.header("Location")).endsWith(listingLocation);
+        String queueLocation = listingLocation.replace("/listings/", "/listings/queue/");
+
+        String state = "QUEUED";
+        for (int i = 0; i < 100 && state.equals("QUEUED"); i++) {
+            Thread.sleep(50);
+            state = given()
+                    .get(queueLocation)
+                    .then()
+                    .statusCode(200)
+                    .body("url", equalTo(listingLocation))
+                    .extract()
+                    .jsonPath()
+                    .getString("state");
+        }
+
+        assertThat(state).isEqualTo("WRITTEN");
+        given()
+                .get(listingLocation)
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("vehicle", equalTo("2021 Tesla Model Y"))
+                .body("status", equalTo("DRAFT"));
+        given()
+                .get("/%s/listings?status=DRAFT".formatted(dealerId))
+                .then()
+                .statusCode(200)
+                .body("pageInfo.total", equalTo(1));
+    }
+
+    @Test
+    void createQueuedInvalidListing_ShouldReturnBadRequest() {
+        String dealerId = extractDealerIdFromLocation(
+                createDealer(
+                        getDealerResourceAsStream("freeDealerNotRemoveOldListings.json")));
+
+        given()
+                .body(new HashMap<String, Object>(){{
+                    put("condition", "NEW");
+                    put("price", "10");
+                }})
+                .contentType(ContentType.JSON)
+                .header("Prefer", "respond-async")
+                .post("/%s/listings".formatted(dealerId))
+                .then()
+                .assertThat()
+                .statusCode(400)
+                .body("message", equalTo("The field vehicle is required"));
+
+        given()
+                .body(getListingsResourceAsStream("newListing.json"))
+                .contentType(ContentType.JSON)
+                .header("Prefer", "respond-async")
+                .post("/%s/listings".formatted(UUID.randomUUID()))
+                .then()
+                .assertThat()
+                .statusCode(404);
+    }
+
+    @Test
+    void getQueuedListingNeverCreated_ShouldReturnNotFound() {
+        String dealerId = extractDealerIdFromLocation(
+                createDealer(
+                        getDealerResourceAsStream("freeDealerNotRemoveOldListings.json")));
+
+        given()
+                .get("/%s/listings/queue/%s".formatted(dealerId, UUID.randomUUID()))
+                .then()
+                .assertThat()
+                .statusCode(404);
+    }
+
     @Test
     void publishListing_ShouldReturnAcceptedWithPublishedListing() {
         String dealerId = extractDealerIdFromLocation(
@@ -312,6 +620,306 @@ class ListingsControllerTests extends ListingsBaseControllerTest{
                 "REMOVED");
     }
 
+    @ParameterizedTest
+    @MethodSource("exceedingLimitListAccepted")
+    void publishListingExceedingLimit_ShouldKeepPublicationLedgerConsistent(String dealerResourceName,
+                                                                            DealerTierLimit tierLimit) {
+        String dealerId = extractDealerIdFromLocation(createDealer(getDealerResourceAsStream(dealerResourceName)));
+        createAndPublishMapOfListings(dealerId, tierLimitConfiguration.getTierLimit(tierLimit));
+        String listingLocation = createAndPublishListing(dealerId, "newListing.json");
+
+        given()
+                .body(new HashMap<String, Object>(){{
+                    put("status", "DRAFT");
+                }})
+                .contentType(ContentType.JSON)
+                .patch(listingLocation)
+                .then()
+                .assertThat()
+                .statusCode(202);
+
+        assertThat(publicationLedger.publishedCount(UUID.fromString(dealerId)))
+                .isEqualTo(tierLimitConfiguration.getTierLimit(tierLimit) - 1);
+        assertThat(publicationLedger.isConsistent(UUID.fromString(dealerId))).isTrue();
+    }
+
+    @Test
+    void getPublishedListing_ShouldBeServedFromTheCacheUntilTheStatusChanges() {
+        String dealerId = extractDealerIdFromLocation(createDealer(getDealerResourceAsStream("freeDealerNotRemoveOldListings.json")));
+        String listingLocation = createAndPublishListing(dealerId, "newListing.json");
+
+        String json = given()
+                .get(listingLocation)
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .extract()
+                .asString();
+        float hits = cacheHits("published-listings");
+
+        given()
+                .header("Accept-Encoding", "gzip")
+                .get(listingLocation)
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .header("Content-Encoding", equalTo("gzip"))
+                .body(equalTo(json));
+        // Without the decoders the client doesn't add its own Accept-Encoding
+        for (String refused : List.of("gzip;q=0, identity", "x-gzip", "br, *;q=0")) {
+            given()
+                    .config(RestAssured.config().decoderConfig(DecoderConfig.decoderConfig().noContentDecoders()))
+                    .header("Accept-Encoding", refused)
+                    .get(listingLocation)
+                    .then()
+                    .assertThat()
+                    .statusCode(200)
+                    .header("Content-Encoding", nullValue())
+                    .header("ETag", not(containsString("gzip")))
+                    .body(equalTo(json));
+        }
+        given()
+                .get("/%s/listings?status=PUBLISHED".formatted(dealerId))
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("data[0].url", endsWith(listingLocation));
+        assertThat(cacheHits("published-listings")).isGreaterThanOrEqualTo(hits + 2);
+
+        changeListingsStatus(dealerId, List.of(listingLocation), "DRAFT")
+                .then()
+                .assertThat()
+                .statusCode(200);
+        verifyListingStatus(listingLocation, "DRAFT");
+        given()
+                .get("/%s/listings?status=PUBLISHED".formatted(dealerId))
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("data", empty());
+    }
+
+    @Test
+    void getListingWithCurrentETag_ShouldReturnNotModifiedUntilTheListingOrTheDealerChange() {
+        String dealerLocation = createDealer(getDealerResourceAsStream("freeDealerNotRemoveOldListings.json"));
+        String dealerId = extractDealerIdFromLocation(dealerLocation);
+        String listingLocation = createListing(dealerId, getListingsResourceAsStream("newListing.json"));
+
+        String draftETag = etagOf(listingLocation);
+        assertNotModified(listingLocation, draftETag);
+
+        changeListingsStatus(dealerId, List.of(listingLocation), "PUBLISHED")
+                .then()
+                .assertThat()
+                .statusCode(200);
+        String publishedETag = etagOf(listingLocation, draftETag);
+        // Served from the published listings cache
+        assertNotModified(listingLocation, publishedETag);
+
+        given()
+                .body(getDealerResourceAsStream("freeDealerRemoveOldListings.json"))
+                .contentType(ContentType.JSON)
+                .put(dealerLocation)
+                .then()
+                .assertThat()
+                .statusCode(202);
+        assertNotModified(listingLocation, etagOf(listingLocation, publishedETag));
+    }
+
+    @Test
+    void getListingsWithCurrentETag_ShouldReturnNotModifiedUntilListingsWithTheStatusChange() {
+        String dealerId = extractDealerIdFromLocation(createDealer(getDealerResourceAsStream("basicDealerNotRemoveOldListings.json")));
+        String listingLocation = createListing(dealerId, getListingsResourceAsStream("newListing.json"));
+        String drafts = "/%s/listings?status=DRAFT".formatted(dealerId);
+        String published = "/%s/listings?status=PUBLISHED&cursor=".formatted(dealerId);
+
+        String draftsETag = etagOf(drafts);
+        String publishedETag = etagOf(published);
+        assertNotModified(drafts, draftsETag);
+        assertNotModified(published, publishedETag);
+
+        createListing(dealerId, getListingsResourceAsStream("newListing.json"));
+        draftsETag = etagOf(drafts, draftsETag);
+        assertNotModified(published, publishedETag);
+
+        given()
+                .body(getListingsResourceAsStream("newListing.json"))
+                .contentType(ContentType.JSON)
+                .put(listingLocation)
+                .then()
+                .assertThat()
+                .statusCode(202);
+        draftsETag = etagOf(drafts, draftsETag);
+        assertNotModified(published, publishedETag);
+
+        given()
+                .body(new HashMap<String, Object>(){{
+                    put("status", "PUBLISHED");
+                }})
+                .contentType(ContentType.JSON)
+                .patch(listingLocation)
+                .then()
+                .assertThat()
+                .statusCode(202);
+        etagOf(drafts, draftsETag);
+        etagOf(published, publishedETag);
+    }
+
+    @Test
+    void changeListingsStatus_ShouldPublishAndUnpublishAllListings() {
+        String dealerId = extractDealerIdFromLocation(createDealer(getDealerResourceAsStream("basicDealerNotRemoveOldListings.json")));
+        List<String> listings = List.of(
+                createListing(dealerId, getListingsResourceAsStream("newListing.json")),
+                createListing(dealerId, getListingsResourceAsStream("newListing.json")),
+                createListing(dealerId, getListingsResourceAsStream("newListing.json")));
+
+        changeListingsStatus(dealerId, listings, "PUBLISHED")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("changed", hasSize(3))
+                .body("removed", empty());
+        listings.forEach(listing -> verifyListingStatus(listing, "PUBLISHED"));
+
+        changeListingsStatus(dealerId, listings.subList(0, 2), "DRAFT")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("changed", hasSize(2));
+        verifyListingStatus(listings.get(0), "DRAFT");
+        verifyListingStatus(listings.get(1), "DRAFT");
+        verifyListingStatus(listings.get(2), "PUBLISHED");
+        assertThat(publicationLedger.publishedCount(UUID.fromString(dealerId))).isEqualTo(1);
+    }
+
+    @Test
+    void changeListingsStatusExceedingLimit_ShouldRemoveTheOldestListingsOnce() {
+        String dealerId = extractDealerIdFromLocation(createDealer(getDealerResourceAsStream("freeDealerRemoveOldListings.json")));
+        int limit = tierLimitConfiguration.getTierLimit(DealerTierLimit.FREE);
+        List<String> published = new ArrayList<>();
+        for (int i = 0; i < limit; i++) {
+            published.add(createAndPublishListing(dealerId, "newListing.json"));
+        }
+        List<String> batch = List.of(
+                published.get(limit - 1),
+                createListing(dealerId, getListingsResourceAsStream("newListing.json")));
+
+        List<String> removed = changeListingsStatus(dealerId, batch, "PUBLISHED")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("changed", hasSize(2))
+                .extract()
+                .jsonPath()
+                .getList("removed");
+
+        assertThat(removed).hasSize(1);
+        assertThat(removed.get(0)).endsWith(published.get(0));
+        verifyListingStatus(published.get(0), "REMOVED");
+        batch.forEach(listing -> verifyListingStatus(listing, "PUBLISHED"));
+        assertThat(publicationLedger.isConsistent(UUID.fromString(dealerId))).isTrue();
+    }
+
+    @Test
+    void changeListingsStatusExceedingLimit_ShouldReturnConflictWithoutChanges() {
+        String dealerId = extractDealerIdFromLocation(createDealer(getDealerResourceAsStream("freeDealerNotRemoveOldListings.json")));
+        int limit = tierLimitConfiguration.getTierLimit(DealerTierLimit.FREE);
+        List<String> listings = new ArrayList<>();
+        for (int i = 0; i < limit + 1; i++) {
+            listings.add(createListing(dealerId, getListingsResourceAsStream("newListing.json")));
+        }
+
+        changeListingsStatus(dealerId, listings, "PUBLISHED")
+                .then()
+                .assertThat()
+                .statusCode(409);
+        listings.forEach(listing -> verifyListingStatus(listing, "DRAFT"));
+    }
+
+    @Test
+    void changeListingsStatusWithInvalidListing_ShouldReturnNotFoundWithoutChanges() {
+        String dealerId = extractDealerIdFromLocation(createDealer(getDealerResourceAsStream("basicDealerRemoveOldListings.json")));
+        String listing = createListing(dealerId, getListingsResourceAsStream("newListing.json"));
+
+        given()
+                .body(new HashMap<String, Object>(){{
+                    put("listingIds", List.of(extractDealerIdFromLocation(listing), UUID.randomUUID().toString()));
+                    put("status", "PUBLISHED");
+                }})
+                .contentType(ContentType.JSON)
+                .patch("/%s/listings".formatted(dealerId))
+                .then()
+                .assertThat()
+                .statusCode(404);
+        verifyListingStatus(listing, "DRAFT");
+    }
+
+    @Test
+    void downgradeDealerTier_ShouldRemoveTheOldestListingsOverTheNewLimit() {
+        String dealerLocation = createDealer(getDealerResourceAsStream("premiumDealerNotRemoveOldListings.json"));
+        String dealerId = extractDealerIdFromLocation(dealerLocation);
+        int freeLimit = tierLimitConfiguration.getTierLimit(DealerTierLimit.FREE);
+        List<String> published = new ArrayList<>();
+        for (int i = 0; i < freeLimit + 3; i++) {
+            published.add(createAndPublishListing(dealerId, "newListing.json"));
+        }
+        changeListingsStatus(dealerId, published.subList(0, 1), "DRAFT")
+                .then()
+                .statusCode(200);
+        assertThat(dealerRepository.findById(UUID.fromString(dealerId)).map(Dealer::getPublishedListings)).contains(freeLimit + 2);
+
+        given()
+                .body(getDealerResourceAsStream("freeDealerNotRemoveOldListings.json"))
+                .contentType(ContentType.JSON)
+                .put(dealerLocation)
+                .then()
+                .assertThat()
+                .statusCode(202);
+
+        verifyListingStatus(published.get(0), "DRAFT");
+        published.subList(1, 3).forEach(listing -> verifyListingStatus(listing, "REMOVED"));
+        published.subList(3, published.size()).forEach(listing -> verifyListingStatus(listing, "PUBLISHED"));
+        assertThat(dealerRepository.findById(UUID.fromString(dealerId)).map(Dealer::getPublishedListings)).contains(freeLimit);
+        assertThat(publicationLedger.isConsistent(UUID.fromString(dealerId))).isTrue();
+    }
+
+    @Test
+    void tierReconciliationSweep_ShouldRemoveTheListingsOverTheLimit() {
+        String dealerId = extractDealerIdFromLocation(createDealer(getDealerResourceAsStream("basicDealerRemoveOldListings.json")));
+        String withinLimitDealerId = extractDealerIdFromLocation(createDealer(getDealerResourceAsStream("basicDealerRemoveOldListings.json")));
+        int freeLimit = tierLimitConfiguration.getTierLimit(DealerTierLimit.FREE);
+        List<String> published = new ArrayList<>();
+        for (int i = 0; i < freeLimit + 2; i++) {
+            published.add(createAndPublishListing(dealerId, "newListing.json"));
+        }
+        String withinLimitListing = createAndPublishListing(withinLimitDealerId, "newListing.json");
+
+        // Changed without the command handler, like a tier changed by another instance that failed to reconcile
+        Dealer dealer = dealerRepository.findById(UUID.fromString(dealerId)).orElseThrow();
+        dealer.setTier(DealerTierLimit.FREE);
+        dealerRepository.save(dealer);
+
+        tierLimitReconciler.sweep();
+
+        published.subList(0, 2).forEach(listing -> verifyListingStatus(listing, "REMOVED"));
+        published.subList(2, published.size()).forEach(listing -> verifyListingStatus(listing, "PUBLISHED"));
+        verifyListingStatus(withinLimitListing, "PUBLISHED");
+        assertThat(dealerRepository.findById(UUID.fromString(dealerId)).map(Dealer::getPublishedListings)).contains(freeLimit);
+    }
+
+    @Test
+    void backfillPublishedListings_ShouldCountTheDealersWithoutCounter() {
+        String dealerId = extractDealerIdFromLocation(createDealer(getDealerResourceAsStream("basicDealerRemoveOldListings.json")));
+        createAndPublishListing(dealerId, "newListing.json");
+        createAndPublishListing(dealerId, "newListing.json");
+        createListing(dealerId, getListingsResourceAsStream("newListing.json"));
+        jdbcTemplate.update("update dealer set published_listings = null where id = ?", UUID.fromString(dealerId));
+
+        tierLimitReconciler.backfillPublishedListings();
+
+        assertThat(dealerRepository.findById(UUID.fromString(dealerId)).map(Dealer::getPublishedListings)).contains(2);
+    }
+
     @Test
     void editDraftListing_ShouldReturnAccepted() {
         String dealerId = extractDealerIdFromLocation(createDealer(getDealerResourceAsStream("basicDealerRemoveOldListings.json")));
@@ -431,6 +1039,308 @@ class ListingsControllerTests extends ListingsBaseControllerTest{
                 .body("message", equalTo("Operation not allowed - Removed listings cannot have status changes."));
     }
 
+    @Test
+    void archiveRemovedListings_ShouldMoveThemToTheHistory() {
+        String dealerId = extractDealerIdFromLocation(createDealer(getDealerResourceAsStream("basicDealerRemoveOldListings.json")));
+        String publishedLocation = createAndPublishListing(dealerId, "newListing.json");
+        String removedLocation = createAndPublishListing(dealerId, "newListing.json");
+        removeListing(removedLocation);
+        String removedListingsLocation = "/%s/listings?status=REMOVED".formatted(dealerId);
+        String removedListingsETag = etagOf(removedListingsLocation);
+
+        assertThat(listingArchiver.archive(LocalDateTime.now().plusSeconds(1))).isPositive();
+
+        String listingId = removedLocation.substring(removedLocation.lastIndexOf('/') + 1);
+        assertThat(readModelRow(listingId)).isEmpty();
+        given()
+                .get(removedLocation)
+                .then()
+                .assertThat()
+                .statusCode(404);
+        verifyListingStatus(publishedLocation, "PUBLISHED");
+        etagOf(removedListingsLocation, removedListingsETag);
+        given()
+                .get(removedListingsLocation)
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("pageInfo.total", equalTo(0));
+
+        given()
+                .get("/%s/listings/history".formatted(dealerId))
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("data.size()", is(1))
+                .body("data[0].status", equalTo("REMOVED"))
+                .body("data[0].removedAt", notNullValue())
+                .body("data[0].url", equalTo("/%s/listings/history/%s".formatted(dealerId, listingId)))
+                .body("pageInfo.nextCursor", nullValue());
+
+        given()
+                .get("/%s/listings/history/%s".formatted(dealerId, listingId))
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("status", equalTo("REMOVED"))
+                .body("vehicle", notNullValue());
+    }
+
+    @Test
+    void archiveRemovedListings_ShouldKeepTheListingsRemovedWithinTheRetention() {
+        String dealerId = extractDealerIdFromLocation(createDealer(getDealerResourceAsStream("basicDealerRemoveOldListings.json")));
+        String removedLocation = createAndPublishListing(dealerId, "newListing.json");
+        removeListing(removedLocation);
+
+        assertThat(listingArchiver.archive(LocalDateTime.now().minusDays(1))).isZero();
+
+        verifyListingStatus(removedLocation, "REMOVED");
+        given()
+                .get("/%s/listings/history".formatted(dealerId))
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("data.size()", is(0));
+    }
+
+    @Test
+    void getArchivedListings_ShouldPageWithTheCursor() {
+        String dealerId = extractDealerIdFromLocation(createDealer(getDealerResourceAsStream("basicDealerRemoveOldListings.json")));
+        for (int i = 0; i < 3; i++) {
+            removeListing(createAndPublishListing(dealerId, "newListing.json"));
+        }
+        assertThat(listingArchiver.archive(LocalDateTime.now().plusSeconds(1))).isGreaterThanOrEqualTo(3);
+
+        String cursor = given()
+                .get("/%s/listings/history?pageSize=2".formatted(dealerId))
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("data.size()", is(2))
+                .body("pageInfo.nextCursor", notNullValue())
+                .extract()
+                .path("pageInfo.nextCursor");
+
+        given()
+                .get("/%s/listings/history?pageSize=2&cursor=%s".formatted(dealerId, cursor))
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("data.size()", is(1))
+                .body("pageInfo.nextCursor", nullValue());
+
+        given()
+                .get("/%s/listings/history/%s".formatted(dealerId, UUID.randomUUID()))
+                .then()
+                .assertThat()
+                .statusCode(404);
+    }
+
+    @Test
+    void readModel_ShouldFollowTheChangesOfTheListingsAndTheDealer() {
+        String dealerLocation = createDealer(getDealerResourceAsStream("basicDealerRemoveOldListings.json"));
+        String dealerId = extractDealerIdFromLocation(dealerLocation);
+        String draftLocation = createListing(dealerId, getListingsResourceAsStream("newListing.json"));
+        String publishedLocation = createAndPublishListing(dealerId, "newListing.json");
+        String draftId = draftLocation.substring(draftLocation.lastIndexOf('/') + 1);
+        String publishedId = publishedLocation.substring(publishedLocation.lastIndexOf('/') + 1);
+
+        given()
+                .body(getListingsResourceAsStream("editListing.json"))
+                .contentType(ContentType.JSON)
+                .put(draftLocation)
+                .then()
+                .assertThat()
+                .statusCode(202);
+
+        assertThat(readModelRow(draftId)).containsEntry("COLOR", "black")
+                .containsEntry("VERSION", listingColumn(draftId, "version"))
+                .containsEntry("SORTED_AT", listingColumn(draftId, "created_at"));
+        assertThat(readModelRow(publishedId)).containsEntry("STATUS", listingColumn(publishedId, "status"))
+                .containsEntry("VERSION", listingColumn(publishedId, "version"))
+                .containsEntry("SORTED_AT", listingColumn(publishedId, "published_at"));
+
+        given()
+                .body(new HashMap<String, Object>(){{
+                    put("name", "Renamed dealer");
+                    put("tier", "BASIC");
+                    put("allowRemovingOldListings", true);
+                }})
+                .contentType(ContentType.JSON)
+                .put(dealerLocation)
+                .then()
+                .assertThat()
+                .statusCode(202);
+
+        given()
+                .get(draftLocation)
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("dealer.name", equalTo("Renamed dealer"))
+                .body("color", equalTo("black"));
+        given()
+                .get("/%s/listings?status=PUBLISHED".formatted(dealerId))
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("data.size()", is(1))
+                .body("data[0].dealer.name", equalTo("Renamed dealer"));
+    }
+
+    @Test
+    void rebuildReadModel_ShouldRestoreTheRowsOfTheListings() {
+        String dealerId = extractDealerIdFromLocation(createDealer(getDealerResourceAsStream("basicDealerRemoveOldListings.json")));
+        String listingLocation = createListing(dealerId, getListingsResourceAsStream("newListing.json"));
+        String listingId = listingLocation.substring(listingLocation.lastIndexOf('/') + 1);
+        UUID orphanId = UUID.randomUUID();
+        jdbcTemplate.update("DELETE FROM listing_read_model WHERE id = ?", UUID.fromString(listingId));
+        jdbcTemplate.update("INSERT INTO listing_read_model (id, dealer_id, dealer_version, version) VALUES (?, ?, 0, 0)",
+                orphanId, UUID.fromString(dealerId));
+        // The pages are read from the read model only
+        given()
+                .get("/%s/listings?status=DRAFT".formatted(dealerId))
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("data.size()", is(0));
+
+        listingProjector.rebuild();
+
+        assertThat(readModelRow(orphanId.toString())).isEmpty();
+        assertThat(readModelRow(listingId)).containsEntry("VERSION", listingColumn(listingId, "version"));
+        assertThat(listingProjector.ready()).isTrue();
+        given()
+                .get("/%s/listings?status=DRAFT".formatted(dealerId))
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("data.size()", is(1))
+                .body("data[0].url", endsWith(listingLocation));
+    }
+
+    private Map<String, Object> readModelRow(String listingId) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList("SELECT * FROM listing_read_model WHERE id = ?",
+                UUID.fromString(listingId));
+        return rows.isEmpty() ? Map.of() : rows.get(0);
+    }
+
+    private Object listingColumn(String listingId, String column) {
+        return jdbcTemplate.queryForObject("SELECT %s FROM listing WHERE id = ?".formatted(column), Object.class,
+                UUID.fromString(listingId));
+    }
+
+    @Test
+    void listingTransitions_ShouldKeepEveryStatusAndTheTimeOnMarket() throws InterruptedException {
+        String dealerId = extractDealerIdFromLocation(createDealer(getDealerResourceAsStream("basicDealerRemoveOldListings.json")));
+        String listingLocation = createAndPublishListing(dealerId, "newListing.json");
+        Thread.sleep(1100);
+        changeStatus(listingLocation, "DRAFT");
+        changeStatus(listingLocation, "PUBLISHED");
+        changeStatus(listingLocation, "PUBLISHED");
+
+        given()
+                .get(listingLocation + "/transitions")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("url", endsWith(listingLocation))
+                .body("published", equalTo(true))
+                .body("timeOnMarket", greaterThanOrEqualTo(1))
+                .body("transitions.previousStatus", contains(null, "DRAFT", "PUBLISHED", "DRAFT"))
+                .body("transitions.status", contains("DRAFT", "PUBLISHED", "DRAFT", "PUBLISHED"))
+                .body("transitions.changedAt", everyItem(notNullValue()));
+
+        removeListing(listingLocation);
+        given()
+                .get(listingLocation + "/transitions")
+                .then()
+                .statusCode(200)
+                .body("published", equalTo(false))
+                .body("transitions", hasSize(5))
+                .body("transitions[4].status", equalTo("REMOVED"));
+
+        given()
+                .get("/%s/listings/%s/transitions".formatted(dealerId, UUID.randomUUID()))
+                .then()
+                .statusCode(404);
+    }
+
+    @Test
+    void listingsPublishedAt_ShouldReplayTheJournalOnTopOfTheSnapshots() throws InterruptedException {
+        String dealerId = extractDealerIdFromLocation(createDealer(getDealerResourceAsStream("basicDealerRemoveOldListings.json")));
+        LocalDateTime beforeAll = LocalDateTime.now();
+        Thread.sleep(5);
+        String first = createAndPublishListing(dealerId, "newListing.json");
+        Thread.sleep(5);
+        LocalDateTime onlyFirst = LocalDateTime.now();
+        Thread.sleep(5);
+        String second = createAndPublishListing(dealerId, "newListing.json");
+        Thread.sleep(5);
+        LocalDateTime both = LocalDateTime.now();
+        Thread.sleep(5);
+
+        assertThat(listingJournal.snapshot(both)).isPositive();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM listing_snapshot WHERE dealer_id = ?",
+                Integer.class, UUID.fromString(dealerId))).isEqualTo(1);
+
+        changeStatus(first, "DRAFT");
+        Thread.sleep(5);
+        LocalDateTime onlySecond = LocalDateTime.now();
+
+        assertThat(publishedAt(dealerId, beforeAll)).isEmpty();
+        assertThat(publishedAt(dealerId, onlyFirst)).containsExactly(first);
+        assertThat(publishedAt(dealerId, both)).containsExactly(first, second);
+        assertThat(publishedAt(dealerId, onlySecond)).containsExactly(second);
+
+        given()
+                .get("/%s/listings/published-at?at=%s".formatted(dealerId, onlySecond))
+                .then()
+                .statusCode(200)
+                .body("data[0].publishedAt", notNullValue())
+                .body("data[0].timeOnMarket", greaterThanOrEqualTo(0));
+
+        given()
+                .get("/%s/listings/published-at".formatted(dealerId))
+                .then()
+                .statusCode(400);
+    }
+
+    private List<String> publishedAt(String dealerId, LocalDateTime at) {
+        List<String> urls = given()
+                .get("/%s/listings/published-at?at=%s".formatted(dealerId, at))
+                .then()
+                .statusCode(200)
+                .extract()
+                .jsonPath()
+                .getList("data.url", String.class);
+        return urls.stream().map(url -> url.substring(url.indexOf(dealerId))).toList();
+    }
+
+    private void changeStatus(String listingLocation, String status) {
+        given()
+                .body(new HashMap<String, Object>(){{
+                    put("status", status);
+                }})
+                .contentType(ContentType.JSON)
+                .patch(listingLocation)
+                .then()
+                .assertThat()
+                .statusCode(202);
+    }
+
+    private void removeListing(String listingLocation) {
+        given()
+                .body(new HashMap<String, Object>(){{
+                    put("status", "REMOVED");
+                }})
+                .contentType(ContentType.JSON)
+                .patch(listingLocation)
+                .then()
+                .assertThat()
+                .statusCode(202);
+    }
+
     private void verifyListingStatus(String listingLocation, String expectedStatus) {
         given()
                 .get(listingLocation)
@@ -490,6 +1400,63 @@ class ListingsControllerTests extends ListingsBaseControllerTest{
         return listingLocation;
     }
 
+    private Response changeListingsStatus(String dealerId, List<String> listingLocations, String status) {
+        return given()
+                .body(new HashMap<String, Object>(){{
+                    put("listingIds", listingLocations.stream().map(location -> extractDealerIdFromLocation(location)).toList());
+                    put("status", status);
+                }})
+                .contentType(ContentType.JSON)
+                .patch("/%s/listings".formatted(dealerId));
+    }
+
+    private String etagOf(String location) {
+        return given()
+                .get(location)
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .header("ETag", notNullValue())
+                .extract()
+                .header("ETag");
+    }
+
+    /**
+     * @return the new ETag, after checking that the previous one is not current anymore
+     */
+    private String etagOf(String location, String previousETag) {
+        return given()
+                .header("If-None-Match", previousETag)
+                .get(location)
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .header("ETag", not(equalTo(previousETag)))
+                .extract()
+                .header("ETag");
+    }
+
+    private void assertNotModified(String location, String etag) {
+        given()
+                .header("If-None-Match", etag)
+                .get(location)
+                .then()
+                .assertThat()
+                .statusCode(304)
+                .header("ETag", equalTo(etag));
+    }
+
+    private float cacheHits(String cache) {
+        return given()
+                .get("/actuator/metrics/cache.gets?tag=cache:%s&tag=result:hit".formatted(cache))
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .extract()
+                .jsonPath()
+                .getFloat("measurements[0].value");
+    }
+
     private String extractDealerIdFromLocation(String dealerLocation) {
         String [] locationArray = dealerLocation.split("/");
         return locationArray[Math.max(0, locationArray.length -1)];
@@ -0,0 +1,62 @@
+package com.filipegeniselli.backendtechassignment;
+
+import com.filipegeniselli.backendtechassignment.id.NodeIdAssignment;
+import com.filipegeniselli.backendtechassignment.id.NodeIdLeaseRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class NodeIdAssignmentTests {
+
+    @Autowired
+    private NodeIdAssignment nodeIdAssignment;
+
+    @Autowired
+    private NodeIdLeaseRepository nodeIdLeaseRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void assign_ShouldLeaseADifferentNodeIdToEachInstance() {
+        NodeIdAssignment other = leased(Duration.ofMinutes(10));
+        NodeIdAssignment another = leased(Duration.ofMinutes(10));
+
+        assertThat(other.nodeId())
+                .isNotEqualTo(nodeIdAssignment.nodeId())
+                .isNotEqualTo(another.nodeId());
+
+        other.release();
+        NodeIdAssignment afterRelease = leased(Duration.ofMinutes(10));
+        assertThat(afterRelease.nodeId()).isEqualTo(other.nodeId());
+
+        another.release();
+        afterRelease.release();
+    }
+
+    @Test
+    void assign_ShouldTakeAnExpiredLease() {
+        NodeIdAssignment expired = leased(Duration.ofSeconds(-1));
+        NodeIdAssignment other = leased(Duration.ofMinutes(10));
+
+        assertThat(other.nodeId()).isEqualTo(expired.nodeId());
+
+        expired.renew();
+        assertThat(expired.nodeId()).isNotEqualTo(other.nodeId());
+
+        expired.release();
+        other.release();
+    }
+
+    private NodeIdAssignment leased(Duration leaseDuration) {
+        NodeIdAssignment assignment = new NodeIdAssignment(nodeIdLeaseRepository, transactionTemplate, -1, leaseDuration);
+        assignment.assign();
+        return assignment;
+    }
+}
@@ -0,0 +1,302 @@
+package com.filipegeniselli.backendtechassignment;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.filipegeniselli.backendtechassignment.dealer.DealerTierLimit;
+import com.filipegeniselli.backendtechassignment.dealer.command.DealerCommandService;
+import com.filipegeniselli.backendtechassignment.listings.ListingStatus;
+import com.filipegeniselli.backendtechassignment.listings.command.ListingCommandService;
+import com.filipegeniselli.backendtechassignment.listings.command.PublishListing;
+import com.filipegeniselli.backendtechassignment.outbox.FileOutboxSink;
+import com.filipegeniselli.backendtechassignment.outbox.OutboxEvent;
+import com.filipegeniselli.backendtechassignment.outbox.OutboxEventRepository;
+import com.filipegeniselli.backendtechassignment.outbox.OutboxEventType;
+import com.filipegeniselli.backendtechassignment.outbox.OutboxMessage;
+import com.filipegeniselli.backendtechassignment.outbox.OutboxRelay;
+import com.filipegeniselli.backendtechassignment.outbox.OutboxSink;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.PayloadApplicationEvent;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static com.filipegeniselli.backendtechassignment.ListingFixtures.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+@SpringBootTest
+class OutboxRelayTests {
+
+    @Autowired
+    private DealerCommandService dealerCommandService;
+
+    @Autowired
+    private ListingCommandService listingCommandService;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private OutboxRelay outboxRelay;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void drainOutbox() {
+        relay(new RecordingSink(Integer.MAX_VALUE), 100).relay();
+    }
+
+    @Test
+    void statusChanges_ShouldBeDeliveredInBatchesAndDeletedFromTheOutbox() {
+        UUID dealerId = createDealer(dealerCommandService, DealerTierLimit.FREE, true);
+        UUID first = createListing(listingCommandService, dealerId);
+        UUID second = createListing(listingCommandService, dealerId);
+        UUID third = createListing(listingCommandService, dealerId);
+
+        publish(dealerId, first, ListingStatus.PUBLISHED);
+        publish(dealerId, second, ListingStatus.PUBLISHED);
+        publish(dealerId, third, ListingStatus.PUBLISHED);
+        publish(dealerId, second, ListingStatus.DRAFT);
+        publish(dealerId, second, ListingStatus.REMOVED);
+        assertThat(pendingEvents(List.of(first, second, third))).hasSize(5);
+
+        RecordingSink sink = new RecordingSink(Integer.MAX_VALUE);
+        int relayed = relay(sink, 2).relay();
+
+        assertThat(relayed).isEqualTo(5);
+        assertThat(sink.batches).hasSize(3).allSatisfy(batch -> assertThat(batch).hasSizeLessThanOrEqualTo(2));
+        assertThat(sink.messages())
+                .extracting(OutboxMessage::listingId, OutboxMessage::type, OutboxMessage::attempt)
+                .containsExactly(
+                        tuple(first, OutboxEventType.PUBLISHED, 1),
+                        tuple(second, OutboxEventType.PUBLISHED, 1),
+                        tuple(first, OutboxEventType.REMOVED, 1),
+                        tuple(third, OutboxEventType.PUBLISHED, 1),
+                        tuple(second, OutboxEventType.UNPUBLISHED, 1));
+        assertThat(sink.messages()).extracting(OutboxMessage::id).isSorted();
+        assertThat(pendingEvents(List.of(first, second, third))).isEmpty();
+        assertThat(meterRegistry.counter("outbox.relayed").count()).isEqualTo(5);
+        assertThat(meterRegistry.timer("outbox.lag").count()).isEqualTo(5);
+    }
+
+    @Test
+    void failedDelivery_ShouldBeRetriedWithBackoffUntilTheLastAttempt() {
+        UUID dealerId = createDealer(dealerCommandService, DealerTierLimit.FREE, true);
+        UUID listingId = createListing(listingCommandService, dealerId);
+        publish(dealerId, listingId, ListingStatus.PUBLISHED);
+
+        FailingSink sink = new FailingSink();
+        OutboxRelay relay = relay(sink, 100);
+        LocalDateTime beforeFailure = LocalDateTime.now();
+
+        assertThat(relay.relay()).isZero();
+        OutboxEvent event = pendingEvents(List.of(listingId)).get(0);
+        assertThat(event.getAttempts()).isEqualTo(1);
+        assertThat(event.getNextAttemptAt()).isAfterOrEqualTo(beforeFailure.plusMinutes(1));
+        assertThat(event.getLastError()).contains("partner feed is down");
+
+        // Not due before the backoff
+        assertThat(relay.relay()).isZero();
+        assertThat(sink.calls).isEqualTo(1);
+
+        makeDue(event.getId());
+        assertThat(relay.relay()).isZero();
+        assertThat(sink.calls).isEqualTo(2);
+        assertThat(sink.attempts).containsExactly(1, 2);
+        event = pendingEvents(List.of(listingId)).get(0);
+        assertThat(event.getAttempts()).isEqualTo(2);
+        assertThat(event.getNextAttemptAt()).isNull();
+        assertThat(meterRegistry.counter("outbox.failures", "sink", "failing").count()).isEqualTo(2);
+        assertThat(meterRegistry.counter("outbox.dead").count()).isEqualTo(1);
+
+        // Kept aside, the next relays don't send it
+        RecordingSink recordingSink = new RecordingSink(Integer.MAX_VALUE);
+        relay(recordingSink, 100).relay();
+        assertThat(recordingSink.messages()).extracting(OutboxMessage::listingId).doesNotContain(listingId);
+        outboxEventRepository.deleteById(event.getId());
+    }
+
+    @Test
+    void fullSink_ShouldStopTheRelayAndKeepTheEventsInTheOutbox() {
+        UUID dealerId = createDealer(dealerCommandService, DealerTierLimit.FREE, true);
+        UUID first = createListing(listingCommandService, dealerId);
+        UUID second = createListing(listingCommandService, dealerId);
+        publish(dealerId, first, ListingStatus.PUBLISHED);
+        publish(dealerId, second, ListingStatus.PUBLISHED);
+        publish(dealerId, first, ListingStatus.DRAFT);
+
+        RecordingSink sink = new RecordingSink(2);
+        assertThat(relay(sink, 100).relay()).isEqualTo(2);
+
+        assertThat(sink.messages()).extracting(OutboxMessage::listingId).containsExactly(first, second);
+        assertThat(meterRegistry.counter("outbox.backpressure").count()).isEqualTo(1);
+        assertThat(pendingEvents(List.of(first, second)))
+                .extracting(OutboxEvent::getListingId, OutboxEvent::getType)
+                .containsExactly(tuple(first, OutboxEventType.UNPUBLISHED));
+    }
+
+    @Test
+    void inProcessSink_ShouldPublishTheMessagesAsApplicationEvents() {
+        List<OutboxMessage> received = new CopyOnWriteArrayList<>();
+        ApplicationListener<ApplicationEvent> listener = event -> {
+            if (event instanceof PayloadApplicationEvent<?> payload && payload.getPayload() instanceof OutboxMessage message) {
+                received.add(message);
+            }
+        };
+        context.addApplicationListener(listener);
+        try {
+            UUID dealerId = createDealer(dealerCommandService, DealerTierLimit.FREE, true);
+            UUID listingId = createListing(listingCommandService, dealerId);
+            publish(dealerId, listingId, ListingStatus.PUBLISHED);
+            publish(dealerId, listingId, ListingStatus.REMOVED);
+
+            assertThat(outboxRelay.relay()).isEqualTo(2);
+
+            waitFor(() -> received.stream().filter(message -> message.listingId().equals(listingId)).count() == 2);
+            assertThat(received)
+                    .filteredOn(message -> message.listingId().equals(listingId))
+                    .extracting(OutboxMessage::type, OutboxMessage::previousStatus, OutboxMessage::status)
+                    .containsExactly(
+                            tuple(OutboxEventType.PUBLISHED, ListingStatus.DRAFT, ListingStatus.PUBLISHED),
+                            tuple(OutboxEventType.REMOVED, ListingStatus.PUBLISHED, ListingStatus.REMOVED));
+        } finally {
+            context.removeApplicationListener(listener);
+        }
+    }
+
+    @Test
+    void fileSink_ShouldAppendOneJsonDocumentPerLine(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("outbox.ndjson");
+        FileOutboxSink sink = new FileOutboxSink(objectMapper, file.toString());
+        UUID dealerId = UUID.randomUUID();
+        UUID listingId = UUID.randomUUID();
+        LocalDateTime occurredAt = LocalDateTime.of(2023, 6, 1, 10, 30);
+
+        sink.deliver(List.of(new OutboxMessage(1, OutboxEventType.PUBLISHED, dealerId, listingId,
+                ListingStatus.DRAFT, ListingStatus.PUBLISHED, occurredAt, 1)));
+        sink.deliver(List.of(new OutboxMessage(2, OutboxEventType.UNPUBLISHED, dealerId, listingId,
+                ListingStatus.PUBLISHED, ListingStatus.DRAFT, occurredAt.plusMinutes(1), 3)));
+
+        List<String> lines = Files.readAllLines(file);
+        assertThat(lines).hasSize(2);
+        JsonNode second = objectMapper.readTree(lines.get(1));
+        assertThat(second.get("id").asLong()).isEqualTo(2);
+        assertThat(second.get("type").asText()).isEqualTo("UNPUBLISHED");
+        assertThat(second.get("listingId").asText()).isEqualTo(listingId.toString());
+        assertThat(second.get("occurredAt").asText()).isEqualTo("2023-06-01T10:31:00");
+        assertThat(second.get("attempt").asInt()).isEqualTo(3);
+    }
+
+    @Test
+    void relayWithoutSink_ShouldNotStart() {
+        OutboxRelay relay = new OutboxRelay(outboxEventRepository, List.of(), transactionTemplate, meterRegistry,
+                true, 100, 2, Duration.ofMinutes(1), Duration.ofMinutes(10));
+
+        assertThatThrownBy(relay::checkSinks)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageStartingWith("The outbox relay is enabled without a sink");
+    }
+
+    private OutboxRelay relay(OutboxSink sink, int batchSize) {
+        return new OutboxRelay(outboxEventRepository, List.of(sink), transactionTemplate, meterRegistry,
+                true, batchSize, 2, Duration.ofMinutes(1), Duration.ofMinutes(10));
+    }
+
+    private List<OutboxEvent> pendingEvents(List<UUID> listingIds) {
+        return outboxEventRepository.findAll().stream()
+                .filter(event -> listingIds.contains(event.getListingId()))
+                .sorted((first, second) -> Long.compare(first.getId(), second.getId()))
+                .toList();
+    }
+
+    private void makeDue(long id) {
+        jdbcTemplate.update("update outbox_event set next_attempt_at = ? where id = ?", LocalDateTime.now().minusSeconds(1), id);
+    }
+
+    private void waitFor(java.util.function.BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private void publish(UUID dealerId, UUID listingId, ListingStatus status) {
+        listingCommandService.handle(dealerId, listingId, new PublishListing(status));
+    }
+
+    private static class RecordingSink implements OutboxSink {
+        private final int capacity;
+        private final List<List<OutboxMessage>> batches = new ArrayList<>();
+
+        private RecordingSink(int capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public String name() {
+            return "recording";
+        }
+
+        @Override
+        public int capacity() {
+            return capacity == Integer.MAX_VALUE ? capacity : capacity - messages().size();
+        }
+
+        @Override
+        public void deliver(List<OutboxMessage> messages) {
+            batches.add(messages);
+        }
+
+        private List<OutboxMessage> messages() {
+            return batches.stream().flatMap(List::stream).toList();
+        }
+    }
+
+    private static class FailingSink implements OutboxSink {
+        private int calls;
+        private final List<Integer> attempts = new ArrayList<>();
+
+        @Override
+        public String name() {
+            return "failing";
+        }
+
+        @Override
+        public void deliver(List<OutboxMessage> messages) {
+            calls++;
+            messages.stream().map(OutboxMessage::attempt).forEach(attempts::add);
+            throw new IllegalStateException("The partner feed is down");
+        }
+    }
+}
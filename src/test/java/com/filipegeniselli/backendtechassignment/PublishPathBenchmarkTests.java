@@ -0,0 +1,111 @@
+package com.filipegeniselli.backendtechassignment;
+
+import com.filipegeniselli.backendtechassignment.dealer.DealerRepository;
+import com.filipegeniselli.backendtechassignment.dealer.DealerTierLimit;
+import com.filipegeniselli.backendtechassignment.dealer.command.DealerCommandService;
+import com.filipegeniselli.backendtechassignment.listings.ListingRepository;
+import com.filipegeniselli.backendtechassignment.listings.ListingStatus;
+import com.filipegeniselli.backendtechassignment.listings.command.ListingCommandService;
+import com.filipegeniselli.backendtechassignment.listings.command.PublishListing;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static com.filipegeniselli.backendtechassignment.ListingFixtures.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Compares the JPA publish path with the single statement one, every publish removes the oldest listing of the dealer.
+ * The single statement path needs postgres, run it with the test-it profile
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = {
+        "single-statement-publish.enabled=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class PublishPathBenchmarkTests {
+
+    private static final Logger logger = LoggerFactory.getLogger(PublishPathBenchmarkTests.class);
+    private static final int PUBLISHES = 2_000;
+
+    @Autowired
+    private DealerCommandService dealerCommandService;
+
+    @Autowired
+    private ListingCommandService listingCommandService;
+
+    @Autowired
+    private ListingRepository listingRepository;
+
+    @Autowired
+    private DealerRepository dealerRepository;
+
+    @Autowired
+    private TierLimitConfiguration tierLimitConfiguration;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void jpaPublishPath() {
+        measure("JPA", (dealerId, listingId) ->
+                listingCommandService.handle(dealerId, listingId, new PublishListing(ListingStatus.PUBLISHED)));
+    }
+
+    @Test
+    void singleStatementPublishPath() {
+        assumeTrue(listingRepository.supportsSingleStatementPublish(), "The database doesn't support the single statement publish");
+
+        measure("Single statement", (dealerId, listingId) ->
+                transactionTemplate.executeWithoutResult(status -> {
+                    dealerRepository.findForUpdateById(dealerId);
+                    listingRepository.publishInSingleStatement(dealerId,
+                            listingId,
+                            tierLimitConfiguration.getTierLimits(),
+                            LocalDateTime.now());
+                }));
+    }
+
+    private void measure(String name, PublishOperation operation) {
+        UUID dealerId = createDealer(dealerCommandService, DealerTierLimit.FREE, true);
+        List<UUID> listings = new ArrayList<>();
+        for (int i = 0; i < PUBLISHES; i++) {
+            listings.add(createListing(listingCommandService, dealerId));
+        }
+
+        // Warm up and fill the tier limit, every measured publish removes the oldest listing
+        listings.subList(0, PUBLISHES / 10).forEach(listingId -> operation.publish(dealerId, listingId));
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        List<UUID> measured = listings.subList(PUBLISHES / 10, PUBLISHES);
+
+        long start = System.nanoTime();
+        measured.forEach(listingId -> operation.publish(dealerId, listingId));
+        long elapsed = System.nanoTime() - start;
+
+        logger.info("{}: {} publishes/s, {} statements per publish",
+                name,
+                Math.round(measured.size() / (elapsed / 1_000_000_000.0)),
+                (double) statistics.getPrepareStatementCount() / measured.size());
+    }
+
+    private interface PublishOperation {
+        void publish(UUID dealerId, UUID listingId);
+    }
+}
@@ -0,0 +1,102 @@
+package com.filipegeniselli.backendtechassignment;
+
+import com.filipegeniselli.backendtechassignment.dealer.DealerTierLimit;
+import com.filipegeniselli.backendtechassignment.dealer.command.CreateUpdateDealer;
+import com.filipegeniselli.backendtechassignment.dealer.command.DealerCommandService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.UUID;
+
+import static io.restassured.RestAssured.given;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * The replica is the same in-memory database as the primary, the reads are told apart by the connections counters
+ */
+@TestPropertySource(properties = {
+        "read-replicas.enabled=true",
+        "read-replicas.read-your-writes=PT1M",
+        "read-replicas.instances[0].url=jdbc:h2:mem:listings-test"
+})
+class ReadReplicaRoutingTests extends ListingsBaseControllerTest {
+
+    @Autowired
+    private DealerCommandService dealerCommandService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void getListings_ShouldReadFromTheReplica() {
+        UUID dealerId = dealerCommandService.handle(new CreateUpdateDealer("Replica dealer", DealerTierLimit.BASIC, true));
+
+        double replicaConnections = connections("replica-0");
+        given()
+                .get("/%s/listings?status=DRAFT".formatted(dealerId))
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("data.size()", is(0));
+
+        assertThat(connections("replica-0")).isGreaterThan(replicaConnections);
+    }
+
+    @Test
+    void getListings_ShouldReadFromThePrimaryAfterTheDealerChangedSomething() {
+        String dealerLocation = createDealer(getDealerResourceAsStream("basicDealerRemoveOldListings.json"));
+        String dealerId = dealerLocation.substring(dealerLocation.lastIndexOf('/') + 1);
+        createListing(dealerId, getListingsResourceAsStream("newListing.json"));
+
+        double replicaConnections = connections("replica-0");
+        double primaryConnections = connections("primary");
+        given()
+                .get("/%s/listings?status=DRAFT".formatted(dealerId))
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("data.size()", is(1));
+
+        assertThat(connections("replica-0")).isEqualTo(replicaConnections);
+        assertThat(connections("primary")).isGreaterThan(primaryConnections);
+    }
+
+    @Test
+    void getDealer_ShouldLoadTheCacheFromThePrimary() {
+        UUID dealerId = dealerCommandService.handle(new CreateUpdateDealer("Cached dealer", DealerTierLimit.BASIC, true));
+
+        double replicaConnections = connections("replica-0");
+        given()
+                .get("/dealer/%s".formatted(dealerId))
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("name", equalTo("Cached dealer"));
+
+        assertThat(connections("replica-0")).isEqualTo(replicaConnections);
+    }
+
+    @Test
+    void searchDealers_ShouldLoadThePageFoundByTheIndexFromThePrimary() {
+        dealerCommandService.handle(new CreateUpdateDealer("Indexed replica dealer", DealerTierLimit.BASIC, true));
+
+        double replicaConnections = connections("replica-0");
+        given()
+                .get("/dealer?name=Indexed replica")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("data.size()", is(1))
+                .body("data[0].name", equalTo("Indexed replica dealer"));
+
+        assertThat(connections("replica-0")).isEqualTo(replicaConnections);
+    }
+
+    private double connections(String pool) {
+        return meterRegistry.get("datasource.routed.connections").tag("pool", pool).counter().count();
+    }
+}
@@ -0,0 +1,213 @@
+package com.filipegeniselli.backendtechassignment;
+
+import com.filipegeniselli.backendtechassignment.datasource.ReadReplicaProperties;
+import com.filipegeniselli.backendtechassignment.datasource.ReadYourWritesInterceptor;
+import com.filipegeniselli.backendtechassignment.datasource.ReplicaRoute;
+import com.filipegeniselli.backendtechassignment.datasource.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.sql.Connection;
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Each database has a table with its own name, the reads tell which data source gave the connection
+ */
+class ReplicaRoutingDataSourceTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<HikariDataSource> pools = new ArrayList<>();
+
+    private HikariDataSource primary;
+    private List<HikariDataSource> replicas;
+    private ReplicaRoutingDataSource routingDataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+
+    @AfterEach
+    void tearDown() {
+        ReplicaRoute.requirePrimary(false);
+        pools.forEach(HikariDataSource::close);
+    }
+
+    @Test
+    void roundRobin_ShouldSendTheReadOnlyQueriesToTheReplicasInTurns() {
+        setUp(ReadReplicaProperties.Selection.ROUND_ROBIN);
+
+        List<String> nodes = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            nodes.add(replicaRead());
+        }
+
+        assertThat(nodes).containsExactly("replica-0", "replica-1", "replica-0", "replica-1");
+        assertThat(connections("replica-0")).isEqualTo(2);
+        assertThat(connections("replica-1")).isEqualTo(2);
+        assertThat(connections("primary")).isZero();
+    }
+
+    @Test
+    void leastLoaded_ShouldSendTheQueriesToTheReplicaWithFewerConnectionsInUse() throws Exception {
+        setUp(ReadReplicaProperties.Selection.LEAST_LOADED);
+
+        try (Connection ignored = replicas.get(0).getConnection()) {
+            assertThat(replicaRead()).isEqualTo("replica-1");
+        }
+        try (Connection ignored = replicas.get(1).getConnection()) {
+            assertThat(replicaRead()).isEqualTo("replica-0");
+        }
+    }
+
+    @Test
+    void getConnection_ShouldUseThePrimaryOutsideOfTheReplicaReads() {
+        setUp(ReadReplicaProperties.Selection.ROUND_ROBIN);
+
+        assertThat(readOnlyNode()).isEqualTo("primary");
+        assertThat(ReplicaRoute.replicaReads(this::readWriteNode)).isEqualTo("primary");
+        assertThat(ReplicaRoute.replicaReads(this::node)).isEqualTo("primary");
+        assertThat(connections("replica-0") + connections("replica-1")).isZero();
+    }
+
+    @Test
+    void getConnection_ShouldUseThePrimaryWhenItIsRequired() {
+        setUp(ReadReplicaProperties.Selection.ROUND_ROBIN);
+
+        assertThat(ReplicaRoute.replicaReads(() -> ReplicaRoute.primaryReads(this::readOnlyNode)))
+                .isEqualTo("primary");
+
+        ReplicaRoute.requirePrimary(true);
+        assertThat(replicaRead()).isEqualTo("primary");
+        ReplicaRoute.requirePrimary(false);
+
+        assertThat(replicaRead()).startsWith("replica-");
+    }
+
+    @Test
+    void getConnection_ShouldSkipAReplicaThatIsDown() {
+        setUp(ReadReplicaProperties.Selection.ROUND_ROBIN);
+        replicas.get(0).close();
+
+        assertThat(replicaRead()).isEqualTo("primary");
+        assertThat(meterRegistry.get("datasource.replicas.healthy").gauge().value()).isEqualTo(1);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(replicaRead()).isEqualTo("replica-1");
+        }
+    }
+
+    @Test
+    void checkHealth_ShouldRemoveTheReplicasThatAreDown() {
+        setUp(ReadReplicaProperties.Selection.ROUND_ROBIN);
+        routingDataSource.checkHealth();
+        assertThat(meterRegistry.get("datasource.replicas.healthy").gauge().value()).isEqualTo(2);
+
+        replicas.get(1).close();
+        routingDataSource.checkHealth();
+
+        assertThat(meterRegistry.get("datasource.replicas.healthy").gauge().value()).isEqualTo(1);
+        for (int i = 0; i < 3; i++) {
+            assertThat(replicaRead()).isEqualTo("replica-0");
+        }
+        assertThat(connections("primary")).isZero();
+    }
+
+    @Test
+    void readYourWrites_ShouldReadFromThePrimaryWhileTheCommandOfTheDealerIsRunning() {
+        setUp(ReadReplicaProperties.Selection.ROUND_ROBIN);
+        ReadYourWritesInterceptor interceptor = new ReadYourWritesInterceptor(Duration.ofMinutes(1));
+        UUID dealerId = UUID.randomUUID();
+
+        interceptor.preHandle(request("PATCH", dealerId), new MockHttpServletResponse(), null);
+        MockHttpServletRequest read = request("GET", dealerId);
+        interceptor.preHandle(read, new MockHttpServletResponse(), null);
+        assertThat(replicaRead()).isEqualTo("primary");
+        interceptor.afterCompletion(read, new MockHttpServletResponse(), null, null);
+
+        MockHttpServletRequest otherDealer = request("GET", UUID.randomUUID());
+        interceptor.preHandle(otherDealer, new MockHttpServletResponse(), null);
+        assertThat(replicaRead()).startsWith("replica-");
+        interceptor.afterCompletion(otherDealer, new MockHttpServletResponse(), null, null);
+    }
+
+    @Test
+    void getConnectionWithCredentials_ShouldNotBeSupported() {
+        setUp(ReadReplicaProperties.Selection.ROUND_ROBIN);
+
+        assertThatThrownBy(() -> routingDataSource.getConnection("listings", "secret"))
+                .isInstanceOf(SQLFeatureNotSupportedException.class);
+    }
+
+    private MockHttpServletRequest request(String method, UUID dealerId) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, "/%s/listings".formatted(dealerId));
+        request.setAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE, Map.of("dealerId", dealerId.toString()));
+        return request;
+    }
+
+    private void setUp(ReadReplicaProperties.Selection selection) {
+        primary = pool("primary");
+        replicas = List.of(pool("replica-0"), pool("replica-1"));
+        routingDataSource = new ReplicaRoutingDataSource(primary, replicas, selection, Duration.ofSeconds(10), meterRegistry);
+
+        // With the defaults set the proxy doesn't take a connection of the primary to read them
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy();
+        dataSource.setTargetDataSource(routingDataSource);
+        dataSource.setDefaultAutoCommit(true);
+        dataSource.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        dataSource.afterPropertiesSet();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(transactionManager);
+    }
+
+    private HikariDataSource pool(String name) {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setJdbcUrl("jdbc:h2:mem:routing-" + name + "-" + System.nanoTime());
+        pool.setPoolName(name);
+        pool.setMaximumPoolSize(2);
+        pool.setConnectionTimeout(1_000);
+        pools.add(pool);
+
+        new JdbcTemplate(pool).execute("CREATE TABLE node (name VARCHAR(20))");
+        new JdbcTemplate(pool).update("INSERT INTO node VALUES (?)", name);
+        return pool;
+    }
+
+    private String replicaRead() {
+        return ReplicaRoute.replicaReads(this::readOnlyNode);
+    }
+
+    private String readOnlyNode() {
+        return readOnly.execute(status -> node());
+    }
+
+    private String readWriteNode() {
+        return readWrite.execute(status -> node());
+    }
+
+    private String node() {
+        return jdbcTemplate.queryForObject("SELECT name FROM node", String.class);
+    }
+
+    private double connections(String pool) {
+        return meterRegistry.get("datasource.routed.connections").tag("pool", pool).counter().count();
+    }
+}
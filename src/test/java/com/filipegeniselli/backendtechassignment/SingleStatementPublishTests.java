@@ -0,0 +1,194 @@
+package com.filipegeniselli.backendtechassignment;
+
+import com.filipegeniselli.backendtechassignment.dealer.Dealer;
+import com.filipegeniselli.backendtechassignment.dealer.DealerRepository;
+import com.filipegeniselli.backendtechassignment.dealer.DealerTierLimit;
+import com.filipegeniselli.backendtechassignment.dealer.command.DealerCommandService;
+import com.filipegeniselli.backendtechassignment.exception.BadRequestException;
+import com.filipegeniselli.backendtechassignment.exception.ConflictException;
+import com.filipegeniselli.backendtechassignment.exception.NotFoundException;
+import com.filipegeniselli.backendtechassignment.listings.Listing;
+import com.filipegeniselli.backendtechassignment.listings.ListingRepository;
+import com.filipegeniselli.backendtechassignment.listings.ListingStatus;
+import com.filipegeniselli.backendtechassignment.listings.command.ListingCommandService;
+import com.filipegeniselli.backendtechassignment.listings.command.PublishListing;
+import com.filipegeniselli.backendtechassignment.listings.command.PublishResult;
+import com.filipegeniselli.backendtechassignment.listings.query.ListingsStamps;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+import static com.filipegeniselli.backendtechassignment.ListingFixtures.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * The single statement publish needs postgres, the tests are skipped on H2 and the default build doesn't cover
+ * the statement. Run them with the test-it profile after changing it
+ */
+@SpringBootTest(properties = "single-statement-publish.enabled=true")
+class SingleStatementPublishTests {
+
+    private static final int THREADS = 8;
+
+    @Autowired
+    private DealerCommandService dealerCommandService;
+
+    @Autowired
+    private ListingCommandService listingCommandService;
+
+    @Autowired
+    private ListingRepository listingRepository;
+
+    @Autowired
+    private DealerRepository dealerRepository;
+
+    @Autowired
+    private TierLimitConfiguration tierLimitConfiguration;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void requireSingleStatementPublish() {
+        assumeTrue(listingRepository.supportsSingleStatementPublish(), "The database doesn't support the single statement publish");
+    }
+
+    @Test
+    void publishOverTheLimit_ShouldBeRejectedAndKeepTheListingAsDraft() {
+        UUID dealerId = createDealer(dealerCommandService, DealerTierLimit.FREE, false);
+        int limit = tierLimitConfiguration.getTierLimit(DealerTierLimit.FREE);
+        List<UUID> listings = createListings(listingCommandService, dealerId, limit + 1);
+
+        listings.subList(0, limit).forEach(listingId -> publish(dealerId, listingId));
+        ListingsStamps before = stamps(dealerId);
+
+        assertThatThrownBy(() -> publish(dealerId, listings.get(limit)))
+                .isInstanceOf(ConflictException.class)
+                .hasMessage("You've reached the limit of published listings");
+        assertThat(status(listings.get(limit))).isEqualTo(ListingStatus.DRAFT);
+        assertThat(listingRepository.countByDealer_IdAndStatus(dealerId, ListingStatus.PUBLISHED)).isEqualTo(limit);
+        assertThat(dealerRepository.findById(dealerId).map(Dealer::getPublishedListings)).contains(limit);
+        assertThat(stamps(dealerId)).isEqualTo(before);
+    }
+
+    @Test
+    void publishOverTheLimit_ShouldRemoveTheOldestListingWhenAllowed() {
+        UUID dealerId = createDealer(dealerCommandService, DealerTierLimit.FREE, true);
+        int limit = tierLimitConfiguration.getTierLimit(DealerTierLimit.FREE);
+        List<UUID> listings = createListings(listingCommandService, dealerId, limit + 1);
+
+        listings.subList(0, limit).forEach(listingId -> publish(dealerId, listingId));
+        ListingsStamps before = stamps(dealerId);
+        PublishResult result = publish(dealerId, listings.get(limit));
+
+        assertThat(result.listingId()).isEqualTo(listings.get(limit));
+        assertThat(result.evictedListingId()).isEqualTo(listings.get(0));
+        Listing evicted = listingRepository.findById(listings.get(0)).orElseThrow();
+        assertThat(evicted.getStatus()).isEqualTo(ListingStatus.REMOVED);
+        assertThat(evicted.getRemovedAt()).isNotNull();
+        assertThat(status(listings.get(limit))).isEqualTo(ListingStatus.PUBLISHED);
+        assertThat(listingRepository.countByDealer_IdAndStatus(dealerId, ListingStatus.PUBLISHED)).isEqualTo(limit);
+        assertThat(dealerRepository.findById(dealerId).map(Dealer::getPublishedListings)).contains(limit);
+
+        ListingsStamps after = stamps(dealerId);
+        assertThat(after.draftStamp()).isEqualTo(before.draftStamp() + 1);
+        assertThat(after.publishedStamp()).isEqualTo(before.publishedStamp() + 1);
+        assertThat(after.removedStamp()).isEqualTo(before.removedStamp() + 1);
+    }
+
+    @Test
+    void publishPublishedListing_ShouldOnlyRefreshThePublishedAt() {
+        UUID dealerId = createDealer(dealerCommandService, DealerTierLimit.FREE, false);
+        int limit = tierLimitConfiguration.getTierLimit(DealerTierLimit.FREE);
+        List<UUID> listings = createListings(listingCommandService, dealerId, limit);
+
+        listings.forEach(listingId -> publish(dealerId, listingId));
+        LocalDateTime publishedAt = listingRepository.findById(listings.get(0)).orElseThrow().getPublishedAt();
+        ListingsStamps before = stamps(dealerId);
+        PublishResult result = publish(dealerId, listings.get(0));
+
+        assertThat(result.evictedListingId()).isNull();
+        assertThat(listingRepository.findById(listings.get(0)).orElseThrow().getPublishedAt()).isAfterOrEqualTo(publishedAt);
+        assertThat(dealerRepository.findById(dealerId).map(Dealer::getPublishedListings)).contains(limit);
+
+        ListingsStamps after = stamps(dealerId);
+        assertThat(after.draftStamp()).isEqualTo(before.draftStamp());
+        assertThat(after.publishedStamp()).isEqualTo(before.publishedStamp() + 1);
+        assertThat(after.removedStamp()).isEqualTo(before.removedStamp());
+    }
+
+    @Test
+    void publishMissingOrRemovedListing_ShouldFail() {
+        UUID dealerId = createDealer(dealerCommandService, DealerTierLimit.FREE, false);
+        UUID removed = createListing(listingCommandService, dealerId);
+        listingCommandService.handle(dealerId, removed, new PublishListing(ListingStatus.REMOVED));
+
+        assertThatThrownBy(() -> publish(dealerId, UUID.randomUUID()))
+                .isInstanceOf(NotFoundException.class);
+        assertThatThrownBy(() -> publish(dealerId, removed))
+                .isInstanceOf(BadRequestException.class);
+        assertThat(dealerRepository.findById(dealerId).map(Dealer::getPublishedListings)).contains(0);
+    }
+
+    /**
+     * Each thread is a different instance, the transactions skip the in-process dealer lock and only the
+     * dealer row serializes them
+     */
+    @Test
+    void publishesFromManyInstances_ShouldNotExceedTheTierLimit() throws Exception {
+        UUID dealerId = createDealer(dealerCommandService, DealerTierLimit.FREE, false);
+        int limit = tierLimitConfiguration.getTierLimit(DealerTierLimit.FREE);
+        List<UUID> listings = createListings(listingCommandService, dealerId, 20);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<UUID>> results = new ArrayList<>();
+        for (UUID listingId : listings) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return transactionTemplate.execute(status -> {
+                    dealerRepository.findForUpdateById(dealerId);
+                    return listingRepository.publishInSingleStatement(dealerId,
+                            listingId,
+                            tierLimitConfiguration.getTierLimits(),
+                            LocalDateTime.now()).publishedListingId();
+                });
+            }));
+        }
+
+        start.countDown();
+        int published = 0;
+        for (Future<UUID> result : results) {
+            if (result.get(30, TimeUnit.SECONDS) != null) {
+                published++;
+            }
+        }
+        executor.shutdown();
+
+        assertThat(published).isEqualTo(limit);
+        assertThat(listingRepository.countByDealer_IdAndStatus(dealerId, ListingStatus.PUBLISHED)).isEqualTo(limit);
+        assertThat(dealerRepository.findById(dealerId).map(Dealer::getPublishedListings)).contains(limit);
+    }
+
+    private PublishResult publish(UUID dealerId, UUID listingId) {
+        return listingCommandService.handle(dealerId, listingId, new PublishListing(ListingStatus.PUBLISHED));
+    }
+
+    private ListingStatus status(UUID listingId) {
+        return listingRepository.findById(listingId).map(Listing::getStatus).orElseThrow();
+    }
+
+    private ListingsStamps stamps(UUID dealerId) {
+        return listingRepository.findListingsStamps(dealerId).orElseThrow();
+    }
+}
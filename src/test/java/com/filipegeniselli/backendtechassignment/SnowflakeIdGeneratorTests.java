@@ -0,0 +1,138 @@
+package com.filipegeniselli.backendtechassignment;
+
+import com.filipegeniselli.backendtechassignment.id.SnowflakeIdGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SnowflakeIdGeneratorTests {
+
+    private static final long NOW = Instant.parse("2023-06-01T10:00:00Z").toEpochMilli();
+
+    @Test
+    void nextId_ShouldCarryTheTimestampNodeAndSequence() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(() -> 5, () -> NOW);
+
+        long first = generator.nextId();
+        long second = generator.nextId();
+
+        assertThat(first).isPositive();
+        assertThat(SnowflakeIdGenerator.timestampOf(first)).isEqualTo(Instant.ofEpochMilli(NOW));
+        assertThat((first >>> 12) & 1023).isEqualTo(5);
+        assertThat(first & 4095).isZero();
+        assertThat(second).isEqualTo(first + 1);
+    }
+
+    @Test
+    void nextUuid_ShouldBeAVersion7UuidWithTheTimestampAndNode() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(() -> 1023, () -> NOW);
+
+        UUID id = generator.nextUuid();
+
+        assertThat(id.version()).isEqualTo(7);
+        assertThat(id.variant()).isEqualTo(2);
+        assertThat(SnowflakeIdGenerator.timestampOf(id)).isEqualTo(Instant.ofEpochMilli(NOW));
+        assertThat((id.getLeastSignificantBits() >>> 52) & 1023).isEqualTo(1023);
+        assertThat(SnowflakeIdGenerator.timestampOf(UUID.randomUUID())).isNull();
+    }
+
+    @Test
+    void nextUuid_ShouldSortAsTextInTheGenerationOrder() {
+        AtomicLong clock = new AtomicLong(NOW);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(() -> 3, clock::get);
+
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            ids.add(generator.nextUuid().toString());
+            if (i % 100 == 0) {
+                clock.incrementAndGet();
+            }
+        }
+
+        assertThat(ids).isSorted().doesNotHaveDuplicates();
+    }
+
+    @Test
+    void nextId_ShouldOverflowTheSequenceToTheNextMillisecond() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(() -> 0, () -> NOW);
+
+        long last = 0;
+        for (int i = 0; i < 4097; i++) {
+            last = generator.nextId();
+        }
+
+        assertThat(SnowflakeIdGenerator.timestampOf(last)).isEqualTo(Instant.ofEpochMilli(NOW + 1));
+        assertThat(last & 4095).isZero();
+    }
+
+    @Test
+    void nextId_ShouldKeepIncreasingWhenTheClockGoesBack() {
+        AtomicLong clock = new AtomicLong(NOW);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(() -> 0, clock::get);
+
+        long beforeAdjustment = generator.nextId();
+        clock.set(NOW - 60_000);
+        long afterAdjustment = generator.nextId();
+        clock.set(NOW + 1);
+        long caughtUp = generator.nextId();
+
+        assertThat(afterAdjustment).isGreaterThan(beforeAdjustment);
+        assertThat(SnowflakeIdGenerator.timestampOf(afterAdjustment)).isEqualTo(Instant.ofEpochMilli(NOW));
+        assertThat(caughtUp).isGreaterThan(afterAdjustment);
+        assertThat(SnowflakeIdGenerator.timestampOf(caughtUp)).isEqualTo(Instant.ofEpochMilli(NOW + 1));
+    }
+
+    @Test
+    void nextId_ShouldBeUniqueAndIncreasingOnEachThread() throws InterruptedException {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(() -> 7, System::currentTimeMillis);
+        int threads = 8;
+        int idsPerThread = 50_000;
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        Set<Integer> increasing = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                Set<Long> generated = new HashSet<>();
+                long previous = 0;
+                boolean ordered = true;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int i = 0; i < idsPerThread; i++) {
+                    long id = generator.nextId();
+                    ordered &= id > previous;
+                    previous = id;
+                    generated.add(id);
+                }
+                ids.addAll(generated);
+                if (ordered) {
+                    increasing.add(thread);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertThat(ids).hasSize(threads * idsPerThread);
+        assertThat(increasing).hasSize(threads);
+    }
+}